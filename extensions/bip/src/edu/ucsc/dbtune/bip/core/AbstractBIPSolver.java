@@ -19,6 +19,7 @@ import edu.ucsc.dbtune.inum.FullTableScanIndex;
 import edu.ucsc.dbtune.metadata.Table;
 import edu.ucsc.dbtune.optimizer.InumOptimizer;
 import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.optimizer.plan.UnseenIndexProber;
 import edu.ucsc.dbtune.util.Environment;
 import edu.ucsc.dbtune.workload.SQLStatement;
 
@@ -187,6 +188,10 @@ public abstract class AbstractBIPSolver implements BIPSolver
         workloadTables = new HashSet<Table>();
         queryPlanDescs = new ArrayList<QueryPlanDesc>();
         
+        // Compute the access costs of the candidates for every template up front, so that 
+        // identical what-if calls are issued once for the whole workload
+        probeUnseenIndexes();
+        
         for (int i = 0; i < workload.size(); i++) {
             // Set the corresponding SQL statement
             QueryPlanDesc desc = InumQueryPlanDesc.getQueryPlanDescInstance(workload.get(i));
@@ -207,6 +212,33 @@ public abstract class AbstractBIPSolver implements BIPSolver
             candidateIndexes.add(scanIdx);
         }
     }
+
+    /**
+     * Prepares every statement of the workload and computes the access cost of each candidate 
+     * index for the templates of the SELECT and UPDATE statements, through an {@link 
+     * UnseenIndexProber}, which issues the what-if calls through the delegate and the helpers of 
+     * the INUM optimizer. The costs are kept by the templates, so {@link 
+     * QueryPlanDesc#generateQueryPlanDesc} doesn't need to issue the what-if calls.
+     * 
+     * @throws SQLException
+     *      if a statement can't be prepared or a what-if call fails
+     */
+    protected void probeUnseenIndexes() throws SQLException
+    {
+        UnseenIndexProber prober =
+            new UnseenIndexProber(
+                inumOptimizer.getDelegate(), inumOptimizer.getHelpers(),
+                UnseenIndexProber.DEFAULT_BATCH_SIZE);
+        
+        for (SQLStatement sql : workload)
+            if (sql.getSQLCategory().isSame(SELECT) || sql.getSQLCategory().isSame(UPDATE))
+                prober.addAll(
+                        InumQueryPlanDesc.getPreparedStatement(inumOptimizer, sql)
+                            .getTemplatePlans(),
+                        candidateIndexes);
+        
+        prober.probe();
+    }
     
     /**
      * Retrieve the assignment of variables by CPLEX
@@ -138,6 +138,32 @@ public class InumQueryPlanDesc implements QueryPlanDesc
     }
     
     
+    /**
+     * Retrieves the prepared statement of the given statement, preparing it through INUM if it 
+     * hasn't been prepared before.
+     * 
+     * @param optimizer
+     *      INUM optimizer
+     * @param stmt
+     *      a statement
+     * @return
+     *      the prepared statement
+     * @throws SQLException
+     *      if the statement can't be prepared
+     */
+    public static InumPreparedSQLStatement getPreparedStatement(
+            InumOptimizer optimizer, SQLStatement stmt) throws SQLException
+    {
+        InumPreparedSQLStatement preparedStmt = preparedStmts.get(stmt);
+        
+        if (preparedStmt == null) {
+            preparedStmt = (InumPreparedSQLStatement) optimizer.prepareExplain(stmt);
+            preparedStmts.put(stmt, preparedStmt);
+        }
+        
+        return preparedStmt;
+    }
+    
     @Override
     public void generateQueryPlanDesc(InumOptimizer optimizer, Set<Index> candidates) 
                                       throws SQLException
@@ -146,12 +172,7 @@ public class InumQueryPlanDesc implements QueryPlanDesc
         Set<InumPlan> templatePlans;
         
         // 1. Get the template plans from INUM
-        preparedStmt = preparedStmts.get(stmt);
-        if (preparedStmt == null) {
-            preparedStmt = (InumPreparedSQLStatement) optimizer.prepareExplain(stmt);
-            preparedStmts.put(stmt, preparedStmt);
-        }
-        
+        preparedStmt = getPreparedStatement(optimizer, stmt);
         templatePlans = preparedStmt.getTemplatePlans();
         
         // 2. Number of slots and indexes in each slot
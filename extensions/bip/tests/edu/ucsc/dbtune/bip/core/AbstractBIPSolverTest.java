@@ -0,0 +1,105 @@
+package edu.ucsc.dbtune.bip.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.metadata.Table;
+import edu.ucsc.dbtune.optimizer.InumOptimizer;
+import edu.ucsc.dbtune.optimizer.InumPreparedSQLStatement;
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.optimizer.plan.CompiledInumPlan;
+import edu.ucsc.dbtune.optimizer.plan.InumPlan;
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalogWithoutIndexes;
+import static edu.ucsc.dbtune.InumInstances.configureIndexScanOptimizer;
+import static edu.ucsc.dbtune.InumInstances.configureTwoTableTemplate;
+
+import static org.hamcrest.Matchers.is;
+
+import static org.junit.Assert.assertThat;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test for AbstractBIPSolver.
+ *
+ * @author Ivo Jimenez
+ */
+public class AbstractBIPSolverTest
+{
+    /**
+     * Checks that the access costs of the candidates are obtained through the helpers of the INUM
+     * optimizer. The two statements have a template each, with identical slots, so there's one
+     * what-if call per candidate, all of them in a single batch that takes the first idle
+     * optimizer, i.e. the helper.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testProbeUnseenIndexesThroughHelpers() throws Exception
+    {
+        Catalog catalog = configureCatalogWithoutIndexes();
+        Table table0 = catalog.<Table>findByName("schema_0.table_0");
+        Table table1 = catalog.<Table>findByName("schema_0.table_1");
+        Optimizer delegate = mock(Optimizer.class);
+        Optimizer helper = configureIndexScanOptimizer();
+        InumOptimizer inumOptimizer = mock(InumOptimizer.class);
+        List<SQLStatement> workload = new ArrayList<SQLStatement>();
+        List<InumPlan> templates = new ArrayList<InumPlan>();
+        Set<Index> candidates = new HashSet<Index>();
+
+        candidates.add(new Index("bip_probed_0", table0.columns().get(0), true));
+        candidates.add(new Index("bip_probed_1", table1.columns().get(0), true));
+
+        when(inumOptimizer.getDelegate()).thenReturn(delegate);
+        when(inumOptimizer.getHelpers()).thenReturn(Arrays.asList(helper));
+
+        for (double joinCost : new double[] {150, 120}) {
+            SQLStatement sql = new SQLStatement("SELECT * FROM t WHERE c = " + joinCost);
+            InumPreparedSQLStatement prepared = mock(InumPreparedSQLStatement.class);
+            InumPlan template = configureTwoTableTemplate(delegate, table0, table1, joinCost);
+
+            when(prepared.getTemplatePlans()).thenReturn(
+                new HashSet<InumPlan>(Arrays.asList(template)));
+            when(inumOptimizer.prepareExplain(sql)).thenReturn(prepared);
+
+            workload.add(sql);
+            templates.add(template);
+        }
+
+        AbstractBIPSolver solver = mock(AbstractBIPSolver.class, CALLS_REAL_METHODS);
+
+        solver.setWorkload(workload);
+        solver.setCandidateIndexes(candidates);
+        solver.setOptimizer(inumOptimizer);
+        solver.probeUnseenIndexes();
+
+        verify(helper, times(2)).explain(any(SQLStatement.class), anySetOf(Index.class));
+        verify(delegate, never()).explain(any(SQLStatement.class), anySetOf(Index.class));
+
+        for (InumPlan template : templates) {
+            CompiledInumPlan compiled = template.compile();
+
+            for (Index index : candidates)
+                assertThat(
+                    compiled.isAccessCostKnown(compiled.getSlot(index.getTable()), index),
+                    is(true));
+        }
+    }
+}
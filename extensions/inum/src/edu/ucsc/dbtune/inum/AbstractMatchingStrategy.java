@@ -12,7 +12,8 @@ import static edu.ucsc.dbtune.util.InumUtils.complete;
  * Base matching strategy. Implementors of this class should only implement the {@link #matchAtomic} 
  * method. This abstract implementation ensures that all configurations passed to the {@link 
  * #matchCompleteConfiguration} method reference at least one table by inserting the {@link 
- * FullTableScanIndex} singleton instance for every table.
+ * FullTableScanIndex} singleton instance for every table. Each match is counted, and its time 
+ * recorded, in the {@link InumMetrics} registry under the name of the class.
  *
  * @author Ivo Jimenez
  */
@@ -25,7 +26,15 @@ public abstract class AbstractMatchingStrategy implements MatchingStrategy
     public final Result match(Set<InumPlan> inumSpace, Set<Index> configuration)
         throws SQLException
     {
-        return matchCompleteConfiguration(inumSpace, complete(inumSpace, configuration));
+        String name = "match." + getClass().getSimpleName();
+        long start = InumMetrics.startTime();
+
+        try {
+            return matchCompleteConfiguration(inumSpace, complete(inumSpace, configuration));
+        } finally {
+            InumMetrics.getInstance().increment(name + ".calls");
+            InumMetrics.getInstance().recordTime(name + ".time", start);
+        }
     }
 
     /**
@@ -1,9 +1,14 @@
 package edu.ucsc.dbtune.inum;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 
 import edu.ucsc.dbtune.metadata.Catalog;
 import edu.ucsc.dbtune.metadata.Index;
@@ -12,6 +17,7 @@ import edu.ucsc.dbtune.optimizer.ExplainedSQLStatement;
 import edu.ucsc.dbtune.optimizer.Optimizer;
 import edu.ucsc.dbtune.optimizer.plan.InumPlan;
 import edu.ucsc.dbtune.optimizer.plan.SQLStatementPlan;
+import edu.ucsc.dbtune.util.WorkerPool;
 import edu.ucsc.dbtune.workload.SQLStatement;
 
 import static com.google.common.collect.Iterables.get;
@@ -26,6 +32,11 @@ import static edu.ucsc.dbtune.workload.SQLCategory.INSERT;
 
 /**
  * Common functionality for space computation.
+ * <p>
+ * A computation can be given optimizers that are equivalent to the delegate (e.g. ones that use
+ * other connections to the same DBMS), so that implementations can issue what-if calls in
+ * parallel. Each optimizer is used by at most one thread at a time and plans are always bound to
+ * the delegate.
  *
  * @author Ivo Jimenez
  */
@@ -33,12 +44,35 @@ public abstract class AbstractSpaceComputation implements InumSpaceComputation
 {
     private static Set<Index> empty = new HashSet<Index>();
 
+    private final List<Optimizer> helpers;
+
+    /**
+     * Creates a computation that issues what-if calls only through the delegate.
+     */
+    protected AbstractSpaceComputation()
+    {
+        this(new ArrayList<Optimizer>());
+    }
+
+    /**
+     * Creates a computation that may issue what-if calls concurrently.
+     *
+     * @param helpers
+     *      optimizers equivalent to the delegate given to {@link #compute}, which are used along
+     *      with it to issue what-if calls in parallel
+     */
+    protected AbstractSpaceComputation(Collection<? extends Optimizer> helpers)
+    {
+        this.helpers = new ArrayList<Optimizer>(helpers);
+    }
+
     /**
      * Computes the INUM space by extracting interesting orders using the {@link 
      * DerbyInterestingOrdersExtractor}. The configuration associated to each table is completed 
      * using {@link #complete}, i.e. this method ensures that each table has at least the {@link 
      * FullTableScanIndex} interesting order in the set of interesting orders. After this is done, 
-     * the {@link #computeWithCompleteConfiguration} method is called.
+     * the {@link #computeWithCompleteConfiguration} method is called. The computation is counted, 
+     * and its time recorded, in the {@link InumMetrics} registry under the name of the class.
      *
      * @param space
      *      the space to be computed. {@link Set#clear} is invoked before populating it.
@@ -56,6 +90,35 @@ public abstract class AbstractSpaceComputation implements InumSpaceComputation
     public void compute(
             Set<InumPlan> space, SQLStatement statement, Optimizer delegate, Catalog catalog)
         throws SQLException
+    {
+        String name = "space." + getClass().getSimpleName();
+        long start = InumMetrics.startTime();
+
+        try {
+            computeSpace(space, statement, delegate, catalog);
+        } finally {
+            InumMetrics.getInstance().increment(name + ".computations");
+            InumMetrics.getInstance().recordTime(name + ".time", start);
+        }
+    }
+
+    /**
+     * Computes the INUM space, as described in {@link #compute}.
+     *
+     * @param space
+     *      the space to be computed
+     * @param statement
+     *      SQL statement for which the INUM space is computed
+     * @param delegate
+     *      optimizer used to execute what-if calls
+     * @param catalog
+     *      used to retrieve metadata for objects referenced in the statement
+     * @throws SQLException
+     *      if the inum space can't be populated
+     */
+    private void computeSpace(
+            Set<InumPlan> space, SQLStatement statement, Optimizer delegate, Catalog catalog)
+        throws SQLException
     {
         space.clear();
 
@@ -81,6 +144,70 @@ public abstract class AbstractSpaceComputation implements InumSpaceComputation
             space.add(new InumPlan(delegate, coveringExplainedStmt));
     }
 
+    /**
+     * Tells whether what-if calls can be issued in parallel, i.e. whether the computation has
+     * helpers and the {@link WorkerPool} has more than one thread.
+     *
+     * @return
+     *      {@code true} if calls can be issued in parallel
+     */
+    protected boolean isParallel()
+    {
+        return !helpers.isEmpty() && WorkerPool.size() > 1;
+    }
+
+    /**
+     * Returns a queue with the delegate and the helpers of the computation. A thread issuing a 
+     * what-if call takes an optimizer from the queue, synchronizes on it while using it and puts 
+     * it back afterwards.
+     *
+     * @param delegate
+     *      optimizer given to {@link #compute}
+     * @return
+     *      a queue of idle optimizers
+     */
+    protected BlockingQueue<Optimizer> newOptimizerQueue(Optimizer delegate)
+    {
+        BlockingQueue<Optimizer> idle =
+            new ArrayBlockingQueue<Optimizer>(helpers.size() + 1, false, helpers);
+
+        idle.add(delegate);
+
+        return idle;
+    }
+
+    /**
+     * @return
+     *      number of optimizers available to issue what-if calls, including the delegate
+     */
+    protected int getOptimizerCount()
+    {
+        return helpers.size() + 1;
+    }
+
+    /**
+     * Runs the given tasks through the {@link WorkerPool}.
+     *
+     * @param tasks
+     *      tasks to run
+     * @param <T>
+     *      type of the results
+     * @return
+     *      the result of each task, in the same order
+     * @throws SQLException
+     *      if a task throws it
+     */
+    protected static <T> List<T> invokeAll(List<Callable<T>> tasks) throws SQLException
+    {
+        try {
+            return WorkerPool.invokeAll(tasks);
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof SQLException)
+                throw (SQLException) e.getCause();
+            throw e;
+        }
+    }
+
     /**
      * Computes the space given a complete configuration that is extracted from a set of interesting 
      * orders. A complete configuration is guaranteed to have at least one index for every table 
@@ -7,11 +7,21 @@ import java.sql.DriverManager;
 import java.sql.SQLException;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import edu.ucsc.dbtune.metadata.Catalog;
 import edu.ucsc.dbtune.metadata.Column;
@@ -67,6 +77,13 @@ import static edu.ucsc.dbtune.metadata.ColumnOrdering.ASC;
  * <p>
  * The above is ambiguous since the parser can't identify which table the {@code ORDER BY} clause is
  * referring to.
+ * <p>
+ * Parse trees are cached by the {@link #normalize normalized} text of the statement, so a statement
+ * that is seen again (e.g. a templated statement with the same text, or one that differs only in
+ * whitespace or in the case of keywords) isn't parsed again. Bound parse trees and interesting
+ * orders are cached in the same way, separately for each catalog. The caches are shared by all
+ * instances and are safe to use from multiple threads; each thread parses through its own
+ * connection to the in-memory Derby database.
  *
  * @author Ivo Jimenez
  * @author Quoc Trung Tran
@@ -79,9 +96,10 @@ public class DerbyInterestingOrdersExtractor implements InterestingOrdersExtract
     private static final String LANG_CONNECTION = "LanguageConnectionContext";
     private static final String STOP_AFTER_PARSING =  "StopAfterParsing";
     private static final String STOPPED_AFTER_PARSING = "42Z55";
-    private static final Connection CON;
-    private static ContextManager cm;
-    private static LanguageConnectionContext lcc;
+    private static final int CACHE_SIZE = 4096;
+    private static final ThreadLocal<Connection> CON;
+    private static final Cache<String, SQLStatementParseTree> PARSE_TREES;
+    private static final LoadingCache<Catalog, CatalogCache> CATALOG_CACHES;
 
     protected Catalog catalog;
     protected Set<Visitable> astNodes;
@@ -98,15 +116,31 @@ public class DerbyInterestingOrdersExtractor implements InterestingOrdersExtract
             throw new RuntimeException(e);
         }
 
-        try {
-            CON = (EmbedConnection) DriverManager.getConnection(CONNECTION_URL);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        CON = new ThreadLocal<Connection>() {
+            @Override
+            protected Connection initialValue()
+            {
+                try {
+                    return (EmbedConnection) DriverManager.getConnection(CONNECTION_URL);
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
         SanityManager.SET_DEBUG_STREAM(new PrintWriter(System.out));
 
-        cm = ((EmbedConnection) CON).getContextManager();
-        lcc = (LanguageConnectionContext) cm.getContext(LANG_CONNECTION);
+        PARSE_TREES = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
+        // catalogs are compared by identity and aren't kept alive by the cache
+        CATALOG_CACHES = CacheBuilder.newBuilder().weakKeys().build(
+            new CacheLoader<Catalog, CatalogCache>() {
+                @Override
+                public CatalogCache load(Catalog catalog)
+                {
+                    return new CatalogCache();
+                }
+            });
     }
 
     /**
@@ -119,7 +153,8 @@ public class DerbyInterestingOrdersExtractor implements InterestingOrdersExtract
     }
 
     /**
-     * Extracts the parse tree of a sql statement.
+     * Extracts the parse tree of a sql statement. The tree is shared with other callers that
+     * extract it for an equivalent statement, so it shouldn't be modified.
      *
      * @param statement
      *      statement for which the parse tree is extracted
@@ -128,20 +163,162 @@ public class DerbyInterestingOrdersExtractor implements InterestingOrdersExtract
      * @throws SQLException
      *      if syntax error occurs
      */
-    public SQLStatementParseTree getParseTree(SQLStatement statement) throws SQLException
+    public SQLStatementParseTree getParseTree(final SQLStatement statement) throws SQLException
     {
-        reset();
-        parse(statement);
-        return parseTree;
+        return get(
+            PARSE_TREES,
+            normalize(statement.getSQL()),
+            new Callable<SQLStatementParseTree>() {
+                @Override
+                public SQLStatementParseTree call() throws SQLException
+                {
+                    reset();
+                    parse(statement);
+                    return parseTree;
+                }
+            });
+    }
+
+    /**
+     * Extracts the parse tree of a sql statement and binds it to the catalog of the extractor.
+     *
+     * @param statement
+     *      statement for which the parse tree is extracted
+     * @return
+     *      the bound parse tree
+     * @throws SQLException
+     *      if syntax error occurs; if an object referenced by the statement can't be bound
+     */
+    public BoundSQLStatementParseTree getBoundParseTree(final SQLStatement statement)
+        throws SQLException
+    {
+        return get(
+            CATALOG_CACHES.getUnchecked(catalog).boundParseTrees,
+            normalize(statement.getSQL()),
+            new Callable<BoundSQLStatementParseTree>() {
+                @Override
+                public BoundSQLStatementParseTree call() throws SQLException
+                {
+                    return new BoundSQLStatementParseTree(getParseTree(statement), catalog);
+                }
+            });
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Set<ColumnOrdering> extract(SQLStatement statement) throws SQLException
+    public Set<ColumnOrdering> extract(final SQLStatement statement) throws SQLException
+    {
+        Set<ColumnOrdering> ios = get(
+            CATALOG_CACHES.getUnchecked(catalog).interestingOrders,
+            normalize(statement.getSQL()),
+            new Callable<Set<ColumnOrdering>>() {
+                @Override
+                public Set<ColumnOrdering> call() throws SQLException
+                {
+                    return Collections.unmodifiableSet(extract(getBoundParseTree(statement)));
+                }
+            });
+
+        return new HashSet<ColumnOrdering>(ios);
+    }
+
+    /**
+     * Returns the statistics of the cache of parse trees, which is shared by all the instances of
+     * the extractor.
+     *
+     * @return
+     *      statistics of the parse tree cache
+     */
+    public static CacheStats getParseTreeCacheStats()
+    {
+        return PARSE_TREES.stats();
+    }
+
+    /**
+     * Normalizes the text of a statement, so that statements that Derby parses in the same way
+     * have the same text. Outside of quoted literals, identifiers and comments, whitespace is
+     * collapsed and letters are upper-cased (as Derby does with unquoted identifiers); leading and
+     * trailing whitespace and trailing semicolons are removed.
+     *
+     * @param sql
+     *      text of a statement
+     * @return
+     *      the normalized text
+     */
+    static String normalize(String sql)
+    {
+        StringBuilder normalized = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean comment = false;
+        boolean space = false;
+
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+
+            if (comment) {
+                normalized.append(c);
+                comment = c != '\n';
+            } else if (quote != 0) {
+                normalized.append(c);
+
+                if (c == quote)
+                    quote = 0;
+            } else if (Character.isWhitespace(c)) {
+                space = true;
+            } else {
+                if (space && normalized.length() > 0)
+                    normalized.append(' ');
+
+                space = false;
+
+                if (c == '\'' || c == '"')
+                    quote = c;
+                else if (c == '-' && i + 1 < sql.length() && sql.charAt(i + 1) == '-')
+                    comment = true;
+
+                normalized.append(Character.toUpperCase(c));
+            }
+        }
+
+        int end = normalized.length();
+
+        while (end > 0 && (normalized.charAt(end - 1) == ';' ||
+                    Character.isWhitespace(normalized.charAt(end - 1))))
+            end--;
+
+        return normalized.substring(0, end);
+    }
+
+    /**
+     * Returns the value cached for the given key, computing it if it's not cached.
+     *
+     * @param <T>
+     *      type of the cached values
+     * @param cache
+     *      a cache
+     * @param key
+     *      normalized text of a statement
+     * @param computation
+     *      computes the value if it's not cached
+     * @return
+     *      the cached value
+     * @throws SQLException
+     *      if {@code computation} throws it
+     */
+    private static <T> T get(Cache<String, T> cache, String key, Callable<T> computation)
+        throws SQLException
     {
-        return extract(new BoundSQLStatementParseTree(getParseTree(statement), catalog));
+        try {
+            return cache.get(key, computation);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException)
+                throw (SQLException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
     }
 
     /**
@@ -210,8 +387,10 @@ public class DerbyInterestingOrdersExtractor implements InterestingOrdersExtract
      */
     protected void parse(SQLStatement stmt) throws SQLException
     {
+        Connection con = CON.get();
+
         try {
-            CON.prepareStatement(stmt.getSQL());
+            con.prepareStatement(stmt.getSQL());
         } catch (SQLException se) {
             String sqlState = se.getSQLState();
 
@@ -219,6 +398,8 @@ public class DerbyInterestingOrdersExtractor implements InterestingOrdersExtract
                 throw se;
         }
 
+        ContextManager cm = ((EmbedConnection) con).getContextManager();
+        LanguageConnectionContext lcc = (LanguageConnectionContext) cm.getContext(LANG_CONNECTION);
         QueryTreeNode qt = (QueryTreeNode) lcc.getLastQueryTree();
 
         try {
@@ -288,6 +469,7 @@ public class DerbyInterestingOrdersExtractor implements InterestingOrdersExtract
 
     /**
      * Processes recursively and returns the subquery contained in the given {@link ResultSetNode}.
+     * The subquery is parsed by this same instance, whose state is restored afterwards.
      *
      * @param subquery
      *      a result set node
@@ -298,7 +480,15 @@ public class DerbyInterestingOrdersExtractor implements InterestingOrdersExtract
      */
     public SQLStatementParseTree process(ResultSetNode subquery) throws StandardException
     {
-        return (new DerbyInterestingOrdersExtractor(catalog)).parse((SelectNode) subquery);
+        Set<Visitable> outerNodes = astNodes;
+        SQLStatementParseTree outerTree = parseTree;
+
+        try {
+            return parse((SelectNode) subquery);
+        } finally {
+            astNodes = outerNodes;
+            parseTree = outerTree;
+        }
     }
 
     /**
@@ -456,6 +646,18 @@ public class DerbyInterestingOrdersExtractor implements InterestingOrdersExtract
     }
     // CHECKSTYLE:ON
 
+    /**
+     * Bound parse trees and interesting orders of the statements bound to a catalog, keyed by the
+     * normalized text of the statement.
+     */
+    private static class CatalogCache
+    {
+        private final Cache<String, BoundSQLStatementParseTree> boundParseTrees =
+            CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+        private final Cache<String, Set<ColumnOrdering>> interestingOrders =
+            CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+    }
+
     /**
      * @author Ivo Jimenez
      */
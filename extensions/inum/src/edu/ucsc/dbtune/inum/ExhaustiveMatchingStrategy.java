@@ -1,21 +1,28 @@
 package edu.ucsc.dbtune.inum;
 
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.optimizer.plan.CompiledInumPlan;
 import edu.ucsc.dbtune.optimizer.plan.InumPlan;
-import edu.ucsc.dbtune.optimizer.plan.SQLStatementPlan;
-
-import static com.google.common.collect.Lists.newArrayList;
-import static com.google.common.collect.Sets.cartesianProduct;
-
-import static edu.ucsc.dbtune.util.MetadataUtils.getIndexesPerTable;
 
 /**
- * Exhaustive matching strategy.
+ * Exhaustive matching strategy. Finds the template and atomic configuration of minimum cost, like
+ * enumerating every atomic configuration for every template would, but through a branch-and-bound
+ * search instead.
+ * <p>
+ * For each template, slots are assigned one at a time. A partial assignment is extended only if
+ * its cost plus the minimum access cost of each of the remaining slots (a lower bound of the cost
+ * of any of its completions) is lower than the best cost found so far. The indexes of a slot are
+ * tried in increasing order of access cost, so once an index fails the bound the ones that follow
+ * it do too; and out of the indexes of a slot with the same access cost only one is tried, since
+ * the others lead to assignments of the same cost. Templates are visited in increasing order of
+ * fixed cost and a template is skipped if its fixed cost plus the lower bound of its slots isn't
+ * lower than the best cost.
  *
  * @author Ivo Jimenez
  */
@@ -30,49 +37,198 @@ public class ExhaustiveMatchingStrategy extends AbstractMatchingStrategy
     {
         if (inumSpace.size() == 0)
             throw new SQLException("No template plan in the INUM space");
-        
-        List<Index> bestConf = null;
-        InumPlan bestTemplate = null;
-        SQLStatementPlan instantiatedPlan = null;
-        double bestCost = Double.POSITIVE_INFINITY;
-        double cost;
 
-        Set<List<Index>> atomicConfigurations = enumerateAtomicConfigurations(configuration);
+        CompiledInumPlan[] templates = new CompiledInumPlan[inumSpace.size()];
+        int t = 0;
+
+        for (InumPlan template : inumSpace)
+            templates[t++] = template.compile();
 
-        for (InumPlan template : inumSpace) {
+        Arrays.sort(templates, new Comparator<CompiledInumPlan>() {
+            @Override
+            public int compare(CompiledInumPlan t1, CompiledInumPlan t2)
+            {
+                return Double.compare(t1.getFixedCost(), t2.getFixedCost());
+            }
+        });
 
-            for (List<Index> atomicConfiguration : atomicConfigurations) {
+        Index[][] indexesPerSlot = templates[0].partition(configuration);
+        Search search = new Search(indexesPerSlot.length);
 
-                SQLStatementPlan plan = template.instantiate(atomicConfiguration);
+        for (CompiledInumPlan template : templates) {
+            if (template.getFixedCost() >= search.bestCost)
+                // so are the fixed costs of the ones that follow
+                break;
 
-                if (plan == null)
-                    continue;
+            search.run(template, indexesPerSlot);
+        }
+
+        if (search.bestTemplate == null)
+            throw new SQLException("Can't find match for configuration " + configuration);
+
+        return new Result(
+            search.bestTemplate.getTemplate(),
+            new HashSet<Index>(Arrays.asList(search.bestConfiguration)),
+            search.bestCost);
+    }
+
+    /**
+     * State of the branch-and-bound search over the templates of a space.
+     */
+    static class Search
+    {
+        private double bestCost = Double.POSITIVE_INFINITY;
+        private CompiledInumPlan bestTemplate;
+        private final Index[] bestConfiguration;
+        private final Index[] assignment;
+        private long nodeCount;
+
+        private Index[][] candidates;
+        private double[][] accessCosts;
+        private double[] remaining;
+
+        /**
+         * @param slotCount
+         *      number of slots of the templates
+         */
+        Search(int slotCount)
+        {
+            bestConfiguration = new Index[slotCount];
+            assignment = new Index[slotCount];
+            candidates = new Index[slotCount][];
+            accessCosts = new double[slotCount][];
+            remaining = new double[slotCount + 1];
+        }
+
+        /**
+         * Searches the atomic configurations of a template, updating the best one if a cheaper
+         * one is found.
+         *
+         * @param template
+         *      a template
+         * @param indexesPerSlot
+         *      indexes of each slot of the template
+         * @throws SQLException
+         *      if an access cost can't be computed
+         */
+        void run(CompiledInumPlan template, Index[][] indexesPerSlot) throws SQLException
+        {
+            int slotCount = indexesPerSlot.length;
+
+            for (int s = 0; s < slotCount; s++)
+                if (!sortCompatible(template, s, indexesPerSlot[s]))
+                    // no index can be plugged into the slot
+                    return;
+
+            remaining[slotCount] = 0;
+
+            for (int s = slotCount - 1; s >= 0; s--)
+                remaining[s] = remaining[s + 1] + accessCosts[s][0];
+
+            if (template.getFixedCost() + remaining[0] >= bestCost)
+                return;
+
+            search(template, 0, template.getFixedCost());
+        }
 
-                cost = plan.getRootOperator().getAccumulatedCost();
+        /**
+         * Extends a partial assignment with each of the indexes of a slot.
+         *
+         * @param template
+         *      template being searched
+         * @param slot
+         *      slot being assigned
+         * @param cost
+         *      cost of the partial assignment, i.e. fixed cost plus access costs of the slots
+         *      before {@code slot}
+         */
+        private void search(CompiledInumPlan template, int slot, double cost)
+        {
+            nodeCount++;
 
+            if (slot == assignment.length) {
                 if (cost < bestCost) {
                     bestCost = cost;
-                    bestConf = atomicConfiguration;
                     bestTemplate = template;
-                    instantiatedPlan = plan;
+                    System.arraycopy(assignment, 0, bestConfiguration, 0, assignment.length);
                 }
+                return;
+            }
+
+            for (int i = 0; i < candidates[slot].length; i++) {
+                double accessCost = accessCosts[slot][i];
+
+                if (cost + accessCost + remaining[slot + 1] >= bestCost)
+                    // the candidates are sorted, so the rest can't do better
+                    break;
+
+                if (i > 0 && accessCost == accessCosts[slot][i - 1])
+                    // same as the previous candidate
+                    continue;
+
+                assignment[slot] = candidates[slot][i];
+
+                search(template, slot + 1, cost + accessCost);
             }
         }
-        
-        if (bestTemplate == null)
-            throw new SQLException("Can't find match for configuration " + configuration);
 
-        return new Result(instantiatedPlan, bestTemplate, new HashSet<Index>(bestConf), bestCost);
-    }
+        /**
+         * Sorts the indexes of a slot that are compatible with it by their access cost.
+         *
+         * @param template
+         *      template being searched
+         * @param slot
+         *      position of the slot
+         * @param indexes
+         *      indexes of the slot
+         * @return
+         *      {@code false} if none of the indexes is compatible with the slot
+         * @throws SQLException
+         *      if an access cost can't be computed
+         */
+        private boolean sortCompatible(CompiledInumPlan template, int slot, Index[] indexes)
+            throws SQLException
+        {
+            final double[] costs = new double[indexes.length];
+            Integer[] order = new Integer[indexes.length];
+            int compatible = 0;
 
-    /**
-     * @param indexes
-     *      indexes from which the atomic configurations are enumerated
-     * @return
-     *      all the possible atomic configurations
-     */
-    private static Set<List<Index>> enumerateAtomicConfigurations(Set<Index> indexes)
-    {
-        return cartesianProduct(newArrayList(getIndexesPerTable(indexes).values()));
+            for (int i = 0; i < indexes.length; i++) {
+                costs[i] = template.getAccessCost(slot, indexes[i]);
+
+                if (costs[i] != Double.POSITIVE_INFINITY)
+                    order[compatible++] = i;
+            }
+
+            if (compatible == 0)
+                return false;
+
+            Arrays.sort(order, 0, compatible, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer i1, Integer i2)
+                {
+                    return Double.compare(costs[i1], costs[i2]);
+                }
+            });
+
+            candidates[slot] = new Index[compatible];
+            accessCosts[slot] = new double[compatible];
+
+            for (int i = 0; i < compatible; i++) {
+                candidates[slot][i] = indexes[order[i]];
+                accessCosts[slot][i] = costs[order[i]];
+            }
+
+            return true;
+        }
+
+        /**
+         * @return
+         *      number of (partial or complete) assignments visited so far
+         */
+        long getNodeCount()
+        {
+            return nodeCount;
+        }
     }
 }
@@ -2,9 +2,15 @@ package edu.ucsc.dbtune.inum;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.ucsc.dbtune.metadata.Index;
 import edu.ucsc.dbtune.metadata.Table;
@@ -13,26 +19,65 @@ import edu.ucsc.dbtune.optimizer.Optimizer;
 import edu.ucsc.dbtune.optimizer.plan.InumPlan;
 import edu.ucsc.dbtune.workload.SQLStatement;
 
-import static com.google.common.collect.Sets.cartesianProduct;
-import static com.google.common.collect.Sets.newHashSet;
-
 import static edu.ucsc.dbtune.inum.FullTableScanIndex.getFullTableScanIndexInstance;
 import static edu.ucsc.dbtune.optimizer.plan.Operator.NLJ;
 import static edu.ucsc.dbtune.util.MetadataUtils.getIndexesPerTable;
 
 /**
- * An implementation of the INUM space computation that populates it exhaustively without any kind 
- * of optimization. This is in contrast to other more sophisticated strategies such as the ones 
+ * An implementation of the INUM space computation that populates it exhaustively without any kind
+ * of optimization. This is in contrast to other more sophisticated strategies such as the ones
  * outlined in [1], like <i>Lazy</i> and <i>Cost-based</i>.
+ * <p>
+ * The atomic configurations (the cartesian product of the indexes of each table, including the
+ * full table scan) are enumerated without materializing the product, by decoding each of them out
+ * of its position in it. If the computation is given optimizers that are equivalent to the
+ * delegate, the positions are split among them and explained in parallel.
+ * <p>
+ * An atomic configuration whose plan is already represented is not explained: if the plan of a
+ * configuration doesn't use the index of some tables, then replacing any of those indexes by the
+ * full table scan results in the same plan [2], thus those configurations are skipped. Since the
+ * full table scan is enumerated last for each table, a configuration is explained before the ones
+ * that it covers (when explaining in parallel, a covered configuration might be explained anyway
+ * if it's reached by another optimizer first).
  *
  * @author Ivo Jimenez
  * @author Quoc Trung Tran
  * @see <a href="http://portal.acm.org/citation.cfm?id=1325974"?>
  *          [1] Efficient use of the query optimizer for automated physical design
  *      </a>
+ * @see <a href="http://portal.acm.org/citation.cfm?id=1687766"?>
+ *          [2] Index interactions in physical design tuning: modeling, analysis, and applications
+ *      </a>
  */
 public class ExhaustiveSpaceComputation extends AbstractSpaceComputation
 {
+    /**
+     * maximum number of unused tables considered when skipping the configurations covered by an
+     * explained one; each explained configuration covers up to {@code 2^n - 1} others.
+     */
+    static final int MAX_COVERED_TABLES = 10;
+
+    /**
+     * Creates a computation that explains atomic configurations one at a time through the
+     * delegate.
+     */
+    public ExhaustiveSpaceComputation()
+    {
+        super();
+    }
+
+    /**
+     * Creates a computation that explains atomic configurations concurrently.
+     *
+     * @param helpers
+     *      optimizers equivalent to the delegate given to {@link #compute}, which are used along
+     *      with it to explain configurations in parallel. Plans are always bound to the delegate.
+     */
+    public ExhaustiveSpaceComputation(Collection<? extends Optimizer> helpers)
+    {
+        super(helpers);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -40,23 +85,204 @@ public class ExhaustiveSpaceComputation extends AbstractSpaceComputation
     public void computeWithCompleteConfiguration(
             Set<InumPlan> space,
             Set<? extends Index> indexes,
-            SQLStatement statement,
-            Optimizer delegate)
+            final SQLStatement statement,
+            final Optimizer delegate)
         throws SQLException
     {
-        List<Set<Index>> indexesPerTable = new ArrayList<Set<Index>>();
+        List<Index[]> perTable = new ArrayList<Index[]>();
+        long total = 1;
 
         for (Map.Entry<Table, Set<Index>> e : getIndexesPerTable(indexes).entrySet()) {
-            e.getValue().add(getFullTableScanIndexInstance(e.getKey()));
-            indexesPerTable.add(e.getValue());
+            Index fts = getFullTableScanIndexInstance(e.getKey());
+            List<Index> orders = new ArrayList<Index>(e.getValue());
+
+            orders.remove(fts);
+            orders.add(fts);
+
+            perTable.add(orders.toArray(new Index[orders.size()]));
+
+            total *= orders.size();
+        }
+
+        final Index[][] product = perTable.toArray(new Index[perTable.size()][]);
+        final long size = total;
+        final Set<InumPlan> plans =
+            Collections.newSetFromMap(new ConcurrentHashMap<InumPlan, Boolean>());
+        final Set<Long> covered = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+        if (!isParallel() || size == 1) {
+            explain(statement, delegate, delegate, product, 0, 1, size, covered, plans);
+            space.addAll(plans);
+            return;
         }
 
-        for (List<Index> atomic : cartesianProduct(indexesPerTable)) {
+        final BlockingQueue<Optimizer> idle = newOptimizerQueue(delegate);
+        final int taskCount = (int) Math.min(size, getOptimizerCount());
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
 
-            ExplainedSQLStatement atomicExplained = delegate.explain(statement, newHashSet(atomic));
+        for (int t = 0; t < taskCount; t++) {
+            final int first = t;
 
-            if (!atomicExplained.getPlan().contains(NLJ))
-                space.add(new InumPlan(delegate, atomicExplained));
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws SQLException, InterruptedException
+                {
+                    Optimizer optimizer = idle.take();
+
+                    try {
+                        synchronized (optimizer) {
+                            explain(
+                                statement, delegate, optimizer, product, first, taskCount, size,
+                                covered, plans);
+                        }
+                    } finally {
+                        idle.add(optimizer);
+                    }
+
+                    return null;
+                }
+            });
         }
+
+        invokeAll(tasks);
+
+        // the space might not be thread-safe, so it's populated from the calling thread
+        space.addAll(plans);
+    }
+
+    /**
+     * Explains the atomic configurations at positions {@code first}, {@code first + step}, {@code
+     * first + 2 * step}, ..., of the cartesian product, skipping the ones that are covered by a
+     * configuration explained previously.
+     *
+     * @param statement
+     *      statement being explained
+     * @param delegate
+     *      optimizer that plans are bound to
+     * @param optimizer
+     *      optimizer used to explain configurations
+     * @param product
+     *      indexes of each table, with the full table scan at the end
+     * @param first
+     *      first position
+     * @param step
+     *      distance between positions
+     * @param size
+     *      size of the cartesian product
+     * @param covered
+     *      positions of the configurations whose plan is already represented
+     * @param plans
+     *      set where plans are added to
+     * @throws SQLException
+     *      if a configuration can't be explained
+     */
+    private static void explain(
+            SQLStatement statement,
+            Optimizer delegate,
+            Optimizer optimizer,
+            Index[][] product,
+            long first,
+            long step,
+            long size,
+            Set<Long> covered,
+            Set<InumPlan> plans)
+        throws SQLException
+    {
+        int[] digits = new int[product.length];
+
+        for (long k = first; k < size; k += step) {
+
+            if (covered.remove(k))
+                continue;
+
+            Set<Index> atomic = new HashSet<Index>();
+
+            decode(product, k, digits);
+
+            for (int t = 0; t < product.length; t++)
+                atomic.add(product[t][digits[t]]);
+
+            ExplainedSQLStatement explained = optimizer.explain(statement, atomic);
+
+            cover(product, digits, explained.getPlan().getIndexes(), covered);
+
+            if (!explained.getPlan().contains(NLJ))
+                plans.add(new InumPlan(delegate, explained));
+        }
+    }
+
+    /**
+     * Marks as covered the configurations that result from replacing, by the full table scan, any
+     * non-empty subset of the indexes of an atomic configuration that its plan doesn't use.
+     *
+     * @param product
+     *      indexes of each table, with the full table scan at the end
+     * @param digits
+     *      position, within each table, of the indexes of the atomic configuration
+     * @param used
+     *      indexes used by the plan of the atomic configuration
+     * @param covered
+     *      positions of the configurations whose plan is already represented
+     */
+    private static void cover(
+            Index[][] product, int[] digits, Collection<Index> used, Set<Long> covered)
+    {
+        List<Integer> unused = new ArrayList<Integer>();
+
+        for (int t = 0; t < product.length && unused.size() < MAX_COVERED_TABLES; t++)
+            if (digits[t] < product[t].length - 1 && !used.contains(product[t][digits[t]]))
+                unused.add(t);
+
+        int[] replaced = new int[digits.length];
+
+        for (int subset = 1; subset < 1 << unused.size(); subset++) {
+            System.arraycopy(digits, 0, replaced, 0, digits.length);
+
+            for (int u = 0; u < unused.size(); u++)
+                if ((subset & (1 << u)) != 0)
+                    replaced[unused.get(u)] = product[unused.get(u)].length - 1;
+
+            covered.add(encode(product, replaced));
+        }
+    }
+
+    /**
+     * Obtains the position, within each table, of the indexes of an atomic configuration.
+     *
+     * @param product
+     *      indexes of each table
+     * @param k
+     *      position of the atomic configuration in the cartesian product
+     * @param digits
+     *      array where the positions are stored
+     */
+    private static void decode(Index[][] product, long k, int[] digits)
+    {
+        long rest = k;
+
+        for (int t = 0; t < product.length; t++) {
+            digits[t] = (int) (rest % product[t].length);
+            rest /= product[t].length;
+        }
+    }
+
+    /**
+     * Obtains the position of an atomic configuration in the cartesian product.
+     *
+     * @param product
+     *      indexes of each table
+     * @param digits
+     *      position, within each table, of the indexes of the atomic configuration
+     * @return
+     *      the position of the configuration
+     */
+    private static long encode(Index[][] product, int[] digits)
+    {
+        long k = 0;
+
+        for (int t = product.length - 1; t >= 0; t--)
+            k = k * product[t].length + digits[t];
+
+        return k;
     }
 }
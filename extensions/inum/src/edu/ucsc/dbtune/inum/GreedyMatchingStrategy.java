@@ -1,24 +1,40 @@
 package edu.ucsc.dbtune.inum;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.ucsc.dbtune.metadata.Index;
-import edu.ucsc.dbtune.metadata.Table;
+import edu.ucsc.dbtune.optimizer.plan.CompiledInumPlan;
 import edu.ucsc.dbtune.optimizer.plan.InumPlan;
-import edu.ucsc.dbtune.optimizer.plan.SQLStatementPlan;
-
-import static edu.ucsc.dbtune.util.MetadataUtils.getIndexesPerTable;
+import edu.ucsc.dbtune.util.WorkerPool;
 
 /**
- * Exhaustive matching strategy.
+ * Greedy matching strategy. For each template, the index with the minimum access cost is picked
+ * for each slot; the template with the lowest cost is the winner. Templates are evaluated through
+ * their {@link InumPlan#compile compiled} form, so the plan of the best template is instantiated
+ * only if the result is asked for it.
+ * <p>
+ * Templates are evaluated in increasing order of their fixed (internal) cost, against the cost of
+ * the best template found so far: a template whose fixed cost exceeds it is skipped along with
+ * the ones that follow it, and a template is abandoned as soon as its partial cost exceeds it
+ * (before doing the what-if calls for indexes that haven't been plugged into its slots). When the
+ * space has many templates, they are split among the threads of the {@link WorkerPool}, which
+ * share the best cost found so far.
  *
  * @author Ivo Jimenez
  */
 public class GreedyMatchingStrategy extends AbstractMatchingStrategy
 {
+    /** minimum number of templates evaluated by a thread. */
+    static final int MIN_TEMPLATES_PER_TASK = 16;
+
     /**
      * {@inheritDoc}
      */
@@ -28,73 +44,155 @@ public class GreedyMatchingStrategy extends AbstractMatchingStrategy
     {
         if (inumSpace.size() == 0)
             throw new SQLException("No template plan in the INUM space");
-        
-        Set<Index> bestConf = null;
-        InumPlan bestTemplate = null;
-        SQLStatementPlan instantiatedPlan = null;
-        Index  bestIndexForSlot = null;
-        double bestCostForIndex = Double.POSITIVE_INFINITY;
-        double bestCost = Double.POSITIVE_INFINITY;
 
-        Map<Table, Set<Index>> indexesPerTable = getIndexesPerTable(configuration);
+        final CompiledInumPlan[] templates = new CompiledInumPlan[inumSpace.size()];
+        int t = 0;
 
-        // main idea: iterate over each template. For each template iterate
-        // over each slot and find the best index from the given
-        // configuration that can be plugged into it. The best template
-        // instantiation is the winner.
+        for (InumPlan template : inumSpace)
+            templates[t++] = template.compile();
 
-        for (InumPlan template : inumSpace) {
+        // the sort is stable, so ties are broken by the order of the space
+        Arrays.sort(templates, new Comparator<CompiledInumPlan>() {
+            @Override
+            public int compare(CompiledInumPlan t1, CompiledInumPlan t2)
+            {
+                return Double.compare(t1.getFixedCost(), t2.getFixedCost());
+            }
+        });
 
-            Set<Index> bestAtomicConfiguration = new HashSet<Index>();
+        // the slots of every template are in the same order
+        final Index[][] indexesPerSlot = templates[0].partition(configuration);
+        final AtomicLong bound = new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+        final int taskCount =
+            Math.max(1, Math.min(WorkerPool.size(), templates.length / MIN_TEMPLATES_PER_TASK));
 
-            for (Table table : template.getTables()) {
+        Best best;
 
-                Set<Index> indexesForTable = indexesPerTable.get(table);
+        if (taskCount == 1) {
+            best = evaluate(templates, 0, 1, indexesPerSlot, bound);
+        } else {
+            List<Callable<Best>> tasks = new ArrayList<Callable<Best>>();
 
-                if (indexesForTable == null)
-                    throw new SQLException("No indexes for " + table);
+            for (t = 0; t < taskCount; t++) {
+                final int first = t;
 
-                bestIndexForSlot = null;
-                bestCostForIndex = Double.POSITIVE_INFINITY;
+                tasks.add(new Callable<Best>() {
+                    @Override
+                    public Best call() throws SQLException
+                    {
+                        return evaluate(templates, first, taskCount, indexesPerSlot, bound);
+                    }
+                });
+            }
 
-                for (Index i : indexesForTable) {
+            best = new Best(indexesPerSlot.length);
 
-                    double costForIndex = template.plug(i);
+            try {
+                for (Best b : WorkerPool.invokeAll(tasks))
+                    if (b.cost < best.cost || (b.cost == best.cost && b.position < best.position))
+                        best = b;
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof SQLException)
+                    throw (SQLException) e.getCause();
+                throw e;
+            }
+        }
 
-                    if (costForIndex < bestCostForIndex) {
-                        bestCostForIndex = costForIndex;
-                        bestIndexForSlot = i;
-                    }
-                }
+        if (best.position == -1)
+            throw new SQLException("Can't find match for configuration " + configuration);
 
-                if (bestIndexForSlot == null)
-                    // didn't find a matching index for this template
-                    // need to check the next template
-                    break;
+        return new Result(
+            templates[best.position].getTemplate(),
+            new HashSet<Index>(Arrays.asList(best.configuration)),
+            best.cost);
+    }
 
-                bestAtomicConfiguration.add(bestIndexForSlot);
-            }
+    /**
+     * Evaluates the templates at positions {@code first}, {@code first + step}, {@code first + 2
+     * * step}, ...
+     *
+     * @param templates
+     *      templates sorted by fixed cost
+     * @param first
+     *      first position
+     * @param step
+     *      distance between positions
+     * @param indexesPerSlot
+     *      indexes of each slot
+     * @param bound
+     *      bits of the best cost found so far, shared among the threads evaluating templates
+     * @return
+     *      the best template among the evaluated ones
+     * @throws SQLException
+     *      if a template can't be evaluated
+     */
+    private static Best evaluate(
+            CompiledInumPlan[] templates,
+            int first,
+            int step,
+            Index[][] indexesPerSlot,
+            AtomicLong bound)
+        throws SQLException
+    {
+        Best best = new Best(indexesPerSlot.length);
+        Index[] conf = new Index[indexesPerSlot.length];
 
-            if (bestAtomicConfiguration.size() != template.getTables().size())
-                // not all indexes where compatible, check the next template
-                continue;
+        for (int t = first; t < templates.length; t += step) {
+            double upperBound = Double.longBitsToDouble(bound.get());
 
-            SQLStatementPlan plan = template.instantiate(bestAtomicConfiguration);
+            if (templates[t].getFixedCost() > upperBound)
+                // so are the fixed costs of the ones that follow
+                break;
 
-            if (plan == null)
-                throw new SQLException("Can't instantiate best configuration; check compatibility");
+            double cost = templates[t].cost(indexesPerSlot, conf, upperBound);
 
-            if (plan.getRootOperator().getAccumulatedCost() < bestCost) {
-                bestCost = plan.getRootOperator().getAccumulatedCost();
-                bestConf = bestAtomicConfiguration;
-                bestTemplate = template;
-                instantiatedPlan = plan;
+            if (cost < best.cost) {
+                best.cost = cost;
+                best.position = t;
+                System.arraycopy(conf, 0, best.configuration, 0, conf.length);
+                lower(bound, cost);
             }
         }
-        
-        if (bestTemplate == null)
-            throw new SQLException("Can't find match for configuration " + configuration);
 
-        return new Result(instantiatedPlan, bestTemplate, new HashSet<Index>(bestConf), bestCost);
+        return best;
+    }
+
+    /**
+     * Lowers the shared bound to the given cost, unless it's lower already.
+     *
+     * @param bound
+     *      bits of the best cost found so far
+     * @param cost
+     *      cost of a template
+     */
+    private static void lower(AtomicLong bound, double cost)
+    {
+        long current = bound.get();
+
+        while (cost < Double.longBitsToDouble(current)) {
+            if (bound.compareAndSet(current, Double.doubleToLongBits(cost)))
+                return;
+
+            current = bound.get();
+        }
+    }
+
+    /**
+     * The best template among the ones evaluated by a thread.
+     */
+    private static class Best
+    {
+        private double cost = Double.POSITIVE_INFINITY;
+        private int position = -1;
+        private final Index[] configuration;
+
+        /**
+         * @param slotCount
+         *      number of slots of the templates
+         */
+        Best(int slotCount)
+        {
+            configuration = new Index[slotCount];
+        }
     }
 }
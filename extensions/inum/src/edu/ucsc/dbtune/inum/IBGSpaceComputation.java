@@ -2,9 +2,15 @@ package edu.ucsc.dbtune.inum;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 
 import edu.ucsc.dbtune.metadata.Index;
 import edu.ucsc.dbtune.optimizer.ExplainedSQLStatement;
@@ -18,26 +24,57 @@ import static edu.ucsc.dbtune.optimizer.plan.Operator.NLJ;
 import static edu.ucsc.dbtune.util.MetadataUtils.getIndexesPerTable;
 
 /**
- * IBG-based INUM space computation.
- * 
+ * IBG-based INUM space computation. Starting from the complete configuration, a configuration is
+ * explained and, if its plan intersects indexes on a table, each of the atomic configurations that
+ * result from picking one of the intersected indexes per table is explored; otherwise, the plan is
+ * added to the space and each configuration that results from removing one of the used indexes is
+ * explored.
+ * <p>
+ * Since distinct paths lead to the same configurations, the exploration is done over a work list
+ * where each configuration is identified by the bitmask of its indexes, so each configuration is
+ * explained exactly once. The list is processed in levels: the configurations of a level don't
+ * depend on each other, thus, if the computation is given optimizers that are equivalent to the
+ * delegate (e.g. ones that use other connections to the same DBMS), each level is explained in
+ * parallel, using each optimizer from at most one thread at a time.
+ *
  * @author Rui Wang
  * @author Ivo Jimenez
  */
 public class IBGSpaceComputation extends AbstractSpaceComputation
 {
     /**
-     * TODO: complete.
-     * 
+     * Creates a computation that explains configurations one at a time through the delegate.
+     */
+    public IBGSpaceComputation()
+    {
+        super();
+    }
+
+    /**
+     * Creates a computation that explains configurations concurrently.
+     *
+     * @param helpers
+     *      optimizers equivalent to the delegate given to {@link #compute}, which are used along
+     *      with it to explain configurations in parallel. Plans are always bound to the delegate.
+     */
+    public IBGSpaceComputation(Collection<? extends Optimizer> helpers)
+    {
+        super(helpers);
+    }
+
+    /**
+     * Populates the space with the plans of the configurations reachable from the given one.
+     *
      * @param statement
-     *            todo
+     *      statement being explained
      * @param delegate
-     *            todo
+     *      optimizer used to explain configurations; plans are bound to it
      * @param indexes
-     *            todo
+     *      configuration from where the exploration starts
      * @param inumSpace
-     *            todo
+     *      space where plans are added to
      * @throws SQLException
-     *             todo
+     *      if a configuration can't be explained
      */
     public void ibg(
             SQLStatement statement,
@@ -46,15 +83,59 @@ public class IBGSpaceComputation extends AbstractSpaceComputation
             Set<InumPlan> inumSpace)
         throws SQLException
     {
-        if (indexes.isEmpty())
-            return;
+        Map<Index, Integer> positions = new HashMap<Index, Integer>();
+        Set<BitSet> visited = new HashSet<BitSet>();
+        List<Set<Index>> level = new ArrayList<Set<Index>>();
+
+        enqueue(indexes, positions, visited, level);
 
-        ExplainedSQLStatement estmt = delegate.explain(statement, indexes);
+        while (!level.isEmpty()) {
+            List<ExplainedSQLStatement> explained = explain(statement, delegate, level);
+            List<Set<Index>> next = new ArrayList<Set<Index>>();
 
+            for (int i = 0; i < level.size(); i++)
+                expand(delegate, level.get(i), explained.get(i), positions, visited, next,
+                        inumSpace);
+
+            level = next;
+        }
+    }
+
+    /**
+     * Adds the plan of a configuration to the space (if it has no intersections) and enqueues the
+     * configurations that are explored out of it.
+     *
+     * @param delegate
+     *      optimizer that plans are bound to
+     * @param indexes
+     *      configuration
+     * @param estmt
+     *      the configuration explained
+     * @param positions
+     *      position of each index seen so far in the bitmask of a configuration
+     * @param visited
+     *      bitmasks of the configurations enqueued so far
+     * @param next
+     *      list where configurations are enqueued
+     * @param inumSpace
+     *      space where plans are added to
+     * @throws SQLException
+     *      if the plan can't be converted to an {@link InumPlan}
+     */
+    private static void expand(
+            Optimizer delegate,
+            Set<Index> indexes,
+            ExplainedSQLStatement estmt,
+            Map<Index, Integer> positions,
+            Set<BitSet> visited,
+            List<Set<Index>> next,
+            Set<InumPlan> inumSpace)
+        throws SQLException
+    {
         List<Set<Index>> intersectedIndexes = new ArrayList<Set<Index>>();
         Set<Index> notIntersectedIndexes = new HashSet<Index>();
 
-        for (Set<Index> indexesForTable : getIndexesPerTable(estmt.getPlan().getIndexes()).values()) 
+        for (Set<Index> indexesForTable : getIndexesPerTable(estmt.getPlan().getIndexes()).values())
         {
             if (indexesForTable.size() > 1)
                 intersectedIndexes.add(indexesForTable);
@@ -70,7 +151,7 @@ public class IBGSpaceComputation extends AbstractSpaceComputation
                 conf.addAll(notIntersectedIndexes);
                 conf.addAll(atomic);
 
-                ibg(statement, delegate, conf, inumSpace);
+                enqueue(conf, positions, visited, next);
             }
         } else {
             if (!estmt.getPlan().contains(NLJ))
@@ -82,11 +163,102 @@ public class IBGSpaceComputation extends AbstractSpaceComputation
                 conf.addAll(indexes);
                 conf.remove(usedIndex);
 
-                ibg(statement, delegate, conf, inumSpace);
+                enqueue(conf, positions, visited, next);
             }
         }
     }
 
+    /**
+     * Adds a configuration to the work list, unless it's empty or it has been enqueued already.
+     *
+     * @param conf
+     *      configuration
+     * @param positions
+     *      position of each index seen so far in the bitmask of a configuration; new indexes are
+     *      given the next available position
+     * @param visited
+     *      bitmasks of the configurations enqueued so far
+     * @param list
+     *      work list
+     */
+    private static void enqueue(
+            Set<Index> conf,
+            Map<Index, Integer> positions,
+            Set<BitSet> visited,
+            List<Set<Index>> list)
+    {
+        if (conf.isEmpty())
+            return;
+
+        BitSet key = new BitSet();
+
+        for (Index index : conf) {
+            Integer position = positions.get(index);
+
+            if (position == null) {
+                position = positions.size();
+                positions.put(index, position);
+            }
+
+            key.set(position);
+        }
+
+        if (visited.add(key))
+            list.add(conf);
+    }
+
+    /**
+     * Explains the given configurations, in parallel if the computation has helpers.
+     *
+     * @param statement
+     *      statement being explained
+     * @param delegate
+     *      optimizer used to explain configurations
+     * @param confs
+     *      configurations
+     * @return
+     *      the explained statement for each configuration, in the same order
+     * @throws SQLException
+     *      if a configuration can't be explained
+     */
+    private List<ExplainedSQLStatement> explain(
+            final SQLStatement statement, Optimizer delegate, List<Set<Index>> confs)
+        throws SQLException
+    {
+        if (!isParallel() || confs.size() == 1) {
+            List<ExplainedSQLStatement> explained = new ArrayList<ExplainedSQLStatement>();
+
+            for (Set<Index> conf : confs)
+                explained.add(delegate.explain(statement, conf));
+
+            return explained;
+        }
+
+        final BlockingQueue<Optimizer> idle = newOptimizerQueue(delegate);
+        List<Callable<ExplainedSQLStatement>> tasks =
+            new ArrayList<Callable<ExplainedSQLStatement>>();
+
+        for (final Set<Index> conf : confs) {
+            tasks.add(new Callable<ExplainedSQLStatement>() {
+                @Override
+                public ExplainedSQLStatement call() throws SQLException, InterruptedException
+                {
+                    Optimizer optimizer = idle.take();
+
+                    try {
+                        synchronized (optimizer) {
+                            return optimizer.explain(statement, conf);
+                        }
+                    } finally {
+                        idle.add(optimizer);
+                    }
+                }
+            });
+        }
+
+        return invokeAll(tasks);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,512 @@
+package edu.ucsc.dbtune.inum;
+
+import java.beans.ConstructorProperties;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the metrics that describe the work done by INUM: the size of the INUM spaces, the
+ * what-if calls issued to instantiate templates, the hit rate of the slot cache and the time it
+ * takes to prepare and explain statements, to compute spaces and to match configurations.
+ * <p>
+ * A metric is either a counter or a histogram, identified by a dot-separated name (e.g. {@code
+ * match.GreedyMatchingStrategy.time}); both are created the first time they're updated. Histograms
+ * have a bucket for every power of two, so they hold any positive value in constant space;
+ * latencies are recorded in microseconds. The following metrics are reported:
+ * <ul>
+ * <li>{@code optimizer.prepare.time} and {@code optimizer.explain.time}: latency of preparing and
+ *     explaining a statement through the {@link edu.ucsc.dbtune.optimizer.InumOptimizer}</li>
+ * <li>{@code optimizer.store.hits} and {@code optimizer.store.misses}: lookups in the {@link
+ *     InumSpaceStore}</li>
+ * <li>{@code space.templates} and {@code space.slots}: templates of each prepared statement and
+ *     slots of each of these templates</li>
+ * <li>{@code space.<computation>.computations} and {@code space.<computation>.time}: spaces
+ *     computed by each {@link InumSpaceComputation} and how long each took</li>
+ * <li>{@code match.<strategy>.calls} and {@code match.<strategy>.time}: configurations matched by
+ *     each {@link MatchingStrategy} and how long each took</li>
+ * <li>{@code plan.whatif}: what-if calls issued to instantiate a slot with an unseen index</li>
+ * <li>{@code prober.pairs} and {@code prober.whatif}: (template, index) pairs added to an {@link
+ *     edu.ucsc.dbtune.optimizer.plan.UnseenIndexProber} and what-if calls it issued</li>
+ * <li>{@code slotcache.hits} and {@code slotcache.misses}: lookups in the {@link
+ *     edu.ucsc.dbtune.optimizer.plan.SlotCache}</li>
+ * </ul>
+ * <p>
+ * The registry is a singleton that is safe to use from multiple threads. It can be {@link
+ * #register registered} with the platform MBean server, under {@link #OBJECT_NAME}, and its
+ * content can be {@link #startReporter logged periodically}.
+ *
+ * @author Ivo Jimenez
+ */
+public final class InumMetrics implements InumMetricsMXBean
+{
+    /** name under which the registry is registered with the platform MBean server. */
+    public static final String OBJECT_NAME = "edu.ucsc.dbtune:type=InumMetrics";
+
+    private static final InumMetrics INSTANCE = new InumMetrics();
+    private static final Logger LOGGER = Logger.getLogger(InumMetrics.class.getName());
+
+    private final ConcurrentMap<String, AtomicLong> counters;
+    private final ConcurrentMap<String, Histogram> histograms;
+    private boolean registered;
+    private ScheduledExecutorService reporter;
+    private long reportInterval;
+
+    /**
+     * Singleton.
+     */
+    private InumMetrics()
+    {
+        counters = new ConcurrentHashMap<String, AtomicLong>();
+        histograms = new ConcurrentHashMap<String, Histogram>();
+    }
+
+    /**
+     * Returns the registry.
+     *
+     * @return
+     *      the only instance of the registry
+     */
+    public static InumMetrics getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Increments a counter by one.
+     *
+     * @param name
+     *      name of the counter
+     */
+    public void increment(String name)
+    {
+        add(name, 1);
+    }
+
+    /**
+     * Increments a counter.
+     *
+     * @param name
+     *      name of the counter
+     * @param delta
+     *      value added to the counter
+     */
+    public void add(String name, long delta)
+    {
+        AtomicLong counter = counters.get(name);
+
+        if (counter == null) {
+            counters.putIfAbsent(name, new AtomicLong());
+            counter = counters.get(name);
+        }
+
+        counter.addAndGet(delta);
+    }
+
+    /**
+     * Records a value in a histogram.
+     *
+     * @param name
+     *      name of the histogram
+     * @param value
+     *      value being recorded; negative values are recorded as zero
+     */
+    public void record(String name, long value)
+    {
+        Histogram histogram = histograms.get(name);
+
+        if (histogram == null) {
+            histograms.putIfAbsent(name, new Histogram());
+            histogram = histograms.get(name);
+        }
+
+        histogram.record(value);
+    }
+
+    /**
+     * Returns the current time, to be passed later to {@link #recordTime}.
+     *
+     * @return
+     *      current value of {@link System#nanoTime}
+     */
+    public static long startTime()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records in a histogram the time elapsed since the given instant, in microseconds.
+     *
+     * @param name
+     *      name of the histogram
+     * @param start
+     *      value returned by {@link #startTime}
+     */
+    public void recordTime(String name, long start)
+    {
+        record(name, (System.nanoTime() - start) / 1000);
+    }
+
+    /**
+     * Returns the value of a counter.
+     *
+     * @param name
+     *      name of the counter
+     * @return
+     *      value of the counter; zero if it hasn't been updated
+     */
+    public long getCount(String name)
+    {
+        AtomicLong counter = counters.get(name);
+
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Returns a snapshot of a histogram.
+     *
+     * @param name
+     *      name of the histogram
+     * @return
+     *      the snapshot; one with no values if the histogram hasn't been updated
+     */
+    public Snapshot getHistogram(String name)
+    {
+        Histogram histogram = histograms.get(name);
+
+        return histogram == null ? new Histogram().snapshot() : histogram.snapshot();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getCounters()
+    {
+        Map<String, Long> values = new TreeMap<String, Long>();
+
+        for (Map.Entry<String, AtomicLong> e : counters.entrySet())
+            values.put(e.getKey(), e.getValue().get());
+
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Snapshot> getHistograms()
+    {
+        Map<String, Snapshot> snapshots = new TreeMap<String, Snapshot>();
+
+        for (Map.Entry<String, Histogram> e : histograms.entrySet())
+            snapshots.put(e.getKey(), e.getValue().snapshot());
+
+        return snapshots;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset()
+    {
+        counters.clear();
+        histograms.clear();
+    }
+
+    /**
+     * Registers the registry with the platform MBean server. Does nothing if it's registered
+     * already.
+     *
+     * @throws RuntimeException
+     *      if the registry can't be registered
+     */
+    public synchronized void register()
+    {
+        if (registered)
+            return;
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+
+            if (!server.isRegistered(name))
+                server.registerMBean(this, name);
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+
+        registered = true;
+    }
+
+    /**
+     * Logs the content of the registry periodically, at {@code INFO} level, from a daemon thread.
+     * If the registry is being logged already with another interval, the interval is changed.
+     *
+     * @param seconds
+     *      number of seconds between two consecutive reports; if zero or negative, the registry
+     *      isn't logged
+     */
+    public synchronized void startReporter(long seconds)
+    {
+        if (seconds <= 0 || (reporter != null && reportInterval == seconds))
+            return;
+
+        stopReporter();
+
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "inum-metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reportInterval = seconds;
+
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run()
+            {
+                LOGGER.info(InumMetrics.this.toString());
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops logging the content of the registry.
+     */
+    public synchronized void stopReporter()
+    {
+        if (reporter == null)
+            return;
+
+        reporter.shutdownNow();
+        reporter = null;
+        reportInterval = 0;
+    }
+
+    /**
+     * Returns the content of the registry, one metric per line, sorted by name.
+     *
+     * @return
+     *      the string representation of the registry
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("INUM metrics");
+
+        for (Map.Entry<String, Long> e : getCounters().entrySet())
+            sb.append("\n  ").append(e.getKey()).append(" = ").append(e.getValue());
+
+        for (Map.Entry<String, Snapshot> e : getHistograms().entrySet())
+            sb.append("\n  ").append(e.getKey()).append(" = ").append(e.getValue());
+
+        return sb.toString();
+    }
+
+    /**
+     * A histogram with a bucket for zero and one for each power of two: bucket {@code i > 0} holds
+     * the values in {@code [2^(i-1), 2^i)}.
+     */
+    static class Histogram
+    {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Records a value.
+         *
+         * @param value
+         *      value being recorded; negative values are recorded as zero
+         */
+        void record(long value)
+        {
+            long v = Math.max(value, 0);
+
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(v));
+            count.incrementAndGet();
+            sum.addAndGet(v);
+
+            long m = max.get();
+
+            while (v > m && !max.compareAndSet(m, v))
+                m = max.get();
+        }
+
+        /**
+         * Returns the upper bound of the bucket that contains the given percentile.
+         *
+         * @param percentile
+         *      a number between 0 and 1
+         * @param total
+         *      number of values recorded
+         * @return
+         *      the upper bound of the bucket, capped at the maximum recorded value
+         */
+        private long percentile(double percentile, long total)
+        {
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+
+                if (seen >= rank && seen > 0)
+                    return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+            }
+
+            return max.get();
+        }
+
+        /**
+         * Returns a snapshot of the histogram. Values recorded while the snapshot is taken might
+         * be partially reflected.
+         *
+         * @return
+         *      the snapshot
+         */
+        Snapshot snapshot()
+        {
+            long n = count.get();
+
+            return new Snapshot(
+                n, sum.get(), max.get(),
+                percentile(0.5, n), percentile(0.9, n), percentile(0.99, n));
+        }
+    }
+
+    /**
+     * An immutable view of a histogram. Percentiles are approximated by the upper bound of the
+     * bucket that contains them.
+     */
+    public static class Snapshot
+    {
+        private final long count;
+        private final long sum;
+        private final long max;
+        private final long median;
+        private final long p90;
+        private final long p99;
+
+        /**
+         * @param count
+         *      number of recorded values
+         * @param sum
+         *      sum of the recorded values
+         * @param max
+         *      maximum recorded value
+         * @param median
+         *      approximate median
+         * @param p90
+         *      approximate 90th percentile
+         * @param p99
+         *      approximate 99th percentile
+         */
+        @ConstructorProperties({ "count", "sum", "max", "median", "p90", "p99" })
+        public Snapshot(long count, long sum, long max, long median, long p90, long p99)
+        {
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+            this.median = median;
+            this.p90 = p90;
+            this.p99 = p99;
+        }
+
+        /**
+         * @return
+         *      number of recorded values
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return
+         *      sum of the recorded values
+         */
+        public long getSum()
+        {
+            return sum;
+        }
+
+        /**
+         * @return
+         *      maximum recorded value
+         */
+        public long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * @return
+         *      approximate median
+         */
+        public long getMedian()
+        {
+            return median;
+        }
+
+        /**
+         * @return
+         *      approximate 90th percentile
+         */
+        public long getP90()
+        {
+            return p90;
+        }
+
+        /**
+         * @return
+         *      approximate 99th percentile
+         */
+        public long getP99()
+        {
+            return p99;
+        }
+
+        /**
+         * @return
+         *      mean of the recorded values; zero if there are none
+         */
+        public double getMean()
+        {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return "[count=" + count + ", mean=" + String.format("%.1f", getMean()) +
+                ", p50=" + median + ", p90=" + p90 + ", p99=" + p99 + ", max=" + max + "]";
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package edu.ucsc.dbtune.inum;
+
+import java.util.Map;
+
+/**
+ * Management interface of the {@link InumMetrics} registry, as exposed through JMX.
+ *
+ * @author Ivo Jimenez
+ */
+public interface InumMetricsMXBean
+{
+    /**
+     * Returns the value of every counter.
+     *
+     * @return
+     *      counter values, keyed by counter name
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Returns a snapshot of every histogram.
+     *
+     * @return
+     *      histogram snapshots, keyed by histogram name
+     */
+    Map<String, InumMetrics.Snapshot> getHistograms();
+
+    /**
+     * Discards every counter and histogram.
+     */
+    void reset();
+}
@@ -1,6 +1,8 @@
 package edu.ucsc.dbtune.inum;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Set;
 
 import edu.ucsc.dbtune.metadata.Catalog;
@@ -81,11 +83,31 @@ public interface InumSpaceComputation
          */
         public static InumSpaceComputation newInumSpaceComputation(Environment env)
             throws InstantiationException
+        {
+            return newInumSpaceComputation(env, new ArrayList<Optimizer>());
+        }
+
+        /**
+         * Creates a computation that issues what-if calls through the given helpers, in parallel 
+         * to the ones issued through the delegate, if it supports it.
+         *
+         * @param env
+         *      used to access the type of computation to instantiate.
+         * @param helpers
+         *      optimizers equivalent to the delegate that is given to {@link #compute}
+         * @return
+         *      a new space computation
+         * @throws InstantiationException
+         *      if throws an exception
+         */
+        public static InumSpaceComputation newInumSpaceComputation(
+                Environment env, Collection<? extends Optimizer> helpers)
+            throws InstantiationException
         {
             if (env.getInumSpaceComputation().equals(EXHAUSTIVE))
-                return new ExhaustiveSpaceComputation();
+                return new ExhaustiveSpaceComputation(helpers);
             else if (env.getInumSpaceComputation().equals(IBG))
-                return new IBGSpaceComputation();
+                return new IBGSpaceComputation(helpers);
             else if (env.getInumSpaceComputation().equals(NONE_MIN_MAX))
                 return new NoneMinMaxSpaceComputation();
 
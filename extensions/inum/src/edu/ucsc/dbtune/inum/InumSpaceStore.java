@@ -0,0 +1,799 @@
+package edu.ucsc.dbtune.inum;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Column;
+import edu.ucsc.dbtune.metadata.ColumnOrdering;
+import edu.ucsc.dbtune.metadata.DatabaseObject;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.metadata.Schema;
+import edu.ucsc.dbtune.metadata.Table;
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.optimizer.plan.InumPlan;
+import edu.ucsc.dbtune.optimizer.plan.Operator;
+import edu.ucsc.dbtune.optimizer.plan.Predicate;
+import edu.ucsc.dbtune.optimizer.plan.SQLStatementPlan;
+import edu.ucsc.dbtune.optimizer.plan.TableAccessSlot;
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import static edu.ucsc.dbtune.inum.FullTableScanIndex.getFullTableScanIndexInstance;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.INDEX_SCAN;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.TABLE_SCAN;
+
+/**
+ * A disk-backed store of INUM spaces. The space of a statement (its template plans, along with the
+ * slots, internal costs, access costs, predicates and columns fetched of each) is stored in a file
+ * of its own, keyed by the text of the statement, a fingerprint of the catalog it was computed
+ * against and the name of the {@link InumSpaceComputation} strategy that computed it. Thus a space
+ * is read from disk only when its statement is prepared, and a space that was computed against a
+ * different schema or with a different strategy is never returned.
+ * <p>
+ * The files are written in a compact binary format: every operator is written as a sequence of
+ * primitive values, database objects are referred to by their fully qualified name, and the whole
+ * file is deflated. Hypothetical indexes referenced by a space (the ones built out of interesting
+ * orders) are written by content and recreated when the space is read.
+ * <p>
+ * A file that can't be read (e.g. because it was truncated) is logged and deleted, so that the 
+ * space is computed and stored again.
+ *
+ * @author Ivo Jimenez
+ */
+public class InumSpaceStore
+{
+    /** identifies a file of the store. */
+    private static final int MAGIC = 0x494E554D;
+
+    /** version of the format; files of other versions are ignored. */
+    private static final short VERSION = 1;
+
+    /** extension of the files of the store. */
+    private static final String EXTENSION = ".inum";
+
+    /** a {@code null} object. */
+    private static final byte NULL = 0;
+
+    /** a table. */
+    private static final byte TABLE = 1;
+
+    /** a column. */
+    private static final byte COLUMN = 2;
+
+    /** the {@link FullTableScanIndex} of a table. */
+    private static final byte FULL_TABLE_SCAN = 3;
+
+    /** an index. */
+    private static final byte INDEX = 4;
+
+    private static final Logger LOGGER = Logger.getLogger(InumSpaceStore.class.getName());
+
+    private final File directory;
+    private final String strategy;
+
+    /**
+     * Creates a store.
+     *
+     * @param directory
+     *      directory where the spaces are stored; created if it doesn't exist
+     * @param strategy
+     *      name of the strategy used to compute the spaces
+     * @throws SQLException
+     *      if the directory can't be created
+     */
+    public InumSpaceStore(File directory, String strategy) throws SQLException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new SQLException("Can't create directory " + directory);
+
+        this.directory = directory;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Reads the space of a statement.
+     *
+     * @param sql
+     *      the statement
+     * @param catalog
+     *      catalog the space is computed against
+     * @param delegate
+     *      optimizer used by the templates to do what-if calls
+     * @return
+     *      the stored space; {@code null} if the space of the statement hasn't been stored for the
+     *      given catalog and the strategy of this store, or if its file can't be read or refers to 
+     *      an object that isn't in the catalog (in which case the file is deleted)
+     */
+    public Entry load(SQLStatement sql, Catalog catalog, Optimizer delegate)
+    {
+        String fingerprint = fingerprint(catalog);
+        File file = getFile(sql, fingerprint);
+
+        if (!file.isFile())
+            return null;
+
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(
+                    new FileInputStream(file))));
+
+            if (in.readInt() != MAGIC || in.readShort() != VERSION)
+                return null;
+
+            if (!readString(in).equals(fingerprint) ||
+                    !readString(in).equals(strategy) ||
+                    !readString(in).equals(sql.getSQL()))
+                // the file name collides with another statement's
+                return null;
+
+            Table updatedTable = (Table) readObject(in, catalog);
+            double baseTableUpdateCost = in.readDouble();
+            int count = in.readInt();
+            Set<InumPlan> space = new HashSet<InumPlan>();
+
+            for (int i = 0; i < count; i++) {
+                double internalPlanCost = in.readDouble();
+                double planBaseTableUpdateCost = in.readDouble();
+                Operator root = readOperator(in, catalog);
+                SQLStatementPlan plan = new SQLStatementPlan(sql, root);
+
+                readChildren(in, catalog, plan, root);
+
+                space.add(
+                    new InumPlan(delegate, plan, internalPlanCost, planBaseTableUpdateCost));
+            }
+
+            return new Entry(space, updatedTable, baseTableUpdateCost);
+        } catch (IOException e) {
+            return discard(file, e);
+        } catch (SQLException e) {
+            return discard(file, e);
+        } catch (RuntimeException e) {
+            // e.g. an object of an unexpected type, or an operator without objects
+            return discard(file, e);
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Logs that a file can't be read and deletes it.
+     *
+     * @param file
+     *      the file
+     * @param cause
+     *      why the file can't be read
+     * @return
+     *      {@code null}
+     */
+    private static Entry discard(File file, Exception cause)
+    {
+        LOGGER.log(Level.WARNING, "Discarding unreadable INUM space " + file, cause);
+
+        if (!file.delete() && file.exists())
+            LOGGER.warning("Can't delete " + file);
+
+        return null;
+    }
+
+    /**
+     * Writes the space of a statement, replacing the one that was stored for the same catalog and
+     * strategy, if any. The file is written in full before it replaces the existing one, so a
+     * failure while writing doesn't leave a corrupted file behind.
+     *
+     * @param sql
+     *      the statement
+     * @param catalog
+     *      catalog the space was computed against
+     * @param entry
+     *      the space
+     * @throws SQLException
+     *      if the space can't be written; if it refers to an object whose type can't be stored
+     */
+    public void store(SQLStatement sql, Catalog catalog, Entry entry) throws SQLException
+    {
+        String fingerprint = fingerprint(catalog);
+        File file = getFile(sql, fingerprint);
+        File temp = null;
+        DataOutputStream out = null;
+
+        try {
+            temp = File.createTempFile(file.getName(), ".tmp", directory);
+            out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(
+                    new FileOutputStream(temp))));
+
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            writeString(out, fingerprint);
+            writeString(out, strategy);
+            writeString(out, sql.getSQL());
+            writeObject(out, entry.getUpdatedTable());
+            out.writeDouble(entry.getBaseTableUpdateCost());
+            out.writeInt(entry.getSpace().size());
+
+            for (InumPlan template : entry.getSpace()) {
+                out.writeDouble(template.getInternalCost());
+                out.writeDouble(template.getBaseTableUpdateCost());
+                writeOperator(out, template.getRootOperator());
+                writeChildren(out, template, template.getRootOperator());
+            }
+
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+                throw new SQLException("Can't replace " + file);
+        } catch (IOException e) {
+            throw new SQLException("Can't write " + file, e);
+        } finally {
+            close(out);
+
+            if (temp != null && temp.exists())
+                temp.delete();
+        }
+    }
+
+    /**
+     * Returns the file where the space of a statement is stored.
+     *
+     * @param sql
+     *      the statement
+     * @param fingerprint
+     *      fingerprint of the catalog
+     * @return
+     *      the file, which might not exist
+     */
+    private File getFile(SQLStatement sql, String fingerprint)
+    {
+        return new File(
+            directory, digest(fingerprint + "\n" + strategy + "\n" + sql.getSQL()) + EXTENSION);
+    }
+
+    /**
+     * Returns a fingerprint of the given catalog. The fingerprint depends on the tables (and their
+     * cardinality), columns (and their types) and materialized indexes of the catalog, so it
+     * changes when the schema or the materialized configuration does. The indexes are taken from 
+     * a {@link Schema#indexes snapshot}, since hypothetical ones might be created concurrently.
+     *
+     * @param catalog
+     *      a catalog
+     * @return
+     *      the fingerprint of the catalog
+     */
+    public static String fingerprint(Catalog catalog)
+    {
+        List<String> objects = new ArrayList<String>();
+
+        for (Schema schema : catalog.schemas()) {
+            for (Table table : schema.tables()) {
+                objects.add(table.getFullyQualifiedName() + " " + table.getCardinality());
+
+                for (Column column : table.columns())
+                    objects.add(column.getFullyQualifiedName() + " " + column.getDataType());
+            }
+
+            for (Index index : schema.indexes()) {
+                if (!index.isMaterialized())
+                    // hypothetical indexes are added to the catalog while computing spaces
+                    continue;
+
+                StringBuilder sb = new StringBuilder(index.getFullyQualifiedName());
+
+                for (Column column : index.columns())
+                    sb.append(" ").append(column.getName())
+                        .append(index.isAscending(column) ? "+" : "-");
+
+                objects.add(sb.toString());
+            }
+        }
+
+        // the order in which the objects are loaded into the catalog shouldn't matter
+        Collections.sort(objects);
+
+        StringBuilder sb = new StringBuilder();
+
+        for (String object : objects)
+            sb.append(object).append("\n");
+
+        return digest(sb.toString());
+    }
+
+    /**
+     * Writes the children of an operator, recursively.
+     *
+     * @param out
+     *      stream where the children are written
+     * @param plan
+     *      plan that contains the operator
+     * @param parent
+     *      the operator
+     * @throws IOException
+     *      if the children can't be written
+     * @throws SQLException
+     *      if an object referenced by the children can't be written
+     */
+    private static void writeChildren(DataOutputStream out, SQLStatementPlan plan, Operator parent)
+        throws IOException, SQLException
+    {
+        List<Operator> children = plan.getChildren(parent);
+
+        out.writeInt(children.size());
+
+        for (Operator child : children) {
+            writeOperator(out, child);
+            writeChildren(out, plan, child);
+        }
+    }
+
+    /**
+     * Reads the children of an operator, recursively, and adds them to the given plan.
+     *
+     * @param in
+     *      stream where the children are read from
+     * @param catalog
+     *      catalog where objects are looked up
+     * @param plan
+     *      plan that contains the operator
+     * @param parent
+     *      the operator
+     * @throws IOException
+     *      if the children can't be read
+     * @throws SQLException
+     *      if an object referenced by the children isn't in the catalog
+     */
+    private static void readChildren(
+            DataInputStream in, Catalog catalog, SQLStatementPlan plan, Operator parent)
+        throws IOException, SQLException
+    {
+        int count = in.readInt();
+
+        for (int i = 0; i < count; i++) {
+            Operator child = readOperator(in, catalog);
+
+            plan.setChild(parent, child);
+
+            readChildren(in, catalog, plan, child);
+        }
+    }
+
+    /**
+     * Writes an operator, without its children.
+     *
+     * @param out
+     *      stream where the operator is written
+     * @param operator
+     *      the operator
+     * @throws IOException
+     *      if the operator can't be written
+     * @throws SQLException
+     *      if an object referenced by the operator can't be written
+     */
+    private static void writeOperator(DataOutputStream out, Operator operator)
+        throws IOException, SQLException
+    {
+        out.writeBoolean(operator instanceof TableAccessSlot);
+        writeString(out, operator.getName());
+        out.writeDouble(operator.getAccumulatedCost());
+        out.writeLong(operator.getCardinality());
+        out.writeInt(operator.getDatabaseObjects().size());
+
+        for (DatabaseObject dbo : operator.getDatabaseObjects())
+            writeObject(out, dbo);
+
+        out.writeInt(operator.getPredicates().size());
+
+        for (Predicate p : operator.getPredicates()) {
+            writeObject(out, p.getLeftColumn());
+            writeObject(out, p.getRightColumn());
+            writeString(out, p.getText());
+        }
+
+        ColumnOrdering columnsFetched = operator.getColumnsFetched();
+
+        if (columnsFetched == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(columnsFetched.size());
+
+            for (Column column : columnsFetched.getColumns()) {
+                writeObject(out, column);
+                out.writeByte(columnsFetched.getOrdering(column));
+            }
+        }
+    }
+
+    /**
+     * Reads an operator. A {@link TableAccessSlot} is created out of the data access operator it
+     * was built from.
+     *
+     * @param in
+     *      stream where the operator is read from
+     * @param catalog
+     *      catalog where objects are looked up
+     * @return
+     *      the operator
+     * @throws IOException
+     *      if the operator can't be read
+     * @throws SQLException
+     *      if an object referenced by the operator isn't in the catalog
+     */
+    private static Operator readOperator(DataInputStream in, Catalog catalog)
+        throws IOException, SQLException
+    {
+        boolean isSlot = in.readBoolean();
+        String name = readString(in);
+        double accumulatedCost = in.readDouble();
+        long cardinality = in.readLong();
+        List<DatabaseObject> objects = new ArrayList<DatabaseObject>();
+        List<Predicate> predicates = new ArrayList<Predicate>();
+        ColumnOrdering columnsFetched = null;
+
+        for (int i = in.readInt(); i > 0; i--)
+            objects.add(readObject(in, catalog));
+
+        for (int i = in.readInt(); i > 0; i--) {
+            Column left = (Column) readObject(in, catalog);
+            Column right = (Column) readObject(in, catalog);
+            String text = readString(in);
+
+            predicates.add(text == null ? new Predicate(left, right) : new Predicate(left, text));
+        }
+
+        int size = in.readInt();
+
+        if (size >= 0) {
+            List<Column> columns = new ArrayList<Column>();
+            Map<Column, Integer> orderings = new HashMap<Column, Integer>();
+
+            for (int i = 0; i < size; i++) {
+                Column column = (Column) readObject(in, catalog);
+
+                columns.add(column);
+                orderings.put(column, (int) in.readByte());
+            }
+
+            columnsFetched = new ColumnOrdering(columns, orderings);
+        }
+
+        if (!isSlot)
+            return new Operator(
+                name, accumulatedCost, cardinality, objects, predicates, columnsFetched);
+
+        // the slot is built out of a leaf, like when the template was created
+        String leafName = objects.get(0) instanceof Table ? TABLE_SCAN : INDEX_SCAN;
+
+        return new TableAccessSlot(new Operator(
+                leafName, accumulatedCost, cardinality, objects, predicates, columnsFetched));
+    }
+
+    /**
+     * Writes a reference to a database object.
+     *
+     * @param out
+     *      stream where the object is written
+     * @param dbo
+     *      the object; can be {@code null}
+     * @throws IOException
+     *      if the object can't be written
+     * @throws SQLException
+     *      if the object isn't a table, column or index
+     */
+    private static void writeObject(DataOutputStream out, DatabaseObject dbo)
+        throws IOException, SQLException
+    {
+        if (dbo == null) {
+            out.writeByte(NULL);
+        } else if (dbo instanceof Table) {
+            out.writeByte(TABLE);
+            writeString(out, dbo.getFullyQualifiedName());
+        } else if (dbo instanceof Column) {
+            out.writeByte(COLUMN);
+            writeString(out, dbo.getFullyQualifiedName());
+        } else if (dbo instanceof FullTableScanIndex) {
+            out.writeByte(FULL_TABLE_SCAN);
+            writeString(out, ((Index) dbo).getTable().getFullyQualifiedName());
+        } else if (dbo instanceof Index) {
+            Index index = (Index) dbo;
+
+            out.writeByte(INDEX);
+            writeString(out, index.getFullyQualifiedName());
+            out.writeInt(index.size());
+
+            for (Column column : index.columns()) {
+                writeString(out, column.getFullyQualifiedName());
+                out.writeBoolean(index.isAscending(column));
+            }
+
+            out.writeBoolean(index.isPrimary());
+            out.writeBoolean(index.isUnique());
+            out.writeBoolean(index.isClustered());
+        } else {
+            throw new SQLException("Can't store object of type " + dbo.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads a reference to a database object. An index is looked up in the catalog by name and,
+     * if it's missing or its columns have changed, it's recreated under a name derived from its
+     * columns, since the names of hypothetical indexes are only unique within a run.
+     *
+     * @param in
+     *      stream where the object is read from
+     * @param catalog
+     *      catalog where objects are looked up
+     * @return
+     *      the object; {@code null} if a {@code null} object was written
+     * @throws IOException
+     *      if the object can't be read
+     * @throws SQLException
+     *      if the object isn't in the catalog
+     */
+    private static DatabaseObject readObject(DataInputStream in, Catalog catalog)
+        throws IOException, SQLException
+    {
+        byte type = in.readByte();
+
+        if (type == NULL)
+            return null;
+
+        if (type == TABLE || type == COLUMN)
+            return find(catalog, readString(in));
+
+        if (type == FULL_TABLE_SCAN)
+            return getFullTableScanIndexInstance((Table) find(catalog, readString(in)));
+
+        if (type != INDEX)
+            throw new SQLException("Unknown object type " + type);
+
+        String name = readString(in);
+        int size = in.readInt();
+        List<Column> columns = new ArrayList<Column>();
+        List<Boolean> ascending = new ArrayList<Boolean>();
+
+        for (int i = 0; i < size; i++) {
+            columns.add((Column) find(catalog, readString(in)));
+            ascending.add(in.readBoolean());
+        }
+
+        boolean primary = in.readBoolean();
+        boolean unique = in.readBoolean();
+        boolean clustered = in.readBoolean();
+        Schema schema = columns.get(0).getTable().getSchema();
+
+        // other threads might be creating indexes on the schema (e.g. reading another space)
+        synchronized (schema) {
+            Index index = schema.findIndex(name.substring(name.lastIndexOf('.') + 1));
+
+            if (index != null && index.getFullyQualifiedName().equals(name) &&
+                    hasColumns(index, columns, ascending))
+                return index;
+
+            // the name depends on the content, so reading the same space again doesn't add indexes
+            String prefix = "inum_" + Integer.toHexString((columns + " " + ascending).hashCode());
+
+            for (int i = 0;; i++) {
+                String newName = i == 0 ? prefix : prefix + "_" + i;
+
+                index = schema.findIndex(newName);
+
+                if (index == null)
+                    return new Index(newName, columns, ascending, primary, unique, clustered);
+
+                if (hasColumns(index, columns, ascending))
+                    return index;
+            }
+        }
+    }
+
+    /**
+     * Checks whether an index has the given columns, in the given order.
+     *
+     * @param index
+     *      an index
+     * @param columns
+     *      columns of the index
+     * @param ascending
+     *      whether each column is in ascending order
+     * @return
+     *      {@code true} if the index has the given columns and orders; {@code false} otherwise
+     */
+    private static boolean hasColumns(Index index, List<Column> columns, List<Boolean> ascending)
+    {
+        if (!index.columns().equals(columns))
+            return false;
+
+        for (int i = 0; i < columns.size(); i++)
+            if (index.isAscending(columns.get(i)) != ascending.get(i))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Looks an object up in the catalog.
+     *
+     * @param catalog
+     *      a catalog
+     * @param name
+     *      fully qualified name of the object
+     * @return
+     *      the object
+     * @throws SQLException
+     *      if the object isn't in the catalog
+     */
+    private static DatabaseObject find(Catalog catalog, String name) throws SQLException
+    {
+        DatabaseObject dbo = catalog.findByName(name);
+
+        if (dbo == null)
+            throw new SQLException("Can't find " + name + " in catalog");
+
+        return dbo;
+    }
+
+    /**
+     * Writes a string, which can be longer than what {@link DataOutputStream#writeUTF} supports.
+     *
+     * @param out
+     *      stream where the string is written
+     * @param string
+     *      the string; can be {@code null}
+     * @throws IOException
+     *      if the string can't be written
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException
+    {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = string.getBytes("UTF-8");
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}.
+     *
+     * @param in
+     *      stream where the string is read from
+     * @return
+     *      the string; {@code null} if a {@code null} string was written
+     * @throws IOException
+     *      if the string can't be read
+     */
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+
+        if (length < 0)
+            return null;
+
+        byte[] bytes = new byte[length];
+
+        in.readFully(bytes);
+
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Returns the SHA-1 digest of the given text.
+     *
+     * @param text
+     *      a text
+     * @return
+     *      the digest, as an hexadecimal string
+     */
+    private static String digest(String text)
+    {
+        try {
+            StringBuilder sb = new StringBuilder();
+
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(text.getBytes("UTF-8")))
+                sb.append(String.format("%02x", b));
+
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Closes a stream, ignoring errors.
+     *
+     * @param stream
+     *      the stream; can be {@code null}
+     */
+    private static void close(Closeable stream)
+    {
+        if (stream == null)
+            return;
+
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // nothing was read or written that depends on it
+            return;
+        }
+    }
+
+    /**
+     * The INUM space of a statement, along with the information about the base table that a
+     * prepared statement needs.
+     */
+    public static class Entry
+    {
+        private final Set<InumPlan> space;
+        private final Table updatedTable;
+        private final double baseTableUpdateCost;
+
+        /**
+         * @param space
+         *      the template plans of the statement
+         * @param updatedTable
+         *      table updated by the statement; {@code null} if the statement doesn't update
+         * @param baseTableUpdateCost
+         *      the cost of updating the base table
+         */
+        public Entry(Set<InumPlan> space, Table updatedTable, double baseTableUpdateCost)
+        {
+            this.space = space;
+            this.updatedTable = updatedTable;
+            this.baseTableUpdateCost = baseTableUpdateCost;
+        }
+
+        /**
+         * @return
+         *      the template plans of the statement
+         */
+        public Set<InumPlan> getSpace()
+        {
+            return space;
+        }
+
+        /**
+         * @return
+         *      table updated by the statement; {@code null} if the statement doesn't update
+         */
+        public Table getUpdatedTable()
+        {
+            return updatedTable;
+        }
+
+        /**
+         * @return
+         *      the cost of updating the base table
+         */
+        public double getBaseTableUpdateCost()
+        {
+            return baseTableUpdateCost;
+        }
+    }
+}
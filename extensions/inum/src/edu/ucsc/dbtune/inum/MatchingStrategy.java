@@ -73,7 +73,8 @@ public interface MatchingStrategy
     }
 
     /**
-     * The result of a matching operation.
+     * The result of a matching operation. The instantiated plan can be given when the result is 
+     * created or, if it's not, it's obtained from the best template the first time it's requested.
      *
      * @author Ivo Jimenez
      */
@@ -109,6 +110,21 @@ public interface MatchingStrategy
             this.bestCost = bestCost;
         }
 
+        /**
+         * construct a result whose plan is instantiated only if it's requested.
+         *
+         * @param bestTemplate
+         *    the template plan with the best cost for the configuration
+         * @param bestConfiguration
+         *    atomic configuration corresponding to the best plan
+         * @param bestCost
+         *    cost associated to the plan
+         */
+        public Result(InumPlan bestTemplate, Set<Index> bestConfiguration, double bestCost)
+        {
+            this(null, bestTemplate, bestConfiguration, bestCost);
+        }
+
         /**
          * Gets the bestCost for this instance.
          *
@@ -140,12 +156,23 @@ public interface MatchingStrategy
         }
 
         /**
-         * Gets the instantiatedPlan for this instance.
+         * Gets the instantiatedPlan for this instance, instantiating the best template if 
+         * necessary.
          *
          * @return The instantiatedPlan.
+         * @throws RuntimeException
+         *      if the best template can't be instantiated with the best configuration
          */
-        public SQLStatementPlan getInstantiatedPlan()
+        public synchronized SQLStatementPlan getInstantiatedPlan()
         {
+            if (instantiatedPlan == null) {
+                try {
+                    instantiatedPlan = bestTemplate.instantiate(bestConfiguration);
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
             return this.instantiatedPlan;
         }
 
@@ -1,36 +1,72 @@
 package edu.ucsc.dbtune.optimizer;
 
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import edu.ucsc.dbtune.DatabaseSystem;
+
+import edu.ucsc.dbtune.inum.InumMetrics;
 import edu.ucsc.dbtune.inum.InumSpaceComputation;
+import edu.ucsc.dbtune.inum.InumSpaceStore;
 import edu.ucsc.dbtune.inum.MatchingStrategy;
 
+import edu.ucsc.dbtune.metadata.Catalog;
+
 import edu.ucsc.dbtune.optimizer.plan.InumPlan;
+import edu.ucsc.dbtune.optimizer.plan.SlotCache;
 
 import edu.ucsc.dbtune.util.Environment;
 import edu.ucsc.dbtune.util.InumPlanSetWithCache;
 import edu.ucsc.dbtune.workload.SQLStatement;
 
+import static edu.ucsc.dbtune.util.EnvironmentProperties.DB2;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.SHARED;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.STATEMENT;
+import static edu.ucsc.dbtune.util.OptimizerUtils.getBaseOptimizer;
+
 /**
  * Implements an INUM-based optimizer.
  * <p>
  * The passed delegate optimizer should be able to produce plans, i.e. the {@link 
  * edu.ucsc.dbtune.optimizer.ExplainedSQLStatement} objects that get generated by it should return a 
  * non-null instance when calling {@link edu.ucsc.dbtune.optimizer.ExplainedSQLStatement#getPlan}.
+ * <p>
+ * If an {@link InumSpaceStore} is configured, the INUM space of a statement is read from it when 
+ * the statement is prepared, and it's computed (and then written to the store) only if it isn't 
+ * stored already.
+ * <p>
+ * The time it takes to prepare and explain statements, as well as the size of the INUM spaces, is 
+ * reported to the {@link InumMetrics} registry.
+ * <p>
+ * The optimizer can be given helpers, i.e. optimizers equivalent to the delegate that use other 
+ * connections to the same DBMS, through which the what-if calls of the INUM space computation are 
+ * issued in parallel to the ones of the delegate. Helpers aren't supported on DB2, since the 
+ * what-if calls of every DB2 session go through the same advise and explain tables. The 
+ * connections of the helpers created by the optimizer are released by {@link #close}.
  *
  * @author Ivo Jimenez
  */
 public class InumOptimizer extends AbstractOptimizerWithDelegate
 {
     private boolean useInumCache;
+    private long slotCacheSize;
+    private SlotCache sharedSlotCache;
     private InumSpaceComputation inumSpaceComputation;
     private MatchingStrategy matchingStrategy;
+    private InumSpaceStore spaceStore;
+    private List<Optimizer> helpers;
+    private List<Connection> connections;
 
     /**
      * Constructs an {@code InumOptimizer}. Relies on the given {@code optimizer} to execute actual 
-     * optimization calls.
+     * optimization calls. As many helpers as {@link Environment#getInumHelperConnections} are 
+     * created, each with its own connection to the DBMS.
      *
      * @param optimizer
      *      a DBMS-specific implementation of an {@link Optimizer} type.
@@ -38,23 +74,193 @@ public class InumOptimizer extends AbstractOptimizerWithDelegate
      *      to get properties about the environment where the optimizer is running
      * @throws SQLException
      *      if the underlying {@link InumSpaceComputation} specified by the {@code env} object can't 
-     *      be instantiated.
+     *      be instantiated; if a helper can't be created; if helpers are requested on DB2
      */
     public InumOptimizer(Optimizer optimizer, Environment env) throws SQLException
+    {
+        this(optimizer, env, newConnections(env));
+    }
+
+    /**
+     * Constructs an {@code InumOptimizer} whose helpers use the given connections, which are 
+     * closed by {@link #close}.
+     *
+     * @param optimizer
+     *      a DBMS-specific implementation of an {@link Optimizer} type.
+     * @param env
+     *      to get properties about the environment where the optimizer is running
+     * @param connections
+     *      one connection per helper
+     * @throws SQLException
+     *      if the underlying {@link InumSpaceComputation} specified by the {@code env} object can't 
+     *      be instantiated; if a helper can't be created
+     */
+    private InumOptimizer(Optimizer optimizer, Environment env, List<Connection> connections)
+        throws SQLException
+    {
+        this(optimizer, newHelpers(env, connections), env);
+
+        this.connections = connections;
+    }
+
+    /**
+     * Constructs an {@code InumOptimizer} with the given helpers.
+     *
+     * @param optimizer
+     *      a DBMS-specific implementation of an {@link Optimizer} type.
+     * @param helpers
+     *      optimizers equivalent to {@code optimizer}, used along with it to issue what-if calls 
+     *      in parallel
+     * @param env
+     *      to get properties about the environment where the optimizer is running
+     * @throws SQLException
+     *      if the underlying {@link InumSpaceComputation} specified by the {@code env} object can't 
+     *      be instantiated; if there are helpers and {@code optimizer} or one of them is a {@link 
+     *      DB2Optimizer}
+     */
+    public InumOptimizer(
+            Optimizer optimizer, Collection<? extends Optimizer> helpers, Environment env)
+        throws SQLException
     {
         super(optimizer);
 
+        this.helpers = new ArrayList<Optimizer>(helpers);
+        this.connections = new ArrayList<Connection>();
+
+        if (!this.helpers.isEmpty() && getBaseOptimizer(optimizer) instanceof DB2Optimizer)
+            throw new SQLException("Helpers aren't supported on DB2");
+
+        for (Optimizer helper : this.helpers)
+            if (getBaseOptimizer(helper) instanceof DB2Optimizer)
+                throw new SQLException("Helpers aren't supported on DB2");
+
         if (env.getInumSlotCache())
             useInumCache = true;
         else
             useInumCache = false;
 
+        if (useInumCache) {
+            slotCacheSize = env.getInumSlotCacheSize();
+
+            if (env.getInumSlotCacheScope().equals(SHARED))
+                sharedSlotCache = new SlotCache(slotCacheSize);
+            else if (!env.getInumSlotCacheScope().equals(STATEMENT))
+                throw new SQLException("Unknown slot cache scope " + env.getInumSlotCacheScope());
+        }
+
         try {
-            inumSpaceComputation = InumSpaceComputation.Factory.newInumSpaceComputation(env);
+            inumSpaceComputation =
+                InumSpaceComputation.Factory.newInumSpaceComputation(env, this.helpers);
             matchingStrategy = MatchingStrategy.Factory.newMatchingStrategy(env);
         } catch (InstantiationException ex) {
             throw new SQLException(ex);
         }
+
+        if (env.getInumSpaceStore() != null)
+            spaceStore = new InumSpaceStore(
+                    env.getInumSpaceStore(), inumSpaceComputation.getClass().getName());
+
+        if (env.getInumMetricsJmx())
+            InumMetrics.getInstance().register();
+
+        InumMetrics.getInstance().startReporter(env.getInumMetricsReportInterval());
+    }
+
+    /**
+     * Opens the connections of the helpers of the optimizer, one per helper.
+     *
+     * @param env
+     *      used to get the number of helpers and to connect to the DBMS
+     * @return
+     *      the connections
+     * @throws SQLException
+     *      if helpers are requested on DB2; if a connection can't be opened
+     */
+    private static List<Connection> newConnections(Environment env) throws SQLException
+    {
+        List<Connection> connections = new ArrayList<Connection>();
+
+        if (env.getInumHelperConnections() > 0 && env.getVendor().equals(DB2))
+            throw new SQLException("Helpers aren't supported on DB2");
+
+        try {
+            for (int i = 0; i < env.getInumHelperConnections(); i++)
+                connections.add(DatabaseSystem.newConnection(env));
+        } catch (SQLException e) {
+            closeAll(connections);
+            throw e;
+        }
+
+        return connections;
+    }
+
+    /**
+     * Creates the helpers of the optimizer, one on each of the given connections.
+     *
+     * @param env
+     *      used to get the vendor of the DBMS
+     * @param connections
+     *      the connections of the helpers
+     * @return
+     *      the helpers
+     * @throws SQLException
+     *      if a helper can't be created; the connections are closed in that case
+     */
+    private static List<Optimizer> newHelpers(Environment env, List<Connection> connections)
+        throws SQLException
+    {
+        List<Optimizer> helpers = new ArrayList<Optimizer>();
+
+        try {
+            for (Connection connection : connections)
+                helpers.add(DatabaseSystem.newDBMSOptimizer(env, connection));
+        } catch (SQLException e) {
+            closeAll(connections);
+            throw e;
+        }
+
+        return helpers;
+    }
+
+    /**
+     * Closes the connections of the helpers created by the optimizer. Helpers that were given to 
+     * the optimizer aren't affected. The optimizer shouldn't be used afterwards.
+     *
+     * @throws SQLException
+     *      the first error that occurs while closing a connection
+     */
+    public void close() throws SQLException
+    {
+        SQLException error = closeAll(connections);
+
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * Closes and removes the given connections. All of them get closed even if closing one fails.
+     *
+     * @param connections
+     *      the connections to close
+     * @return
+     *      the first error that occurs while closing a connection; {@code null} if none
+     */
+    private static SQLException closeAll(List<Connection> connections)
+    {
+        SQLException error = null;
+
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                if (error == null)
+                    error = e;
+            }
+        }
+
+        connections.clear();
+
+        return error;
     }
 
     /**
@@ -69,24 +275,135 @@ public class InumOptimizer extends AbstractOptimizerWithDelegate
      */
     Set<InumPlan> computeInumSpace(SQLStatement sql) throws SQLException
     {
-        Set<InumPlan> inumSpace;
-
-        if (useInumCache)
-            inumSpace = new InumPlanSetWithCache();
-        else
-            inumSpace = new HashSet<InumPlan>();
+        Set<InumPlan> inumSpace = newInumSpace();
 
         inumSpaceComputation.compute(inumSpace, sql, delegate, catalog);
 
         return inumSpace;
     }
+
+    /**
+     * Creates an empty INUM space, backed by the slot cache if it's enabled.
+     *
+     * @return
+     *      an empty set of template plans
+     */
+    private Set<InumPlan> newInumSpace()
+    {
+        if (useInumCache && sharedSlotCache != null)
+            return new InumPlanSetWithCache(sharedSlotCache);
+        else if (useInumCache)
+            return new InumPlanSetWithCache(new SlotCache(slotCacheSize));
+        else
+            return new HashSet<InumPlan>();
+    }
     
+    /**
+     * Returns the slot cache shared among the statements explained by this optimizer.
+     *
+     * @return
+     *      the cache; {@code null} if the slot cache is disabled or if there's a cache per 
+     *      statement
+     */
+    public SlotCache getSlotCache()
+    {
+        return sharedSlotCache;
+    }
+
+    /**
+     * Returns the helpers of the optimizer.
+     *
+     * @return
+     *      optimizers equivalent to the delegate; empty if there are none
+     */
+    public List<Optimizer> getHelpers()
+    {
+        return Collections.unmodifiableList(helpers);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCatalog(Catalog catalog)
+    {
+        super.setCatalog(catalog);
+
+        for (Optimizer helper : helpers)
+            helper.setCatalog(catalog);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public PreparedSQLStatement prepareExplain(SQLStatement sql) throws SQLException
     {
-        return new InumPreparedSQLStatement(this, sql, matchingStrategy);
+        InumMetrics metrics = InumMetrics.getInstance();
+        long start = InumMetrics.startTime();
+        InumPreparedSQLStatement prepared = prepare(sql);
+
+        metrics.recordTime("optimizer.prepare.time", start);
+        metrics.record("space.templates", prepared.getTemplatePlans().size());
+
+        for (InumPlan template : prepared.getTemplatePlans())
+            metrics.record("space.slots", template.getSlots().size());
+
+        return prepared;
+    }
+
+    /**
+     * Prepares a statement, reading its INUM space from the store if there's one.
+     *
+     * @param sql
+     *      the statement
+     * @return
+     *      the prepared statement
+     * @throws SQLException
+     *      if the INUM space can't be computed or written to the store
+     */
+    private InumPreparedSQLStatement prepare(SQLStatement sql) throws SQLException
+    {
+        if (spaceStore == null)
+            return new InumPreparedSQLStatement(this, sql, matchingStrategy);
+
+        InumSpaceStore.Entry entry = spaceStore.load(sql, catalog, delegate);
+
+        if (entry != null) {
+            Set<InumPlan> inumSpace = newInumSpace();
+
+            inumSpace.addAll(entry.getSpace());
+            InumMetrics.getInstance().increment("optimizer.store.hits");
+
+            return new InumPreparedSQLStatement(
+                this, sql, matchingStrategy, inumSpace,
+                entry.getUpdatedTable(), entry.getBaseTableUpdateCost());
+        }
+
+        InumMetrics.getInstance().increment("optimizer.store.misses");
+
+        InumPreparedSQLStatement prepared =
+            new InumPreparedSQLStatement(this, sql, matchingStrategy);
+
+        spaceStore.store(
+            sql,
+            catalog,
+            new InumSpaceStore.Entry(
+                prepared.getTemplatePlans(),
+                prepared.getUpdatedTable(),
+                prepared.getBaseTableUpdateCost()));
+
+        return prepared;
+    }
+
+    /**
+     * Returns the store where INUM spaces are read from and written to.
+     *
+     * @return
+     *      the store; {@code null} if there's no store
+     */
+    public InumSpaceStore getSpaceStore()
+    {
+        return spaceStore;
     }
 }
@@ -2,11 +2,16 @@ package edu.ucsc.dbtune.optimizer;
 
 import java.sql.SQLException;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
+import edu.ucsc.dbtune.inum.FullTableScanIndex;
+import edu.ucsc.dbtune.inum.InumMetrics;
 import edu.ucsc.dbtune.inum.MatchingStrategy;
 import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.metadata.Table;
 import edu.ucsc.dbtune.optimizer.plan.InumPlan;
+import edu.ucsc.dbtune.optimizer.plan.SQLStatementPlan;
 import edu.ucsc.dbtune.workload.SQLStatement;
 
 /**
@@ -15,7 +20,9 @@ import edu.ucsc.dbtune.workload.SQLStatement;
  * #explain} method is invoked (by calling the {@link InumOptimizer#computeInumSpace}).
  * <p>
  * After the INUM space has been populated, a {@link MatchingStrategy} is used to determine the 
- * optimal plan to given {@link #explain}.
+ * optimal plan to given {@link #explain}. The plan of an explained statement is instantiated only 
+ * if it's requested through {@link ExplainedSQLStatement#getPlan}, since most callers only look at 
+ * its cost.
  *
  * @author Ivo Jimenez
  * @see <a href="http://portal.acm.org/citation.cfm?id=1325974"?>
@@ -57,6 +64,40 @@ public class InumPreparedSQLStatement extends DefaultPreparedSQLStatement
         inumSpace = optimizer.computeInumSpace(sql);
     }
 
+    /**
+     * Constructs a prepared statement out of an INUM space that has been computed already, e.g. 
+     * one that is read from an {@link edu.ucsc.dbtune.inum.InumSpaceStore}.
+     *  
+     * @param optimizer
+     *      optimizer that created this statement
+     * @param sql
+     *      statement that corresponds to this prepared statement
+     * @param matchingStrategy
+     *      strategy that should be used when searching for the optimal template for a given 
+     *      configuration.
+     * @param inumSpace
+     *      the template plans of the statement
+     * @param updatedTable
+     *      table updated by the statement; {@code null} if the statement doesn't update
+     * @param baseTableUpdateCost
+     *      the cost of updating the base table
+     */
+    InumPreparedSQLStatement(
+            InumOptimizer optimizer,
+            SQLStatement sql,
+            MatchingStrategy matchingStrategy,
+            Set<InumPlan> inumSpace,
+            Table updatedTable,
+            double baseTableUpdateCost)
+    {
+        super(optimizer, sql);
+
+        this.matchingStrategy = matchingStrategy;
+        this.inumSpace = inumSpace;
+        this.updatedTable = updatedTable;
+        this.baseTableUpdateCost = baseTableUpdateCost;
+    }
+
     /**
      * Uses the {@link MatchingStrategy} to determine the optimal plan for the given {@code 
      * configuration}. If the INUM space hasn't been populated, it invokes {@link 
@@ -72,19 +113,26 @@ public class InumPreparedSQLStatement extends DefaultPreparedSQLStatement
     @Override
     public ExplainedSQLStatement explain(Set<Index> configuration) throws SQLException
     {
+        long start = InumMetrics.startTime();
         MatchingStrategy.Result result = matchingStrategy.match(inumSpace, configuration);
+        Set<Index> used = new HashSet<Index>();
 
-        return new ExplainedSQLStatement(
+        for (Index index : result.getBestConfiguration())
+            if (!(index instanceof FullTableScanIndex))
+                used.add(index);
+
+        InumMetrics.getInstance().recordTime("optimizer.explain.time", start);
+
+        return new InumExplainedSQLStatement(
             sql,
-            result.getInstantiatedPlan(),
+            result,
             getOptimizer(),
             result.getBestCost() - getBaseTableUpdateCost(),
             getUpdatedTable(),
             getBaseTableUpdateCost(),
             getIndexUpdateCosts(configuration),
             configuration,
-            new HashSet<Index>(result.getInstantiatedPlan().getIndexes()),
-            0);
+            used);
         // XXX: count of zero is because we assume a warm cache. If needed, it can be improved
     }
     
@@ -98,4 +146,66 @@ public class InumPreparedSQLStatement extends DefaultPreparedSQLStatement
     {
         return inumSpace;
     }
+
+    /**
+     * An explained statement whose plan is instantiated the first time it's requested, which 
+     * includes copying the statement and comparing it with others.
+     */
+    private static class InumExplainedSQLStatement extends ExplainedSQLStatement
+    {
+        private final MatchingStrategy.Result result;
+
+        /**
+         * @param sql
+         *      the statement
+         * @param result
+         *      result of matching the configuration
+         * @param optimizer
+         *      optimizer that explained the statement
+         * @param selectCost
+         *      the cost of the plan
+         * @param updatedTable
+         *      table updated by the statement
+         * @param baseTableUpdateCost
+         *      cost of updating the base table
+         * @param updateCosts
+         *      cost of updating each index of the configuration
+         * @param configuration
+         *      configuration that the statement is explained for
+         * @param used
+         *      indexes used by the plan
+         * @throws SQLException
+         *      if the arguments are inconsistent
+         */
+        InumExplainedSQLStatement(
+                SQLStatement sql,
+                MatchingStrategy.Result result,
+                Optimizer optimizer,
+                double selectCost,
+                Table updatedTable,
+                double baseTableUpdateCost,
+                Map<Index, Double> updateCosts,
+                Set<Index> configuration,
+                Set<Index> used)
+            throws SQLException
+        {
+            super(
+                sql, null, optimizer, selectCost, updatedTable, baseTableUpdateCost, updateCosts,
+                configuration, used, 0);
+
+            this.result = result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public SQLStatementPlan getPlan()
+        {
+            if (plan == null)
+                plan = result.getInstantiatedPlan();
+
+            return plan;
+        }
+    }
 }
@@ -0,0 +1,362 @@
+package edu.ucsc.dbtune.optimizer.plan;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.metadata.Table;
+
+/**
+ * The cost form of an INUM template. The cost of a template for an atomic configuration is its
+ * internal cost plus the access cost of each index plugged into the corresponding slot, so a
+ * template is reduced to its fixed (internal plus base table update) cost and, for each slot, a
+ * table that maps an index to its access cost. Access costs are obtained by instantiating the
+ * slot the first time that an index is plugged into it (unless an {@link UnseenIndexProber} has
+ * recorded them already) and are reused afterwards, thus evaluating a configuration against a
+ * template doesn't create operators or plans, it only adds up numbers. {@link InumPlan#plug(Index)}
+ * goes through these tables too.
+ * <p>
+ * The slots are sorted by the name of their table, so the templates of a statement have their
+ * slots in the same order. A configuration is split into an array of indexes per slot once (see
+ * {@link #partition}) and evaluated against every template with {@link #cost}.
+ * <p>
+ * Instances are safe to use from multiple threads.
+ *
+ * @author Ivo Jimenez
+ * @see InumPlan#compile
+ */
+public final class CompiledInumPlan
+{
+    private final InumPlan template;
+    private final double fixedCost;
+    private final Table[] tables;
+    private final Map<Table, Integer> positions;
+    private final List<ConcurrentMap<Index, Double>> accessCosts;
+
+    /**
+     * Compiles a template.
+     *
+     * @param template
+     *      template being compiled
+     */
+    CompiledInumPlan(InumPlan template)
+    {
+        this.template = template;
+        this.fixedCost = template.getInternalCost() + template.getBaseTableUpdateCost();
+        this.tables = template.getTables().toArray(new Table[0]);
+        this.positions = new HashMap<Table, Integer>();
+        this.accessCosts = new ArrayList<ConcurrentMap<Index, Double>>();
+
+        Arrays.sort(tables, new Comparator<Table>() {
+            @Override
+            public int compare(Table t1, Table t2)
+            {
+                return t1.getFullyQualifiedName().compareTo(t2.getFullyQualifiedName());
+            }
+        });
+
+        for (int s = 0; s < tables.length; s++) {
+            positions.put(tables[s], s);
+            accessCosts.add(new ConcurrentHashMap<Index, Double>());
+        }
+    }
+
+    /**
+     * @return
+     *      the template this object was compiled from
+     */
+    public InumPlan getTemplate()
+    {
+        return template;
+    }
+
+    /**
+     * @return
+     *      the internal cost of the template plus the cost of updating the base table
+     */
+    public double getFixedCost()
+    {
+        return fixedCost;
+    }
+
+    /**
+     * @return
+     *      number of slots of the template
+     */
+    public int getSlotCount()
+    {
+        return tables.length;
+    }
+
+    /**
+     * @param slot
+     *      position of a slot
+     * @return
+     *      the table of the slot
+     */
+    public Table getTable(int slot)
+    {
+        return tables[slot];
+    }
+
+    /**
+     * @param table
+     *      a table
+     * @return
+     *      the position of the slot of the table; -1 if the template doesn't reference it
+     */
+    public int getSlot(Table table)
+    {
+        Integer slot = positions.get(table);
+
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns the cost of accessing the table of a slot through the given index.
+     *
+     * @param slot
+     *      position of the slot
+     * @param index
+     *      index on the table of the slot
+     * @return
+     *      the access cost; {@link Double#POSITIVE_INFINITY} if the index isn't compatible with
+     *      the slot
+     * @throws SQLException
+     *      if the access cost can't be computed
+     */
+    public double getAccessCost(int slot, Index index) throws SQLException
+    {
+        Double cost = accessCosts.get(slot).get(index);
+
+        if (cost == null) {
+            cost = template.computeAccessCost(index);
+            accessCosts.get(slot).put(index, cost);
+        }
+
+        return cost;
+    }
+
+    /**
+     * Tells whether the cost of accessing the table of a slot through the given index is known,
+     * i.e. whether {@link #getAccessCost} can return it without instantiating the slot.
+     *
+     * @param slot
+     *      position of the slot
+     * @param index
+     *      index on the table of the slot
+     * @return
+     *      {@code true} if the access cost is known
+     */
+    public boolean isAccessCostKnown(int slot, Index index)
+    {
+        return accessCosts.get(slot).containsKey(index);
+    }
+
+    /**
+     * Records the cost of accessing the table of a slot through the given index, obtained by
+     * other means than instantiating the slot of this template (see {@link UnseenIndexProber}).
+     * A cost that is known already isn't replaced.
+     *
+     * @param slot
+     *      position of the slot
+     * @param index
+     *      index on the table of the slot
+     * @param cost
+     *      the access cost; {@link Double#POSITIVE_INFINITY} if the index isn't compatible with
+     *      the slot
+     */
+    void setAccessCost(int slot, Index index, double cost)
+    {
+        accessCosts.get(slot).putIfAbsent(index, cost);
+    }
+
+    /**
+     * Splits a complete configuration into the indexes of each slot. Indexes on tables that the
+     * template doesn't reference are ignored.
+     *
+     * @param configuration
+     *      a configuration containing at least one index for each table referenced by the template
+     * @return
+     *      the indexes of each slot, in the order of the slots
+     * @throws SQLException
+     *      if there's no index for one of the slots
+     */
+    public Index[][] partition(Set<? extends Index> configuration) throws SQLException
+    {
+        int[] counts = new int[tables.length];
+
+        for (Index index : configuration) {
+            Integer slot = positions.get(index.getTable());
+
+            if (slot != null)
+                counts[slot]++;
+        }
+
+        Index[][] indexesPerSlot = new Index[tables.length][];
+
+        for (int s = 0; s < tables.length; s++) {
+            if (counts[s] == 0)
+                throw new SQLException("No indexes for " + tables[s]);
+
+            indexesPerSlot[s] = new Index[counts[s]];
+            counts[s] = 0;
+        }
+
+        for (Index index : configuration) {
+            Integer slot = positions.get(index.getTable());
+
+            if (slot != null)
+                indexesPerSlot[slot][counts[slot]++] = index;
+        }
+
+        return indexesPerSlot;
+    }
+
+    /**
+     * Returns the cost of the template for the best atomic configuration that can be obtained
+     * from the given indexes, i.e. the fixed cost plus the minimum access cost of each slot.
+     *
+     * @param indexesPerSlot
+     *      indexes of each slot, as returned by {@link #partition} for this or another template of
+     *      the same statement
+     * @param choice
+     *      array where the index with the minimum access cost of each slot is stored; {@code null}
+     *      if not needed
+     * @return
+     *      the cost of the template; {@link Double#POSITIVE_INFINITY} if none of the indexes of a
+     *      slot is compatible with it
+     * @throws SQLException
+     *      if the indexes don't correspond to the slots of the template; if an access cost can't
+     *      be computed
+     */
+    public double cost(Index[][] indexesPerSlot, Index[] choice) throws SQLException
+    {
+        return cost(indexesPerSlot, choice, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns the cost of the template for the best atomic configuration that can be obtained
+     * from the given indexes, giving up as soon as the cost is known to be greater than the given
+     * bound.
+     * <p>
+     * The slots whose access costs are known for all of their indexes are added up first. The
+     * access costs that are missing, which might take a what-if call each, are computed slot by
+     * slot afterwards, and only while the cost of the template doesn't exceed the bound.
+     *
+     * @param indexesPerSlot
+     *      indexes of each slot, as returned by {@link #partition} for this or another template of
+     *      the same statement
+     * @param choice
+     *      array where the index with the minimum access cost of each slot is stored; {@code null}
+     *      if not needed. It's complete only if the returned cost is finite
+     * @param bound
+     *      cost above which the template is of no interest
+     * @return
+     *      the cost of the template; {@link Double#POSITIVE_INFINITY} if it's greater than {@code
+     *      bound} or if none of the indexes of a slot is compatible with it
+     * @throws SQLException
+     *      if the indexes don't correspond to the slots of the template; if an access cost can't
+     *      be computed
+     */
+    public double cost(Index[][] indexesPerSlot, Index[] choice, double bound)
+        throws SQLException
+    {
+        if (indexesPerSlot.length != tables.length)
+            throw new SQLException("Expecting indexes for " + tables.length + " slots");
+
+        double cost = fixedCost;
+        boolean[] isPending = new boolean[tables.length];
+        int pending = 0;
+
+        if (cost > bound || cost == Double.POSITIVE_INFINITY)
+            return Double.POSITIVE_INFINITY;
+
+        // slots whose access costs are known
+        for (int s = 0; s < tables.length; s++) {
+            double accessCost = minimum(s, indexesPerSlot[s], choice, false);
+
+            if (Double.isNaN(accessCost)) {
+                isPending[s] = true;
+                pending++;
+            } else {
+                cost += accessCost;
+            }
+
+            if (cost > bound || cost == Double.POSITIVE_INFINITY)
+                return Double.POSITIVE_INFINITY;
+        }
+
+        // slots with access costs to compute. Another thread may have computed some of them in the
+        // meantime, but they still have to be added, so the known ones aren't checked again
+        for (int s = 0; s < tables.length && pending > 0; s++) {
+            if (!isPending[s])
+                continue;
+
+            cost += minimum(s, indexesPerSlot[s], choice, true);
+            pending--;
+
+            if (cost > bound || cost == Double.POSITIVE_INFINITY)
+                return Double.POSITIVE_INFINITY;
+        }
+
+        return cost;
+    }
+
+    /**
+     * Returns the minimum access cost of a slot.
+     *
+     * @param slot
+     *      position of the slot
+     * @param indexes
+     *      indexes on the table of the slot
+     * @param choice
+     *      array where the index with the minimum access cost is stored; {@code null} if not
+     *      needed
+     * @param compute
+     *      whether to compute the access costs that aren't known
+     * @return
+     *      the minimum access cost; {@link Double#NaN} if {@code compute} is {@code false} and the
+     *      access cost of one of the indexes isn't known
+     * @throws SQLException
+     *      if the indexes aren't on the table of the slot; if an access cost can't be computed
+     */
+    private double minimum(int slot, Index[] indexes, Index[] choice, boolean compute)
+        throws SQLException
+    {
+        Map<Index, Double> costs = accessCosts.get(slot);
+        Index best = null;
+        double bestAccessCost = Double.POSITIVE_INFINITY;
+
+        if (!indexes[0].getTable().equals(tables[slot]))
+            throw new SQLException("Expecting indexes on " + tables[slot] + " for slot " + slot);
+
+        for (int i = 0; i < indexes.length; i++) {
+            Double accessCost = costs.get(indexes[i]);
+
+            if (accessCost == null && !compute)
+                return Double.NaN;
+
+            if (accessCost == null)
+                accessCost = getAccessCost(slot, indexes[i]);
+
+            if (accessCost < bestAccessCost) {
+                bestAccessCost = accessCost;
+                best = indexes[i];
+            }
+        }
+
+        if (choice != null)
+            choice[slot] = best;
+
+        return bestAccessCost;
+    }
+}
@@ -14,6 +14,7 @@ import static java.lang.Double.doubleToLongBits;
 import com.google.common.collect.Sets;
 
 import edu.ucsc.dbtune.inum.FullTableScanIndex;
+import edu.ucsc.dbtune.inum.InumMetrics;
 import edu.ucsc.dbtune.metadata.Column;
 import edu.ucsc.dbtune.metadata.ColumnOrdering;
 import edu.ucsc.dbtune.metadata.DatabaseObject;
@@ -71,6 +72,9 @@ public class InumPlan extends SQLStatementPlan
      */
     protected double baseTableUpdateCost;
 
+    /** cost form of this template; created the first time that it's requested. */
+    private volatile CompiledInumPlan compiled;
+
     /**
      * Creates a new instance of an INUM plan.
      *
@@ -130,6 +134,48 @@ public class InumPlan extends SQLStatementPlan
         baseTableUpdateCost = other.baseTableUpdateCost;
     }
 
+    /**
+     * Creates a template out of a plan whose leafs have been replaced by slots already, e.g. one
+     * that is read back from an {@link edu.ucsc.dbtune.inum.InumSpaceStore}. The operators of the
+     * given plan are duplicated.
+     *
+     * @param delegate
+     *      to do what-if optimization later on
+     * @param plan
+     *      a plan whose leafs are {@link TableAccessSlot} objects
+     * @param internalPlanCost
+     *      the cost of the internal nodes of the plan
+     * @param baseTableUpdateCost
+     *      the cost of updating the base table
+     * @throws SQLException
+     *      if one of the leafs isn't a slot; if a table is referenced by more than one slot
+     */
+    public InumPlan(
+            Optimizer delegate,
+            SQLStatementPlan plan,
+            double internalPlanCost,
+            double baseTableUpdateCost)
+        throws SQLException
+    {
+        super(plan);
+
+        this.slots = new HashMap<Table, TableAccessSlot>();
+
+        for (Operator o : leafs()) {
+            if (!(o instanceof TableAccessSlot))
+                throw new SQLException("Leaf should be a " + TableAccessSlot.class.getName());
+
+            TableAccessSlot slot = (TableAccessSlot) o;
+
+            if (slots.put(slot.getTable(), slot) != null)
+                throw new SQLException(slot.getTable() + " referenced more than once");
+        }
+
+        this.delegate = delegate;
+        this.internalPlanCost = internalPlanCost;
+        this.baseTableUpdateCost = baseTableUpdateCost;
+    }
+
     /**
      * Returns the update cost associated to the cost of updating the base table.
      *
@@ -227,6 +273,30 @@ public class InumPlan extends SQLStatementPlan
         return internalPlanCost;
     }
 
+    /**
+     * Returns the cost form of this template, compiling it the first time it's requested. Access 
+     * costs computed through the compiled form are kept by it, so evaluating a configuration 
+     * against it is much cheaper than instantiating the template.
+     *
+     * @return
+     *      the compiled template
+     */
+    public CompiledInumPlan compile()
+    {
+        CompiledInumPlan c = compiled;
+
+        if (c == null) {
+            synchronized (this) {
+                if (compiled == null)
+                    compiled = new CompiledInumPlan(this);
+
+                c = compiled;
+            }
+        }
+
+        return c;
+    }
+
     /**
      * The cost for the plan, considering that the given atomic configuration is used in each slot, 
      * as well as the internal cost.
@@ -262,6 +332,30 @@ public class InumPlan extends SQLStatementPlan
      *      if the plan doesn't contain a slot for {@code index.getTable()}
      */
     public double plug(Index index) throws SQLException
+    {
+        CompiledInumPlan c = compile();
+        int slot = c.getSlot(index.getTable());
+
+        if (slot == -1)
+            throw new SQLException("Plan doesn't contain a slot for table " + index.getTable());
+
+        return c.getAccessCost(slot, index);
+    }
+
+    /**
+     * Computes the cost of plugging the given index into the corresponding slot by instantiating 
+     * the slot. Unlike {@link #plug(Index)}, the cost isn't looked up in the {@link #compile 
+     * compiled} form of the template.
+     *
+     * @param index
+     *      used to "instantiate" the corresponding slot
+     * @return
+     *      cost if the given index is used to execute the corresponding slot; {@link 
+     *      Double#POSITIVE_INFINITY} if the index isn't compatible with the slot
+     * @throws SQLException
+     *      if the plan doesn't contain a slot for {@code index.getTable()}
+     */
+    double computeAccessCost(Index index) throws SQLException
     {
         Operator o = instantiate(index);
 
@@ -312,6 +406,37 @@ public class InumPlan extends SQLStatementPlan
         return op;
     }
 
+    /**
+     * Returns the statement that {@link #instantiate(Index)} would send to the delegate in order to 
+     * determine the cost of plugging the given index into its slot.
+     *
+     * @param index
+     *      index being plugged
+     * @return
+     *      the statement; {@code null} if the cost can be determined without a what-if call
+     * @throws SQLException
+     *      if the plan doesn't contain a slot for {@code index.getTable()}
+     * @see #buildQueryForUnseenIndex
+     */
+    SQLStatement getUnseenIndexQuery(Index index) throws SQLException
+    {
+        TableAccessSlot slot = slots.get(index.getTable());
+
+        if (slot == null)
+            throw new SQLException("Plan doesn't contain a slot for table " + index.getTable());
+
+        if (slot.getIndex().equals(index) || slot.getIndex().equalsContent(index))
+            return null;
+
+        if (!slot.isCreatedFromFullTableScan() && !slot.isCompatible(index))
+            return null;
+
+        if (isWhatIfCallAvoidableViaFullTableScan(slot, index))
+            return null;
+
+        return buildQueryForUnseenIndex(slot);
+    }
+
     /**
      * Instantiates a plan by plugging each given index in the corresponding slot.
      *
@@ -424,9 +549,15 @@ public class InumPlan extends SQLStatementPlan
     protected Operator instantiate(TableAccessSlot slot, Index index)
         throws SQLException
     {
-        SQLStatementPlan plan =
-            delegate.explain(
-                    buildQueryForUnseenIndex(slot), Sets.<Index>newHashSet(index)).getPlan();
+        SQLStatement sql = buildQueryForUnseenIndex(slot);
+        SQLStatementPlan plan;
+
+        // templates can be evaluated concurrently, but the delegate might not be thread-safe
+        synchronized (delegate) {
+            plan = delegate.explain(sql, Sets.<Index>newHashSet(index)).getPlan();
+        }
+
+        InumMetrics.getInstance().increment("plan.whatif");
 
         if (!plan.contains(INDEX_SCAN))
             return INCOMPATIBLE;
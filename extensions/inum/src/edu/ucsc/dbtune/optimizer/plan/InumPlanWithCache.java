@@ -1,10 +1,13 @@
 package edu.ucsc.dbtune.optimizer.plan;
 
 import java.sql.SQLException;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import edu.ucsc.dbtune.inum.InumMetrics;
 import edu.ucsc.dbtune.metadata.Index;
-import edu.ucsc.dbtune.workload.SQLStatement;
+import edu.ucsc.dbtune.metadata.Table;
 
 /**
  * An implementation of an INUM template that is given a slot cache on which to search for 
@@ -15,7 +18,8 @@ import edu.ucsc.dbtune.workload.SQLStatement;
  */
 public class InumPlanWithCache extends InumPlan
 {
-    private Map<String, Operator> slotCache;
+    private SlotCache slotCache;
+    private ConcurrentMap<Table, String> signatures;
 
     /**
      * Constructor.
@@ -23,34 +27,58 @@ public class InumPlanWithCache extends InumPlan
      * @param template
      *      template for which a cache should be activated
      * @param slotCache
-     *      global cache being used
+     *      cache being used
      */
-    public InumPlanWithCache(InumPlan template, Map<String, Operator> slotCache)
+    public InumPlanWithCache(InumPlan template, SlotCache slotCache)
     {
         super(template);
 
         this.slotCache = slotCache;
+        this.signatures = new ConcurrentHashMap<Table, String>();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Operator instantiate(TableAccessSlot slot, Index index)
+    public Operator instantiate(final TableAccessSlot slot, final Index index)
         throws SQLException
     {
-        SQLStatement sql = buildQueryForUnseenIndex(slot);
-        String key = index + sql.getSQL();
+        final boolean[] miss = new boolean[1];
 
-        Operator cachedOperator = slotCache.get(key);
+        Operator op = slotCache.get(getSignature(slot), index, new Callable<Operator>() {
+            @Override
+            public Operator call() throws SQLException
+            {
+                miss[0] = true;
+                return InumPlanWithCache.super.instantiate(slot, index);
+            }
+        });
 
-        if (cachedOperator == null) {
+        InumMetrics.getInstance().increment(miss[0] ? "slotcache.misses" : "slotcache.hits");
 
-            cachedOperator = super.instantiate(slot, index);
+        return op;
+    }
+
+    /**
+     * Returns the signature of a slot, building it the first time the slot is instantiated.
+     *
+     * @param slot
+     *      slot of this template
+     * @return
+     *      the text of the query used to cost the slot
+     * @throws SQLException
+     *      if the query can't be built
+     */
+    private String getSignature(TableAccessSlot slot) throws SQLException
+    {
+        String signature = signatures.get(slot.getTable());
 
-            slotCache.put(key, cachedOperator);
+        if (signature == null) {
+            signature = buildQueryForUnseenIndex(slot).getSQL();
+            signatures.putIfAbsent(slot.getTable(), signature);
         }
 
-        return cachedOperator;
+        return signature;
     }
 }
@@ -0,0 +1,194 @@
+package edu.ucsc.dbtune.optimizer.plan;
+
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import edu.ucsc.dbtune.metadata.Index;
+
+/**
+ * Caches the operators that result from instantiating a slot of an INUM template with an index
+ * that wasn't seen when the template was built. Each of these instantiations takes a what-if call,
+ * so caching them avoids doing the call again for other templates (or statements) containing an
+ * equivalent slot.
+ * <p>
+ * An entry is identified by the slot's signature, i.e. the text of the query that is sent to the
+ * optimizer to cost the slot (see {@link InumPlan#buildQueryForUnseenIndex}), and the index
+ * plugged into the slot. A template obtains the signature of each of its slots only once, so
+ * looking up an entry doesn't build any string.
+ * <p>
+ * The cache holds at most {@code capacity} entries, evicting the least recently used ones. It's
+ * safe to use from multiple threads and an operator is computed only once even if several threads
+ * look it up at the same time.
+ *
+ * @author Ivo Jimenez
+ */
+public class SlotCache
+{
+    private final long capacity;
+    private final Cache<Key, Operator> operators;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity
+     *      maximum number of cached operators
+     * @throws IllegalArgumentException
+     *      if the capacity is less than one
+     */
+    public SlotCache(long capacity)
+    {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity should be at least 1");
+
+        this.capacity = capacity;
+        this.operators = CacheBuilder.newBuilder().maximumSize(capacity).build();
+    }
+
+    /**
+     * Returns the operator for the given slot and index, computing it if it's not cached.
+     *
+     * @param signature
+     *      signature of the slot
+     * @param index
+     *      index plugged into the slot
+     * @param instantiation
+     *      computes the operator if it's not cached
+     * @return
+     *      the cached operator
+     * @throws SQLException
+     *      if {@code instantiation} throws it
+     */
+    public Operator get(String signature, Index index, Callable<Operator> instantiation)
+        throws SQLException
+    {
+        try {
+            return operators.get(new Key(signature, index), instantiation);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException)
+                throw (SQLException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear()
+    {
+        operators.invalidateAll();
+    }
+
+    /**
+     * @return
+     *      number of cached operators
+     */
+    public long size()
+    {
+        return operators.size();
+    }
+
+    /**
+     * @return
+     *      maximum number of cached operators
+     */
+    public long getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return
+     *      number of times that a cached operator was reused
+     */
+    public long getHitCount()
+    {
+        return operators.stats().hitCount();
+    }
+
+    /**
+     * @return
+     *      number of times that an operator had to be computed
+     */
+    public long getMissCount()
+    {
+        return operators.stats().missCount();
+    }
+
+    /**
+     * @return
+     *      number of operators evicted to keep the cache within its capacity
+     */
+    public long getEvictionCount()
+    {
+        return operators.stats().evictionCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        CacheStats stats = operators.stats();
+
+        return "SlotCache[size=" + size() + ", capacity=" + capacity +
+            ", hits=" + stats.hitCount() + ", misses=" + stats.missCount() +
+            ", evictions=" + stats.evictionCount() + "]";
+    }
+
+    /**
+     * The signature of a slot and an index.
+     */
+    private static class Key
+    {
+        private final String signature;
+        private final Index index;
+        private final int hashCode;
+
+        /**
+         * @param signature
+         *      signature of the slot
+         * @param index
+         *      index plugged into the slot
+         */
+        Key(String signature, Index index)
+        {
+            this.signature = signature;
+            this.index = index;
+            this.hashCode = 31 * signature.hashCode() + index.hashCode();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key) obj;
+
+            return hashCode == other.hashCode &&
+                index.equals(other.index) &&
+                signature.equals(other.signature);
+        }
+    }
+}
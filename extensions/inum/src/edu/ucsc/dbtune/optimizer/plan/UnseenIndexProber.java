@@ -0,0 +1,364 @@
+package edu.ucsc.dbtune.optimizer.plan;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+
+import com.google.common.collect.Sets;
+
+import edu.ucsc.dbtune.inum.InumMetrics;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.util.WorkerPool;
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import static edu.ucsc.dbtune.optimizer.plan.Operator.INDEX_SCAN;
+
+/**
+ * Computes the access costs of unseen indexes for many templates at once. Plugging an unseen index
+ * into a slot takes a what-if call on a single-table query built out of the slot (see {@link
+ * InumPlan#buildQueryForUnseenIndex}); slots of distinct templates, possibly of distinct
+ * statements, often yield the same query, so the same call would be issued over and over.
+ * <p>
+ * Instead, the (template, index) pairs of interest are {@link #add added} to a prober first, which
+ * keeps one probe for each distinct (query, index) pair. Then {@link #probe} issues the what-if
+ * call of every pending probe, in batches that are evaluated through the {@link WorkerPool} when
+ * the prober has helper optimizers (equivalent to the delegate, e.g. ones that use other
+ * connections to the same DBMS). Each batch takes an idle optimizer, so that batches run in
+ * parallel if the pool has more than one thread, and in turns over the optimizers otherwise. The
+ * cost of each probe is recorded in the access-cost table of every slot that yielded it (see
+ * {@link CompiledInumPlan}), so later calls to {@link InumPlan#plug(Index)} or to a {@link
+ * edu.ucsc.dbtune.inum.MatchingStrategy} for those pairs don't issue any what-if call.
+ *
+ * @author Ivo Jimenez
+ */
+public class UnseenIndexProber
+{
+    /** default number of probes evaluated by a task. */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final Optimizer delegate;
+    private final List<Optimizer> helpers;
+    private final int batchSize;
+    private final Map<Probe, List<Target>> pending;
+    private long pairCount;
+    private long whatIfCount;
+
+    /**
+     * Creates a prober that issues what-if calls only through the delegate.
+     *
+     * @param delegate
+     *      optimizer used to issue what-if calls
+     */
+    public UnseenIndexProber(Optimizer delegate)
+    {
+        this(delegate, new ArrayList<Optimizer>(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a prober that may issue what-if calls concurrently.
+     *
+     * @param delegate
+     *      optimizer used to issue what-if calls
+     * @param helpers
+     *      optimizers equivalent to the delegate, which are used along with it to issue what-if
+     *      calls in parallel
+     * @param batchSize
+     *      number of probes evaluated by a task
+     */
+    public UnseenIndexProber(
+            Optimizer delegate, Collection<? extends Optimizer> helpers, int batchSize)
+    {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("Batch size should be positive: " + batchSize);
+
+        this.delegate = delegate;
+        this.helpers = new ArrayList<Optimizer>(helpers);
+        this.batchSize = batchSize;
+        this.pending = new LinkedHashMap<Probe, List<Target>>();
+    }
+
+    /**
+     * Adds a (template, index) pair. If the access cost of the index is known by the template, or
+     * if it can be determined without a what-if call, nothing is left pending.
+     *
+     * @param template
+     *      a template
+     * @param index
+     *      an index; ignored if the template doesn't reference its table
+     * @throws SQLException
+     *      if the access cost can't be determined
+     */
+    public void add(InumPlan template, Index index) throws SQLException
+    {
+        CompiledInumPlan compiled = template.compile();
+        int slot = compiled.getSlot(index.getTable());
+
+        if (slot == -1 || compiled.isAccessCostKnown(slot, index))
+            return;
+
+        SQLStatement query = template.getUnseenIndexQuery(index);
+
+        if (query == null) {
+            // determined without a what-if call
+            compiled.getAccessCost(slot, index);
+            return;
+        }
+
+        Probe probe = new Probe(query, index);
+        List<Target> targets = pending.get(probe);
+
+        if (targets == null) {
+            targets = new ArrayList<Target>();
+            pending.put(probe, targets);
+        }
+
+        targets.add(new Target(compiled, slot));
+        pairCount++;
+        InumMetrics.getInstance().increment("prober.pairs");
+    }
+
+    /**
+     * Adds every (template, index) pair out of the given templates and indexes.
+     *
+     * @param templates
+     *      templates
+     * @param indexes
+     *      indexes
+     * @throws SQLException
+     *      if an access cost can't be determined
+     * @see #add(InumPlan, Index)
+     */
+    public void addAll(Collection<? extends InumPlan> templates, Collection<? extends Index> indexes)
+        throws SQLException
+    {
+        for (InumPlan template : templates)
+            for (Index index : indexes)
+                add(template, index);
+    }
+
+    /**
+     * Issues the what-if calls of the pending probes and records their costs in the slots that
+     * yielded them. No probe is left pending afterwards, even if a call fails.
+     *
+     * @throws SQLException
+     *      if a what-if call fails
+     */
+    public void probe() throws SQLException
+    {
+        final List<Probe> probes = new ArrayList<Probe>(pending.keySet());
+        List<List<Target>> targets = new ArrayList<List<Target>>(pending.values());
+
+        pending.clear();
+
+        if (probes.isEmpty())
+            return;
+
+        final BlockingQueue<Optimizer> idle =
+            new ArrayBlockingQueue<Optimizer>(helpers.size() + 1, false, helpers);
+        List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+
+        idle.add(delegate);
+
+        for (int from = 0; from < probes.size(); from += batchSize) {
+            final int first = from;
+            final int last = Math.min(from + batchSize, probes.size());
+
+            tasks.add(new Callable<double[]>() {
+                @Override
+                public double[] call() throws SQLException, InterruptedException
+                {
+                    Optimizer optimizer = idle.take();
+
+                    try {
+                        synchronized (optimizer) {
+                            return evaluate(optimizer, probes.subList(first, last));
+                        }
+                    } finally {
+                        idle.add(optimizer);
+                    }
+                }
+            });
+        }
+
+        List<double[]> costs;
+
+        if (helpers.isEmpty()) {
+            costs = new ArrayList<double[]>();
+
+            for (Probe probe : probes)
+                costs.add(new double[] {evaluate(delegate, probe)});
+        } else {
+            try {
+                costs = WorkerPool.invokeAll(tasks);
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof SQLException)
+                    throw (SQLException) e.getCause();
+                throw e;
+            }
+        }
+
+        int p = 0;
+
+        for (double[] batch : costs) {
+            for (double cost : batch) {
+                for (Target target : targets.get(p))
+                    target.template.setAccessCost(target.slot, probes.get(p).index, cost);
+
+                p++;
+            }
+        }
+    }
+
+    /**
+     * Evaluates a batch of probes.
+     *
+     * @param optimizer
+     *      optimizer used to issue the what-if calls
+     * @param probes
+     *      the probes
+     * @return
+     *      the access cost of each probe
+     * @throws SQLException
+     *      if a what-if call fails
+     */
+    private double[] evaluate(Optimizer optimizer, List<Probe> probes) throws SQLException
+    {
+        double[] costs = new double[probes.size()];
+
+        for (int i = 0; i < costs.length; i++)
+            costs[i] = evaluate(optimizer, probes.get(i));
+
+        return costs;
+    }
+
+    /**
+     * Evaluates a probe, in the same way {@link InumPlan#instantiate(TableAccessSlot, Index)}
+     * does.
+     *
+     * @param optimizer
+     *      optimizer used to issue the what-if call
+     * @param probe
+     *      the probe
+     * @return
+     *      the access cost; {@link Double#POSITIVE_INFINITY} if the plan doesn't use the index
+     * @throws SQLException
+     *      if the what-if call fails
+     */
+    private double evaluate(Optimizer optimizer, Probe probe) throws SQLException
+    {
+        SQLStatementPlan plan =
+            optimizer.explain(probe.query, Sets.<Index>newHashSet(probe.index)).getPlan();
+
+        synchronized (this) {
+            whatIfCount++;
+        }
+
+        InumMetrics.getInstance().increment("prober.whatif");
+
+        if (!plan.contains(INDEX_SCAN))
+            return Double.POSITIVE_INFINITY;
+
+        return plan.getRootOperator().getAccumulatedCost();
+    }
+
+    /**
+     * @return
+     *      number of distinct probes waiting for {@link #probe}
+     */
+    public int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    /**
+     * @return
+     *      number of (template, index) pairs that have needed a what-if call so far
+     */
+    public long getPairCount()
+    {
+        return pairCount;
+    }
+
+    /**
+     * @return
+     *      number of what-if calls issued so far
+     */
+    public synchronized long getWhatIfCount()
+    {
+        return whatIfCount;
+    }
+
+    /**
+     * A what-if call: the query of a slot and the index sent along with it.
+     */
+    private static class Probe
+    {
+        private final SQLStatement query;
+        private final Index index;
+        private final String text;
+
+        /**
+         * @param query
+         *      query of the slot
+         * @param index
+         *      index plugged into the slot
+         */
+        Probe(SQLStatement query, Index index)
+        {
+            this.query = query;
+            this.index = index;
+            this.text = query.getSQL();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return 31 * text.hashCode() + index.hashCode();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Probe))
+                return false;
+
+            Probe o = (Probe) obj;
+
+            return text.equals(o.text) && index.equals(o.index);
+        }
+    }
+
+    /**
+     * A slot of a template whose access-cost table gets the cost of a probe.
+     */
+    private static class Target
+    {
+        private final CompiledInumPlan template;
+        private final int slot;
+
+        /**
+         * @param template
+         *      a compiled template
+         * @param slot
+         *      position of the slot
+         */
+        Target(CompiledInumPlan template, int slot)
+        {
+            this.template = template;
+            this.slot = slot;
+        }
+    }
+}
@@ -1,19 +1,52 @@
 package edu.ucsc.dbtune.util;
 
-import java.util.HashMap;
 import java.util.HashSet;
 
 import edu.ucsc.dbtune.optimizer.plan.InumPlan;
 import edu.ucsc.dbtune.optimizer.plan.InumPlanWithCache;
-import edu.ucsc.dbtune.optimizer.plan.Operator;
+import edu.ucsc.dbtune.optimizer.plan.SlotCache;
 
 /**
+ * A set of INUM templates that share a {@link SlotCache}.
+ *
  * @author Ivo Jimenez
  */
 public class InumPlanSetWithCache extends HashSet<InumPlan>
 {
+    /** capacity of the cache used when none is given. */
+    public static final long DEFAULT_CAPACITY = 100000;
+
     private static final long serialVersionUID = 0;
-    private static final HashMap<String, Operator> SLOT_CACHE = new HashMap<String, Operator>();
+
+    private final transient SlotCache slotCache;
+
+    /**
+     * Creates a set with a cache of its own.
+     */
+    public InumPlanSetWithCache()
+    {
+        this(new SlotCache(DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Creates a set whose templates use the given cache.
+     *
+     * @param slotCache
+     *      cache shared by the templates of the set; it can be shared with other sets
+     */
+    public InumPlanSetWithCache(SlotCache slotCache)
+    {
+        this.slotCache = slotCache;
+    }
+
+    /**
+     * @return
+     *      the cache used by the templates of the set
+     */
+    public SlotCache getSlotCache()
+    {
+        return slotCache;
+    }
 
     /**
      * {@inheritDoc}
@@ -21,6 +54,6 @@ public class InumPlanSetWithCache extends HashSet<InumPlan>
     @Override
     public boolean add(InumPlan a)
     {
-        return super.add(new InumPlanWithCache(a, SLOT_CACHE));
+        return super.add(new InumPlanWithCache(a, slotCache));
     }
 }
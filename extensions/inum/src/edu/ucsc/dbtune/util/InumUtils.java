@@ -260,7 +260,7 @@ public final class InumUtils
         BoundSQLStatementParseTree parseTree;
 
         ioExtractor = new DerbyInterestingOrdersExtractor(catalog);
-        parseTree = new BoundSQLStatementParseTree(ioExtractor.getParseTree(statement), catalog);
+        parseTree = ioExtractor.getBoundParseTree(statement);
 
         Set<ColumnOrdering> ios = new HashSet<ColumnOrdering>();
 
@@ -293,7 +293,7 @@ public final class InumUtils
         BoundSQLStatementParseTree parseTree;
 
         ioExtractor = new DerbyInterestingOrdersExtractor(catalog);
-        parseTree = new BoundSQLStatementParseTree(ioExtractor.getParseTree(statement), catalog);
+        parseTree = ioExtractor.getBoundParseTree(statement);
 
         for (Table t : parseTree.getTables())
             tables.add(t);
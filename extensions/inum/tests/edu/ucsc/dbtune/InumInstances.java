@@ -0,0 +1,271 @@
+package edu.ucsc.dbtune;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Function;
+
+import edu.ucsc.dbtune.metadata.ColumnOrdering;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.metadata.Schema;
+import edu.ucsc.dbtune.metadata.Table;
+import edu.ucsc.dbtune.optimizer.ExplainedSQLStatement;
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.optimizer.plan.InumPlan;
+import edu.ucsc.dbtune.optimizer.plan.Operator;
+import edu.ucsc.dbtune.optimizer.plan.SQLStatementPlan;
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.HASH_JOIN;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.INDEX_SCAN;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.NLJ;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.TABLE_SCAN;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Fixtures shared by the tests of INUM and of the components that rely on it.
+ *
+ * @author Ivo Jimenez
+ */
+public final class InumInstances
+{
+    /**
+     * Utility class.
+     */
+    private InumInstances()
+    {
+    }
+
+    /**
+     * Creates an optimizer whose plans are an index scan over the first index of the explained
+     * configuration, which costs 5 plus the number of columns of the index.
+     *
+     * @return
+     *      the optimizer
+     * @throws Exception
+     *      if the mock can't be created
+     */
+    public static Optimizer configureIndexScanOptimizer() throws Exception
+    {
+        return configureIndexScanOptimizer(
+            new Function<Index, Double>() {
+                @Override
+                public Double apply(Index index)
+                {
+                    return 5.0 + index.size();
+                }
+            });
+    }
+
+    /**
+     * Creates an optimizer whose plans are an index scan over the first index of the explained
+     * configuration.
+     *
+     * @param cost
+     *      the cost of scanning a given index
+     * @return
+     *      the optimizer
+     * @throws Exception
+     *      if the mock can't be created
+     */
+    public static Optimizer configureIndexScanOptimizer(final Function<Index, Double> cost)
+        throws Exception
+    {
+        Optimizer optimizer = mock(Optimizer.class);
+
+        when(optimizer.explain(any(SQLStatement.class), anySetOf(Index.class))).thenAnswer(
+            new Answer<ExplainedSQLStatement>() {
+                @Override
+                public ExplainedSQLStatement answer(InvocationOnMock invocation)
+                {
+                    @SuppressWarnings("unchecked")
+                    Set<Index> conf = (Set<Index>) invocation.getArguments()[1];
+                    Index index = conf.iterator().next();
+                    SQLStatementPlan plan = mock(SQLStatementPlan.class);
+                    ExplainedSQLStatement explained = mock(ExplainedSQLStatement.class);
+
+                    when(plan.contains(INDEX_SCAN)).thenReturn(true);
+                    when(plan.getRootOperator()).thenReturn(
+                        new Operator(INDEX_SCAN, cost.apply(index), 1));
+                    when(explained.getPlan()).thenReturn(plan);
+
+                    return explained;
+                }
+            });
+
+        return optimizer;
+    }
+
+    /**
+     * Creates a template that joins two tables through full table scans, which cost 30 and 20
+     * respectively.
+     *
+     * @param delegate
+     *      optimizer the template is bound to
+     * @param table0
+     *      first table
+     * @param table1
+     *      second table
+     * @param joinCost
+     *      accumulated cost of the join
+     * @return
+     *      the template
+     * @throws Exception
+     *      if fails
+     */
+    public static InumPlan configureTwoTableTemplate(
+            Optimizer delegate, Table table0, Table table1, double joinCost)
+        throws Exception
+    {
+        return configureTwoTableTemplate(delegate, table0, table1, joinCost, 30, 20);
+    }
+
+    /**
+     * Creates a template that joins two tables through full table scans.
+     *
+     * @param delegate
+     *      optimizer the template is bound to
+     * @param table0
+     *      first table
+     * @param table1
+     *      second table
+     * @param joinCost
+     *      accumulated cost of the join
+     * @param scan0Cost
+     *      cost of the scan of {@code table0}
+     * @param scan1Cost
+     *      cost of the scan of {@code table1}
+     * @return
+     *      the template
+     * @throws Exception
+     *      if fails
+     */
+    public static InumPlan configureTwoTableTemplate(
+            Optimizer delegate,
+            Table table0,
+            Table table1,
+            double joinCost,
+            double scan0Cost,
+            double scan1Cost)
+        throws Exception
+    {
+        Operator join = new Operator(HASH_JOIN, joinCost, 1);
+        Operator scan0 = new Operator(TABLE_SCAN, scan0Cost, 1);
+        Operator scan1 = new Operator(TABLE_SCAN, scan1Cost, 1);
+
+        scan0.add(table0);
+        scan0.addColumnsFetched(new ColumnOrdering(table0.columns().get(0), ColumnOrdering.ASC));
+        scan1.add(table1);
+        scan1.addColumnsFetched(new ColumnOrdering(table1.columns().get(0), ColumnOrdering.ASC));
+
+        SQLStatementPlan plan = new SQLStatementPlan(new SQLStatement("SELECT * FROM t"), join);
+
+        plan.setChild(join, scan0);
+        plan.setChild(join, scan1);
+
+        ExplainedSQLStatement explained = mock(ExplainedSQLStatement.class);
+
+        when(explained.getPlan()).thenReturn(plan);
+        when(explained.getSelectCost()).thenReturn(joinCost);
+
+        return new InumPlan(delegate, explained);
+    }
+
+    /**
+     * Creates the indexes that the tests of the INUM space computations explain configurations of, 
+     * out of the first schema of {@link DBTuneInstances#configureCatalog()}.
+     *
+     * @return
+     *      {@code a1, a2} on one table, {@code b} and {@code c} on two others
+     */
+    public static Set<Index> configureIndexesOnThreeTables()
+    {
+        Schema schema = configureCatalog().schemas().get(0);
+        List<Index> indexes = new ArrayList<Index>();
+        List<Table> tables = new ArrayList<Table>();
+
+        for (Index index : schema.indexes()) {
+            if (!tables.contains(index.getTable()))
+                tables.add(index.getTable());
+
+            int count = countOnTable(indexes, index.getTable());
+
+            if (tables.size() <= 3 && count < (tables.size() == 1 ? 2 : 1))
+                indexes.add(index);
+        }
+
+        return new HashSet<Index>(indexes);
+    }
+
+    /**
+     * Creates an optimizer that records the configurations it's asked to explain. Its plans have a 
+     * nested loop join, so an INUM space computation doesn't add them to the space.
+     *
+     * @param recorded
+     *      list where the explained configurations are recorded
+     * @param useAll
+     *      whether plans use every index of the configuration they're explained for or none
+     * @return
+     *      the optimizer
+     * @throws Exception
+     *      if the mock can't be created
+     */
+    public static Optimizer configureRecordingOptimizer(
+            final List<Set<Index>> recorded, final boolean useAll)
+        throws Exception
+    {
+        Optimizer optimizer = mock(Optimizer.class);
+
+        when(optimizer.explain(any(SQLStatement.class), anySetOf(Index.class))).thenAnswer(
+            new Answer<ExplainedSQLStatement>() {
+                @Override
+                public ExplainedSQLStatement answer(InvocationOnMock invocation)
+                {
+                    @SuppressWarnings("unchecked")
+                    Set<Index> conf = (Set<Index>) invocation.getArguments()[1];
+                    SQLStatementPlan plan = mock(SQLStatementPlan.class);
+                    ExplainedSQLStatement explained = mock(ExplainedSQLStatement.class);
+
+                    when(plan.getIndexes()).thenReturn(
+                        useAll ? new ArrayList<Index>(conf) : new ArrayList<Index>());
+                    when(plan.contains(NLJ)).thenReturn(true);
+                    when(explained.getPlan()).thenReturn(plan);
+
+                    recorded.add(new HashSet<Index>(conf));
+
+                    return explained;
+                }
+            });
+
+        return optimizer;
+    }
+
+    /**
+     * @param indexes
+     *      indexes
+     * @param table
+     *      a table
+     * @return
+     *      number of indexes on the table
+     */
+    private static int countOnTable(List<Index> indexes, Table table)
+    {
+        int count = 0;
+
+        for (Index index : indexes)
+            if (index.getTable().equals(table))
+                count++;
+
+        return count;
+    }
+}
@@ -0,0 +1,59 @@
+package edu.ucsc.dbtune.inum;
+
+import java.util.Arrays;
+
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.util.Environment;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureAny;
+import static edu.ucsc.dbtune.DBTuneInstances.configureINUMOptimizer;
+import static edu.ucsc.dbtune.inum.InumSpaceComputation.Factory.newInumSpaceComputation;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.EXHAUSTIVE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.IBG;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_SPACE_COMPUTATION;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit test for AbstractSpaceComputation.
+ *
+ * @author Ivo Jimenez
+ */
+public class AbstractSpaceComputationTest
+{
+    /**
+     * Checks that the factory creates computations that use the given helpers, along with the 
+     * delegate they're given when computing a space.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testFactoryPassesHelpers() throws Exception
+    {
+        Environment env = configureINUMOptimizer(configureAny());
+
+        for (String type : new String[] {EXHAUSTIVE, IBG}) {
+            env.setProperty(INUM_SPACE_COMPUTATION, type);
+
+            InumSpaceComputation computation =
+                newInumSpaceComputation(
+                    env, Arrays.asList(mock(Optimizer.class), mock(Optimizer.class)));
+
+            assertThat(computation instanceof AbstractSpaceComputation, is(true));
+            assertThat(((AbstractSpaceComputation) computation).getOptimizerCount(), is(3));
+        }
+
+        env.setProperty(INUM_SPACE_COMPUTATION, IBG);
+
+        AbstractSpaceComputation computation =
+            (AbstractSpaceComputation) newInumSpaceComputation(env);
+
+        assertThat(computation.getOptimizerCount(), is(1));
+        assertThat(computation.isParallel(), is(false));
+    }
+}
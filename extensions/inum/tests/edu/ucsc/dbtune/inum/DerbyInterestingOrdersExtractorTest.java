@@ -552,4 +552,47 @@ public class DerbyInterestingOrdersExtractorTest
         // same as above
         assertThat(extractor.extract(sql).size(), is(0));
     }
+
+    /**
+     * Checks that statements that differ only in whitespace, in the case of keywords or in a
+     * trailing semicolon are normalized to the same text, while literals are left untouched.
+     */
+    @Test
+    public void testNormalize()
+    {
+        assertThat(
+            DerbyInterestingOrdersExtractor.normalize(
+                "  select column_0\n  FROM\tschema_0.table_0 ;"),
+            is("SELECT COLUMN_0 FROM SCHEMA_0.TABLE_0"));
+        assertThat(
+            DerbyInterestingOrdersExtractor.normalize("SELECT 'a  b' FROM \"t  x\" -- c  d\nWHERE"),
+            is("SELECT 'a  b' FROM \"t  x\" -- c  d\nWHERE"));
+    }
+
+    /**
+     * Checks that an equivalent statement is not parsed again and that the interesting orders
+     * obtained from the cache are the same.
+     *
+     * @throws Exception
+     *      when an error occurs
+     */
+    @Test
+    public void testCache() throws Exception
+    {
+        SQLStatement sql = new SQLStatement(
+                "SELECT * FROM schema_0.table_0, schema_0.table_1 " +
+                " WHERE table_0.column_0 = table_1.column_1 ORDER BY table_0.column_2");
+        SQLStatement same = new SQLStatement(
+                "select *\n  from schema_0.table_0, schema_0.table_1\n" +
+                " where table_0.column_0 = table_1.column_1 order by table_0.column_2;");
+
+        Set<ColumnOrdering> expected = extractor.extract(sql);
+        long misses = DerbyInterestingOrdersExtractor.getParseTreeCacheStats().missCount();
+
+        assertThat(extractor.getParseTree(same), is(extractor.getParseTree(sql)));
+        assertThat(new DerbyInterestingOrdersExtractor(catalog).extract(same), is(expected));
+        assertThat(
+            DerbyInterestingOrdersExtractor.getParseTreeCacheStats().missCount(), is(misses));
+        assertThat(expected.size(), is(3));
+    }
 }
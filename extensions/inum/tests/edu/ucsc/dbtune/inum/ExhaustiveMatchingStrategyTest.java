@@ -0,0 +1,133 @@
+package edu.ucsc.dbtune.inum;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Function;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.metadata.Table;
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.optimizer.plan.CompiledInumPlan;
+import edu.ucsc.dbtune.optimizer.plan.InumPlan;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+import static edu.ucsc.dbtune.InumInstances.configureIndexScanOptimizer;
+import static edu.ucsc.dbtune.InumInstances.configureTwoTableTemplate;
+import static edu.ucsc.dbtune.inum.FullTableScanIndex.getFullTableScanIndexInstance;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for ExhaustiveMatchingStrategy.
+ *
+ * @author Ivo Jimenez
+ */
+public class ExhaustiveMatchingStrategyTest
+{
+    private Table table0;
+    private Table table1;
+    private Optimizer delegate;
+    private Set<Index> configuration;
+
+    /**
+     * Creates a delegate that costs an index scan after the size and id of the index, and a
+     * configuration with every index on {@code table_0} and {@code table_1} of the catalog.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        Catalog catalog = configureCatalog();
+
+        table0 = catalog.<Table>findByName("schema_0.table_0");
+        table1 = catalog.<Table>findByName("schema_0.table_1");
+        configuration = new HashSet<Index>();
+
+        for (Index index : catalog.schemas().get(0).indexes())
+            if (index.getTable().equals(table0) || index.getTable().equals(table1))
+                configuration.add(index);
+
+        configuration.add(getFullTableScanIndexInstance(table0));
+        configuration.add(getFullTableScanIndexInstance(table1));
+
+        delegate = configureIndexScanOptimizer(
+            new Function<Index, Double>() {
+                @Override
+                public Double apply(Index index)
+                {
+                    return (double) index.size() + index.getId() % 5;
+                }
+            });
+    }
+
+    /**
+     * Checks that the cost found by the branch-and-bound search is the minimum over the cartesian
+     * product of the indexes of each slot, for every template, and that the search visits fewer
+     * assignments than the product has.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testMatchesBruteForce() throws Exception
+    {
+        Set<InumPlan> space = new HashSet<InumPlan>();
+
+        space.add(configureTwoTableTemplate(delegate, table0, table1, 150, 30, 20));
+        space.add(configureTwoTableTemplate(delegate, table0, table1, 120, 40, 45));
+        space.add(configureTwoTableTemplate(delegate, table0, table1, 110, 60, 70));
+
+        double expected = Double.POSITIVE_INFINITY;
+        long product = 0;
+
+        for (InumPlan template : space) {
+            CompiledInumPlan compiled = template.compile();
+            Index[][] indexesPerSlot = compiled.partition(configuration);
+
+            product += indexesPerSlot[0].length * indexesPerSlot[1].length;
+
+            for (Index i0 : indexesPerSlot[0])
+                for (Index i1 : indexesPerSlot[1])
+                    expected = Math.min(
+                        expected,
+                        compiled.getFixedCost() +
+                        compiled.getAccessCost(0, i0) +
+                        compiled.getAccessCost(1, i1));
+        }
+
+        MatchingStrategy.Result result =
+            new ExhaustiveMatchingStrategy().match(space, configuration);
+
+        assertThat(result.getBestCost(), closeTo(expected, 1e-9));
+        assertThat(
+            result.getInstantiatedPlan().getRootOperator().getAccumulatedCost(),
+            closeTo(expected, 1e-9));
+        assertThat(
+            new GreedyMatchingStrategy().match(space, configuration).getBestCost(),
+            closeTo(expected, 1e-9));
+
+        List<CompiledInumPlan> templates = new ArrayList<CompiledInumPlan>();
+
+        for (InumPlan template : space)
+            templates.add(template.compile());
+
+        ExhaustiveMatchingStrategy.Search search = new ExhaustiveMatchingStrategy.Search(2);
+
+        for (CompiledInumPlan template : templates)
+            search.run(template, template.partition(configuration));
+
+        assertThat(search.getNodeCount() < product, is(true));
+    }
+}
@@ -0,0 +1,86 @@
+package edu.ucsc.dbtune.inum;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.optimizer.plan.InumPlan;
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.InumInstances.configureIndexesOnThreeTables;
+import static edu.ucsc.dbtune.InumInstances.configureRecordingOptimizer;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for ExhaustiveSpaceComputation.
+ *
+ * @author Ivo Jimenez
+ */
+public class ExhaustiveSpaceComputationTest
+{
+    private static final SQLStatement SQL = new SQLStatement("SELECT * FROM t");
+    private static final Set<Index> INDEXES = configureIndexesOnThreeTables();
+
+    /**
+     * Checks that every atomic configuration is explained exactly once when plans use every index.
+     * Out of {@code a1, a2} (on the same table), {@code b} and {@code c}, along with the full table
+     * scan of each table, there are 3 * 2 * 2 atomic configurations.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testEachAtomicConfigurationExplainedOnce() throws Exception
+    {
+        List<Set<Index>> explained = Collections.synchronizedList(new ArrayList<Set<Index>>());
+        Set<InumPlan> space = new HashSet<InumPlan>();
+
+        assertThat(INDEXES.size(), is(4));
+
+        new ExhaustiveSpaceComputation().computeWithCompleteConfiguration(
+                space, INDEXES, SQL, configureRecordingOptimizer(explained, true));
+
+        assertThat(explained.size(), is(12));
+        assertThat(new HashSet<Set<Index>>(explained).size(), is(12));
+        assertThat(space.isEmpty(), is(true));
+
+        explained.clear();
+
+        new ExhaustiveSpaceComputation(Arrays.asList(configureRecordingOptimizer(explained, true)))
+            .computeWithCompleteConfiguration(
+                space, INDEXES, SQL, configureRecordingOptimizer(explained, true));
+
+        assertThat(explained.size(), is(12));
+        assertThat(new HashSet<Set<Index>>(explained).size(), is(12));
+    }
+
+    /**
+     * Checks that the configurations covered by one whose plan doesn't use its indexes are not
+     * explained. Only {@code {a1, b, c}} and {@code {a2, b, c}} are explained, since every other
+     * atomic configuration results from replacing some of their indexes by full table scans.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testCoveredConfigurationsSkipped() throws Exception
+    {
+        List<Set<Index>> explained = Collections.synchronizedList(new ArrayList<Set<Index>>());
+        new ExhaustiveSpaceComputation().computeWithCompleteConfiguration(
+                new HashSet<InumPlan>(), INDEXES, SQL,
+                configureRecordingOptimizer(explained, false));
+
+        assertThat(explained.size(), is(2));
+
+        for (Set<Index> conf : explained)
+            assertThat(INDEXES.containsAll(conf), is(true));
+    }
+}
@@ -0,0 +1,64 @@
+package edu.ucsc.dbtune.inum;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.optimizer.plan.InumPlan;
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.InumInstances.configureIndexesOnThreeTables;
+import static edu.ucsc.dbtune.InumInstances.configureRecordingOptimizer;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for IBGSpaceComputation.
+ *
+ * @author Ivo Jimenez
+ */
+public class IBGSpaceComputationTest
+{
+    /**
+     * Checks that each configuration reachable from the complete one is explained exactly once.
+     * Out of {@code a1, a2} (on the same table), {@code b} and {@code c}, the reachable
+     * configurations are the complete one, the atomic {@code {a1, b, c}} and {@code {a2, b, c}},
+     * and every non-empty subset of the latter two, i.e. 12 configurations.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testEachConfigurationExplainedOnce() throws Exception
+    {
+        Set<Index> indexes = configureIndexesOnThreeTables();
+
+        assertThat(indexes.size(), is(4));
+
+        List<Set<Index>> explained = Collections.synchronizedList(new ArrayList<Set<Index>>());
+        SQLStatement sql = new SQLStatement("SELECT * FROM t");
+        Set<InumPlan> space = new HashSet<InumPlan>();
+
+        new IBGSpaceComputation().ibg(
+                sql, configureRecordingOptimizer(explained, true), indexes, space);
+
+        assertThat(explained.size(), is(12));
+        assertThat(new HashSet<Set<Index>>(explained).size(), is(12));
+        assertThat(space.isEmpty(), is(true));
+
+        explained.clear();
+
+        new IBGSpaceComputation(Arrays.asList(configureRecordingOptimizer(explained, true))).ibg(
+                sql, configureRecordingOptimizer(explained, true), indexes, space);
+
+        assertThat(explained.size(), is(12));
+        assertThat(new HashSet<Set<Index>>(explained).size(), is(12));
+    }
+}
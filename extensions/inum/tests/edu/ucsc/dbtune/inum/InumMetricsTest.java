@@ -0,0 +1,95 @@
+package edu.ucsc.dbtune.inum;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for InumMetrics.
+ *
+ * @author Ivo Jimenez
+ */
+public class InumMetricsTest
+{
+    private InumMetrics metrics;
+
+    /**
+     * Discards the metrics reported by other tests.
+     */
+    @Before
+    public void setUp()
+    {
+        metrics = InumMetrics.getInstance();
+        metrics.reset();
+    }
+
+    /**
+     * Checks that counters add up and that the percentiles of a histogram fall in the bucket of
+     * the corresponding values.
+     */
+    @Test
+    public void testCountersAndHistograms()
+    {
+        metrics.increment("a");
+        metrics.add("a", 4);
+
+        for (int i = 1; i <= 100; i++)
+            metrics.record("h", i);
+
+        InumMetrics.Snapshot h = metrics.getHistogram("h");
+
+        assertThat(metrics.getCount("a"), is(5L));
+        assertThat(metrics.getCount("b"), is(0L));
+        assertThat(h.getCount(), is(100L));
+        assertThat(h.getMax(), is(100L));
+        assertThat(h.getMean(), closeTo(50.5, 1e-9));
+        assertThat(h.getMedian(), is(63L));
+        assertThat(h.getP90(), is(100L));
+        assertThat(metrics.getHistogram("none").getCount(), is(0L));
+        assertThat(metrics.getCounters().size(), is(1));
+    }
+
+    /**
+     * Checks that the registry is readable through the platform MBean server.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testJmx() throws Exception
+    {
+        metrics.register();
+        metrics.register();
+        metrics.increment("plan.whatif");
+        metrics.record("optimizer.explain.time", 7);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(InumMetrics.OBJECT_NAME);
+
+        TabularData counters = (TabularData) server.getAttribute(name, "Counters");
+        TabularData histograms = (TabularData) server.getAttribute(name, "Histograms");
+
+        CompositeData counter = counters.get(new Object[] {"plan.whatif"});
+        CompositeData histogram = histograms.get(new Object[] {"optimizer.explain.time"});
+
+        assertThat((Long) counter.get("value"), is(1L));
+        assertThat((Long) ((CompositeData) histogram.get("value")).get("max"), is(7L));
+
+        Map<String, Long> values = metrics.getCounters();
+
+        assertThat(values.get("plan.whatif"), is(1L));
+    }
+}
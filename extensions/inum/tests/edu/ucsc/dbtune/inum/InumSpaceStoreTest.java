@@ -0,0 +1,269 @@
+package edu.ucsc.dbtune.inum;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Column;
+import edu.ucsc.dbtune.metadata.ColumnOrdering;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.metadata.Table;
+import edu.ucsc.dbtune.optimizer.ExplainedSQLStatement;
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.optimizer.plan.InumPlan;
+import edu.ucsc.dbtune.optimizer.plan.Operator;
+import edu.ucsc.dbtune.optimizer.plan.Predicate;
+import edu.ucsc.dbtune.optimizer.plan.SQLStatementPlan;
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalogWithoutIndexes;
+import static edu.ucsc.dbtune.inum.FullTableScanIndex.getFullTableScanIndexInstance;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.HASH_JOIN;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.INDEX_SCAN;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.TABLE_SCAN;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import static org.junit.Assert.assertThat;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test for InumSpaceStore.
+ *
+ * @author Ivo Jimenez
+ */
+public class InumSpaceStoreTest
+{
+    private static final SQLStatement SQL =
+        new SQLStatement("SELECT * FROM table_0, table_1 WHERE column_0 = 5");
+
+    private Catalog catalog;
+    private Table table0;
+    private Table table1;
+    private Index hypothetical;
+    private InumPlan template;
+    private File directory;
+
+    /**
+     * Creates a template that joins a full table scan of {@code table_0} and an index scan of
+     * {@code table_1} through an hypothetical index.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        catalog = configureCatalog();
+        table0 = catalog.<Table>findByName("schema_0.table_0");
+        table1 = catalog.<Table>findByName("schema_0.table_1");
+
+        Column column0 = table0.columns().get(0);
+        Column column1 = table1.columns().get(0);
+
+        hypothetical = new Index(
+            Arrays.asList(table1.columns().get(1), column1), Arrays.asList(true, false));
+
+        Operator join = new Operator(HASH_JOIN, 100, 10);
+        Operator scan = new Operator(TABLE_SCAN, 30, 5);
+        Operator indexScan = new Operator(INDEX_SCAN, 20, 7);
+
+        join.add(Arrays.asList(new Predicate(column0, column1)));
+        scan.add(table0);
+        scan.add(Arrays.asList(new Predicate(column0, "column_0 = 5")));
+        scan.addColumnsFetched(new ColumnOrdering(column0, ColumnOrdering.ASC));
+        indexScan.add(hypothetical);
+        indexScan.addColumnsFetched(new ColumnOrdering(column1, ColumnOrdering.DESC));
+
+        SQLStatementPlan plan = new SQLStatementPlan(SQL, join);
+
+        plan.setChild(join, scan);
+        plan.setChild(join, indexScan);
+
+        ExplainedSQLStatement explained = mock(ExplainedSQLStatement.class);
+
+        when(explained.getPlan()).thenReturn(plan);
+        when(explained.getSelectCost()).thenReturn(100.0);
+        when(explained.getBaseTableUpdateCost()).thenReturn(0.0);
+
+        template = new InumPlan(mock(Optimizer.class), explained);
+
+        directory = File.createTempFile("inumspace", "");
+        directory.delete();
+    }
+
+    /**
+     * Deletes the files of the store.
+     */
+    @After
+    public void tearDown()
+    {
+        File[] files = directory.listFiles();
+
+        if (files != null)
+            for (File f : files)
+                f.delete();
+
+        directory.delete();
+    }
+
+    /**
+     * Checks that a space is read back as it was written, by another store on the same directory.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        Set<InumPlan> space = new HashSet<InumPlan>();
+
+        space.add(template);
+
+        new InumSpaceStore(directory, "ibg").store(
+            SQL, catalog, new InumSpaceStore.Entry(space, table0, 3.0));
+
+        InumSpaceStore.Entry entry =
+            new InumSpaceStore(directory, "ibg").load(SQL, catalog, mock(Optimizer.class));
+
+        assertThat(entry, is(notNullValue()));
+        assertThat(entry.getUpdatedTable(), is(table0));
+        assertThat(entry.getBaseTableUpdateCost(), closeTo(3.0, 1e-9));
+        assertThat(entry.getSpace().size(), is(1));
+
+        InumPlan loaded = entry.getSpace().iterator().next();
+
+        assertThat(loaded, is(template));
+        assertThat(loaded.getInternalCost(), closeTo(50, 1e-9));
+        assertThat(
+            loaded.getSlot(table0).getPredicates(),
+            is(template.getSlot(table0).getPredicates()));
+        assertThat(loaded.getSlot(table1).getIndex().equalsContent(hypothetical), is(true));
+        assertThat(
+            loaded.getSlot(table1).getColumnsFetched(),
+            is(template.getSlot(table1).getColumnsFetched()));
+        assertThat(loaded.plug(hypothetical), closeTo(20, 1e-9));
+        assertThat(
+            loaded.plug(getFullTableScanIndexInstance(table0)),
+            closeTo(30, 1e-9));
+    }
+
+    /**
+     * Checks that a space isn't returned for another statement or strategy.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testKey() throws Exception
+    {
+        Set<InumPlan> space = new HashSet<InumPlan>();
+
+        space.add(template);
+
+        InumSpaceStore store = new InumSpaceStore(directory, "ibg");
+
+        store.store(SQL, catalog, new InumSpaceStore.Entry(space, null, 0));
+
+        Optimizer delegate = mock(Optimizer.class);
+
+        assertThat(store.load(SQL, catalog, delegate), is(notNullValue()));
+        assertThat(store.load(SQL, catalog, delegate).getUpdatedTable(), is(nullValue()));
+        assertThat(store.load(new SQLStatement("SELECT 1"), catalog, delegate), is(nullValue()));
+        assertThat(
+            new InumSpaceStore(directory, "exhaustive").load(SQL, catalog, delegate),
+            is(nullValue()));
+        assertThat(
+            InumSpaceStore.fingerprint(catalog),
+            is(InumSpaceStore.fingerprint(configureCatalog())));
+    }
+
+    /**
+     * Checks that a truncated file is deleted, instead of failing the load, so that the space can 
+     * be stored again.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testTruncatedFile() throws Exception
+    {
+        Set<InumPlan> space = new HashSet<InumPlan>();
+
+        space.add(template);
+
+        InumSpaceStore store = new InumSpaceStore(directory, "ibg");
+        Optimizer delegate = mock(Optimizer.class);
+
+        store.store(SQL, catalog, new InumSpaceStore.Entry(space, null, 0));
+
+        File[] files = directory.listFiles();
+
+        assertThat(files.length, is(1));
+
+        RandomAccessFile file = new RandomAccessFile(files[0], "rw");
+
+        file.setLength(file.length() / 2);
+        file.close();
+
+        assertThat(store.load(SQL, catalog, delegate), is(nullValue()));
+        assertThat(files[0].exists(), is(false));
+
+        store.store(SQL, catalog, new InumSpaceStore.Entry(space, null, 0));
+
+        assertThat(store.load(SQL, catalog, delegate), is(notNullValue()));
+    }
+
+    /**
+     * Checks that the fingerprint of a catalog can be taken while hypothetical indexes are being 
+     * created on (and removed from) it, and that it doesn't depend on them.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testFingerprintWhileCreatingIndexes() throws Exception
+    {
+        Catalog withoutIndexes = configureCatalogWithoutIndexes();
+        final Column column =
+            withoutIndexes.<Table>findByName("schema_0.table_0").columns().get(0);
+        final Exception[] error = new Exception[1];
+        String fingerprint = InumSpaceStore.fingerprint(withoutIndexes);
+
+        Thread creator = new Thread() {
+            @Override
+            public void run()
+            {
+                try {
+                    for (int i = 0; i < 2000; i++)
+                        column.getTable().getSchema().remove(
+                            new Index("fingerprint_" + i, column, true));
+                } catch (Exception e) {
+                    error[0] = e;
+                }
+            }
+        };
+
+        creator.start();
+
+        while (creator.isAlive())
+            assertThat(InumSpaceStore.fingerprint(withoutIndexes), is(fingerprint));
+
+        creator.join();
+
+        assertThat(error[0], is(nullValue()));
+    }
+}
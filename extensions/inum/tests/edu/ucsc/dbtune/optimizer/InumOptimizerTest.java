@@ -0,0 +1,118 @@
+package edu.ucsc.dbtune.optimizer;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.util.Environment;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureAny;
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+import static edu.ucsc.dbtune.DBTuneInstances.configureDB2;
+import static edu.ucsc.dbtune.DBTuneInstances.configureINUMOptimizer;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_HELPER_CONNECTIONS;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit test for InumOptimizer.
+ *
+ * @author Ivo Jimenez
+ */
+public class InumOptimizerTest
+{
+    /**
+     * Checks that the optimizer keeps the helpers it's given and that they get the catalog of the
+     * optimizer; and that no helper is created when {@link Environment#getInumHelperConnections}
+     * is zero.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testHelpers() throws Exception
+    {
+        Environment env = configureINUMOptimizer(configureAny());
+        Catalog catalog = configureCatalog();
+        List<Optimizer> helpers = Arrays.asList(mock(Optimizer.class), mock(Optimizer.class));
+        InumOptimizer optimizer = new InumOptimizer(mock(Optimizer.class), helpers, env);
+
+        optimizer.setCatalog(catalog);
+
+        assertThat(optimizer.getHelpers(), is(helpers));
+
+        for (Optimizer helper : helpers)
+            verify(helper).setCatalog(catalog);
+
+        optimizer = new InumOptimizer(mock(Optimizer.class), env);
+
+        assertThat(optimizer.getHelpers().isEmpty(), is(true));
+    }
+
+    /**
+     * Checks that closing the optimizer leaves alone the helpers it was given, and that it can be 
+     * closed more than once.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testCloseKeepsGivenHelpers() throws Exception
+    {
+        Environment env = configureINUMOptimizer(configureAny());
+        Optimizer helper = mock(Optimizer.class);
+        InumOptimizer optimizer =
+            new InumOptimizer(mock(Optimizer.class), Arrays.asList(helper), env);
+
+        optimizer.close();
+        optimizer.close();
+
+        assertThat(optimizer.getHelpers(), is(Arrays.asList(helper)));
+    }
+
+    /**
+     * Checks that helpers are refused on DB2, whose what-if calls go through the same advise and 
+     * explain tables regardless of the connection.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testHelpersRefusedOnDB2() throws Exception
+    {
+        Environment env = configureINUMOptimizer(configureDB2());
+        List<Optimizer> helpers = Arrays.<Optimizer>asList(mock(DB2Optimizer.class));
+
+        try {
+            new InumOptimizer(mock(Optimizer.class), helpers, env);
+            fail("DB2 helper accepted");
+        } catch (SQLException e) {
+            assertThat(e.getMessage(), is("Helpers aren't supported on DB2"));
+        }
+
+        helpers = Arrays.asList(mock(Optimizer.class));
+
+        try {
+            new InumOptimizer(mock(DB2Optimizer.class), helpers, env);
+            fail("helper of a DB2 delegate accepted");
+        } catch (SQLException e) {
+            assertThat(e.getMessage(), is("Helpers aren't supported on DB2"));
+        }
+
+        env.setProperty(INUM_HELPER_CONNECTIONS, "1");
+
+        try {
+            new InumOptimizer(mock(DB2Optimizer.class), env);
+            fail("helper connection opened on DB2");
+        } catch (SQLException e) {
+            assertThat(e.getMessage(), is("Helpers aren't supported on DB2"));
+        }
+    }
+}
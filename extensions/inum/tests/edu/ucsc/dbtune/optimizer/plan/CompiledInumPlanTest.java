@@ -0,0 +1,261 @@
+package edu.ucsc.dbtune.optimizer.plan;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.ucsc.dbtune.inum.ExhaustiveMatchingStrategy;
+import edu.ucsc.dbtune.inum.GreedyMatchingStrategy;
+import edu.ucsc.dbtune.inum.MatchingStrategy;
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.ColumnOrdering;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.metadata.Table;
+import edu.ucsc.dbtune.optimizer.ExplainedSQLStatement;
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+import static edu.ucsc.dbtune.inum.FullTableScanIndex.getFullTableScanIndexInstance;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.HASH_JOIN;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.INDEX_SCAN;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.TABLE_SCAN;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+import static org.junit.Assert.assertThat;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test for CompiledInumPlan.
+ *
+ * @author Ivo Jimenez
+ */
+public class CompiledInumPlanTest
+{
+    private Table table0;
+    private Table table1;
+    private Index covering;
+    private Index notCovering;
+    private Optimizer delegate;
+    private ExplainedSQLStatement indexExplained;
+    private InumPlan template;
+
+    /**
+     * Creates a template that joins two tables through full table scans, with an internal cost of
+     * 50 and access costs of 30 and 20. The delegate costs any index scan at 10.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        Catalog catalog = configureCatalog();
+
+        table0 = catalog.<Table>findByName("schema_0.table_0");
+        table1 = catalog.<Table>findByName("schema_0.table_1");
+
+        for (Index index : catalog.schemas().get(0).indexes()) {
+            if (!index.getTable().equals(table0))
+                continue;
+            if (index.columns().get(0).equals(table0.columns().get(0)))
+                covering = index;
+            else if (!index.columns().contains(table0.columns().get(0)))
+                notCovering = index;
+        }
+
+        Operator join = new Operator(HASH_JOIN, 100, 1);
+        Operator scan0 = new Operator(TABLE_SCAN, 30, 1);
+        Operator scan1 = new Operator(TABLE_SCAN, 20, 1);
+
+        scan0.add(table0);
+        scan0.addColumnsFetched(new ColumnOrdering(table0.columns().get(0), ColumnOrdering.ASC));
+        scan1.add(table1);
+        scan1.addColumnsFetched(new ColumnOrdering(table1.columns().get(0), ColumnOrdering.ASC));
+
+        SQLStatementPlan plan = new SQLStatementPlan(new SQLStatement("SELECT * FROM t"), join);
+
+        plan.setChild(join, scan0);
+        plan.setChild(join, scan1);
+
+        ExplainedSQLStatement explained = mock(ExplainedSQLStatement.class);
+
+        when(explained.getPlan()).thenReturn(plan);
+        when(explained.getSelectCost()).thenReturn(100.0);
+
+        SQLStatementPlan indexPlan = mock(SQLStatementPlan.class);
+        indexExplained = mock(ExplainedSQLStatement.class);
+
+        when(indexPlan.contains(INDEX_SCAN)).thenReturn(true);
+        when(indexPlan.getRootOperator()).thenReturn(new Operator(INDEX_SCAN, 10, 1));
+        when(indexExplained.getPlan()).thenReturn(indexPlan);
+
+        delegate = mock(Optimizer.class);
+
+        when(delegate.explain(any(SQLStatement.class), anySetOf(Index.class)))
+            .thenReturn(indexExplained);
+
+        template = new InumPlan(delegate, explained);
+    }
+
+    /**
+     * Checks that the cost of a configuration is the fixed cost plus the minimum access cost of
+     * each slot, and that access costs are computed only once.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testCost() throws Exception
+    {
+        CompiledInumPlan compiled = template.compile();
+
+        assertThat(compiled == template.compile(), is(true));
+        assertThat(compiled.getFixedCost(), closeTo(50, 1e-9));
+        assertThat(compiled.getSlotCount(), is(2));
+        assertThat(compiled.getTable(0), is(table0));
+
+        Set<Index> conf = new HashSet<Index>();
+
+        conf.add(covering);
+        conf.add(notCovering);
+        conf.add(getFullTableScanIndexInstance(table0));
+        conf.add(getFullTableScanIndexInstance(table1));
+
+        Index[][] indexesPerSlot = compiled.partition(conf);
+        Index[] choice = new Index[2];
+
+        assertThat(indexesPerSlot[0].length, is(3));
+        assertThat(indexesPerSlot[1].length, is(1));
+        assertThat(compiled.cost(indexesPerSlot, choice), closeTo(80, 1e-9));
+        assertThat(choice[0], is(covering));
+        assertThat(choice[1], is((Index) getFullTableScanIndexInstance(table1)));
+        assertThat(compiled.getAccessCost(0, notCovering), is(Double.POSITIVE_INFINITY));
+
+        compiled.cost(indexesPerSlot, null);
+
+        verify(delegate, times(1)).explain(any(SQLStatement.class), anySetOf(Index.class));
+
+        assertThat(
+            template.instantiate(Arrays.asList(choice)).getRootOperator().getAccumulatedCost(),
+            closeTo(80, 1e-9));
+    }
+
+    /**
+     * Checks that a template is abandoned, before doing any what-if call, once its partial cost
+     * exceeds the bound.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testBound() throws Exception
+    {
+        CompiledInumPlan compiled = template.compile();
+        Set<Index> conf = new HashSet<Index>();
+
+        conf.add(getFullTableScanIndexInstance(table0));
+        conf.add(getFullTableScanIndexInstance(table1));
+
+        assertThat(compiled.cost(compiled.partition(conf), null), closeTo(100, 1e-9));
+
+        conf.add(covering);
+
+        Index[][] indexesPerSlot = compiled.partition(conf);
+
+        assertThat(compiled.cost(indexesPerSlot, null, 45), is(Double.POSITIVE_INFINITY));
+        assertThat(compiled.cost(indexesPerSlot, null, 65), is(Double.POSITIVE_INFINITY));
+
+        verify(delegate, times(0)).explain(any(SQLStatement.class), anySetOf(Index.class));
+
+        assertThat(compiled.cost(indexesPerSlot, null, 80), closeTo(80, 1e-9));
+    }
+
+    /**
+     * Checks that a slot whose access costs are set by another thread, after the known slots are
+     * added up, is still added to the cost and to the choice.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testSlotResolvedConcurrently() throws Exception
+    {
+        final CompiledInumPlan compiled = template.compile();
+        Index onTable1 = null;
+
+        for (Index index : table1.getSchema().indexes())
+            if (index.getTable().equals(table1) &&
+                    index.columns().get(0).equals(table1.columns().get(0)))
+                onTable1 = index;
+
+        final Index other = onTable1;
+        final Index fullTableScan = getFullTableScanIndexInstance(table1);
+
+        // while the access cost of slot 0 is computed, another thread computes the one of slot 1
+        when(delegate.explain(any(SQLStatement.class), anySetOf(Index.class))).thenAnswer(
+            new Answer<ExplainedSQLStatement>() {
+                @Override
+                public ExplainedSQLStatement answer(InvocationOnMock invocation)
+                {
+                    compiled.setAccessCost(1, fullTableScan, 20);
+                    compiled.setAccessCost(1, other, 5);
+                    return indexExplained;
+                }
+            });
+
+        Set<Index> conf = new HashSet<Index>();
+
+        conf.add(covering);
+        conf.add(onTable1);
+        conf.add(getFullTableScanIndexInstance(table0));
+        conf.add(fullTableScan);
+
+        Index[] choice = {notCovering, notCovering};
+
+        assertThat(compiled.cost(compiled.partition(conf), choice), closeTo(65, 1e-9));
+        assertThat(choice[0], is(covering));
+        assertThat(choice[1], is(onTable1));
+    }
+
+    /**
+     * Checks that the greedy strategy matches the exhaustive one and that its plan is
+     * instantiated on demand.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testGreedyMatching() throws Exception
+    {
+        Set<InumPlan> space = new HashSet<InumPlan>();
+        Set<Index> conf = new HashSet<Index>();
+
+        space.add(template);
+        conf.add(covering);
+        conf.add(notCovering);
+
+        MatchingStrategy.Result greedy = new GreedyMatchingStrategy().match(space, conf);
+        MatchingStrategy.Result exhaustive = new ExhaustiveMatchingStrategy().match(space, conf);
+
+        assertThat(greedy.getBestCost(), closeTo(exhaustive.getBestCost(), 1e-9));
+        assertThat(greedy.getBestConfiguration(), is(exhaustive.getBestConfiguration()));
+        assertThat(
+            greedy.getInstantiatedPlan().getRootOperator().getAccumulatedCost(),
+            closeTo(80, 1e-9));
+    }
+}
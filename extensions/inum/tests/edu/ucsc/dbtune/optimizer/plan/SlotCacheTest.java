@@ -0,0 +1,123 @@
+package edu.ucsc.dbtune.optimizer.plan;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.ucsc.dbtune.metadata.Index;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+import static edu.ucsc.dbtune.optimizer.plan.Operator.INDEX_SCAN;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ivo Jimenez
+ */
+public class SlotCacheTest
+{
+    private static List<Index> indexes;
+
+    /**
+     *
+     */
+    @BeforeClass
+    public static void beforeClass()
+    {
+        indexes = configureCatalog().schemas().get(0).indexes();
+    }
+
+    /**
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testHitsAndMisses() throws Exception
+    {
+        SlotCache cache = new SlotCache(10);
+        Instantiation instantiation = new Instantiation();
+
+        Operator op = cache.get("SELECT a FROM t", indexes.get(0), instantiation);
+
+        assertThat(cache.get("SELECT a FROM t", indexes.get(0), instantiation), sameInstance(op));
+        assertThat(cache.get("SELECT b FROM t", indexes.get(0), instantiation) == op, is(false));
+        assertThat(cache.get("SELECT a FROM t", indexes.get(1), instantiation) == op, is(false));
+
+        assertThat(instantiation.count.get(), is(3));
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(3L));
+        assertThat(cache.size(), is(3L));
+
+        cache.clear();
+
+        assertThat(cache.size(), is(0L));
+    }
+
+    /**
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testEviction() throws Exception
+    {
+        SlotCache cache = new SlotCache(2);
+        Instantiation instantiation = new Instantiation();
+
+        for (int i = 0; i < 5; i++)
+            cache.get("SELECT a FROM t", indexes.get(i), instantiation);
+
+        assertThat(cache.size() <= 2, is(true));
+        assertThat(cache.getEvictionCount(), is(5L - cache.size()));
+        assertThat(cache.getCapacity(), is(2L));
+    }
+
+    /**
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testSQLExceptionPropagated() throws Exception
+    {
+        SlotCache cache = new SlotCache(2);
+
+        try {
+            cache.get("SELECT a FROM t", indexes.get(0), new Callable<Operator>() {
+                @Override
+                public Operator call() throws SQLException
+                {
+                    throw new SQLException("what-if call failed");
+                }
+            });
+            fail("exception should be propagated");
+        } catch (SQLException e) {
+            assertThat(e.getMessage(), is("what-if call failed"));
+        }
+
+        assertThat(cache.size(), is(0L));
+    }
+
+    /**
+     * Creates a new operator each time it's called.
+     */
+    private static class Instantiation implements Callable<Operator>
+    {
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Operator call()
+        {
+            return new Operator(INDEX_SCAN, count.incrementAndGet(), 1);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package edu.ucsc.dbtune.optimizer.plan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.ucsc.dbtune.inum.InumMetrics;
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.metadata.Table;
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalogWithoutIndexes;
+import static edu.ucsc.dbtune.InumInstances.configureIndexScanOptimizer;
+import static edu.ucsc.dbtune.InumInstances.configureTwoTableTemplate;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+import static org.junit.Assert.assertThat;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit test for UnseenIndexProber.
+ *
+ * @author Ivo Jimenez
+ */
+public class UnseenIndexProberTest
+{
+    private Table table0;
+    private Table table1;
+    private List<Index> indexes;
+    private Optimizer delegate;
+
+    /**
+     * Creates a delegate that costs an index scan after the number of columns of the index, and an
+     * index on the first column of {@code table_0} and {@code table_1}, respectively.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        Catalog catalog = configureCatalogWithoutIndexes();
+
+        table0 = catalog.<Table>findByName("schema_0.table_0");
+        table1 = catalog.<Table>findByName("schema_0.table_1");
+        indexes = new ArrayList<Index>();
+
+        indexes.add(new Index("probed_0", table0.columns().get(0), true));
+        indexes.add(new Index("probed_1", table1.columns().get(0), true));
+
+        delegate = configureIndexScanOptimizer();
+    }
+
+    /**
+     * Checks that templates with identical slots share their what-if calls, and that plugging a
+     * probed index afterwards doesn't issue another one.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testProbe() throws Exception
+    {
+        List<InumPlan> templates = new ArrayList<InumPlan>();
+
+        templates.add(configureTwoTableTemplate(delegate, table0, table1, 150));
+        templates.add(configureTwoTableTemplate(delegate, table0, table1, 120));
+
+        UnseenIndexProber prober = new UnseenIndexProber(delegate);
+        long whatIfs = InumMetrics.getInstance().getCount("prober.whatif");
+
+        prober.addAll(templates, indexes);
+
+        assertThat(prober.getPairCount(), is(4L));
+        assertThat(prober.getPendingCount(), is(2));
+
+        prober.probe();
+
+        assertThat(prober.getPendingCount(), is(0));
+        assertThat(prober.getWhatIfCount(), is(2L));
+        assertThat(InumMetrics.getInstance().getCount("prober.whatif") - whatIfs, is(2L));
+
+        for (InumPlan template : templates) {
+            CompiledInumPlan compiled = template.compile();
+
+            assertThat(
+                compiled.isAccessCostKnown(compiled.getSlot(table0), indexes.get(0)), is(true));
+            assertThat(template.plug(indexes.get(0)), closeTo(6, 1e-9));
+            assertThat(template.plug(indexes.get(1)), closeTo(6, 1e-9));
+        }
+
+        prober.addAll(templates, indexes);
+
+        assertThat(prober.getPendingCount(), is(0));
+
+        verify(delegate, times(2)).explain(any(SQLStatement.class), anySetOf(Index.class));
+    }
+}
@@ -18,6 +18,7 @@ import edu.ucsc.dbtune.metadata.extraction.MySQLExtractor;
 import edu.ucsc.dbtune.metadata.extraction.PGExtractor;
 import edu.ucsc.dbtune.optimizer.DB2Optimizer;
 import edu.ucsc.dbtune.optimizer.IBGOptimizer;
+import edu.ucsc.dbtune.optimizer.IBGTemplateCache;
 import edu.ucsc.dbtune.optimizer.MySQLOptimizer;
 import edu.ucsc.dbtune.optimizer.Optimizer;
 import edu.ucsc.dbtune.optimizer.PGOptimizer;
@@ -82,6 +83,24 @@ public class DatabaseSystem
         this.optimizer  = optimizer;
     }
 
+    /**
+     * Creates a database system instance that uses an already-extracted catalog. Used to avoid 
+     * extracting the metadata again for systems that connect to the same database.
+     *
+     * @param connection
+     *     a JDBC connection
+     * @param catalog
+     *     the catalog of the database the connection is opened against
+     * @param optimizer
+     *     an optimizer
+     */
+    protected DatabaseSystem(Connection connection, Catalog catalog, Optimizer optimizer)
+    {
+        this.connection = connection;
+        this.catalog    = catalog;
+        this.optimizer  = optimizer;
+    }
+
     /**
      * Returns the corresponding optimizer.
      *
@@ -209,20 +228,13 @@ public class DatabaseSystem
 
         validate(env);
 
-        if (env.getVendor().equals(MYSQL))
-            optimizer = new MySQLOptimizer(con);
-        else if (env.getVendor().equals(DB2))
-            optimizer = new DB2Optimizer(con);
-        else if (env.getVendor().equals(PG))
-            optimizer = new PGOptimizer(con);
-        else
-            throw new SQLException("Unable to find optimizer for " + env.getVendor());
+        optimizer = newDBMSOptimizer(env, con);
 
         String[] optimizers = env.getOptimizer().split(",");
 
         for (String optimizerConf : optimizers)
             if (optimizerConf.equals(IBG))
-              optimizer = new IBGOptimizer(optimizer);
+              optimizer = new IBGOptimizer(optimizer, newTemplateCache(env));
             else if (optimizerConf.equals(INUM))
               optimizer = newOptimizer("edu.ucsc.dbtune.optimizer.InumOptimizer", optimizer, env);
             else if (optimizerConf != null &&
@@ -233,6 +245,47 @@ public class DatabaseSystem
         return optimizer;
     }
 
+    /**
+     * Returns the optimizer of the DBMS, i.e. one that isn't wrapped by any of the optimizers 
+     * given in {@link Environment#getOptimizer}.
+     *
+     * @param env
+     *      the environment object.
+     * @param con
+     *     a JDBC connection
+     * @return
+     *      an optimizer.
+     * @throws SQLException
+     *     if there isn't an implementation of {@link Optimizer} for {@link Environment#getVendor}
+     */
+    public static Optimizer newDBMSOptimizer(Environment env, Connection con) throws SQLException
+    {
+        if (env.getVendor().equals(MYSQL))
+            return new MySQLOptimizer(con);
+        else if (env.getVendor().equals(DB2))
+            return new DB2Optimizer(con);
+        else if (env.getVendor().equals(PG))
+            return new PGOptimizer(con);
+
+        throw new SQLException("Unable to find optimizer for " + env.getVendor());
+    }
+
+    /**
+     * Creates the cache of IBGs of an {@link IBGOptimizer}.
+     *
+     * @param env
+     *      environment where the size of the cache is read from
+     * @return
+     *      the cache; {@code null} if it's disabled
+     */
+    private static IBGTemplateCache newTemplateCache(Environment env)
+    {
+        if (env.getIBGTemplateCache() == 0)
+            return null;
+
+        return new IBGTemplateCache(env.getIBGTemplateCache(), env.getIBGTemplateRevalidation());
+    }
+
     /**
      * Creates an Optimizer instance with the given class name, if available in the classpath.
      *
@@ -336,6 +389,30 @@ public class DatabaseSystem
         return Factory.newDatabaseSystem(env);
     }
 
+    /**
+     * Creates a database system instance with the given properties that, instead of extracting the 
+     * metadata from the DBMS, uses the given catalog. The catalog has to correspond to the database 
+     * that {@link Environment#getJdbcURL} points to. Indexes created through the new system are 
+     * added to the given catalog, thus a catalog that is in use by another system should be {@link 
+     * edu.ucsc.dbtune.util.MetadataUtils#copyOf copied} first.
+     *
+     * @param env
+     *     an environment object used to access the properties of the system
+     * @param catalog
+     *     catalog of the database, e.g. a copy of the one of another system
+     * @return
+     *      a database system instance with the passed properties
+     * @throws SQLException
+     *      if {@link Environment#getVendor()}, {@link Environment#getJdbcURL}, {@link 
+     *      Environment#getOptimizer} are null; or if there isn't an implementation of {@link 
+     *      Optimizer} for the given optimizer option
+     */
+    public static DatabaseSystem newDatabaseSystem(Environment env, Catalog catalog)
+        throws SQLException
+    {
+        return Factory.newDatabaseSystem(env, catalog);
+    }
+
     /**
      * Creates a database system instance with the default properties from {@link Environment}.
      *
@@ -375,6 +452,24 @@ public class DatabaseSystem
          *      MetadataExtractor} for the given vendor option.
          */
         public static DatabaseSystem newDatabaseSystem(Environment env) throws SQLException
+        {
+            return newDatabaseSystem(env, null);
+        }
+
+        /**
+         * Creates a database system instance with the given properties and catalog.
+         *
+         * @param env
+         *      an environment object used to access the properties of the system
+         * @param catalog
+         *      catalog of the system; if {@code null}, it's extracted from the DBMS
+         * @return
+         *      a database system instance with the passed properties
+         * @throws SQLException
+         *      if the properties are invalid or if an error occurs while creating the system
+         */
+        public static DatabaseSystem newDatabaseSystem(Environment env, Catalog catalog)
+            throws SQLException
         {
             Connection connection;
             Optimizer optimizer;
@@ -391,10 +486,14 @@ public class DatabaseSystem
             }
 
             connection = newConnection(env);
-            extractor  = newExtractor(env);
             optimizer  = newOptimizer(env, connection);
 
-            db = new DatabaseSystem(connection, extractor, optimizer);
+            if (catalog == null) {
+                extractor = newExtractor(env);
+                db        = new DatabaseSystem(connection, extractor, optimizer);
+            } else {
+                db = new DatabaseSystem(connection, catalog, optimizer);
+            }
 
             optimizer.setCatalog(db.getCatalog());
 
@@ -3,7 +3,9 @@ package edu.ucsc.dbtune.advisor;
 import java.sql.SQLException;
 
 import java.util.LinkedList;
+import java.util.List;
 
+import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 
 import edu.ucsc.dbtune.metadata.Index;
@@ -34,6 +36,7 @@ public abstract class WorkloadObserverAdvisor
     private Workload workload;
     private LinkedList<SQLStatement> statementQueue;
     private boolean isPaused;
+    private EventBus eventBus;
 
     /**
      * Constructs a workload-observer advisor that will be listening for statements that correspond 
@@ -46,12 +49,31 @@ public abstract class WorkloadObserverAdvisor
      *      whether to start the advisor in a paused state.
      */
     protected WorkloadObserverAdvisor(Workload workload, boolean isPaused)
+    {
+        this(workload, isPaused, EventBusFactory.getEventBusInstance());
+    }
+
+    /**
+     * Constructs a workload-observer advisor that listens and posts to the given event bus instead 
+     * of the one shared by the API. This is used to host many advisors in the same JVM without 
+     * having each of them receive every statement of every workload (see {@link 
+     * edu.ucsc.dbtune.advisor.wfit.WFITHost}).
+     *
+     * @param workload
+     *      the workload that the advisor is observing.
+     * @param isPaused
+     *      whether to start the advisor in a paused state.
+     * @param eventBus
+     *      bus the advisor registers with and posts to
+     */
+    protected WorkloadObserverAdvisor(Workload workload, boolean isPaused, EventBus eventBus)
     {
         this.workload = workload;
         this.isPaused = isPaused;
         this.statementQueue = new LinkedList<SQLStatement>();
+        this.eventBus = eventBus;
 
-        EventBusFactory.getEventBusInstance().register(this);
+        eventBus.register(this);
     }
 
     /**
@@ -114,12 +136,27 @@ public abstract class WorkloadObserverAdvisor
     {
         isPaused = false;
 
-        for (SQLStatement sql : statementQueue) {
+        processNewStatements(statementQueue);
+
+        statementQueue.clear();
+    }
+
+    /**
+     * Processes a batch of statements, in order, posting to the event bus after each one is 
+     * processed. Subclasses can override it in order to overlap the work done for consecutive 
+     * statements, as long as statements are processed (and posted) in the given order.
+     *
+     * @param statements
+     *      statements to process
+     * @throws SQLException
+     *      if the {@link #processNewStatement} method throws it
+     */
+    protected void processNewStatements(List<SQLStatement> statements) throws SQLException
+    {
+        for (SQLStatement sql : statements) {
             processNewStatement(sql);
             post();
         }
-
-        statementQueue.clear();
     }
 
     /**
@@ -195,7 +232,16 @@ public abstract class WorkloadObserverAdvisor
     {
         String eventId = this.hashCode() + "_" + workload.hashCode();
 
-        EventBusFactory.getEventBusInstance().post(eventId);
+        eventBus.post(eventId);
+    }
+
+    /**
+     * @return
+     *      the bus the advisor registers with and posts to
+     */
+    public EventBus getEventBus()
+    {
+        return eventBus;
     }
 
     /**
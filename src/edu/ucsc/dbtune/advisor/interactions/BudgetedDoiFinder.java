@@ -0,0 +1,547 @@
+package edu.ucsc.dbtune.advisor.interactions;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.optimizer.PreparedSQLStatement;
+import edu.ucsc.dbtune.util.LongIntHashMap;
+
+import static edu.ucsc.dbtune.advisor.interactions.IBGAnalyzer.interactionLevel;
+
+/**
+ * Estimates the degree of interaction by sampling configurations, without ever issuing more than
+ * a given number of {@link PreparedSQLStatement#explain what-if calls} per statement. This is in
+ * contrast to {@link DefaultDoiFinder} and {@link IBGDoiFinder}, whose cost depends on the size of
+ * the candidate set.
+ * <p>
+ * The interaction of a pair {@code a, b} is the maximum of {@code doi(a, b | X) = |cost(X) -
+ * cost(X + a) - cost(X + b) + cost(X + a + b)|} over the subsets {@code X} of {@code S - {a, b}},
+ * i.e. it's expressed in cost units, as the one found by the {@link IBGAnalyzer}. The finder draws
+ * {@code X} at random for each pair (being the first one the empty set), so the interaction that
+ * it reports is a lower bound of the exact one.
+ * <p>
+ * The first {@code n + 1} what-if calls go to the empty configuration and to each of the {@code
+ * n} singletons, so that every index gets a benefit even if no pair can be sampled. The rest of
+ * the budget is spent on pairs. Since indexes on distinct tables rarely interact, samples are
+ * spent on pairs in the following order of priority:
+ * <ol>
+ *   <li>indexes on the same table that have the same leading column</li>
+ *   <li>indexes on the same table</li>
+ *   <li>any other pair</li>
+ * </ol>
+ * Every pair gets the empty set first; after that, sampling goes in rounds, where pairs of the
+ * first kind get a sample every round, pairs of the second kind every other round and the rest
+ * every fourth round. The cost of a configuration is obtained only once and sampling stops as soon
+ * as the budget doesn't allow to complete a sample.
+ * <p>
+ * The bank returned by the finder is an {@link EstimatedBank}, which tells how many subsets were
+ * looked at for each pair and, out of that, how confident the estimate is.
+ *
+ * @author Ivo Jimenez
+ * @see <a href="http://portal.acm.org/citation.cfm?id=1687766">
+ *         Index interactions in physical design tuning: modeling, analysis, and applications
+ *      </a>
+ */
+public class BudgetedDoiFinder implements DegreeOfInteractionFinder
+{
+    /** default maximum number of what-if calls per statement. */
+    public static final int DEFAULT_BUDGET = 256;
+
+    /** seed used to sample, so that the same candidate set always yields the same bank. */
+    private static final long SAMPLING_SEED = 1687766;
+
+    /** a pair of priority {@code p} gets a sample every {@code 2^(HIGHEST_PRIORITY - p)} rounds. */
+    private static final int HIGHEST_PRIORITY = 2;
+
+    private final int budget;
+    private final long seed;
+
+    /**
+     * Creates a finder with a budget of {@link #DEFAULT_BUDGET} what-if calls.
+     */
+    public BudgetedDoiFinder()
+    {
+        this(DEFAULT_BUDGET);
+    }
+
+    /**
+     * Creates a finder.
+     *
+     * @param budget
+     *      maximum number of what-if calls per statement
+     * @throws IllegalArgumentException
+     *      if the budget is less than one
+     */
+    public BudgetedDoiFinder(int budget)
+    {
+        this(budget, SAMPLING_SEED);
+    }
+
+    /**
+     * Creates a finder.
+     *
+     * @param budget
+     *      maximum number of what-if calls per statement
+     * @param seed
+     *      seed of the random generator used to draw the samples
+     * @throws IllegalArgumentException
+     *      if the budget is less than one
+     */
+    public BudgetedDoiFinder(int budget, long seed)
+    {
+        if (budget < 1)
+            throw new IllegalArgumentException("Budget should be at least 1");
+
+        this.budget = budget;
+        this.seed = seed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public EstimatedBank degreeOfInteraction(PreparedSQLStatement sql, Set<Index> s)
+        throws SQLException
+    {
+        Sampler sampler = new Sampler(sql, new ArrayList<Index>(s));
+        EstimatedBank bank = new EstimatedBank(s, sampler.subsetCount);
+        List<Pair> pairs = sampler.pairs();
+
+        if (sampler.sampleSingletons())
+            sample(sampler, pairs);
+
+        for (Pair pair : pairs) {
+            bank.assignInteraction(pair.a, pair.b, pair.doi);
+            bank.assignSampleCount(pair.a, pair.b, pair.subsets.size());
+        }
+
+        for (int i = 0; i < sampler.indexes.size(); i++)
+            bank.assignBenefit(sampler.indexes.get(i), sampler.benefit[i]);
+
+        bank.whatIfCallCount = sampler.costs.size();
+
+        return bank;
+    }
+
+    /**
+     * Samples subsets for the given pairs until the budget is spent or every subset is looked at.
+     *
+     * @param sampler
+     *      sampler of the statement
+     * @param pairs
+     *      pairs sorted by decreasing priority
+     * @throws SQLException
+     *      if a configuration can't be explained
+     */
+    private void sample(Sampler sampler, List<Pair> pairs) throws SQLException
+    {
+        for (Pair pair : pairs)
+            if (!sampler.sample(pair, new BitSet(sampler.indexes.size())))
+                return;
+
+        for (int round = 1; round <= budget; round++) {
+            boolean isExhausted = true;
+
+            for (Pair pair : pairs) {
+                if (pair.subsets.size() >= sampler.subsetCount)
+                    continue;
+
+                isExhausted = false;
+
+                if (round % (1 << (HIGHEST_PRIORITY - pair.priority)) == 0 &&
+                        !sampler.sample(pair, sampler.randomSubset(pair)))
+                    return;
+            }
+
+            if (isExhausted)
+                return;
+        }
+    }
+
+    /**
+     * Returns the priority of a pair of indexes.
+     *
+     * @param a
+     *      an index
+     * @param b
+     *      another index
+     * @return
+     *      2 if both are on the same table and have the same leading column; 1 if they're on the
+     *      same table; 0 otherwise
+     */
+    static int priority(Index a, Index b)
+    {
+        if (a.columns().isEmpty() || b.columns().isEmpty() || !a.getTable().equals(b.getTable()))
+            return 0;
+
+        if (a.columns().get(0).equals(b.columns().get(0)))
+            return 2;
+
+        return 1;
+    }
+
+    /**
+     * @return
+     *      maximum number of what-if calls per statement
+     */
+    public int getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * State of the sampling of a single statement.
+     */
+    private final class Sampler
+    {
+        private final PreparedSQLStatement sql;
+        private final List<Index> indexes;
+        private final Map<BitSet, Double> costs;
+        private final double[] benefit;
+        private final long subsetCount;
+        private final Random random;
+
+        /**
+         * @param sql
+         *      statement being analyzed
+         * @param indexes
+         *      the candidate set; the bit {@code i} of a configuration corresponds to the {@code
+         *      i}-th element
+         */
+        Sampler(PreparedSQLStatement sql, List<Index> indexes)
+        {
+            Collections.sort(indexes);
+
+            this.sql = sql;
+            this.indexes = indexes;
+            this.costs = new HashMap<BitSet, Double>();
+            this.benefit = new double[indexes.size()];
+
+            if (indexes.size() < 2)
+                this.subsetCount = 0;
+            else if (indexes.size() - 2 >= Long.SIZE - 1)
+                this.subsetCount = Long.MAX_VALUE;
+            else
+                this.subsetCount = 1L << (indexes.size() - 2);
+
+            this.random = new Random(seed);
+        }
+
+        /**
+         * @return
+         *      every pair of the candidate set, sorted by decreasing priority
+         */
+        List<Pair> pairs()
+        {
+            List<Pair> pairs = new ArrayList<Pair>();
+
+            for (int a = 0; a < indexes.size(); a++)
+                for (int b = a + 1; b < indexes.size(); b++)
+                    pairs.add(new Pair(indexes, a, b));
+
+            Collections.sort(pairs, new Comparator<Pair>() {
+                @Override
+                public int compare(Pair p1, Pair p2)
+                {
+                    return p2.priority - p1.priority;
+                }
+            });
+
+            return pairs;
+        }
+
+        /**
+         * Explains the empty configuration and each singleton, and takes the benefit of each index
+         * with respect to the empty configuration.
+         *
+         * @return
+         *      {@code false} if the budget doesn't allow to explain every singleton, in which case
+         *      only the first ones are explained; {@code true} otherwise
+         * @throws SQLException
+         *      if a configuration can't be explained
+         */
+        boolean sampleSingletons() throws SQLException
+        {
+            double costEmpty = cost(new BitSet(indexes.size()));
+
+            for (int i = 0; i < indexes.size(); i++) {
+                if (costs.size() >= budget)
+                    return false;
+
+                BitSet singleton = new BitSet(indexes.size());
+
+                singleton.set(i);
+
+                benefit[i] = Math.max(benefit[i], costEmpty - cost(singleton));
+            }
+
+            return true;
+        }
+
+        /**
+         * Draws a subset of {@code S - {a, b}}.
+         *
+         * @param pair
+         *      pair {@code a, b}
+         * @return
+         *      the subset
+         */
+        BitSet randomSubset(Pair pair)
+        {
+            BitSet x = new BitSet(indexes.size());
+
+            for (int i = 0; i < indexes.size(); i++)
+                if (i != pair.i && i != pair.j && random.nextBoolean())
+                    x.set(i);
+
+            return x;
+        }
+
+        /**
+         * Updates the interaction of a pair and the benefit of its indexes with respect to the
+         * given subset. Nothing is done if the subset was already sampled for the pair.
+         *
+         * @param pair
+         *      pair being sampled
+         * @param x
+         *      subset of {@code S - {a, b}}; it's modified
+         * @return
+         *      {@code false} if the budget doesn't allow to explain the configurations that aren't
+         *      known yet, in which case nothing is done; {@code true} otherwise
+         * @throws SQLException
+         *      if a configuration can't be explained
+         */
+        boolean sample(Pair pair, BitSet x) throws SQLException
+        {
+            if (pair.subsets.contains(x))
+                return true;
+
+            BitSet xa = (BitSet) x.clone();
+            BitSet xb = (BitSet) x.clone();
+            BitSet xab = (BitSet) x.clone();
+
+            xa.set(pair.i);
+            xb.set(pair.j);
+            xab.set(pair.i);
+            xab.set(pair.j);
+
+            int unknown = 0;
+
+            for (BitSet configuration : new BitSet[] {x, xa, xb, xab})
+                if (!costs.containsKey(configuration))
+                    unknown++;
+
+            if (costs.size() + unknown > budget)
+                return false;
+
+            pair.subsets.add((BitSet) x.clone());
+
+            double costX = cost(x);
+            double costXa = cost(xa);
+            double costXb = cost(xb);
+            double costXab = cost(xab);
+
+            benefit[pair.i] = Math.max(benefit[pair.i], costX - costXa);
+            benefit[pair.j] = Math.max(benefit[pair.j], costX - costXb);
+            pair.doi = Math.max(pair.doi, interactionLevel(costX, costXa, costXb, costXab));
+
+            return true;
+        }
+
+        /**
+         * @param configuration
+         *      a configuration
+         * @return
+         *      its cost, explaining it if it hasn't been before
+         * @throws SQLException
+         *      if the configuration can't be explained
+         */
+        private double cost(BitSet configuration) throws SQLException
+        {
+            Double cost = costs.get(configuration);
+
+            if (cost == null) {
+                Set<Index> conf = new HashSet<Index>();
+
+                for (int i = configuration.nextSetBit(0); i >= 0;
+                        i = configuration.nextSetBit(i + 1))
+                    conf.add(indexes.get(i));
+
+                cost = sql.explain(conf).getSelectCost();
+
+                costs.put(configuration, cost);
+            }
+
+            return cost;
+        }
+    }
+
+    /**
+     * A pair of indexes and what has been sampled for it.
+     */
+    private static final class Pair
+    {
+        private final Index a;
+        private final Index b;
+        private final int i;
+        private final int j;
+        private final int priority;
+        private final Set<BitSet> subsets;
+        private double doi;
+
+        /**
+         * @param indexes
+         *      the candidate set
+         * @param i
+         *      position of the first index
+         * @param j
+         *      position of the second index
+         */
+        Pair(List<Index> indexes, int i, int j)
+        {
+            this.a = indexes.get(i);
+            this.b = indexes.get(j);
+            this.i = i;
+            this.j = j;
+            this.priority = priority(a, b);
+            this.subsets = new HashSet<BitSet>();
+        }
+    }
+
+    /**
+     * Interactions estimated out of a sample of the subsets of the candidate set. For each pair
+     * {@code a, b}, the bank tells the number {@code k} of distinct subsets {@code X} that were
+     * looked at. Since the reported interaction is the maximum of {@code k} random observations,
+     * it's at least the {@code q}-quantile of {@code doi(a, b | X)} with confidence {@code 1 -
+     * q^k}, regardless of how the interactions are distributed.
+     */
+    public static class EstimatedBank extends InteractionBank
+    {
+        private final LongIntHashMap sampleCounts;
+        private final long subsetCount;
+        private int whatIfCallCount;
+
+        /**
+         * @param candidateSet
+         *      set of indexes for which interactions are stored
+         * @param subsetCount
+         *      number of subsets of the candidate set without two of its elements
+         */
+        EstimatedBank(Set<Index> candidateSet, long subsetCount)
+        {
+            super(candidateSet);
+
+            this.sampleCounts = new LongIntHashMap();
+            this.subsetCount = subsetCount;
+        }
+
+        /**
+         * @param a
+         *      an index
+         * @param b
+         *      another index
+         * @param count
+         *      number of subsets sampled for the pair
+         */
+        void assignSampleCount(Index a, Index b, int count)
+        {
+            sampleCounts.put(key(a, b), count);
+        }
+
+        /**
+         * Returns the number of distinct subsets that were looked at for a pair.
+         *
+         * @param a
+         *      an index
+         * @param b
+         *      another index
+         * @return
+         *      the number of subsets; zero if the pair wasn't sampled
+         */
+        public int getSampleCount(Index a, Index b)
+        {
+            int count = sampleCounts.get(key(a, b));
+
+            return count == LongIntHashMap.NO_VALUE ? 0 : count;
+        }
+
+        /**
+         * Returns the confidence of the interaction of a pair being at least the given quantile of
+         * its interactions over all the subsets. Only the subsets drawn at random count, i.e. the
+         * empty set, which every sampled pair gets first, doesn't.
+         *
+         * @param a
+         *      an index
+         * @param b
+         *      another index
+         * @param quantile
+         *      a number between 0 and 1
+         * @return
+         *      {@code 1 - quantile^(k - 1)}, where {@code k} is the {@link #getSampleCount sample
+         *      count} of the pair; 0 if the pair wasn't sampled; 1 if every subset was looked at
+         */
+        public double getConfidence(Index a, Index b, double quantile)
+        {
+            int count = getSampleCount(a, b);
+
+            if (count == 0)
+                return 0.0;
+
+            if (count >= subsetCount)
+                return 1.0;
+
+            return 1.0 - Math.pow(quantile, count - 1);
+        }
+
+        /**
+         * Tells whether the interaction of a pair is exact, i.e. whether every subset was looked at.
+         *
+         * @param a
+         *      an index
+         * @param b
+         *      another index
+         * @return
+         *      {@code true} if the interaction is exact
+         */
+        public boolean isExact(Index a, Index b)
+        {
+            int count = getSampleCount(a, b);
+
+            return count > 0 && count >= subsetCount;
+        }
+
+        /**
+         * @return
+         *      number of what-if calls issued to estimate the interactions
+         */
+        public int getWhatIfCallCount()
+        {
+            return whatIfCallCount;
+        }
+
+        /**
+         * @param a
+         *      an index
+         * @param b
+         *      another index
+         * @return
+         *      key of the pair, regardless of the order of the indexes
+         */
+        private static long key(Index a, Index b)
+        {
+            return a.getId() < b.getId()
+                ? LongIntHashMap.pack(a.getId(), b.getId())
+                : LongIntHashMap.pack(b.getId(), a.getId());
+        }
+    }
+}
@@ -1,21 +1,21 @@
 package edu.ucsc.dbtune.advisor.interactions;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
-
-import static java.lang.Math.abs;
-import static java.lang.Math.max;
-
-import com.google.common.collect.Sets;
+import java.util.concurrent.Callable;
 
 import edu.ucsc.dbtune.metadata.Index;
 import edu.ucsc.dbtune.optimizer.PreparedSQLStatement;
+import edu.ucsc.dbtune.util.WorkerPool;
 
-import static com.google.common.collect.Sets.cartesianProduct;
-import static com.google.common.collect.Sets.difference;
-import static com.google.common.collect.Sets.powerSet;
-import static com.google.common.collect.Sets.union;
+import static java.lang.Math.abs;
 
 /**
  * Computes the degree of interaction by implementing the NAIVE algorithm described in "Index 
@@ -27,6 +27,14 @@ import static com.google.common.collect.Sets.union;
  * contrast to more sophisticated techniques, like {@link IBGDoiFinder}, which may explore the 
  * internal structure of a {@link PreparedSQLStatement} in order to improve the performance of the 
  * interaction discovering process.
+ * <p>
+ * The cost of every configuration that the algorithm looks at is obtained exactly once: for a
+ * candidate set {@code S} of up to {@link #getMaxExactSize} indexes, the cost of each subset of
+ * {@code S} is stored in an array indexed by the bitmask of the subset and the interaction of each
+ * pair {@code a, b} is then derived out of the array, by looking at every {@code X} contained in
+ * {@code S - {a, b}}. For larger sets, {@code X} is instead drawn at random {@link #getSampleSize}
+ * times per pair (one of them being the empty set), so the interactions found are lower bounds of
+ * the exact ones. Optionally, the costs are obtained in parallel through the {@link WorkerPool}.
  *
  * @author Ivo Jimenez
  * @see <a href="http://portal.acm.org/citation.cfm?id=1687766">
@@ -35,6 +43,64 @@ import static com.google.common.collect.Sets.union;
  */
 public class DefaultDoiFinder implements DegreeOfInteractionFinder
 {
+    /** default maximum size of a candidate set whose interactions are computed exactly. */
+    public static final int DEFAULT_MAX_EXACT_SIZE = 12;
+
+    /** default number of subsets sampled per pair. */
+    public static final int DEFAULT_SAMPLE_SIZE = 32;
+
+    /** the array of costs can't have more than 2^30 entries. */
+    private static final int MAX_EXACT_SIZE_LIMIT = 30;
+
+    /** seed used to sample, so that the same candidate set always yields the same bank. */
+    private static final long SAMPLING_SEED = 1687766;
+
+    /** number of cost tasks per thread, so that threads don't go idle on uneven explain times. */
+    private static final int TASKS_PER_THREAD = 4;
+
+    private final int maxExactSize;
+    private final int sampleSize;
+    private final boolean isParallel;
+
+    /**
+     * Creates a finder that computes the interactions exactly for sets of up to {@link
+     * #DEFAULT_MAX_EXACT_SIZE} indexes and that explains configurations one at a time.
+     */
+    public DefaultDoiFinder()
+    {
+        this(DEFAULT_MAX_EXACT_SIZE, DEFAULT_SAMPLE_SIZE, false);
+    }
+
+    /**
+     * Creates a finder.
+     *
+     * @param maxExactSize
+     *      maximum size of a candidate set whose interactions are computed exactly
+     * @param sampleSize
+     *      number of subsets that are sampled per pair when the candidate set is larger than {@code
+     *      maxExactSize}
+     * @param isParallel
+     *      whether configurations are explained concurrently; this should be {@code true} only if
+     *      the {@link PreparedSQLStatement#explain} method of the statements given to the finder
+     *      can be called concurrently
+     * @throws IllegalArgumentException
+     *      if {@code maxExactSize} is negative or greater than 30; if {@code sampleSize} is less
+     *      than one
+     */
+    public DefaultDoiFinder(int maxExactSize, int sampleSize, boolean isParallel)
+    {
+        if (maxExactSize < 0 || maxExactSize > MAX_EXACT_SIZE_LIMIT)
+            throw new IllegalArgumentException(
+                "Maximum exact size should be between 0 and " + MAX_EXACT_SIZE_LIMIT);
+
+        if (sampleSize < 1)
+            throw new IllegalArgumentException("Sample size should be at least 1");
+
+        this.maxExactSize = maxExactSize;
+        this.sampleSize = sampleSize;
+        this.isParallel = isParallel;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -43,37 +109,340 @@ public class DefaultDoiFinder implements DegreeOfInteractionFinder
         throws SQLException
     {
         InteractionBank bank = new InteractionBank(s);
+        List<Index> indexes = new ArrayList<Index>(s);
+
+        if (indexes.size() <= maxExactSize)
+            exact(sql, indexes, bank);
+        else
+            sampled(sql, indexes, bank);
 
-        for (Set<Index> xAll : powerSet(s)) {
+        return bank;
+    }
+
+    /**
+     * Computes the interactions by looking at every subset of the candidate set.
+     *
+     * @param sql
+     *      statement being analyzed
+     * @param indexes
+     *      the candidate set; the bit {@code i} of a configuration's mask corresponds to the
+     *      {@code i}-th element
+     * @param bank
+     *      bank where interactions and benefits are stored
+     * @throws SQLException
+     *      if a configuration can't be explained
+     */
+    private void exact(PreparedSQLStatement sql, List<Index> indexes, InteractionBank bank)
+        throws SQLException
+    {
+        int n = indexes.size();
+        List<BitSet> configurations = new ArrayList<BitSet>(1 << n);
 
-            Set<Index> x = difference(s, xAll).immutableCopy();
+        for (int mask = 0; mask < 1 << n; mask++) {
+            BitSet configuration = new BitSet(n);
 
-            @SuppressWarnings("unchecked")
-            Set<List<Index>> pairs = cartesianProduct(x, x);
+            for (int i = 0; i < n; i++)
+                if ((mask & 1 << i) != 0)
+                    configuration.set(i);
 
-            for (List<Index> pair : pairs) {
+            configurations.add(configuration);
+        }
 
-                final Index a = pair.get(0);
-                final Index b = pair.get(1);
+        double[] cost = costs(sql, indexes, configurations);
+        double[] benefit = new double[n];
+        double[][] doi = new double[n][n];
 
-                if (a.equals(b))
+        for (int x = 0; x < cost.length; x++) {
+            for (int a = 0; a < n; a++) {
+                if ((x & 1 << a) != 0)
                     continue;
 
-                final Set<Index> xa = union(x, Sets.<Index>newHashSet(a)).immutableCopy();
-                final Set<Index> xb = union(x, Sets.<Index>newHashSet(b)).immutableCopy();
-                final Set<Index> xab = union(xa, Sets.<Index>newHashSet(b)).immutableCopy();
+                int xa = x | 1 << a;
+
+                benefit[a] = Math.max(benefit[a], cost[x] - cost[xa]);
 
-                final double costX = sql.explain(x).getSelectCost();
-                final double costXa = sql.explain(xa).getSelectCost();
-                final double costXb = sql.explain(xb).getSelectCost();
-                final double costXab = sql.explain(xab).getSelectCost();
+                for (int b = a + 1; b < n; b++) {
+                    if ((x & 1 << b) != 0)
+                        continue;
 
-                final double d = abs(costX - costXa - costXb + costXab) / costXab;
+                    double d =
+                        interactionLevel(cost[x], cost[xa], cost[x | 1 << b], cost[xa | 1 << b]);
 
-                bank.assignInteraction(a, b, max(bank.interactionLevel(a, b), d));
+                    if (d > doi[a][b])
+                        doi[a][b] = d;
+                }
             }
         }
 
-        return bank;
+        assign(indexes, benefit, doi, bank);
+    }
+
+    /**
+     * Computes the interactions by sampling subsets of the candidate set. For each pair {@code a,
+     * b}, {@link #getSampleSize} sets {@code X} are drawn out of {@code S - {a, b}}, being the
+     * first one the empty set. Configurations shared by distinct samples are explained only once.
+     *
+     * @param sql
+     *      statement being analyzed
+     * @param indexes
+     *      the candidate set; the bit {@code i} of a configuration corresponds to the {@code i}-th
+     *      element
+     * @param bank
+     *      bank where interactions and benefits are stored
+     * @throws SQLException
+     *      if a configuration can't be explained
+     */
+    private void sampled(PreparedSQLStatement sql, List<Index> indexes, InteractionBank bank)
+        throws SQLException
+    {
+        int n = indexes.size();
+        Random random = new Random(SAMPLING_SEED);
+        Map<BitSet, Integer> positions = new HashMap<BitSet, Integer>();
+        List<BitSet> configurations = new ArrayList<BitSet>();
+
+        // for each pair and sample, the positions of X, Xa, Xb and Xab in the configuration list
+        int[][][] samples = new int[n][n][];
+
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                samples[a][b] = new int[sampleSize * 4];
+
+                for (int k = 0; k < sampleSize; k++) {
+                    BitSet x = new BitSet(n);
+
+                    if (k > 0)
+                        for (int i = 0; i < n; i++)
+                            if (i != a && i != b && random.nextBoolean())
+                                x.set(i);
+
+                    samples[a][b][k * 4] = position(x, positions, configurations);
+                    x.set(a);
+                    samples[a][b][k * 4 + 1] = position(x, positions, configurations);
+                    x.set(b);
+                    samples[a][b][k * 4 + 3] = position(x, positions, configurations);
+                    x.clear(a);
+                    samples[a][b][k * 4 + 2] = position(x, positions, configurations);
+                }
+            }
+        }
+
+        double[] cost = costs(sql, indexes, configurations);
+        double[] benefit = new double[n];
+        double[][] doi = new double[n][n];
+
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                int[] sample = samples[a][b];
+
+                for (int k = 0; k < sample.length; k += 4) {
+                    double costX = cost[sample[k]];
+                    double costXa = cost[sample[k + 1]];
+                    double costXb = cost[sample[k + 2]];
+                    double d = interactionLevel(costX, costXa, costXb, cost[sample[k + 3]]);
+
+                    benefit[a] = Math.max(benefit[a], costX - costXa);
+                    benefit[b] = Math.max(benefit[b], costX - costXb);
+
+                    if (d > doi[a][b])
+                        doi[a][b] = d;
+                }
+            }
+        }
+
+        assign(indexes, benefit, doi, bank);
+    }
+
+    /**
+     * Returns the position of a configuration in the list of configurations, adding it if it's
+     * not there.
+     *
+     * @param configuration
+     *      configuration; it's copied if added
+     * @param positions
+     *      position of each configuration in the list
+     * @param configurations
+     *      list of distinct configurations
+     * @return
+     *      position of the configuration
+     */
+    private static int position(
+            BitSet configuration, Map<BitSet, Integer> positions, List<BitSet> configurations)
+    {
+        Integer position = positions.get(configuration);
+
+        if (position == null) {
+            BitSet copy = (BitSet) configuration.clone();
+            position = configurations.size();
+            configurations.add(copy);
+            positions.put(copy, position);
+        }
+
+        return position;
+    }
+
+    /**
+     * Explains each of the given configurations, concurrently if the finder is parallel.
+     *
+     * @param sql
+     *      statement being analyzed
+     * @param indexes
+     *      the candidate set
+     * @param configurations
+     *      configurations to explain, where the bit {@code i} corresponds to the {@code i}-th
+     *      element of {@code indexes}
+     * @return
+     *      the cost of each configuration, in the same order as {@code configurations}
+     * @throws SQLException
+     *      if a configuration can't be explained
+     */
+    private double[] costs(
+            final PreparedSQLStatement sql,
+            final List<Index> indexes,
+            final List<BitSet> configurations)
+        throws SQLException
+    {
+        final double[] cost = new double[configurations.size()];
+
+        if (!isParallel || WorkerPool.size() == 1) {
+            explain(sql, indexes, configurations, cost, 0, cost.length);
+            return cost;
+        }
+
+        int taskCount = Math.min(cost.length, WorkerPool.size() * TASKS_PER_THREAD);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(taskCount);
+
+        for (int t = 0; t < taskCount; t++) {
+            final int from = (int) ((long) cost.length * t / taskCount);
+            final int to = (int) ((long) cost.length * (t + 1) / taskCount);
+
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws SQLException
+                {
+                    explain(sql, indexes, configurations, cost, from, to);
+                    return null;
+                }
+            });
+        }
+
+        try {
+            WorkerPool.invokeAll(tasks);
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof SQLException)
+                throw (SQLException) e.getCause();
+            throw e;
+        }
+
+        return cost;
+    }
+
+    /**
+     * Explains a range of configurations.
+     *
+     * @param sql
+     *      statement being analyzed
+     * @param indexes
+     *      the candidate set
+     * @param configurations
+     *      configurations to explain
+     * @param cost
+     *      array where the cost of each configuration is stored
+     * @param from
+     *      first position of the range, inclusive
+     * @param to
+     *      last position of the range, exclusive
+     * @throws SQLException
+     *      if a configuration can't be explained
+     */
+    private static void explain(
+            PreparedSQLStatement sql,
+            List<Index> indexes,
+            List<BitSet> configurations,
+            double[] cost,
+            int from,
+            int to)
+        throws SQLException
+    {
+        for (int c = from; c < to; c++) {
+            BitSet configuration = configurations.get(c);
+            Set<Index> conf = new HashSet<Index>();
+
+            for (int i = configuration.nextSetBit(0); i >= 0; i = configuration.nextSetBit(i + 1))
+                conf.add(indexes.get(i));
+
+            cost[c] = sql.explain(conf).getSelectCost();
+        }
+    }
+
+    /**
+     * Stores the benefits and interactions in the bank.
+     *
+     * @param indexes
+     *      the candidate set
+     * @param benefit
+     *      benefit of each index
+     * @param doi
+     *      interaction of each pair; only the upper half of the matrix is read
+     * @param bank
+     *      bank where interactions and benefits are stored
+     */
+    private static void assign(
+            List<Index> indexes, double[] benefit, double[][] doi, InteractionBank bank)
+    {
+        for (int a = 0; a < indexes.size(); a++) {
+            bank.assignBenefit(indexes.get(a), benefit[a]);
+
+            for (int b = a + 1; b < indexes.size(); b++)
+                bank.assignInteraction(indexes.get(a), indexes.get(b), doi[a][b]);
+        }
+    }
+
+    /**
+     * Computes the degree of interaction of {@code a} and {@code b} with respect to {@code X},
+     * relative to the cost of {@code X + {a, b}}.
+     *
+     * @param x
+     *      cost of {@code X}
+     * @param xa
+     *      cost of {@code X + {a}}
+     * @param xb
+     *      cost of {@code X + {b}}
+     * @param xab
+     *      cost of {@code X + {a, b}}
+     * @return
+     *      the degree of interaction
+     */
+    static double interactionLevel(double x, double xa, double xb, double xab)
+    {
+        double d = abs(x - xa - xb + xab);
+
+        return xab > 0 ? d / xab : d;
+    }
+
+    /**
+     * @return
+     *      maximum size of a candidate set whose interactions are computed exactly
+     */
+    public int getMaxExactSize()
+    {
+        return maxExactSize;
+    }
+
+    /**
+     * @return
+     *      number of subsets that are sampled per pair when the candidate set is large
+     */
+    public int getSampleSize()
+    {
+        return sampleSize;
+    }
+
+    /**
+     * @return
+     *      whether configurations are explained concurrently
+     */
+    public boolean isParallel()
+    {
+        return isParallel;
     }
 }
@@ -2,18 +2,32 @@ package edu.ucsc.dbtune.advisor.interactions;
 
 import java.sql.SQLException;
 
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import edu.ucsc.dbtune.ibg.IBGCoveringNodeFinder;
 import edu.ucsc.dbtune.ibg.IndexBenefitGraph;
 import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.util.BitArraySet;
+import edu.ucsc.dbtune.util.WorkerPool;
 
 /**
  * This class implements the qINTERACT algorithm described in Schnaitter et. al. for computing the 
  * degree of interaction for all the pairs {@latex.inline $a,b \\in S$}.
+ * <p>
+ * A fully constructed IBG can be {@link #analyze analyzed} in parallel. The candidates that are
+ * examined at a node depend on the used indexes of the nodes visited before it, so the order of the
+ * serial traversal is computed first, along with the point in it at which each index is first
+ * used. Nodes are then distributed among the threads of the {@link WorkerPool}, each with its own
+ * scratch space and bank. Since banks only keep the maximum of the values assigned to them, merging
+ * them yields exactly the bank of the serial analysis.
  *
  * @author Karl Schnaitter
  * @author Ivo Jimenez
@@ -23,6 +37,12 @@ import edu.ucsc.dbtune.metadata.Index;
  */
 public final class IBGAnalyzer
 {
+    /** number of tasks per thread of the pool, so that threads don't go idle on uneven nodes. */
+    private static final int TASKS_PER_THREAD = 4;
+
+    /** minimum number of nodes analyzed by a task. */
+    private static final int NODES_PER_TASK = 8;
+
     // queue of nodes to explore
     private final Deque<IndexBenefitGraph.Node> nodeQueue;
 
@@ -35,7 +55,7 @@ public final class IBGAnalyzer
     private final Set<Index> allUsedIndexes;
 
     // graph traversal objects
-    private IBGCoveringNodeFinder coveringNodeFinder = new IBGCoveringNodeFinder();
+    private final Workspace workspace = new Workspace();
 
     // keeps track of visited nodes
     private final Set<IndexBenefitGraph.Node> visitedNodes;
@@ -137,18 +157,7 @@ public final class IBGAnalyzer
     private boolean analyzeNode(IndexBenefitGraph.Node node, InteractionBank bank)
     {
         Set<Index> candidates = new HashSet<Index>();
-        Set<Index> used = new HashSet<Index>();
-        Set<Index> bitsetYaSimple = new HashSet<Index>();
-        Set<Index> bitsetYa = new HashSet<Index>();
-        Set<Index> bitsetYbMinus = new HashSet<Index>();
-        Set<Index> bitsetYbPlus = new HashSet<Index>();
-        Set<Index> bitsetYab = new HashSet<Index>();
-        Set<Index> bitsetY = new HashSet<Index>();
-        
-        bitsetY.addAll(node.getConfiguration());
-
-        // get the used set
-        used.addAll(node.getUsedIndexes());
+        Set<Index> used = node.getUsedIndexes();
 
         // store the used set
         allUsedIndexes.addAll(used);
@@ -158,6 +167,35 @@ public final class IBGAnalyzer
         candidates.removeAll(used);
         candidates.retainAll(allUsedIndexes);
 
+        return analyzeNode(node, rootNode, candidates, bank, workspace);
+    }
+
+    /**
+     * Analyzes a specific node in the {@link IndexBenefitGraph graph}.
+     *
+     * @param node
+     *      the node being analyzed
+     * @param rootNode
+     *      root of the graph
+     * @param candidates
+     *      the indexes that are examined at the node
+     * @param bank
+     *      the logger used to log interactions
+     * @param ws
+     *      scratch space of the calling thread
+     * @return
+     *      whether or not the analyses completed. When the analysis doesn't complete it is due to 
+     *      the IBG not being completely expanded.
+     */
+    private static boolean analyzeNode(
+            IndexBenefitGraph.Node node,
+            IndexBenefitGraph.Node rootNode,
+            Set<Index> candidates,
+            InteractionBank bank,
+            Workspace ws)
+    {
+        Set<Index> bitsetY = node.getConfiguration();
+
         // set false on first failure
         boolean retval = true;
 
@@ -170,10 +208,10 @@ public final class IBGAnalyzer
             costY = y.cost();
 
             // fetch YaSimple
-            bitsetYaSimple.addAll(bitsetY);
-            bitsetYaSimple.add(a);
+            ws.copy(ws.bitsetYaSimple, bitsetY);
+            ws.bitsetYaSimple.add(a);
 
-            IndexBenefitGraph.Node yaSimple = coveringNodeFinder.find(rootNode, bitsetYaSimple);
+            IndexBenefitGraph.Node yaSimple = ws.finder.find(rootNode, ws.bitsetYaSimple);
 
             if (yaSimple == null)
                 retval = false;
@@ -196,21 +234,21 @@ public final class IBGAnalyzer
                 //     continue;
 
                 // fetch Ya and Yab
-                bitsetYa.addAll(bitsetY);
-                bitsetYa.add(a);
-                bitsetYa.remove(b);
+                ws.copy(ws.bitsetYa, bitsetY);
+                ws.bitsetYa.add(a);
+                ws.bitsetYa.remove(b);
 
-                ya = coveringNodeFinder.find(rootNode, bitsetYa);
+                ya = ws.finder.find(rootNode, ws.bitsetYa);
                 if (ya == null) {
                     retval = false;
                     continue;
                 }
 
-                bitsetYab.addAll(bitsetY);
-                bitsetYab.add(a);
-                bitsetYab.add(b);
+                ws.copy(ws.bitsetYab, bitsetY);
+                ws.bitsetYab.add(a);
+                ws.bitsetYab.add(b);
 
-                yab = coveringNodeFinder.find(rootNode, bitsetYab);
+                yab = ws.finder.find(rootNode, ws.bitsetYab);
 
                 if (yab == null) {
                     retval = false;
@@ -221,18 +259,18 @@ public final class IBGAnalyzer
                 costYab = yab.cost();
 
                 // fetch YbMinus and YbPlus
-                bitsetYbMinus.clear();
-                bitsetYbMinus.addAll(y.getUsedIndexes());
-                bitsetYbMinus.addAll(ya.getUsedIndexes());
-                bitsetYbMinus.addAll(yab.getUsedIndexes());
-                bitsetYbMinus.remove(a);
-                bitsetYbMinus.add(b);
+                ws.bitsetYbMinus.clear();
+                ws.bitsetYbMinus.addAll(y.getUsedIndexes());
+                ws.bitsetYbMinus.addAll(ya.getUsedIndexes());
+                ws.bitsetYbMinus.addAll(yab.getUsedIndexes());
+                ws.bitsetYbMinus.remove(a);
+                ws.bitsetYbMinus.add(b);
 
-                bitsetYbPlus.addAll(bitsetY);
-                bitsetYbPlus.remove(a);
-                bitsetYbPlus.add(b);
+                ws.copy(ws.bitsetYbPlus, bitsetY);
+                ws.bitsetYbPlus.remove(a);
+                ws.bitsetYbPlus.add(b);
 
-                ybPlus = coveringNodeFinder.find(rootNode, bitsetYbPlus);
+                ybPlus = ws.finder.find(rootNode, ws.bitsetYbPlus);
 
                 // try to set lower bound based on Y, Ya, YbPlus, and Yab
                 if (ybPlus != null)
@@ -241,7 +279,7 @@ public final class IBGAnalyzer
                 else
                     retval = false;
 
-                ybMinus = coveringNodeFinder.find(rootNode, bitsetYbMinus);
+                ybMinus = ws.finder.find(rootNode, ws.bitsetYbMinus);
 
                 // try to set lower bound based on Y, Ya, YbMinus, and Yab
                 if (ybMinus != null)
@@ -273,7 +311,7 @@ public final class IBGAnalyzer
      * @return
      *      the level of interaction for indexes associated with costs {@code a} and {@code b}.
      */
-    private static double interactionLevel(double empty, double a, double b, double ab)
+    static double interactionLevel(double empty, double a, double b, double ab)
     {
         return Math.abs(empty - a - b + ab);
     }
@@ -302,6 +340,8 @@ public final class IBGAnalyzer
 
     /**
      * Analyze an IBG to identify index interactions. The IBG is assumed to be fully constructed.
+     * The nodes are analyzed in parallel and the result is the same as the one of the serial
+     * analysis.
      *
      * @param ibg
      *      the IBG to be analyzed
@@ -311,6 +351,122 @@ public final class IBGAnalyzer
      *      if the ibg is not fully constructed
      */
     public static InteractionBank analyze(IndexBenefitGraph ibg) throws SQLException
+    {
+        final IndexBenefitGraph.Node rootNode = ibg.rootNode();
+        final List<IndexBenefitGraph.Node> order = new ArrayList<IndexBenefitGraph.Node>();
+        final Map<Index, Integer> firstUse = new HashMap<Index, Integer>();
+
+        if (!traverse(rootNode, order, firstUse))
+            return analyzeSerially(ibg);
+
+        final Set<Index> rootConfiguration = rootNode.getConfiguration();
+        int taskCount =
+            Math.max(
+                1, Math.min(WorkerPool.size() * TASKS_PER_THREAD, order.size() / NODES_PER_TASK));
+        List<Callable<InteractionBank>> tasks = new ArrayList<Callable<InteractionBank>>();
+
+        for (int t = 0; t < taskCount; t++) {
+            final int first = t;
+            final int step = taskCount;
+
+            // interleaved, so that every task gets nodes from all the levels of the graph
+            tasks.add(new Callable<InteractionBank>() {
+                @Override
+                public InteractionBank call()
+                {
+                    InteractionBank bank = new InteractionBank(rootConfiguration);
+                    Workspace ws = new Workspace();
+
+                    for (int k = first; k < order.size(); k += step) {
+                        IndexBenefitGraph.Node node = order.get(k);
+                        Set<Index> candidates = new HashSet<Index>();
+
+                        for (Index i : rootConfiguration) {
+                            Integer use = firstUse.get(i);
+
+                            if (use != null && use <= k)
+                                candidates.add(i);
+                        }
+
+                        candidates.removeAll(node.getUsedIndexes());
+
+                        if (!analyzeNode(node, rootNode, candidates, bank, ws))
+                            return null;
+                    }
+
+                    return bank;
+                }
+            });
+        }
+
+        List<InteractionBank> banks = WorkerPool.invokeAll(tasks);
+
+        if (banks.contains(null))
+            // a node would have been revisited by the serial analysis
+            return analyzeSerially(ibg);
+
+        InteractionBank bank = banks.get(0);
+
+        for (int t = 1; t < banks.size(); t++)
+            bank.merge(banks.get(t));
+
+        return bank;
+    }
+
+    /**
+     * Computes the order in which the serial analysis visits the nodes of a fully constructed IBG,
+     * along with the position in that order of the first node that uses each index.
+     *
+     * @param rootNode
+     *      root of the graph
+     * @param order
+     *      list where the nodes are added in the order they're visited
+     * @param firstUse
+     *      map where the position of the first node that uses an index is put
+     * @return
+     *      {@code false} if the graph isn't fully constructed; {@code true} otherwise
+     */
+    private static boolean traverse(
+            IndexBenefitGraph.Node rootNode,
+            List<IndexBenefitGraph.Node> order,
+            Map<Index, Integer> firstUse)
+    {
+        Deque<IndexBenefitGraph.Node> queue = new LinkedList<IndexBenefitGraph.Node>();
+        Set<IndexBenefitGraph.Node> visited = new HashSet<IndexBenefitGraph.Node>();
+
+        queue.add(rootNode);
+
+        while (!queue.isEmpty()) {
+            IndexBenefitGraph.Node node = queue.remove();
+
+            if (!node.isExpanded())
+                return false;
+
+            if (!visited.add(node))
+                continue;
+
+            for (Index i : node.getUsedIndexes())
+                if (!firstUse.containsKey(i))
+                    firstUse.put(i, order.size());
+
+            order.add(node);
+            queue.addAll(node.getChildren());
+        }
+
+        return true;
+    }
+
+    /**
+     * Analyze an IBG one node at a time. The IBG is assumed to be fully constructed.
+     *
+     * @param ibg
+     *      the IBG to be analyzed
+     * @return
+     *      the interactions that were identified
+     * @throws SQLException
+     *      if the ibg is not fully constructed
+     */
+    static InteractionBank analyzeSerially(IndexBenefitGraph ibg) throws SQLException
     {
         InteractionBank bank = new InteractionBank(ibg.rootNode().getConfiguration());
         IBGAnalyzer analyzer = new IBGAnalyzer(ibg);
@@ -332,4 +488,31 @@ public final class IBGAnalyzer
 
         return bank;
     }
+
+    /**
+     * Scratch space used to analyze nodes. Each thread has its own.
+     */
+    private static class Workspace
+    {
+        private final IBGCoveringNodeFinder finder = new IBGCoveringNodeFinder();
+        private final Set<Index> bitsetYaSimple = new BitArraySet<Index>();
+        private final Set<Index> bitsetYa = new BitArraySet<Index>();
+        private final Set<Index> bitsetYbMinus = new BitArraySet<Index>();
+        private final Set<Index> bitsetYbPlus = new BitArraySet<Index>();
+        private final Set<Index> bitsetYab = new BitArraySet<Index>();
+
+        /**
+         * Makes a scratch set equal to the given one.
+         *
+         * @param scratch
+         *      set that is overwritten
+         * @param source
+         *      set that is copied
+         */
+        void copy(Set<Index> scratch, Set<Index> source)
+        {
+            scratch.clear();
+            scratch.addAll(source);
+        }
+    }
 }
@@ -1,8 +1,12 @@
 package edu.ucsc.dbtune.advisor.interactions;
 
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
+import edu.ucsc.dbtune.ibg.IndexBenefitGraph;
 import edu.ucsc.dbtune.metadata.Index;
 import edu.ucsc.dbtune.optimizer.IBGPreparedSQLStatement;
 import edu.ucsc.dbtune.optimizer.PreparedSQLStatement;
@@ -18,6 +22,10 @@ import edu.ucsc.dbtune.optimizer.PreparedSQLStatement;
  *   <li>for any other prepared statement implementation, it calls {@link 
  *   DefaultDoiFinder#degreeOfInteraction} </li>
  * </ul>
+ * <p>
+ * The bank of an IBG is kept for as long as the IBG is reachable, so statements that share an IBG 
+ * (see {@link edu.ucsc.dbtune.optimizer.IBGTemplateCache}) also share the bank and the IBG is 
+ * analyzed only once.
  *
  * @author Ivo Jimenez
  * @see <a href="http://portal.acm.org/citation.cfm?id=1687766">
@@ -26,6 +34,9 @@ import edu.ucsc.dbtune.optimizer.PreparedSQLStatement;
  */
 public class IBGDoiFinder extends DefaultDoiFinder
 {
+    private final Map<IndexBenefitGraph, InteractionBank> banks =
+        Collections.synchronizedMap(new WeakHashMap<IndexBenefitGraph, InteractionBank>());
+
     /**
      * {@inheritDoc}
      */
@@ -36,8 +47,14 @@ public class IBGDoiFinder extends DefaultDoiFinder
         if (!(sql instanceof IBGPreparedSQLStatement))
             return super.degreeOfInteraction(sql, s);
 
-        IBGPreparedSQLStatement ibgStmt = (IBGPreparedSQLStatement) sql;
+        IndexBenefitGraph ibg = ((IBGPreparedSQLStatement) sql).getIndexBenefitGraph();
+        InteractionBank bank = banks.get(ibg);
+
+        if (bank == null) {
+            bank = IBGAnalyzer.analyze(ibg);
+            banks.put(ibg, bank);
+        }
 
-        return IBGAnalyzer.analyze(ibgStmt.getIndexBenefitGraph());
+        return bank;
     }
 }
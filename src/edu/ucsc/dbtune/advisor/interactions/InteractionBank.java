@@ -1,28 +1,57 @@
 package edu.ucsc.dbtune.advisor.interactions;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 import edu.ucsc.dbtune.metadata.Index;
-import edu.ucsc.dbtune.util.BitArraySet;
+import edu.ucsc.dbtune.util.LongIntHashMap;
 import edu.ucsc.dbtune.util.UnionFind;
 
 /**
  * Stores information about interactions of a set of indexes.
+ * <p>
+ * The candidates are mapped to dense local positions (their rank by id), so the ids of the
+ * candidate set don't need to be contiguous and the space taken doesn't depend on their range.
+ * Only non-zero interactions are stored, in a primitive hash table keyed by the packed pair of
+ * positions, thus memory grows with the number of interacting pairs rather than with the square
+ * of the size of the candidate set.
  *
  * @author Karl Schnaitter
  * @author Ivo Jimenez
  */
 public class InteractionBank
 {
+    /** number of pairs that the bank can hold before growing. */
+    private static final int INITIAL_PAIR_CAPACITY = 16;
+
     private double[] bestBenefit;
-    private double[][] lowerBounds;
     private List<Index> candidates;
-    private int minId;
-    
+
+    /** ids of the candidates, sorted; the position of an id is the local position of its index. */
+    private int[] ids;
+
+    /** slot in {@link #levels} of each interacting pair, keyed by the packed pair of positions. */
+    private LongIntHashMap pairs;
+
+    /** interaction level of each stored pair. */
+    private double[] levels;
+
+    /** the packed pair of positions of each entry of {@link #levels}. */
+    private long[] pairOf;
+
+    /** number of stored pairs. */
+    private int pairCount;
+
+    /** last partitioning returned by {@link #stablePartitioning}. */
+    private StablePartitioning partitioning;
+
+    /** slots of the pairs that were above the threshold when {@link #partitioning} was obtained. */
+    private BitSet partitioningCrossing;
+
     /**
      * Creates a bank that will manage interaction information for the given candidate set.
      *
@@ -32,18 +61,20 @@ public class InteractionBank
     public InteractionBank(Set<Index> candidateSet)
     {
         candidates = new ArrayList<Index>(candidateSet);
-        bestBenefit = new double[candidateSet.size()];
-        lowerBounds = new double[candidateSet.size()][];
-        for (int i = 0; i < candidateSet.size(); i++)
-            lowerBounds[i] = new double[i];
 
-        minId = Integer.MAX_VALUE;
+        Collections.sort(candidates);
+
+        ids = new int[candidates.size()];
 
-        for (Index i : candidateSet)
-            if (i.getId() < minId)
-                minId = i.getId();
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = candidates.get(i).getId();
+
+        bestBenefit = new double[candidateSet.size()];
+        pairs = new LongIntHashMap();
+        levels = new double[INITIAL_PAIR_CAPACITY];
+        pairOf = new long[INITIAL_PAIR_CAPACITY];
     }
-    
+
     /**
      * Assigns interaction with an exact value.
      *
@@ -55,6 +86,8 @@ public class InteractionBank
      *      the interaction level
      * @throws RuntimeException
      *      if {@code newValue} is less than zero; if {@code i1.equals(i2)} is {@code true}.
+     * @throws IllegalArgumentException
+     *      if any of the indexes isn't in the candidate set
      */
     final void assignInteraction(Index i1, Index i2, double newValue)
     {
@@ -64,19 +97,26 @@ public class InteractionBank
         if (i1.equals(i2))
             throw new RuntimeException("Should assign interaction to distinct indexes");
 
-        int id1 = i1.getId() - minId;
-        int id2 = i2.getId() - minId;
+        long key = key(position(i1), position(i2));
+        int slot = pairs.get(key);
+
+        if (slot != LongIntHashMap.NO_VALUE) {
+            levels[slot] = Math.max(newValue, levels[slot]);
+            return;
+        }
+
+        // absent pairs don't interact, so there's nothing to store
+        if (newValue == 0)
+            return;
 
-        // doi is a symmetric relation, thus we use the upper part of the matrix only. We accomplish 
-        // this by ordering the id's of the given indexes in descending order, i.e. first we use the 
-        // largest id first, then the smallest
-        if (id1 < id2) {
-            int t = id1;
-            id1 = id2;
-            id2 = t;
+        if (pairCount == levels.length) {
+            levels = Arrays.copyOf(levels, pairCount * 2);
+            pairOf = Arrays.copyOf(pairOf, pairCount * 2);
         }
 
-        lowerBounds[id1][id2] = Math.max(newValue, lowerBounds[id1][id2]);
+        levels[pairCount] = newValue;
+        pairOf[pairCount] = key;
+        pairs.put(key, pairCount++);
     }
 
     /**
@@ -87,16 +127,20 @@ public class InteractionBank
      * @param i2
      *      second index on the pair
      * @return
-     *      the interaction level assigned to the pair
+     *      the interaction level assigned to the pair; zero if any of the indexes isn't in the
+     *      candidate set
      */
     public final double interactionLevel(Index i1, Index i2)
     {
         assert !i1.equals(i2);
 
-        if (i1.getId() < i2.getId())
-            return lowerBounds[i2.getId() - minId][i1.getId() - minId];
-        else
-            return lowerBounds[i1.getId() - minId][i2.getId() - minId];
+        int p1 = Arrays.binarySearch(ids, i1.getId());
+        int p2 = Arrays.binarySearch(ids, i2.getId());
+
+        if (p1 < 0 || p2 < 0)
+            return 0;
+
+        return level(p1, p2);
     }
 
     /**
@@ -106,59 +150,165 @@ public class InteractionBank
      *      index being assigned
      * @param newValue
      *      value of the benefit
+     * @throws IllegalArgumentException
+     *      if the index isn't in the candidate set
      */
     void assignBenefit(Index i, double newValue)
     {
-        bestBenefit[i.getId() - minId] = Math.max(newValue, bestBenefit[i.getId() - minId]);
+        int p = position(i);
+
+        bestBenefit[p] = Math.max(newValue, bestBenefit[p]);
     }
-    
+
     /**
-     * Returns the best benefit of an index. The best benefit is the smallest value of all the ones 
+     * Returns the best benefit of an index. The best benefit is the smallest value of all the ones
      * that have been assigned to {@code i} through {@link #assignBenefit}.
      *
      * @param i
      *      index whose benefit is being retrieved
      * @return
-     *      the best benefit assigned so far to {@code i}
+     *      the best benefit assigned so far to {@code i}; zero if the index isn't in the candidate
+     *      set
      */
     public final double bestBenefit(Index i)
     {
-        return bestBenefit[i.getId() - minId];
+        int p = Arrays.binarySearch(ids, i.getId());
+
+        return p < 0 ? 0 : bestBenefit[p];
     }
-    
+
     /**
-     * Returns the stable partitioning of the candidateSet.
+     * Merges the interactions and benefits of another bank into this one, keeping the maximum of
+     * each value. Since a bank only keeps the maximum of the values assigned to it, merging the
+     * banks of disjoint sets of assignments yields the same values as doing all the assignments on
+     * a single bank.
+     *
+     * @param other
+     *      bank over the same candidate set as this one
+     * @throws IllegalArgumentException
+     *      if the candidate set of {@code other} isn't the same as this one's
+     */
+    void merge(InteractionBank other)
+    {
+        if (!Arrays.equals(ids, other.ids))
+            throw new IllegalArgumentException("Banks are over distinct candidate sets");
+
+        for (int p = 0; p < bestBenefit.length; p++)
+            bestBenefit[p] = Math.max(bestBenefit[p], other.bestBenefit[p]);
+
+        for (int k = 0; k < other.pairCount; k++)
+            assignInteraction(
+                candidates.get((int) (other.pairOf[k] >>> 32)),
+                candidates.get((int) other.pairOf[k]),
+                other.levels[k]);
+    }
+
+    /**
+     * Returns the number of pairs that have a non-zero interaction level.
+     *
+     * @return
+     *      number of interacting pairs
+     */
+    public final int interactingPairCount()
+    {
+        return pairCount;
+    }
+
+    /**
+     * Returns the stable partitioning of the candidateSet. The partitioning only depends on which
+     * pairs interact above the threshold, thus it's computed again only if these aren't the same
+     * as in the previous call; otherwise the previous (interned) partitioning is returned.
      *
      * @param threshold
      *      parameter used to take into account to accomplish the partitioning of the candidate set.
      * @return
      *      the partitioned set
      */
-    public final Set<Set<Index>> stablePartitioning(double threshold)
+    public final synchronized StablePartitioning stablePartitioning(double threshold)
     {
-        UnionFind uf = new UnionFind(candidates.size());
+        BitSet crossing = new BitSet(pairCount);
 
-        for (int a = 0; a < candidates.size(); a++)
-            for (int b = 0; b < a; b++)
-                if (lowerBounds[a][b] > threshold)
-                    uf.union(a, b);
+        for (int k = 0; k < pairCount; k++)
+            if (levels[k] > threshold)
+                crossing.set(k);
 
-        Set<Set<Index>> partitioning = new HashSet<Set<Index>>();
+        if (partitioning != null && crossing.equals(partitioningCrossing))
+            return partitioning;
 
-        for (BitSet bs : uf.sets()) {
+        UnionFind uf = new UnionFind(candidates.size());
+
+        for (int k = crossing.nextSetBit(0); k >= 0; k = crossing.nextSetBit(k + 1))
+            uf.union((int) (pairOf[k] >>> 32), (int) pairOf[k]);
 
-            Set<Index> s = new BitArraySet<Index>();
+        BitSet[] sets = uf.sets();
+        Index[][] blocks = new Index[sets.length][];
 
-            for (int i = bs.nextSetBit(0); i >= 0; i = bs.nextSetBit(i + 1)) {
-                s.add(candidates.get(i));
-            }
+        for (int s = 0; s < sets.length; s++) {
+            blocks[s] = new Index[sets[s].cardinality()];
 
-            partitioning.add(s);
+            for (int i = sets[s].nextSetBit(0), j = 0; i >= 0; i = sets[s].nextSetBit(i + 1))
+                blocks[s][j++] = candidates.get(i);
         }
 
+        partitioning = StablePartitioning.of(blocks);
+        partitioningCrossing = crossing;
+
         return partitioning;
     }
 
+    /**
+     * Returns the local position of an index.
+     *
+     * @param i
+     *      an index
+     * @return
+     *      the position of the index in the candidate set
+     * @throws IllegalArgumentException
+     *      if the index isn't in the candidate set
+     */
+    private int position(Index i)
+    {
+        int p = Arrays.binarySearch(ids, i.getId());
+
+        if (p < 0)
+            throw new IllegalArgumentException("Index " + i + " not in candidate set");
+
+        return p;
+    }
+
+    /**
+     * Returns the interaction level of a pair of positions.
+     *
+     * @param p1
+     *      position of the first index
+     * @param p2
+     *      position of the second index
+     * @return
+     *      the interaction level; zero if none was assigned
+     */
+    private double level(int p1, int p2)
+    {
+        int slot = pairs.get(key(p1, p2));
+
+        return slot == LongIntHashMap.NO_VALUE ? 0 : levels[slot];
+    }
+
+    /**
+     * Returns the key of a pair of positions. Since doi is a symmetric relation, the largest
+     * position always goes first.
+     *
+     * @param p1
+     *      position of the first index
+     * @param p2
+     *      position of the second index
+     * @return
+     *      key of the pair
+     */
+    private static long key(int p1, int p2)
+    {
+        return p1 > p2 ? LongIntHashMap.pack(p1, p2) : LongIntHashMap.pack(p2, p1);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -169,10 +319,10 @@ public class InteractionBank
         String separator = ",";
 
         result.append("Bounds:\n");
-        for (int i = 0; i < lowerBounds.length; ++i) {
+        for (int i = 0; i < candidates.size(); ++i) {
             result.append("[");
-            for (int j = 0; j < lowerBounds[i].length; ++j)
-                result.append(lowerBounds[i][j]).append(separator);
+            for (int j = 0; j < i; ++j)
+                result.append(level(i, j)).append(separator);
             result.delete(result.length() - 1, result.length()).append("]\n");
         }
 
@@ -0,0 +1,317 @@
+package edu.ucsc.dbtune.advisor.interactions;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import edu.ucsc.dbtune.metadata.Index;
+
+/**
+ * An immutable partitioning of a set of indexes into disjoint, non-empty blocks. Instances are
+ * interned: partitionings with the same blocks are represented by the same object, so two of them
+ * are equal if and only if they're the same object. The hash code is computed once.
+ * <p>
+ * The blocks are kept as arrays and their {@link Set} views are created only the first time that
+ * an element of the partitioning is accessed, thus a partitioning that is only compared or counted
+ * never materializes them.
+ *
+ * @author Ivo Jimenez
+ */
+public final class StablePartitioning extends AbstractSet<Set<Index>>
+{
+    /** interned partitionings; an entry goes away along with the partitioning it refers to. */
+    private static final Map<Key, WeakReference<StablePartitioning>> INTERNED =
+        new WeakHashMap<Key, WeakReference<StablePartitioning>>();
+
+    /** the empty partitioning. */
+    public static final StablePartitioning EMPTY = of(new Index[0][]);
+
+    private final Key key;
+    private final int hashCode;
+    private volatile List<Set<Index>> views;
+
+    /**
+     * @param key
+     *      blocks of the partitioning
+     */
+    private StablePartitioning(Key key)
+    {
+        this.key = key;
+
+        int hash = 0;
+
+        for (int h : key.blockHashes)
+            hash += h;
+
+        this.hashCode = hash;
+    }
+
+    /**
+     * Returns the partitioning with the given blocks.
+     *
+     * @param blocks
+     *      disjoint sets of indexes; empty ones are ignored
+     * @return
+     *      the interned partitioning
+     */
+    public static StablePartitioning of(Index[][] blocks)
+    {
+        List<Index[]> nonEmpty = new ArrayList<Index[]>(blocks.length);
+
+        for (Index[] block : blocks)
+            if (block.length > 0)
+                nonEmpty.add(block.clone());
+
+        Key key = new Key(nonEmpty.toArray(new Index[nonEmpty.size()][]));
+
+        synchronized (INTERNED) {
+            WeakReference<StablePartitioning> ref = INTERNED.get(key);
+            StablePartitioning partitioning = ref == null ? null : ref.get();
+
+            if (partitioning == null) {
+                partitioning = new StablePartitioning(key);
+                INTERNED.put(key, new WeakReference<StablePartitioning>(partitioning));
+            }
+
+            return partitioning;
+        }
+    }
+
+    /**
+     * Returns the partitioning with the given blocks.
+     *
+     * @param blocks
+     *      disjoint sets of indexes; empty ones are ignored
+     * @return
+     *      the interned partitioning
+     */
+    public static StablePartitioning of(Iterable<? extends Iterable<Index>> blocks)
+    {
+        List<Index[]> arrays = new ArrayList<Index[]>();
+
+        for (Iterable<Index> block : blocks) {
+            List<Index> list = new ArrayList<Index>();
+
+            for (Index index : block)
+                list.add(index);
+
+            arrays.add(list.toArray(new Index[list.size()]));
+        }
+
+        return of(arrays.toArray(new Index[arrays.size()][]));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return key.blocks.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Set<Index>> iterator()
+    {
+        return views().iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return hashCode;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+
+        if (o instanceof StablePartitioning)
+            // both are interned
+            return false;
+
+        return super.equals(o);
+    }
+
+    /**
+     * @return
+     *      the set view of each block, creating them if necessary
+     */
+    private List<Set<Index>> views()
+    {
+        List<Set<Index>> v = views;
+
+        if (v == null) {
+            v = new ArrayList<Set<Index>>(key.blocks.length);
+
+            for (Index[] block : key.blocks)
+                v.add(Collections.unmodifiableSet(new HashSet<Index>(Arrays.asList(block))));
+
+            v = Collections.unmodifiableList(v);
+            views = v;
+        }
+
+        return v;
+    }
+
+    /**
+     * The blocks of a partitioning, compared by content regardless of the order of the blocks and
+     * of the indexes within them.
+     */
+    private static final class Key
+    {
+        private final Index[][] blocks;
+        private final int[] blockHashes;
+        private final int hashCode;
+
+        /**
+         * @param blocks
+         *      non-empty blocks; the array and the blocks are reordered
+         */
+        Key(Index[][] blocks)
+        {
+            final int[] hashes = new int[blocks.length];
+            Integer[] order = new Integer[blocks.length];
+
+            for (int b = 0; b < blocks.length; b++) {
+                for (Index index : blocks[b])
+                    hashes[b] += index.hashCode();
+
+                order[b] = b;
+            }
+
+            // blocks are sorted by hash, so equal keys only need to compare blocks of the same hash
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer b1, Integer b2)
+                {
+                    return hashes[b1] < hashes[b2] ? -1 : hashes[b1] == hashes[b2] ? 0 : 1;
+                }
+            });
+
+            this.blocks = new Index[blocks.length][];
+            this.blockHashes = new int[blocks.length];
+
+            int hash = 0;
+
+            for (int b = 0; b < blocks.length; b++) {
+                this.blocks[b] = blocks[order[b]];
+                this.blockHashes[b] = hashes[order[b]];
+                hash = 31 * hash + mix(blockHashes[b]);
+            }
+
+            this.hashCode = hash;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+
+            Key other = (Key) o;
+
+            if (hashCode != other.hashCode || !Arrays.equals(blockHashes, other.blockHashes))
+                return false;
+
+            boolean[] matched = new boolean[blocks.length];
+
+            for (int b = 0; b < blocks.length; b++) {
+                boolean found = false;
+
+                // look among the blocks of the other key that have the same hash
+                for (int c = b; c >= 0 && other.blockHashes[c] == blockHashes[b] && !found; c--)
+                    found = match(blocks[b], other.blocks[c], matched, c);
+
+                for (int c = b + 1; c < blocks.length && other.blockHashes[c] == blockHashes[b] &&
+                        !found; c++)
+                    found = match(blocks[b], other.blocks[c], matched, c);
+
+                if (!found)
+                    return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * Marks a block of the other key as matched if it has the same indexes as a block of this
+         * key and it wasn't matched already.
+         *
+         * @param block
+         *      block of this key
+         * @param other
+         *      block of the other key
+         * @param matched
+         *      blocks of the other key that were matched
+         * @param c
+         *      position of {@code other}
+         * @return
+         *      whether the blocks were matched
+         */
+        private static boolean match(Index[] block, Index[] other, boolean[] matched, int c)
+        {
+            if (matched[c] || block.length != other.length)
+                return false;
+
+            if (!new HashSet<Index>(Arrays.asList(block)).containsAll(Arrays.asList(other)))
+                return false;
+
+            matched[c] = true;
+
+            return true;
+        }
+
+        /**
+         * Scrambles the bits of a hash, so that the hash of a key doesn't only depend on the
+         * indexes it contains, but also on how they are grouped.
+         *
+         * @param h
+         *      a hash
+         * @return
+         *      the scrambled hash
+         */
+        private static int mix(int h)
+        {
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+
+            return h;
+        }
+    }
+}
@@ -4,4 +4,10 @@ import edu.ucsc.dbtune.metadata.Index;
 
 public interface BenefitFunction {
     public double benefit(Index a);
+
+    /*
+     * A value that is never smaller than benefit(a), and is cheaper to obtain. Implementations
+     * without a cheaper bound can just return benefit(a).
+     */
+    public double benefitUpperBound(Index a);
 }
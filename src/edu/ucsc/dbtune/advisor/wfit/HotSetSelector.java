@@ -20,6 +20,15 @@ public class HotSetSelector {
                     continue;
 
                 double penalty = oldHotSet.contains(index) ? 0 : index.getCreationCost();
+
+                if (topSet.size() >= numToChoose) {
+                    // once the heap is full, a candidate whose bound doesn't beat the minimum
+                    // can't get in, so its exact benefit isn't needed. This is what allows big
+                    // hot sets, since the bound is cheap for windows that didn't change
+                    if (!(benefitFunc.benefitUpperBound(index) - penalty > topSet.minPriority()))
+                        continue;
+                }
+
                 double score = benefitFunc.benefit(index) - penalty;
                 if (topSet.size() < numToChoose) {
                     topSet.insertKey(index, score);
@@ -30,15 +39,13 @@ public class HotSetSelector {
                 }
             }
 
-            java.util.ArrayList<Index> list = new java.util.ArrayList<Index>();
+            Index[] hotArray = new Index[requiredIndexSet.size() + topSet.size()];
+            int i = 0;
             for (Index index : requiredIndexSet)
-                list.add(index);
+                hotArray[i++] = index;
             while (topSet.size() > 0)
-                list.add(topSet.deleteMin());
+                hotArray[i++] = topSet.deleteMin();
 
-            Index[] hotArray = new Index[list.size()];
-            int i = 0;
-            for (Index index : list) hotArray[i++] = index;
             return new StaticIndexSet(hotArray);
         }
     }
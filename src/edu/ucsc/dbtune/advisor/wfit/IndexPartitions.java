@@ -7,6 +7,7 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
+import edu.ucsc.dbtune.advisor.interactions.StablePartitioning;
 import edu.ucsc.dbtune.metadata.Index;
 
 import static edu.ucsc.dbtune.util.MetadataUtils.find;
@@ -18,6 +19,8 @@ public class IndexPartitions {
     private int stateCount;
     private int minId;
     private SubsetList subsets;
+    // interned form of the subsets, created when first asked for and dropped when they change
+    private volatile StablePartitioning stablePartitioning;
     
     public IndexPartitions(StaticIndexSet indexes, int minId) {
         if (indexes.size() > MAXIMUM_INDEX_COUNT)
@@ -25,10 +28,34 @@ public class IndexPartitions {
         indexCount = indexes.size();
         stateCount = indexes.size() * 2;
         subsets = new SubsetList();
+        // assigned before creating the subsets, since they use it to compute their index ids
+        this.minId = minId;
         for (Index index : indexes) {
             subsets.add(new Subset(index));
         }
+    }
+
+    /*
+     * Creates the partitions given by the groups, each of which becomes a subset. Groups must be
+     * non-empty and disjoint.
+     */
+    IndexPartitions(Index[][] groups, int minId) {
+        long indexCount0 = 0;
+        long stateCount0 = 0;
+        subsets = new SubsetList();
         this.minId = minId;
+        for (Index[] group : groups) {
+            Subset subset = new Subset(group);
+            subsets.add(subset);
+            indexCount0 += subset.size();
+            stateCount0 += subset.stateCount();
+        }
+
+        if (indexCount0 > MAXIMUM_INDEX_COUNT || stateCount0 > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Cannot create partitions for " + indexCount0 + " indexes");
+
+        indexCount = (int) indexCount0;
+        stateCount = (int) stateCount0;
     }
 
     public int getMinId()
@@ -91,6 +118,18 @@ public class IndexPartitions {
         return arr;
     }
     
+    public StablePartitioning stablePartitioning() {
+        StablePartitioning p = stablePartitioning;
+        if (p == null) {
+            Index[][] blocks = new Index[subsets.size()][];
+            for (int i = 0; i < subsets.size(); i++)
+                blocks[i] = subsets.get(i).getSet().toArray(new Index[0]);
+            p = StablePartitioning.of(blocks);
+            stablePartitioning = p;
+        }
+        return p;
+    }
+    
     public final void merge(Index i1, Index i2) {
         int s1 = subsets.whichSubset(i1);
         int s2 = subsets.whichSubset(i2);
@@ -115,6 +154,7 @@ public class IndexPartitions {
         subsets.remove(s1 < s2 ? (s2-1) : s2);
         subsets.add(newSubset);
         stateCount = (int) newStateCount;
+        stablePartitioning = null;
     }
 
     @Override
@@ -145,6 +185,23 @@ public class IndexPartitions {
             sumIndexIds = minIndexIds = index.getId()-minId;
         }
 
+        Subset(Index[] indexes) {
+            int sum = 0;
+            int min = Integer.MAX_VALUE;
+            for (Index idx : indexes) {
+                map.put(idx.getId()-minId, idx);
+                set.add(idx);
+                sum += idx.getId()-minId;
+                min = Math.min(min, idx.getId()-minId);
+            }
+
+            indexIds = new int[map.size()];
+            { int i = 0; for (Integer id : map.keySet()) indexIds[i++] = id; }
+
+            sumIndexIds = sum;
+            minIndexIds = min;
+        }
+
         Subset(Subset s1, Subset s2) {
             for (Index idx : s1) {
                 map.put(idx.getId()-minId, idx);
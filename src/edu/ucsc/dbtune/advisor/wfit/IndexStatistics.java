@@ -1,19 +1,35 @@
 package edu.ucsc.dbtune.advisor.wfit;
 
-import java.util.HashMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.Map;
 
+import edu.ucsc.dbtune.advisor.interactions.InteractionBank;
 import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.util.LongIntHashMap;
 
 import edu.ucsc.dbtune.workload.SQLStatement;
 
+import static edu.ucsc.dbtune.util.LongIntHashMap.NO_VALUE;
+import static edu.ucsc.dbtune.util.LongIntHashMap.pack;
+
 //CHECKSTYLE:OFF
+/**
+ * Sliding windows of benefit and degree-of-interaction measurements.
+ * <p>
+ * Benefit windows are keyed by index id and interaction windows by the ids of the pair packed in a
+ * long (smaller id first), ids being relative to {@code minId}. Keys are mapped to the number of
+ * the window by a {@link LongIntHashMap}.
+ * All windows live in a {@link Windows} store made of primitive arrays, so recording measurements
+ * doesn't allocate (other than to grow the store when a new key is seen).
+ */
 public class IndexStatistics implements BenefitFunction, DoiFunction {
     double currentTimeStamp = 0;
-    Map<Index,Window> benefitWindows = new HashMap<Index,Window>();
-    Map<IndexPair,Window> doiWindows = new HashMap<IndexPair,Window>();
-    IndexPair tempPair = new IndexPair(null, null); // for lookups
+    LongIntHashMap benefitWindows = new LongIntHashMap();
+    LongIntHashMap doiWindows = new LongIntHashMap();
+    Windows windows;
     LimitedQueue<SQLStatement> window;
     private int minId;
     private int windowSize;
@@ -21,50 +37,46 @@ public class IndexStatistics implements BenefitFunction, DoiFunction {
     public IndexStatistics(int windowSize, int minId) {
 
         window = new LimitedQueue<SQLStatement>(windowSize);
+        windows = new Windows(windowSize);
         this.minId = minId;
         this.windowSize = windowSize;
     }
 
+    // deep copy, so that the statistics can be checkpointed while the original keeps changing
+    IndexStatistics(IndexStatistics other) {
+        currentTimeStamp = other.currentTimeStamp;
+        benefitWindows = new LongIntHashMap(other.benefitWindows);
+        doiWindows = new LongIntHashMap(other.doiWindows);
+        windows = new Windows(other.windows);
+        window = new LimitedQueue<SQLStatement>(other.windowSize);
+        window.addAll(other.window);
+        minId = other.minId;
+        windowSize = other.windowSize;
+    }
+
     public void addQuery(ProfiledQuery qinfo, DynamicIndexSet matSet) {
-        Iterable<Index> candSet = qinfo.candidateSet;
+        Index[] candSet = qinfo.candidateSet.toArray(new Index[qinfo.candidateSet.size()]);
+        InteractionBank bank = qinfo.bank;
+
         for (Index index : candSet) {
-            double bestBenefit = qinfo.bank.bestBenefit(index) 
+            double bestBenefit = bank.bestBenefit(index) 
                                     - qinfo.explainInfo.getUpdateCost(index);
-            if (bestBenefit != 0) {
-                // add measurement, creating new window if necessary
-                Window benwin = benefitWindows.get(index);
-                if (benwin == null) {
-                    benwin = new Window(windowSize);
-                    benefitWindows.put(index, benwin);
-                }
-                benwin.put(bestBenefit, currentTimeStamp);
-            }
+            if (bestBenefit != 0)
+                windows.put(
+                        windowFor(benefitWindows, index.getId() - minId), bestBenefit,
+                        currentTimeStamp);
         }
         
-        // not the most efficient double loop, but an ok compromise for now
-        for (Index a : candSet) {
-            int id1 = a.getId()-minId;
-            for (Index b : candSet) {
-                int id2 = b.getId()-minId;
-                if (id1 >= id2)
-                    continue;
-                
-                double doi = qinfo.bank.interactionLevel(a, b);
-
-                if (doi != 0) {
-                    // add measurement, creating new window if necessary
-                    tempPair.a = a; tempPair.b = b;
-                    
-                    Window doiwin = doiWindows.get(tempPair);
-                    if (doiwin == null) {
-                        doiwin = new Window(windowSize);
-                        doiWindows.put(new IndexPair(a,b), doiwin);
-                    }
-                    doiwin.put(doi, currentTimeStamp);
-                    tempPair.a = null; tempPair.b = null;
-                }
-            }
+        // the level of interaction is symmetric, so each unordered pair is visited once
+        for (int i = 0; i < candSet.length; i++) {
+            for (int j = i + 1; j < candSet.length; j++) {
+                double doi = bank.interactionLevel(candSet[i], candSet[j]);
 
+                if (doi != 0)
+                    windows.put(
+                            windowFor(doiWindows, pairKey(candSet[i], candSet[j])),
+                            doi, currentTimeStamp);
+            }
         }
         
         double executionCost = qinfo.cost(matSet.bitSet());
@@ -78,11 +90,23 @@ public class IndexStatistics implements BenefitFunction, DoiFunction {
         if (currentTimeStamp == 0)
             return 0;
 
-        Window window = benefitWindows.get(index);
-        if (window == null)
+        int w = benefitWindows.get(index.getId() - minId);
+        if (w == NO_VALUE)
             return 0;
         else
-            return window.maxRate(currentTimeStamp);
+            return windows.maxRate(w, currentTimeStamp);
+    }
+    
+    @Override
+    public double benefitUpperBound(Index index) {
+        if (currentTimeStamp == 0)
+            return 0;
+
+        int w = benefitWindows.get(index.getId() - minId);
+        if (w == NO_VALUE)
+            return 0;
+        else
+            return windows.maxRateUpperBound(w, currentTimeStamp);
     }
     
     @Override
@@ -90,14 +114,12 @@ public class IndexStatistics implements BenefitFunction, DoiFunction {
         if (currentTimeStamp == 0)
             return 0;
 
-        tempPair.a = a; tempPair.b = b;
-        Window window = doiWindows.get(tempPair);
-        tempPair.a = null; tempPair.b = null;
+        int w = doiWindows.get(pairKey(a, b));
         
-        if (window == null)
+        if (w == NO_VALUE)
             return 0;
         else 
-            return window.maxRate(currentTimeStamp);
+            return windows.maxRate(w, currentTimeStamp);
     }
     
     /**
@@ -108,43 +130,157 @@ public class IndexStatistics implements BenefitFunction, DoiFunction {
     }
 
     /*
-     * Maintains a sliding window of measurements
+     * Writes the statistics to a checkpoint. Ids (relative to minId) are written as their position
+     * in the given sorted array, so that they're dense; windows of ids that aren't in the array
+     * are skipped. Measurements are written from the oldest to the most recent one.
+     */
+    void write(DataOutput out, int[] ids) throws IOException {
+        out.writeDouble(currentTimeStamp);
+
+        long[] keys = benefitWindows.keys();
+        int count = 0;
+        for (long key : keys)
+            if (Arrays.binarySearch(ids, (int) key) >= 0)
+                count++;
+        out.writeInt(count);
+        for (long key : keys) {
+            int pos = Arrays.binarySearch(ids, (int) key);
+            if (pos < 0)
+                continue;
+            out.writeInt(pos);
+            windows.write(out, benefitWindows.get(key));
+        }
+
+        keys = doiWindows.keys();
+        count = 0;
+        for (long key : keys)
+            if (Arrays.binarySearch(ids, (int) (key >>> 32)) >= 0
+                    && Arrays.binarySearch(ids, (int) key) >= 0)
+                count++;
+        out.writeInt(count);
+        for (long key : keys) {
+            int pos1 = Arrays.binarySearch(ids, (int) (key >>> 32));
+            int pos2 = Arrays.binarySearch(ids, (int) key);
+            if (pos1 < 0 || pos2 < 0)
+                continue;
+            out.writeInt(pos1);
+            out.writeInt(pos2);
+            windows.write(out, doiWindows.get(key));
+        }
+
+        out.writeInt(window.size());
+        for (SQLStatement sql : window) {
+            byte[] bytes = sql.getSQL().getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /*
+     * Reads statistics written by write(). Ids are the positions written, relative to minId; the
+     * windows can have a different size than the ones written, in which case only the most recent
+     * measurements are kept.
+     */
+    static IndexStatistics read(DataInput in, int windowSize, int minId) throws IOException {
+        IndexStatistics stats = new IndexStatistics(windowSize, minId);
+
+        stats.currentTimeStamp = in.readDouble();
+
+        for (int count = in.readInt(); count > 0; count--)
+            stats.windows.read(in, stats.windowFor(stats.benefitWindows, in.readInt()));
+
+        for (int count = in.readInt(); count > 0; count--) {
+            long key = pack(in.readInt(), in.readInt());
+            stats.windows.read(in, stats.windowFor(stats.doiWindows, key));
+        }
+
+        for (int count = in.readInt(); count > 0; count--) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            stats.window.add(new SQLStatement(new String(bytes, "UTF-8")));
+        }
+
+        return stats;
+    }
+
+    // number of the window of the given key, creating a new window if necessary
+    private int windowFor(LongIntHashMap windowNums, long key) {
+        int w = windowNums.get(key);
+        if (w == NO_VALUE) {
+            w = windows.create();
+            windowNums.put(key, w);
+        }
+        return w;
+    }
+
+    private long pairKey(Index a, Index b) {
+        int id1 = a.getId() - minId;
+        int id2 = b.getId() - minId;
+        return id1 < id2 ? pack(id1, id2) : pack(id2, id1);
+    }
+
+    /*
+     * Maintains sliding windows of measurements
      * This class is agnostic about what the measurements indicate, and just treats them as numbers
      * 
-     * The most recent measurement is stored in measurements[lastPos] and has
-     * timestamp stored in timestamps[lastPos]. The older measurements are
-     * stored in (lastPos+1)%size, (lastPos+2)%size etc, until a position i is
-     * encountered such that timestamps[i] == -1. The number of measurements is
-     * indicated by the field numMeasurements.
-     * 
+     * Window w owns positions [w*size, (w+1)*size) of the measurements and timestamps arrays. The
+     * most recent measurement of the window is stored in offset lastPos[w] and the older ones in
+     * (lastPos[w]+1)%size, (lastPos[w]+2)%size etc. The number of measurements is indicated by
+     * numMeasurements[w].
+     *
+     * The result of maxRate is cached per window along with the time it was computed for, since
+     * the selectors ask for the same windows several times between two statements; a put
+     * invalidates the cache of the window.
      */
-    private class Window {
+    static class Windows {
         private final int size;
+        private int count;
         double[] measurements;
         double[] timestamps;
-        int lastPos = -1;
-        int numMeasurements = 0;
-        
-        public Window(int windowSize) {
-            this.size = windowSize;
-            this.measurements = new double[this.size];
-            this.timestamps = new double[this.size];
+        int[] lastPos;
+        int[] numMeasurements;
+        double[] cachedTime;
+        double[] cachedRate;
+
+        Windows(int windowSize) {
+            size = windowSize;
+            allocate(16);
         }
-        
-        void put(double meas, double time) {
-            if (numMeasurements < size) {
-                ++numMeasurements;
-                lastPos = size-numMeasurements;
+
+        Windows(Windows other) {
+            size = other.size;
+            count = other.count;
+            measurements = other.measurements.clone();
+            timestamps = other.timestamps.clone();
+            lastPos = other.lastPos.clone();
+            numMeasurements = other.numMeasurements.clone();
+            cachedTime = other.cachedTime.clone();
+            cachedRate = other.cachedRate.clone();
+        }
+
+        int create() {
+            if (count == lastPos.length)
+                allocate(count * 2);
+            lastPos[count] = -1;
+            cachedTime[count] = Double.NaN;
+            return count++;
+        }
+
+        void put(int w, double meas, double time) {
+            if (numMeasurements[w] < size) {
+                ++numMeasurements[w];
+                lastPos[w] = size-numMeasurements[w];
             }
-            else if (lastPos == 0) {
-                lastPos = size - 1; 
+            else if (lastPos[w] == 0) {
+                lastPos[w] = size - 1; 
             }
             else {
-                --lastPos;
+                --lastPos[w];
             }
             
-            measurements[lastPos] = meas;
-            timestamps[lastPos] = time;
+            measurements[w*size + lastPos[w]] = meas;
+            timestamps[w*size + lastPos[w]] = time;
+            cachedTime[w] = Double.NaN;
         }
         
         /*
@@ -154,46 +290,77 @@ public class IndexStatistics implements BenefitFunction, DoiFunction {
          * over all suffixes of the window.
          * Return zero if no measurements have been made.
          */
-        double maxRate(double time) {
-            if (numMeasurements == 0)
+        double maxRate(int w, double time) {
+            if (numMeasurements[w] == 0)
                 return 0;
+
+            if (cachedTime[w] == time)
+                return cachedRate[w];
             
-            double sumMeasurements = measurements[lastPos];
-            double maxRate = sumMeasurements / (time - timestamps[lastPos]);
-            for (int measNum = 1; measNum < numMeasurements; measNum++) {
-                int i = measNum % size;
+            int base = w * size;
+            double sumMeasurements = measurements[base + lastPos[w]];
+            double maxRate = sumMeasurements / (time - timestamps[base + lastPos[w]]);
+            for (int measNum = 1; measNum < numMeasurements[w]; measNum++) {
+                int i = base + (lastPos[w] + measNum) % size;
                 sumMeasurements += measurements[i];
                 double rate = sumMeasurements / (time - timestamps[i]);
                 maxRate = Math.max(rate, maxRate);
             }
+
+            cachedTime[w] = time;
+            cachedRate[w] = maxRate;
             
             return maxRate;
-            
         }
-    }
-    
-    private class IndexPair {
-        Index a, b;
-        
-        IndexPair(Index index1, Index index2) {
-            a = index1;
-            b = index2;
+
+        /*
+         * An upper bound of maxRate(w, time) that is obtained without traversing the window, if
+         * maxRate was computed for an earlier time and no measurement has been added since then.
+         * As time grows, the rate of a suffix with a positive sum of measurements decreases and
+         * the rate of any other suffix stays non-positive, so max(cachedRate, 0) is a bound.
+         */
+        double maxRateUpperBound(int w, double time) {
+            if (numMeasurements[w] > 0 && cachedTime[w] < time && !Double.isNaN(cachedRate[w]))
+                return Math.max(cachedRate[w], 0);
+
+            return maxRate(w, time);
         }
-        
-        @Override
-        public int hashCode() {
-            return a.hashCode() + b.hashCode();
+
+        // writes the measurements of window w, oldest first
+        void write(DataOutput out, int w) throws IOException {
+            out.writeInt(numMeasurements[w]);
+            for (int measNum = numMeasurements[w] - 1; measNum >= 0; measNum--) {
+                int i = w * size + (lastPos[w] + measNum) % size;
+                out.writeDouble(measurements[i]);
+                out.writeDouble(timestamps[i]);
+            }
         }
-        
-        @Override
-        public boolean equals(Object other) {
-            if (!(other instanceof IndexPair))
-                return false;
-            IndexPair pair = (IndexPair) other;
-            return (a.equals(pair.a) && b.equals(pair.b))
-                || (a.equals(pair.b) && b.equals(pair.a));
-        }
-    }       
+
+        // adds the measurements written by write() to window w
+        void read(DataInput in, int w) throws IOException {
+            for (int n = in.readInt(); n > 0; n--) {
+                double meas = in.readDouble();
+                put(w, meas, in.readDouble());
+            }
+        }
+
+        private void allocate(int windowCount) {
+            measurements = grow(measurements, windowCount * size);
+            timestamps = grow(timestamps, windowCount * size);
+            lastPos = grow(lastPos, windowCount);
+            numMeasurements = grow(numMeasurements, windowCount);
+            cachedTime = grow(cachedTime, windowCount);
+            cachedRate = grow(cachedRate, windowCount);
+        }
+
+        private static double[] grow(double[] arr, int length) {
+            return arr == null ? new double[length] : Arrays.copyOf(arr, length);
+        }
+
+        private static int[] grow(int[] arr, int length) {
+            return arr == null ? new int[length] : Arrays.copyOf(arr, length);
+        }
+    }
 
     private static class LimitedQueue<E> extends LinkedList<E> {
 
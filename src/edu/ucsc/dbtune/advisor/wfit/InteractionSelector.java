@@ -1,10 +1,21 @@
 package edu.ucsc.dbtune.advisor.wfit;
 
-import edu.ucsc.dbtune.advisor.wfit.IndexPartitions.Subset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
 import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.util.LongIntHashMap;
+import edu.ucsc.dbtune.util.WorkerPool;
+
+import static edu.ucsc.dbtune.util.LongIntHashMap.NO_VALUE;
 
 //CHECKSTYLE:OFF
 public class InteractionSelector {
+    // below this number of hot indexes an attempt is too cheap for threads to pay off
+    static final int PARALLEL_THRESHOLD = 32;
     
     /*
      * Note that when this is called, hotSet and hotPartitions are out of sync!
@@ -13,59 +24,185 @@ public class InteractionSelector {
             StaticIndexSet newHotSet, IndexPartitions oldPartitions,
             DoiFunction doiFunc, int maxNumStates, int numPartitionIterations, int minId)
     {
-        java.util.Random rand = new java.util.Random();
-        IndexPartitions bestPartitions;
-        double bestCost;
-    
-        /* initialize bestPartitions with singleton sets */ 
-        bestPartitions = new IndexPartitions(newHotSet, minId);
+        return choosePartitions(
+                newHotSet, oldPartitions, doiFunc, maxNumStates, numPartitionIterations, minId,
+                new Random());
+    }
 
+    /*
+     * Each attempt draws from its own generator, seeded from rand, so the result only depends on
+     * rand regardless of whether attempts run in parallel or not.
+     */
+    static IndexPartitions choosePartitions(
+            StaticIndexSet newHotSet, IndexPartitions oldPartitions,
+            DoiFunction doiFunc, final int maxNumStates, int numPartitionIterations, int minId,
+            Random rand)
+    {
         /* nothing to do if merging is disabled by maxNumStates = 0 */
         if (maxNumStates <= 0)
-            return bestPartitions;
+            return new IndexPartitions(newHotSet, minId);
+
+        final Index[] hot = new Index[newHotSet.size()];
+        LongIntHashMap positions = new LongIntHashMap(hot.length);
+        { int i = 0; for (Index index : newHotSet) { positions.put(index.getId(), i); hot[i++] = index; } }
+
+        /* the DOI of every pair is obtained once; attempts only look at the cached weights */
+        final double[][] doi = new double[hot.length][hot.length];
+        for (int i = 0; i < hot.length; i++) {
+            for (int j = i+1; j < hot.length; j++) {
+                doi[i][j] = doiFunc.doi(hot[i], hot[j]);
+                doi[j][i] = doi[i][j];
+            }
+        }
 
         /* construct initial guess, which put indexes together that were previously together */
+        Partitioning bestPartitioning = new Partitioning(doi);
         for (int s = 0; s < oldPartitions.subsetCount(); s++) {
-            IndexPartitions.Subset subset = oldPartitions.get(s);
-            for (Index i1 : subset) {
-                if (!newHotSet.contains(i1))
+            int first = NO_VALUE;
+            for (Index index : oldPartitions.get(s)) {
+                int pos = positions.get(index.getId());
+                if (pos == NO_VALUE)
                     continue;
-                for (Index i2 : subset) {
-                    if (i1 == i2 || !newHotSet.contains(i2))
-                        continue;
-                    bestPartitions.merge(i1, i2);
+                if (first == NO_VALUE)
+                    first = pos;
+                else
+                    bestPartitioning.mergeGroupsOf(first, pos);
+            }
+        }
+        double bestCost = bestPartitioning.cost();
+
+        List<Callable<Partitioning>> attempts = new ArrayList<Callable<Partitioning>>();
+        for (int attempt = 0; attempt < numPartitionIterations; attempt++) {
+            final long seed = rand.nextLong();
+            attempts.add(new Callable<Partitioning>() {
+                @Override
+                public Partitioning call() {
+                    Partitioning partitioning = new Partitioning(doi);
+                    partitioning.mergeRandomly(new Random(seed), maxNumStates);
+                    return partitioning;
+                }
+            });
+        }
+
+        List<Partitioning> candidates;
+        if (hot.length >= PARALLEL_THRESHOLD) {
+            candidates = WorkerPool.invokeAll(attempts);
+        } else {
+            candidates = new ArrayList<Partitioning>();
+            for (Callable<Partitioning> attempt : attempts) {
+                try {
+                    candidates.add(attempt.call());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
                 }
             }
         }
-        bestCost = partitionCost(bestPartitions, doiFunc);
+
+        // compared in the order of the attempts, so the earliest one wins ties
+        for (Partitioning currentPartitioning : candidates) {
+            double currentCost = currentPartitioning.cost();
+            if (currentCost < bestCost) { 
+                bestCost = currentCost;
+                bestPartitioning = currentPartitioning;
+            }
+        }
         
-        for (int attempts = 0; attempts < numPartitionIterations; attempts++) {
-            IndexPartitions currentPartitions = new IndexPartitions(newHotSet, minId);
+        return bestPartitioning.toIndexPartitions(hot, minId);
+    }
+
+    /*
+     * A partitioning of the hot indexes, where each index is identified by its position in the hot
+     * set. Groups are numbered 0..groupCount-1 and weight[g1][g2] holds the interaction weight
+     * between groups g1 and g2, i.e. the sum of the DOI of every pair of indexes across them.
+     * Merging two groups only updates the weights of the merged group (adding up the rows of both)
+     * instead of recomputing them from the DOI of every pair.
+     */
+    private static class Partitioning {
+        int groupCount;
+        int[][] members;
+        int[] groupOf;
+        double[][] weight;
+        long stateCount;
+
+        Partitioning(double[][] doi) {
+            groupCount = doi.length;
+            members = new int[groupCount][];
+            groupOf = new int[groupCount];
+            weight = new double[groupCount][];
+            for (int g = 0; g < groupCount; g++) {
+                members[g] = new int[] { g };
+                groupOf[g] = g;
+                weight[g] = doi[g].clone();
+            }
+            stateCount = 2L * groupCount;
+        }
+
+        void mergeGroupsOf(int pos1, int pos2) {
+            if (groupOf[pos1] != groupOf[pos2])
+                merge(groupOf[pos1], groupOf[pos2]);
+        }
+
+        /*
+         * Merges g2 into g1. The last group takes the place of the one that disappears.
+         */
+        void merge(int g1, int g2) {
+            int last = groupCount - 1;
+            if (g1 == last) { int tmp = g1; g1 = g2; g2 = tmp; }
+
+            int[] merged = Arrays.copyOf(members[g1], members[g1].length + members[g2].length);
+            System.arraycopy(members[g2], 0, merged, members[g1].length, members[g2].length);
+            stateCount += (1L << merged.length) - (1L << members[g1].length) - (1L << members[g2].length);
+            members[g1] = merged;
+            for (int pos : members[g2])
+                groupOf[pos] = g1;
+
+            for (int x = 0; x < groupCount; x++) {
+                weight[g1][x] += weight[g2][x];
+                weight[x][g1] = weight[g1][x];
+            }
+            weight[g1][g1] = 0;
+
+            if (g2 != last) {
+                members[g2] = members[last];
+                for (int pos : members[g2])
+                    groupOf[pos] = g2;
+                for (int x = 0; x < last; x++) {
+                    weight[g2][x] = weight[last][x];
+                    weight[x][g2] = weight[g2][x];
+                }
+                weight[g2][g2] = 0;
+            }
+            members[last] = null;
+            groupCount--;
+        }
+
+        /*
+         * Randomly merges interacting groups, favoring pairs of singletons and, among the rest,
+         * pairs with a high weight per added state, until no pair can be merged within the state
+         * budget.
+         */
+        void mergeRandomly(Random rand, int maxNumStates) {
             while (true) {
-                double currentSubsetCount = currentPartitions.subsetCount();
-                double currentStateCount = currentPartitions.wfaStateCount();
                 double totalWeightSingletons = 0;
                 double totalWeightOthers = 0;
                 boolean foundSingletonPair = false;
-                for (int s1 = 0; s1 < currentSubsetCount; s1++) {
-                    IndexPartitions.Subset subset1 = currentPartitions.get(s1);
-                    double size1 = subset1.size();
-                    for (int s2 = s1+1; s2 < currentSubsetCount; s2++) { 
-                        IndexPartitions.Subset subset2 = currentPartitions.get(s2);
-                        double size2 = subset2.size();
-                        double weight = interactionWeight(subset1, subset2, doiFunc);
-                        if (weight == 0)
+                for (int s1 = 0; s1 < groupCount; s1++) {
+                    double size1 = members[s1].length;
+                    for (int s2 = s1+1; s2 < groupCount; s2++) { 
+                        double size2 = members[s2].length;
+                        double w = weight[s1][s2];
+                        if (w == 0)
                             continue;
                         
                         if (size1 == 1 && size2 == 1) {
                             foundSingletonPair = true;
-                            totalWeightSingletons += weight;
+                            totalWeightSingletons += w;
                         }
                         else if (!foundSingletonPair) {
                             double addedStates = Math.pow(2, size1+size2) - Math.pow(2, size1) - Math.pow(2, size2);
-                            if (addedStates + currentStateCount > maxNumStates)
+                            if (addedStates + stateCount > maxNumStates)
                                 continue;
-                            totalWeightOthers += weight / addedStates;
+                            totalWeightOthers += w / addedStates;
                         }
                     }
                 }
@@ -79,61 +216,54 @@ public class InteractionSelector {
                     break;
                 
                 double accumWeight = 0;
-                for (int s1 = 0; s1 < currentSubsetCount && accumWeight <= weightThreshold; s1++) {
-                    IndexPartitions.Subset subset1 = currentPartitions.get(s1);
-                    double size1 = subset1.size();
-                    for (int s2 = s1+1; s2 < currentSubsetCount && accumWeight <= weightThreshold; s2++) { 
-                        IndexPartitions.Subset subset2 = currentPartitions.get(s2);
-                        double size2 = subset2.size();
-                        double weight = interactionWeight(subset1, subset2, doiFunc);
-                        if (weight == 0)
+                search:
+                for (int s1 = 0; s1 < groupCount; s1++) {
+                    double size1 = members[s1].length;
+                    for (int s2 = s1+1; s2 < groupCount; s2++) { 
+                        double size2 = members[s2].length;
+                        double w = weight[s1][s2];
+                        if (w == 0)
                             continue;
                         
                         if (size1 == 1 && size2 == 1) {
-                            accumWeight += weight;
+                            accumWeight += w;
                         }
                         else if (!foundSingletonPair) {
                             double addedStates = Math.pow(2, size1+size2) - Math.pow(2, size1) - Math.pow(2, size2);
-                            if (addedStates + currentStateCount > maxNumStates)
+                            if (addedStates + stateCount > maxNumStates)
                                 continue;
-                            accumWeight += weight / addedStates;
+                            accumWeight += w / addedStates;
                         }
                         
-                        if (accumWeight > weightThreshold) 
-                            currentPartitions.merge(s1, s2); // for loops will exit due to threshold
+                        if (accumWeight > weightThreshold) {
+                            merge(s1, s2);
+                            break search;
+                        }
                     }
                 }
-            } // end of while(true)
-            
-            // currentPartitions is our new candidate, now compare it
-            double currentCost = partitionCost(currentPartitions, doiFunc);
-            if (currentCost < bestCost) { 
-                bestCost = currentCost;
-                bestPartitions = currentPartitions;
             }
         }
-        
-        return bestPartitions;
-    }
-    
-    private static double partitionCost(IndexPartitions partitions, DoiFunction doiFunc) {
-        double cost = 0;
-        for (int s1 = 0; s1 < partitions.subsetCount(); s1++) {
-            IndexPartitions.Subset subset1 = partitions.get(s1);
-            for (int s2 = s1+1; s2 < partitions.subsetCount(); s2++) { 
-                IndexPartitions.Subset subset2 = partitions.get(s2);
-                cost += interactionWeight(subset1, subset2, doiFunc);
-            }
+
+        /*
+         * Sum of the weights across groups.
+         */
+        double cost() {
+            double cost = 0;
+            for (int s1 = 0; s1 < groupCount; s1++)
+                for (int s2 = s1+1; s2 < groupCount; s2++)
+                    cost += weight[s1][s2];
+            return cost;
         }
-        return cost;
-    }
 
-    private static double interactionWeight(Subset s1, Subset s2, DoiFunction doiFunc) {
-        double weight = 0;
-        for (Index i1 : s1)
-            for (Index i2 : s2) 
-                weight += doiFunc.doi(i1, i2);
-        return weight;
+        IndexPartitions toIndexPartitions(Index[] hot, int minId) {
+            Index[][] groups = new Index[groupCount][];
+            for (int g = 0; g < groupCount; g++) {
+                groups[g] = new Index[members[g].length];
+                for (int m = 0; m < members[g].length; m++)
+                    groups[g][m] = hot[members[g][m]];
+            }
+            return new IndexPartitions(groups, minId);
+        }
     }
 }
 //CHECKSTYLE:ON
@@ -4,12 +4,18 @@ import java.io.Serializable;
 import java.sql.SQLException;
 import java.util.Set;
 
+import java.util.HashSet;
+
 import edu.ucsc.dbtune.advisor.interactions.InteractionBank;
+import edu.ucsc.dbtune.ibg.CompactIndexBenefitGraph;
 import edu.ucsc.dbtune.metadata.Index;
 import edu.ucsc.dbtune.optimizer.ExplainedSQLStatement;
+import edu.ucsc.dbtune.optimizer.IBGPreparedSQLStatement;
 import edu.ucsc.dbtune.optimizer.PreparedSQLStatement;
+import edu.ucsc.dbtune.util.MetadataUtils;
 
-import static edu.ucsc.dbtune.advisor.wfit.SATuningDBTuneTranslator.toSet;
+import static edu.ucsc.dbtune.ibg.CompactIndexBenefitGraph.NOT_FOUND;
+import static edu.ucsc.dbtune.workload.SQLCategory.NOT_SELECT;
 
 //CHECKSTYLE:OFF
 public class ProfiledQuery implements Serializable {
@@ -23,6 +29,17 @@ public class ProfiledQuery implements Serializable {
     public InteractionBank bank;
     public int whatifCount; // value from DBConnection after profiling
     public int idOffset;
+
+    // candidateSet indexed by bit position (i.e. id - idOffset); entries are null for ids that
+    // aren't in the candidate set
+    private transient Index[] positions;
+
+    // bitset-native copy of the statement's IBG; null if pStmt isn't IBG-based
+    private transient CompactIndexBenefitGraph ibg;
+
+    // marks the positions of indexes whose maintenance is charged by an update statement
+    private transient boolean[] updated;
+    private transient double baseTableUpdateCost;
     
     public ProfiledQuery(
             String sql0,
@@ -39,9 +56,86 @@ public class ProfiledQuery implements Serializable {
         bank = bank0;
         idOffset = idOffset0;
     }
+
+    /**
+     * Builds the compact IBG and update costs so that {@link #cost(BitSet)} doesn't have to go 
+     * through {@link PreparedSQLStatement#explain}. Costs obtained this way are the same as the 
+     * ones given by {@link IBGPreparedSQLStatement#explain}. Done lazily, since the IBG is built 
+     * on the first call to explain().
+     */
+    private void compile() {
+        positions = positions(candidateSet, idOffset);
+
+        if (!(pStmt instanceof IBGPreparedSQLStatement))
+            return;
+
+        IBGPreparedSQLStatement ibgStmt = (IBGPreparedSQLStatement) pStmt;
+
+        if (ibgStmt.getIndexBenefitGraph() == null || ibgStmt.getUniverse() == null)
+            return;
+
+        for (Index index : ibgStmt.getUniverse())
+            if (index.getId() < idOffset)
+                return;
+
+        ibg = new CompactIndexBenefitGraph(ibgStmt.getIndexBenefitGraph(), idOffset);
+        baseTableUpdateCost = ibgStmt.getBaseTableUpdateCost();
+        updated = new boolean[positions(ibgStmt.getUniverse(), idOffset).length];
+
+        if (pStmt.getSQLStatement().getSQLCategory().isSame(NOT_SELECT))
+            for (Index index : ibgStmt.getUniverse())
+                updated[index.getId() - idOffset] =
+                    index.getTable().equals(ibgStmt.getUpdatedTable());
+    }
     
     public double cost(BitSet config) {
-        return cost(toSet(config, candidateSet, idOffset));
+        if (positions == null)
+            compile();
+
+        if (ibg != null) {
+            double cost = ibg.cost(config);
+
+            if (cost != NOT_FOUND) {
+                double updateCost = baseTableUpdateCost;
+
+                for (int i = config.nextSetBit(0); i >= 0; i = config.nextSetBit(i + 1))
+                    if (updated[i])
+                        updateCost += baseTableUpdateCost;
+
+                return cost + updateCost;
+            }
+        }
+
+        // either the statement isn't IBG-based, or the configuration can't be resolved by the 
+        // compact IBG; let explain() take care of it (or throw the corresponding exception)
+        return cost(toSet(config));
+    }
+
+    private Set<Index> toSet(BitSet config) {
+        Set<Index> indexSet = new HashSet<Index>();
+
+        for (int i = config.nextSetBit(0); i >= 0; i = config.nextSetBit(i + 1))
+            if (i < positions.length && positions[i] != null)
+                indexSet.add(positions[i]);
+            else
+                indexSet.add(MetadataUtils.findOrThrow(candidateSet, i + idOffset));
+
+        return indexSet;
+    }
+
+    private static Index[] positions(Set<Index> indexes, int idOffset) {
+        int length = 0;
+
+        for (Index index : indexes)
+            length = Math.max(length, index.getId() - idOffset + 1);
+
+        Index[] positions = new Index[length];
+
+        for (Index index : indexes)
+            if (index.getId() >= idOffset)
+                positions[index.getId() - idOffset] = index;
+
+        return positions;
     }
     
     public double cost(Set<Index> config) {
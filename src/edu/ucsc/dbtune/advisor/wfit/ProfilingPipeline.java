@@ -0,0 +1,281 @@
+package edu.ucsc.dbtune.advisor.wfit;
+
+import java.sql.SQLException;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.ucsc.dbtune.DatabaseSystem;
+
+import edu.ucsc.dbtune.advisor.interactions.DegreeOfInteractionFinder;
+import edu.ucsc.dbtune.advisor.interactions.InteractionBank;
+
+import edu.ucsc.dbtune.metadata.Index;
+
+import edu.ucsc.dbtune.optimizer.ExplainedSQLStatement;
+import edu.ucsc.dbtune.optimizer.PreparedSQLStatement;
+
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+/**
+ * Profiles statements (i.e. prepares them, explains them against their candidate set and
+ * computes the degree of interaction among candidates) on a set of worker threads, so that the
+ * profiling of upcoming statements overlaps with the analysis of the current one. Profiling doesn't
+ * depend on the state of the WFA, so statements can be profiled in any order; it's up to the
+ * caller to consume the profiles in the order of the statements.
+ * <p>
+ * There is one worker per {@link DatabaseSystem} given at construction. A system is used by at most
+ * one thread at a time: workers, as well as any other code that uses a system (or a statement
+ * prepared by it) while the pipeline is running, synchronize on the system's monitor.
+ *
+ * @author Ivo Jimenez
+ */
+public class ProfilingPipeline
+{
+    private final DegreeOfInteractionFinder doiFinder;
+    private final BlockingQueue<DatabaseSystem> idleSystems;
+    private final int workerCount;
+    private ExecutorService executor;
+
+    /**
+     * @param systems
+     *      systems used to profile statements, one per worker
+     * @param doiFinder
+     *      finder used to compute the degree of interaction
+     */
+    public ProfilingPipeline(List<DatabaseSystem> systems, DegreeOfInteractionFinder doiFinder)
+    {
+        if (systems.isEmpty())
+            throw new IllegalArgumentException("At least one system is needed to profile");
+
+        this.doiFinder = doiFinder;
+        this.workerCount = systems.size();
+        this.idleSystems = new ArrayBlockingQueue<DatabaseSystem>(systems.size(), false, systems);
+    }
+
+    /**
+     * Profiles a statement on the calling thread.
+     *
+     * @param sql
+     *      statement to profile
+     * @param candidates
+     *      candidate set that the statement is profiled against; it isn't modified while the
+     *      statement is profiled
+     * @return
+     *      the profile of the statement
+     * @throws SQLException
+     *      if the statement can't be profiled
+     */
+    public Profile profile(SQLStatement sql, Set<Index> candidates) throws SQLException
+    {
+        DatabaseSystem system = acquire();
+
+        try {
+            synchronized (system) {
+                PreparedSQLStatement  pStmt = system.getOptimizer().prepareExplain(sql);
+                ExplainedSQLStatement eStmt = pStmt.explain(candidates);
+                InteractionBank       bank  = doiFinder.degreeOfInteraction(pStmt, candidates);
+
+                return new Profile(sql, candidates, system, pStmt, eStmt, bank);
+            }
+        } finally {
+            idleSystems.add(system);
+        }
+    }
+
+    /**
+     * Profiles a statement on one of the workers.
+     *
+     * @param sql
+     *      statement to profile
+     * @param candidates
+     *      candidate set that the statement is profiled against; it must not be modified until
+     *      the profile is obtained
+     * @return
+     *      a future for the profile of the statement
+     */
+    public Future<Profile> submit(final SQLStatement sql, final Set<Index> candidates)
+    {
+        return getExecutor().submit(new Callable<Profile>() {
+            @Override
+            public Profile call() throws SQLException
+            {
+                return profile(sql, candidates);
+            }
+        });
+    }
+
+    /**
+     * Waits for a profile that was {@link #submit submitted}.
+     *
+     * @param future
+     *      future returned by {@link #submit}
+     * @return
+     *      the profile
+     * @throws SQLException
+     *      if the statement couldn't be profiled
+     */
+    public static Profile get(Future<Profile> future) throws SQLException
+    {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException)
+                throw (SQLException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Stops the workers. Statements that were submitted are still profiled.
+     */
+    public synchronized void shutdown()
+    {
+        if (executor != null)
+            executor.shutdown();
+
+        executor = null;
+    }
+
+    /**
+     * @return
+     *      an idle system, waiting for one if necessary
+     */
+    private DatabaseSystem acquire()
+    {
+        try {
+            return idleSystems.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return
+     *      the executor that runs the workers, creating it if necessary
+     */
+    private synchronized ExecutorService getExecutor()
+    {
+        if (executor == null)
+            executor =
+                Executors.newFixedThreadPool(
+                    workerCount,
+                    new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("wfit-profiler-%d")
+                        .build());
+
+        return executor;
+    }
+
+    /**
+     * The result of profiling a statement.
+     */
+    public static class Profile
+    {
+        private final SQLStatement sql;
+        private final Set<Index> candidates;
+        private final DatabaseSystem system;
+        private final PreparedSQLStatement pStmt;
+        private final ExplainedSQLStatement eStmt;
+        private final InteractionBank bank;
+
+        /**
+         * @param sql
+         *      the statement
+         * @param candidates
+         *      candidate set the statement was profiled against
+         * @param system
+         *      system that prepared the statement
+         * @param pStmt
+         *      prepared statement
+         * @param eStmt
+         *      statement explained against the candidate set
+         * @param bank
+         *      interactions among the candidates
+         */
+        Profile(
+                SQLStatement sql,
+                Set<Index> candidates,
+                DatabaseSystem system,
+                PreparedSQLStatement pStmt,
+                ExplainedSQLStatement eStmt,
+                InteractionBank bank)
+        {
+            this.sql = sql;
+            this.candidates = candidates;
+            this.system = system;
+            this.pStmt = pStmt;
+            this.eStmt = eStmt;
+            this.bank = bank;
+        }
+
+        /**
+         * @return
+         *      the statement
+         */
+        public SQLStatement getStatement()
+        {
+            return sql;
+        }
+
+        /**
+         * @return
+         *      the candidate set the statement was profiled against
+         */
+        public Set<Index> getCandidates()
+        {
+            return candidates;
+        }
+
+        /**
+         * @return
+         *      the system that prepared the statement, whose monitor has to be held while using
+         *      the prepared statement
+         */
+        public DatabaseSystem getSystem()
+        {
+            return system;
+        }
+
+        /**
+         * @return
+         *      the prepared statement
+         */
+        public PreparedSQLStatement getPreparedStatement()
+        {
+            return pStmt;
+        }
+
+        /**
+         * @return
+         *      the statement explained against the candidate set
+         */
+        public ExplainedSQLStatement getExplainedStatement()
+        {
+            return eStmt;
+        }
+
+        /**
+         * @return
+         *      the interactions among the candidates
+         */
+        public InteractionBank getInteractionBank()
+        {
+            return bank;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package edu.ucsc.dbtune.advisor.wfit;
 
+import java.io.File;
+import java.io.IOException;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -9,6 +12,7 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import edu.ucsc.dbtune.advisor.interactions.InteractionBank;
+import edu.ucsc.dbtune.advisor.interactions.StablePartitioning;
 
 import edu.ucsc.dbtune.metadata.Catalog;
 import edu.ucsc.dbtune.metadata.Index;
@@ -46,6 +50,10 @@ public class SATuningDBTuneTranslator
     private int queryCount;
     private int idOffset;
 
+    // number of statements for which profiled queries and WFA history are kept (0 for all)
+    private int historyHorizon;
+    private File historySpillFile;
+
     /**
      * @param cat
      *      when no initial set is used, the catalog must be provided
@@ -68,11 +76,47 @@ public class SATuningDBTuneTranslator
             int maxHotSetSize,
             int indexStatisticsWindowSize,
             int numberOfPartitionIterations)
+    {
+        this(cat, initialSet, maxNumberOfStates, maxHotSetSize, indexStatisticsWindowSize,
+                numberOfPartitionIterations, 0, null);
+    }
+
+    /**
+     * @param cat
+     *      when no initial set is used, the catalog must be provided
+     * @param initialSet
+     *      the initial candidate set to be used
+     * @param maxNumberOfStates
+     *      maximum number of states per partition
+     * @param maxHotSetSize
+     *      maximum number of candidates to keep in the hotSet
+     * @param indexStatisticsWindowSize
+     *      size of the sliding window of interaction-related measurements
+     * @param numberOfPartitionIterations
+     *      number of attempts that the repartitioning algorithm executes to stabilize the candidate
+     *      set partition
+     * @param historyHorizon
+     *      number of most recent statements for which the history (profiled queries and work 
+     *      function values) is retained. A non-positive value retains the whole history
+     * @param historySpillFile
+     *      file where the work function history is spilled to; {@code null} to keep it in memory
+     */
+    public SATuningDBTuneTranslator(
+            Catalog cat,
+            Set<Index> initialSet,
+            int maxNumberOfStates,
+            int maxHotSetSize,
+            int indexStatisticsWindowSize,
+            int numberOfPartitionIterations,
+            int historyHorizon,
+            File historySpillFile)
     {
         this.maxHotSetSize = maxHotSetSize;
         this.maxNumStates = maxNumberOfStates;
         this.indexStatisticsWindowSize = indexStatisticsWindowSize;
         this.numberOfPartitionIterations = numberOfPartitionIterations;
+        this.historyHorizon = historyHorizon;
+        this.historySpillFile = historySpillFile;
 
         if (initialSet.isEmpty())
             init(cat.indexes(), true);
@@ -112,7 +156,10 @@ public class SATuningDBTuneTranslator
         }
 
         hotPartitions = new IndexPartitions(hotSet, idOffset);
-        wfa = new WorkFunctionAlgorithm(hotPartitions, true, maxNumStates, maxHotSetSize, idOffset);
+        wfa =
+            new WorkFunctionAlgorithm(
+                    hotPartitions, true, historyHorizon, historySpillFile, maxNumStates,
+                    maxHotSetSize, idOffset);
     }
 
     /**
@@ -158,6 +205,10 @@ public class SATuningDBTuneTranslator
         queryCount++;
         qinfos.add(qinfo);
 
+        // trim in chunks, so that the cost of shifting the list is amortized
+        if (historyHorizon > 0 && qinfos.size() >= 2 * historyHorizon)
+            qinfos.subList(0, qinfos.size() - historyHorizon).clear();
+
         return new AnalyzedQuery(qinfo, hotPartitions.bitSetArray());
     }
 
@@ -172,30 +223,44 @@ public class SATuningDBTuneTranslator
      * @return
      *      cost of the query
      * @throws IndexOutOfBoundsException
-     *      if {@code queryId} is negative or greater than the total number of statements seen so
-     *      far.
+     *      if {@code queryId} is negative, greater than the total number of statements seen so
+     *      far or refers to a statement that isn't retained anymore (see {@link 
+     *      #getFirstRetainedQuery})
      */
     public double getCost(int queryId, Set<Index> conf)
     {
-        return qinfos.get(queryId).cost(conf);
+        int firstQuery = queryCount - qinfos.size();
+
+        if (queryId < firstQuery)
+            throw new IndexOutOfBoundsException(
+                "Statement " + queryId + " is not retained; the first one is " + firstQuery);
+
+        return qinfos.get(queryId - firstQuery).cost(conf);
     }
 
     /**
-     * Returns the current candidate set partitioning.
+     * Returns the id of the first statement whose history is retained, i.e. the first statement 
+     * that is covered by {@link #getOptimalScheduleRecommendation} and can be passed to {@link 
+     * #getCost}. Zero if the history isn't bounded.
      *
-     * @param pool
-     *      pool of all the candidate indexes referenced in any step
      * @return
-     *      a set of sets of indexes
+     *      id of the first statement that is retained
      */
-    public Set<Set<Index>> getStablePartitioning(Set<Index> pool)
+    public int getFirstRetainedQuery()
     {
-        Set<Set<Index>> partitioning = new HashSet<Set<Index>>();
-
-        for (BitSet bs : hotPartitions.bitSetArray())
-            partitioning.add(new HashSet<Index>(toSet(bs, pool, idOffset)));
+        return Math.max(queryCount - qinfos.size(), wfa.getTrace().firstEntry());
+    }
 
-        return partitioning;
+    /**
+     * Returns the current candidate set partitioning. The partitioning is obtained only once for
+     * every distinct partitioning of the hot set.
+     *
+     * @return
+     *      a set of sets of indexes
+     */
+    public StablePartitioning getStablePartitioning()
+    {
+        return hotPartitions.stablePartitioning();
     }
 
     /**
@@ -211,6 +276,104 @@ public class SATuningDBTuneTranslator
         return wfa.getWorkFunctionScores(pool);
     }
 
+    /**
+     * Captures the current state. The checkpoint doesn't share mutable state with the translator, 
+     * so it can be written while statements keep being analyzed.
+     *
+     * @param pool
+     *      pool of all the candidate indexes referenced in any step
+     * @return
+     *      a checkpoint of the translator's state
+     */
+    WFITCheckpoint checkpoint(Set<Index> pool)
+    {
+        List<Index> candidates = new ArrayList<Index>();
+
+        for (Index index : new TreeSet<Index>(pool))
+            if (index.getId() >= idOffset)
+                candidates.add(index);
+
+        int[][] subsets = new int[hotPartitions.subsetCount()][];
+
+        for (int i = 0; i < subsets.length; i++)
+            subsets[i] = hotPartitions.get(i).indexIds().clone();
+
+        return new WFITCheckpoint(
+                candidates.toArray(new Index[0]), idOffset, maxHotSetSize, relativeIds(hotSet),
+                relativeIds(matSet), relativeIds(userHotSet), subsets, wfa.getTotalWorkValues(),
+                wfa.getCurrentStates(), new IndexStatistics(idxStats));
+    }
+
+    /**
+     * Replaces the state of the translator with the one written to the given checkpoint file. The 
+     * indexes of the checkpoint are instantiated anew, and get ids that are consecutive to each 
+     * other. The history (and thus {@code OPT}) starts at the restored state, so this can only be 
+     * done before any statement is analyzed.
+     *
+     * @param file
+     *      file where a checkpoint was {@link WFITCheckpoint#write written} to
+     * @param catalog
+     *      catalog against which the indexes of the checkpoint are resolved
+     * @return
+     *      the candidate pool of the checkpoint
+     * @throws IOException
+     *      if the checkpoint can't be read
+     * @throws IllegalStateException
+     *      if statements have been analyzed already
+     */
+    Index[] restore(File file, Catalog catalog) throws IOException
+    {
+        if (queryCount > 0)
+            throw new IllegalStateException("Can't restore after statements have been analyzed");
+
+        WFITCheckpoint checkpoint = WFITCheckpoint.read(file, catalog, indexStatisticsWindowSize);
+
+        idOffset = checkpoint.getIdOffset();
+        maxHotSetSize = Math.max(maxHotSetSize, checkpoint.getMaxHotSetSize());
+        idxStats = checkpoint.getStatistics();
+        matSet = new DynamicIndexSet(idOffset);
+        userHotSet = new DynamicIndexSet(idOffset);
+        hotSet = new StaticIndexSet(checkpoint.getHotSet());
+        hotPartitions = checkpoint.getPartitions();
+        qinfos = new ArrayList<ProfiledQuery>();
+
+        for (Index index : checkpoint.getMaterialized())
+            matSet.add(index);
+
+        for (Index index : checkpoint.getUserHotSet())
+            userHotSet.add(index);
+
+        wfa.getTrace().close();
+        wfa =
+            new WorkFunctionAlgorithm(
+                    hotPartitions, checkpoint.getWorkFunction(hotPartitions),
+                    checkpoint.getStates(hotPartitions), true, historyHorizon, historySpillFile,
+                    maxNumStates, maxHotSetSize, idOffset);
+
+        return checkpoint.getPool();
+    }
+
+    /**
+     * @param indexes
+     *      a set of indexes
+     * @return
+     *      the ids of the given indexes, relative to the offset
+     */
+    private int[] relativeIds(Iterable<Index> indexes)
+    {
+        List<Integer> ids = new ArrayList<Integer>();
+
+        for (Index index : indexes)
+            ids.add(index.getId() - idOffset);
+
+        int[] result = new int[ids.size()];
+
+        for (int i = 0; i < result.length; i++)
+            result[i] = ids.get(i);
+
+        return result;
+    }
+
     /**
      * @return
      *      recommendation for the last seen statement
@@ -320,13 +483,16 @@ public class SATuningDBTuneTranslator
      *      pool of all the candidate indexes referenced in any step
      * @return
      *      a list containing a recommendation in each element. Each element in the list corresponds
-     *      to a query, in the order they've been passed to the {@code Selector}
+     *      to a query, in the order they've been passed to the {@code Selector}, starting at 
+     *      {@link #getFirstRetainedQuery}
      */
     public List<Set<Index>> getOptimalScheduleRecommendation(Set<Index> pool)
     {
+        List<ProfiledQuery> retained =
+            qinfos.subList(getFirstRetainedQuery() - (queryCount - qinfos.size()), qinfos.size());
         BitSet[] optimalSchedule =
             wfa.getTrace().optimalSchedule(
-                hotPartitions, queryCount, qinfos.toArray(new ProfiledQuery[0]));
+                hotPartitions, queryCount, retained.toArray(new ProfiledQuery[0]));
         List<Set<Index>> optimalRecs = new ArrayList<Set<Index>>();
 
         for (BitSet bs : optimalSchedule)
@@ -5,6 +5,8 @@ import edu.ucsc.dbtune.metadata.Index;
 //CHECKSTYLE:OFF
 public class StaticIndexSet implements Iterable<Index> {
     private Index[] arr;
+    // same elements as arr, so that contains() doesn't depend on the size of the set
+    private java.util.Set<Index> set;
     
     public StaticIndexSet(Index[] arr0) {
         for (Index idx : arr0) {
@@ -12,21 +14,16 @@ public class StaticIndexSet implements Iterable<Index> {
                 throw new IllegalArgumentException();
         }
         arr = arr0;
+        set = new java.util.HashSet<Index>(java.util.Arrays.asList(arr0));
     }
     
     public StaticIndexSet() {
         arr = new Index[0];
+        set = java.util.Collections.emptySet();
     }
 
     public boolean contains(Index index) {
-        if (arr == null)
-            return false;
-        
-        for (Index other : arr) {
-            if (index.equals(other)) return true;
-        }
-        
-        return false;
+        return set.contains(index);
     }
 
     public int size() {
@@ -1,14 +1,23 @@
 package edu.ucsc.dbtune.advisor.wfit;
 
+import java.io.File;
+import java.io.IOException;
+
 import java.sql.SQLException;
 
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.google.common.eventbus.EventBus;
 
 import edu.ucsc.dbtune.DatabaseSystem;
 
@@ -17,18 +26,28 @@ import edu.ucsc.dbtune.advisor.VoteableAdvisor;
 import edu.ucsc.dbtune.advisor.WindowingAdvisor;
 import edu.ucsc.dbtune.advisor.WorkloadObserverAdvisor;
 
+import edu.ucsc.dbtune.advisor.interactions.BudgetedDoiFinder;
 import edu.ucsc.dbtune.advisor.interactions.DegreeOfInteractionFinder;
 import edu.ucsc.dbtune.advisor.interactions.IBGDoiFinder;
-import edu.ucsc.dbtune.advisor.interactions.InteractionBank;
+
+import edu.ucsc.dbtune.advisor.wfit.ProfilingPipeline.Profile;
 
 import edu.ucsc.dbtune.metadata.Index;
 
-import edu.ucsc.dbtune.optimizer.ExplainedSQLStatement;
 import edu.ucsc.dbtune.optimizer.PreparedSQLStatement;
 
+import edu.ucsc.dbtune.util.Environment;
+import edu.ucsc.dbtune.util.EnvironmentProperties;
+import edu.ucsc.dbtune.util.EventBusFactory;
+import edu.ucsc.dbtune.util.OptimizerUtils;
+
 import edu.ucsc.dbtune.workload.SQLStatement;
 import edu.ucsc.dbtune.workload.Workload;
 
+import static edu.ucsc.dbtune.util.EnvironmentProperties.EAGER;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.LAZY;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.NONE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.SAMPLED;
 import static edu.ucsc.dbtune.util.MetadataUtils.findOrThrow;
 import static edu.ucsc.dbtune.util.OptimizerUtils.getBenefits;
 
@@ -47,10 +66,17 @@ public class WFIT extends WorkloadObserverAdvisor implements VoteableAdvisor, Wi
     private DatabaseSystem db;
     private SATuningDBTuneTranslator wfitDriver;
     private Set<Index> pool;
-    private DegreeOfInteractionFinder doiFinder;
     private WFITRecommendationStatistics stats;
     private WFITRecommendationStatistics optStats;
     private boolean isCandidateSetFixed;
+    private ProfilingPipeline profiler;
+    private int lookahead;
+    private String statisticsPolicy;
+    private int sampleInterval;
+    private int analyzedCount;
+    private File checkpointFile;
+    private int checkpointInterval;
+    private Future<Void> pendingCheckpoint;
 
     /**
      * Creates a WFIT advisor, with an empty initial candidate set.
@@ -179,10 +205,181 @@ public class WFIT extends WorkloadObserverAdvisor implements VoteableAdvisor, Wi
             int indexStatisticsWindowSize,
             int numberOfPartitionIterations)
     {
-        super(workload, isPaused);
+        this(db, workload, initialSet, isPaused, doiFinder, maxNumberOfStates, maxHotSetSize,
+                indexStatisticsWindowSize, numberOfPartitionIterations, 0, null, 0,
+                Collections.singletonList(db), EventBusFactory.getEventBusInstance());
+    }
+
+    /**
+     * Creates a WFIT advisor, reading the components parameters from the given environment. 
+     * Statements are profiled on {@code db} only, thus one at a time regardless of the {@link 
+     * Environment#getWFITPipelineLookahead lookahead}; to profile them ahead, see {@link 
+     * #WFIT(DatabaseSystem, Workload, Set, boolean, Environment, List)}.
+     *
+     * @param db
+     *      the dbms where wfit will run on
+     * @param workload
+     *      workload that the advisor will be observing
+     * @param initialSet
+     *      initial candidate set
+     * @param isPaused
+     *      whether the advisor goes on automatically after instantiating or pauses
+     * @param env
+     *      environment from where the {@code WFIT_*} properties are read
+     */
+    public WFIT(
+            DatabaseSystem db,
+            Workload workload,
+            Set<Index> initialSet,
+            boolean isPaused,
+            Environment env)
+    {
+        this(db, workload, initialSet, isPaused, env, Collections.singletonList(db));
+    }
+
+    /**
+     * Creates a WFIT advisor, reading the components parameters from the given environment and 
+     * profiling statements on the given systems. When a batch of statements is {@link #play 
+     * played}, up to {@link Environment#getWFITPipelineLookahead} statements are profiled ahead of 
+     * the one being analyzed, concurrently on as many of the given systems. Candidate generation 
+     * and the WFA update are still done in the order of the statements, thus the recommendations 
+     * (and their statistics) are the same as when processing one statement at a time.
+     * <p>
+     * The WFA update holds the system that profiled the statement, so profiling overlaps with the 
+     * analysis only if there are at least two systems, each with its own connection (e.g. {@code 
+     * lookahead + 1} of them). With a single system the lookahead is ignored.
+     *
+     * @param db
+     *      the dbms where wfit will run on
+     * @param workload
+     *      workload that the advisor will be observing
+     * @param initialSet
+     *      initial candidate set
+     * @param isPaused
+     *      whether the advisor goes on automatically after instantiating or pauses
+     * @param env
+     *      environment from where the {@code WFIT_*} properties are read
+     * @param profilingSystems
+     *      systems used to profile statements (which may include {@code db}), each with its own 
+     *      optimizer connection
+     */
+    public WFIT(
+            DatabaseSystem db,
+            Workload workload,
+            Set<Index> initialSet,
+            boolean isPaused,
+            Environment env,
+            List<DatabaseSystem> profilingSystems)
+    {
+        this(db, workload, initialSet, isPaused, env, profilingSystems,
+                EventBusFactory.getEventBusInstance());
+    }
+
+    /**
+     * Creates a WFIT advisor that registers with and posts to the given event bus, instead of the 
+     * one shared by the API. Otherwise it's the same as {@link #WFIT(DatabaseSystem, Workload, 
+     * Set, boolean, Environment, List)}.
+     *
+     * @param db
+     *      the dbms where wfit will run on
+     * @param workload
+     *      workload that the advisor will be observing
+     * @param initialSet
+     *      initial candidate set
+     * @param isPaused
+     *      whether the advisor goes on automatically after instantiating or pauses
+     * @param env
+     *      environment from where the {@code WFIT_*} properties are read
+     * @param profilingSystems
+     *      systems used to profile statements (which may include {@code db})
+     * @param eventBus
+     *      bus the advisor registers with and posts to
+     */
+    public WFIT(
+            DatabaseSystem db,
+            Workload workload,
+            Set<Index> initialSet,
+            boolean isPaused,
+            Environment env,
+            List<DatabaseSystem> profilingSystems,
+            EventBus eventBus)
+    {
+        this(db, workload, initialSet, isPaused, newDoiFinder(env), env.getMaxNumStates(),
+                env.getMaxNumIndexes(), env.getIndexStatisticsWindow(),
+                env.getNumPartitionIterations(), env.getWFITHistoryHorizon(),
+                env.getWFITHistorySpillFile(), env.getWFITPipelineLookahead(), profilingSystems,
+                eventBus);
+
+        setStatisticsPolicy(
+                env.getWFITStatistics(), env.getWFITStatisticsSampleInterval(),
+                env.getWFITStatisticsRetention());
+
+        File file = env.getWFITCheckpointFile();
+
+        if (file != null && file.exists())
+            restore(file);
+
+        setCheckpointPolicy(file, env.getWFITCheckpointInterval());
+    }
+
+    /**
+     * Creates a WFIT advisor with the given initial candidate set, DoI finder and components
+     * parameters.
+     *
+     * @param db
+     *      the dbms where wfit will run on
+     * @param workload
+     *      workload that the advisor will be observing
+     * @param initialSet
+     *      initial candidate set
+     * @param isPaused
+     *      whether the advisor goes on automatically after instantiating or pauses
+     * @param doiFinder
+     *      interaction finder
+     * @param maxNumberOfStates
+     *      maximum number of states per partition
+     * @param maxHotSetSize
+     *      maximum number of candidates to keep in the hot set
+     * @param indexStatisticsWindowSize
+     *      size of the sliding window of interaction-related measurements
+     * @param numberOfPartitionIterations
+     *      number of attempts that the repartitioning algorithm executes to stabilize the candidate
+     *      set partition
+     * @param historyHorizon
+     *      number of most recent statements for which the history is retained (non-positive to 
+     *      retain all of it). {@code OPT} statistics cover only the retained statements
+     * @param historySpillFile
+     *      file where the work function history is spilled to; {@code null} to keep it in memory
+     * @param lookahead
+     *      maximum number of statements profiled ahead of the one being analyzed when playing a 
+     *      batch of statements; zero to process one statement at a time. Ignored if there's only 
+     *      one profiling system
+     * @param profilingSystems
+     *      systems used to profile statements
+     * @param eventBus
+     *      bus the advisor registers with and posts to
+     */
+    WFIT(
+            DatabaseSystem db,
+            Workload workload,
+            Set<Index> initialSet,
+            boolean isPaused,
+            DegreeOfInteractionFinder doiFinder,
+            int maxNumberOfStates,
+            int maxHotSetSize,
+            int indexStatisticsWindowSize,
+            int numberOfPartitionIterations,
+            int historyHorizon,
+            File historySpillFile,
+            int lookahead,
+            List<DatabaseSystem> profilingSystems,
+            EventBus eventBus)
+    {
+        super(workload, isPaused, eventBus);
 
         this.db = db;
-        this.doiFinder = doiFinder;
+        this.lookahead = profilingSystems.size() > 1 ? lookahead : 0;
+        this.profiler = new ProfilingPipeline(profilingSystems, doiFinder);
 
         this.wfitDriver =
             new SATuningDBTuneTranslator(
@@ -191,11 +388,15 @@ public class WFIT extends WorkloadObserverAdvisor implements VoteableAdvisor, Wi
                     maxNumberOfStates,
                     maxHotSetSize,
                     indexStatisticsWindowSize,
-                    numberOfPartitionIterations);
+                    numberOfPartitionIterations,
+                    historyHorizon,
+                    historySpillFile);
 
         this.pool = new TreeSet<Index>(initialSet);
         this.stats = new WFITRecommendationStatistics("WFIT" + maxNumberOfStates);
         this.optStats = new WFITRecommendationStatistics("OPT");
+        this.statisticsPolicy = EAGER;
+        this.sampleInterval = 1;
 
         //if (initialSet.isEmpty())
             this.isCandidateSetFixed = false;
@@ -203,6 +404,152 @@ public class WFIT extends WorkloadObserverAdvisor implements VoteableAdvisor, Wi
             //this.isCandidateSetFixed = true;
     }
 
+    /**
+     * Sets how the {@link #getRecommendationStatistics statistics} of the recommendations are 
+     * obtained. Producing the statistics of an entry takes two what-if calls and the conversion of 
+     * every work function value, thus when only the recommendation is of interest they can be 
+     * turned off, taken for a sample of the statements or computed lazily (i.e. the prepared 
+     * statement is retained and the what-if calls are done when the statistics are read, or when 
+     * the entry is dropped for being beyond the retention). Lazy entries don't have work function 
+     * scores.
+     *
+     * @param policy
+     *      one of {@link EnvironmentProperties#EAGER}, {@link EnvironmentProperties#LAZY}, {@link 
+     *      EnvironmentProperties#SAMPLED} or {@link EnvironmentProperties#NONE}
+     * @param sampleInterval
+     *      when sampling, one out of this number of statements gets an entry
+     * @param retention
+     *      number of most recent entries to retain; a non-positive value retains all of them
+     * @throws IllegalArgumentException
+     *      if the policy is unknown or the sample interval isn't positive
+     */
+    public void setStatisticsPolicy(String policy, int sampleInterval, int retention)
+    {
+        if (!policy.equals(EAGER) && !policy.equals(LAZY) && !policy.equals(SAMPLED) &&
+                !policy.equals(NONE))
+            throw new IllegalArgumentException("Unknown statistics policy " + policy);
+
+        if (sampleInterval <= 0)
+            throw new IllegalArgumentException("Sample interval should be positive");
+
+        this.statisticsPolicy = policy;
+        this.sampleInterval = sampleInterval;
+        this.stats.setRetention(retention);
+    }
+
+    /**
+     * Sets how often the state of the advisor is checkpointed. Checkpoints are captured after 
+     * every {@code interval} statements and written to the given file in the background, thus 
+     * statement processing doesn't wait for them to be written. If a checkpoint is still being 
+     * written when the next one is due, the latter is skipped.
+     *
+     * @param file
+     *      file where checkpoints are written to; {@code null} to disable checkpoints
+     * @param interval
+     *      number of statements between two consecutive checkpoints
+     * @throws IllegalArgumentException
+     *      if the file is given and the interval isn't positive
+     * @see #checkpoint
+     */
+    public void setCheckpointPolicy(File file, int interval)
+    {
+        if (file != null && interval <= 0)
+            throw new IllegalArgumentException("Checkpoint interval should be positive");
+
+        this.checkpointFile = file;
+        this.checkpointInterval = interval;
+    }
+
+    /**
+     * Writes the state of the advisor (candidate pool, hot set, partitioning, work function and 
+     * index statistics) to the given file.
+     *
+     * @param file
+     *      file where the checkpoint is written to
+     * @throws IOException
+     *      if the file can't be written
+     * @see WFITCheckpoint
+     */
+    public void checkpoint(File file) throws IOException
+    {
+        wfitDriver.checkpoint(pool).write(file);
+    }
+
+    /**
+     * Restores the state of the advisor from the given checkpoint file. The candidate pool is 
+     * replaced by the one of the checkpoint, whose indexes are resolved against the catalog of the 
+     * system. The recommendation statistics and the {@code OPT} history start at the restored 
+     * state.
+     *
+     * @param file
+     *      file where a checkpoint was written to
+     * @throws IllegalStateException
+     *      if the advisor has already processed statements
+     * @throws RuntimeException
+     *      if the checkpoint can't be read
+     */
+    public void restore(File file)
+    {
+        try {
+            Index[] restored = wfitDriver.restore(file, db.getCatalog());
+
+            pool.clear();
+
+            for (Index index : restored)
+                pool.add(index);
+        } catch (IOException e) {
+            throw new RuntimeException("Can't restore checkpoint " + file, e);
+        }
+    }
+
+    /**
+     * Creates the DoI finder that the {@link EnvironmentProperties#WFIT_DOI_BUDGET} property asks
+     * for.
+     *
+     * @param env
+     *      environment from where the budget is read
+     * @return
+     *      a {@link BudgetedDoiFinder} if the budget is positive; an {@link IBGDoiFinder} otherwise
+     */
+    private static DegreeOfInteractionFinder newDoiFinder(Environment env)
+    {
+        int budget = env.getWFITDoiBudget();
+
+        if (budget > 0)
+            return new BudgetedDoiFinder(budget);
+
+        return new IBGDoiFinder();
+    }
+
+    /**
+     * Captures a checkpoint and submits it for writing, if one is due. Errors that occurred while
+     * writing the previous checkpoint are reported here.
+     *
+     * @param candidates
+     *      pool as of the last analyzed statement
+     */
+    private void checkpointIfDue(Set<Index> candidates)
+    {
+        if (checkpointFile == null || wfitDriver.getQueryCount() % checkpointInterval != 0)
+            return;
+
+        if (pendingCheckpoint != null) {
+            if (!pendingCheckpoint.isDone())
+                return;
+
+            try {
+                pendingCheckpoint.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Can't write checkpoint " + checkpointFile, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        pendingCheckpoint = wfitDriver.checkpoint(candidates).writeAsync(checkpointFile);
+    }
+
     /**
      * Adds a query to the set of queries that are considered for
      * recommendation.
@@ -215,29 +562,115 @@ public class WFIT extends WorkloadObserverAdvisor implements VoteableAdvisor, Wi
     @Override
     public void processNewStatement(SQLStatement sql) throws SQLException
     {
-        if (!isCandidateSetFixed)
-            pool.addAll(db.getOptimizer().recommendIndexes(sql));
+        analyze(profiler.profile(sql, nextCandidateSet(sql, false)));
+    }
 
-        PreparedSQLStatement  pStmt = db.getOptimizer().prepareExplain(sql);
-        ExplainedSQLStatement eStmt = pStmt.explain(pool);
-        InteractionBank       bank  = doiFinder.degreeOfInteraction(pStmt, pool);
+    /**
+     * Processes a batch of statements. If the lookahead is positive, statements are profiled ahead 
+     * of the one being analyzed.
+     *
+     * @param statements
+     *      statements to process
+     * @throws SQLException
+     *      if one of the statements can't be processed
+     */
+    @Override
+    protected void processNewStatements(List<SQLStatement> statements) throws SQLException
+    {
+        if (lookahead <= 0) {
+            super.processNewStatements(statements);
+            return;
+        }
 
-        wfitDriver.analyzeQuery(sql.getSQL(), pStmt, eStmt, pool, bank);
+        LinkedList<Future<Profile>> upcoming = new LinkedList<Future<Profile>>();
 
-        Set<Index> recommendation = getRecommendation();
+        for (SQLStatement sql : statements) {
+            upcoming.add(profiler.submit(sql, nextCandidateSet(sql, true)));
 
-        if (isCandidateSetFixed)
-            getOptimalRecommendationStatistics();
+            if (upcoming.size() > lookahead) {
+                analyze(ProfilingPipeline.get(upcoming.poll()));
+                post();
+            }
+        }
+
+        while (!upcoming.isEmpty()) {
+            analyze(ProfilingPipeline.get(upcoming.poll()));
+            post();
+        }
+    }
+
+    /**
+     * Adds the candidates of the given statement to the pool.
+     *
+     * @param sql
+     *      statement whose candidates are added
+     * @param copy
+     *      whether to return a copy of the pool, so that it can be used after the candidates of 
+     *      upcoming statements are added
+     * @return
+     *      the candidate set for the given statement
+     * @throws SQLException
+     *      if the candidates can't be generated
+     */
+    private Set<Index> nextCandidateSet(SQLStatement sql, boolean copy) throws SQLException
+    {
+        // index ids are assigned as candidates are generated, so this has to be done in order
+        if (!isCandidateSetFixed)
+            synchronized (db) {
+                pool.addAll(db.getOptimizer().recommendIndexes(sql));
+            }
 
-        stats.addNewEntry(
-            sql,
-            pStmt.explain(recommendation).getTotalCost(),
-            pool,
-            getStablePartitioning(),
-            getUsefulnessMap(),
-            recommendation,
-            getBenefits(pStmt, recommendation),
-            wfitDriver.getWorkFunctionScores(pool));
+        return copy ? new TreeSet<Index>(pool) : pool;
+    }
+
+    /**
+     * Feeds a profiled statement to the WFA and records the statistics of the new recommendation. 
+     * The statistics and the checkpoint are taken against the candidate set of the profile, i.e. 
+     * the pool as of the statement, since the pool might already contain the candidates of the 
+     * statements profiled ahead of it.
+     *
+     * @param profile
+     *      profiled statement
+     * @throws SQLException
+     *      if the statement can't be analyzed
+     */
+    private void analyze(Profile profile) throws SQLException
+    {
+        SQLStatement         sql        = profile.getStatement();
+        PreparedSQLStatement pStmt      = profile.getPreparedStatement();
+        Set<Index>           candidates = profile.getCandidates();
+
+        synchronized (profile.getSystem()) {
+            wfitDriver.analyzeQuery(
+                    sql.getSQL(), pStmt, profile.getExplainedStatement(), candidates,
+                    profile.getInteractionBank());
+
+            checkpointIfDue(candidates);
+
+            Set<Index> recommendation = getRecommendation();
+
+            if (isCandidateSetFixed)
+                getOptimalRecommendationStatistics();
+
+            if (statisticsPolicy.equals(NONE) ||
+                    (statisticsPolicy.equals(SAMPLED) && analyzedCount++ % sampleInterval != 0))
+                return;
+
+            if (statisticsPolicy.equals(LAZY)) {
+                stats.addPendingEntry(new PendingWFITEntry(profile, recommendation));
+                return;
+            }
+
+            stats.addNewEntry(
+                sql,
+                pStmt.explain(recommendation).getTotalCost(),
+                candidates,
+                getStablePartitioning(),
+                getUsefulnessMap(),
+                recommendation,
+                getBenefits(pStmt, recommendation),
+                wfitDriver.getWorkFunctionScores(candidates));
+        }
     }
 
     /**
@@ -334,7 +767,7 @@ public class WFIT extends WorkloadObserverAdvisor implements VoteableAdvisor, Wi
      */
     public Set<Set<Index>> getStablePartitioning()
     {
-        return wfitDriver.getStablePartitioning(pool);
+        return wfitDriver.getStablePartitioning();
     }
 
     /**
@@ -354,12 +787,12 @@ public class WFIT extends WorkloadObserverAdvisor implements VoteableAdvisor, Wi
 
         optStats.clear();
 
-        int i = 0;
+        int i = wfitDriver.getFirstRetainedQuery();
 
         for (Set<Index> optRecommendation : wfitDriver.getOptimalScheduleRecommendation(pool))
             optStats.addNewEntry(
                 null,
-                wfitDriver.getCost(i, optRecommendation),
+                wfitDriver.getCost(i++, optRecommendation),
                 pool,
                 new TreeSet<Set<Index>>(),
                 optRecommendation,
@@ -462,4 +895,82 @@ public class WFIT extends WorkloadObserverAdvisor implements VoteableAdvisor, Wi
     {
         return db;
     }
+
+    /**
+     * An entry of the statistics that retains the prepared statement, out of which the what-if 
+     * costs are computed when the entry is materialized. Everything else is taken when the entry 
+     * is created: the partitioning, which is shared with the driver (it's replaced, not modified, 
+     * when repartitioning), and the recommendation. The work function scores aren't retained, 
+     * since that would take a copy of every work function value per statement.
+     */
+    private class PendingWFITEntry extends WFITRecommendationStatistics.PendingEntry
+    {
+        private final PreparedSQLStatement pStmt;
+        private final DatabaseSystem system;
+        private final Set<Set<Index>> partitioning;
+
+        /**
+         * @param profile
+         *      profile of the statement
+         * @param recommendation
+         *      recommendation after the statement was analyzed
+         */
+        PendingWFITEntry(Profile profile, Set<Index> recommendation)
+        {
+            super(profile.getStatement(), profile.getCandidates(), recommendation,
+                    getUsefulnessMap());
+
+            this.pStmt = profile.getPreparedStatement();
+            this.system = profile.getSystem();
+            this.partitioning = getStablePartitioning();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected double getTotalCost()
+        {
+            try {
+                synchronized (system) {
+                    return pStmt.explain(getRecommendation()).getTotalCost();
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Set<Set<Index>> getPartitioning()
+        {
+            return partitioning;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Map<Index, Double> getBenefits()
+        {
+            try {
+                synchronized (system) {
+                    return OptimizerUtils.getBenefits(pStmt, getRecommendation());
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Map<Set<Index>, Double> getWorkFunctionScores()
+        {
+            return Collections.emptyMap();
+        }
+    }
 }
@@ -0,0 +1,657 @@
+package edu.ucsc.dbtune.advisor.wfit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.ucsc.dbtune.advisor.wfit.WorkFunctionAlgorithm.TotalWorkValues;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Column;
+import edu.ucsc.dbtune.metadata.Index;
+
+/**
+ * The state that WFIT accumulates over the statements it analyzes: candidate pool, hot set,
+ * materialized and voted indexes, partitioning, work function values and current state of each
+ * partition, and the index statistics windows. Restoring it lets a restarted WFIT continue where
+ * the checkpointed one was, instead of having to see the workload again in order to converge.
+ * <p>
+ * A checkpoint is captured from the WFIT state (which only copies arrays) and it's independent
+ * from it afterwards, so it can be {@link #writeAsync written} while WFIT goes on processing
+ * statements. The history used to compute {@code OPT} isn't checkpointed.
+ * <p>
+ * Indexes are identified by their ids relative to the offset used by the WFA. When written, these
+ * are mapped to their rank in the pool, so the checkpoint doesn't depend on how sparse the ids
+ * are. Indexes are written as the fully qualified names of their columns, which are resolved
+ * against the {@link Catalog} when read; read indexes get consecutive ids (in the same order as
+ * the original ones) that are reserved through {@link Index#reserveIds}.
+ *
+ * @author Ivo Jimenez
+ */
+public class WFITCheckpoint
+{
+    private static final int MAGIC = 0x57464954;
+    private static final int VERSION = 1;
+
+    private static ExecutorService writer;
+
+    private final Index[] pool;
+    private final int[] ids;
+    private final int idOffset;
+    private final int maxHotSetSize;
+    private final int[] hotSet;
+    private final int[] materialized;
+    private final int[] userHotSet;
+    private final int[][] subsets;
+    private final TotalWorkValues wf;
+    private final int[] states;
+    private final IndexStatistics statistics;
+
+    /**
+     * @param pool
+     *      candidate pool, sorted by id
+     * @param idOffset
+     *      offset subtracted from index ids by the WFA
+     * @param maxHotSetSize
+     *      maximum size of the hot set
+     * @param hotSet
+     *      ids of the hot set
+     * @param materialized
+     *      ids of the materialized indexes
+     * @param userHotSet
+     *      ids of the indexes that the user voted for
+     * @param subsets
+     *      ids of each subset of the partitioning, each sorted in ascending order
+     * @param wf
+     *      work function values of each subset, in the same order as {@code subsets}
+     * @param states
+     *      current state of each subset, in the same order as {@code subsets}
+     * @param statistics
+     *      index statistics
+     */
+    WFITCheckpoint(
+            Index[] pool,
+            int idOffset,
+            int maxHotSetSize,
+            int[] hotSet,
+            int[] materialized,
+            int[] userHotSet,
+            int[][] subsets,
+            TotalWorkValues wf,
+            int[] states,
+            IndexStatistics statistics)
+    {
+        this.pool = pool;
+        this.ids = new int[pool.length];
+        this.idOffset = idOffset;
+        this.maxHotSetSize = maxHotSetSize;
+        this.hotSet = hotSet;
+        this.materialized = materialized;
+        this.userHotSet = userHotSet;
+        this.subsets = subsets;
+        this.wf = wf;
+        this.states = states;
+        this.statistics = statistics;
+
+        for (int i = 0; i < pool.length; i++)
+            ids[i] = pool[i].getId() - idOffset;
+    }
+
+    /**
+     * @return
+     *      the candidate pool, sorted by id
+     */
+    public Index[] getPool()
+    {
+        return pool.clone();
+    }
+
+    /**
+     * @return
+     *      offset subtracted from index ids
+     */
+    int getIdOffset()
+    {
+        return idOffset;
+    }
+
+    /**
+     * @return
+     *      maximum size of the hot set
+     */
+    int getMaxHotSetSize()
+    {
+        return maxHotSetSize;
+    }
+
+    /**
+     * @return
+     *      the hot set
+     */
+    Index[] getHotSet()
+    {
+        return indexes(hotSet);
+    }
+
+    /**
+     * @return
+     *      the materialized indexes
+     */
+    Index[] getMaterialized()
+    {
+        return indexes(materialized);
+    }
+
+    /**
+     * @return
+     *      the indexes voted by the user
+     */
+    Index[] getUserHotSet()
+    {
+        return indexes(userHotSet);
+    }
+
+    /**
+     * @return
+     *      the index statistics
+     */
+    IndexStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * @return
+     *      the partitioning
+     */
+    IndexPartitions getPartitions()
+    {
+        Index[][] groups = new Index[subsets.length][];
+
+        for (int s = 0; s < subsets.length; s++)
+            groups[s] = indexes(subsets[s]);
+
+        return new IndexPartitions(groups, idOffset);
+    }
+
+    /**
+     * Returns the work function values, in the order of the subsets of the given partitioning.
+     * This isn't necessarily the order in which they were captured, since subsets are sorted by
+     * the average of their ids, which isn't preserved when ids are mapped to their rank.
+     *
+     * @param parts
+     *      partitioning returned by {@link #getPartitions}
+     * @return
+     *      work function values of each subset of {@code parts}
+     */
+    TotalWorkValues getWorkFunction(IndexPartitions parts)
+    {
+        int[] order = subsetOrder(parts);
+        TotalWorkValues result = new TotalWorkValues(order.length);
+
+        for (int s = 0; s < order.length; s++)
+            result.move(s, wf, order[s]);
+
+        return result;
+    }
+
+    /**
+     * @param parts
+     *      partitioning returned by {@link #getPartitions}
+     * @return
+     *      current state of each subset of {@code parts}
+     */
+    int[] getStates(IndexPartitions parts)
+    {
+        int[] order = subsetOrder(parts);
+        int[] result = new int[order.length];
+
+        for (int s = 0; s < order.length; s++)
+            result[s] = states[order[s]];
+
+        return result;
+    }
+
+    /**
+     * Writes the checkpoint to the given file. The checkpoint is written to a temporary file first
+     * and then renamed, so that the file always contains a complete checkpoint.
+     *
+     * @param file
+     *      file where the checkpoint is written to
+     * @throws IOException
+     *      if the file can't be written
+     */
+    public void write(File file) throws IOException
+    {
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+            throw new IOException("Can't rename " + tmp + " to " + file);
+    }
+
+    /**
+     * Writes the checkpoint to the given file on a background thread, which is shared by all the
+     * checkpoints. Checkpoints are written in the order they're submitted.
+     *
+     * @param file
+     *      file where the checkpoint is written to
+     * @return
+     *      a future that completes once the checkpoint is written
+     */
+    public Future<Void> writeAsync(final File file)
+    {
+        return getWriter().submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException
+            {
+                write(file);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Writes the checkpoint to the given stream. The stream is finished but not closed.
+     *
+     * @param stream
+     *      stream where the checkpoint is written to
+     * @throws IOException
+     *      if the stream can't be written
+     */
+    void write(OutputStream stream) throws IOException
+    {
+        DeflaterOutputStream deflater = new DeflaterOutputStream(stream);
+        DataOutputStream out = new DataOutputStream(deflater);
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(maxHotSetSize);
+
+        out.writeInt(pool.length);
+
+        for (Index index : pool)
+            writeIndex(out, index);
+
+        writeRanks(out, hotSet);
+        writeRanks(out, materialized);
+        writeRanks(out, userHotSet);
+
+        out.writeInt(subsets.length);
+
+        for (int s = 0; s < subsets.length; s++) {
+            writeRanks(out, subsets[s]);
+            out.writeInt(states[s]);
+
+            for (double value : wf.values[s])
+                out.writeDouble(value);
+            for (int predecessor : wf.predecessor[s])
+                out.writeInt(predecessor);
+        }
+
+        statistics.write(out, ids);
+
+        out.flush();
+        deflater.finish();
+    }
+
+    /**
+     * Reads a checkpoint from the given file.
+     *
+     * @param file
+     *      file where the checkpoint was written to
+     * @param catalog
+     *      catalog against which the columns of the indexes are resolved
+     * @param windowSize
+     *      size of the windows of the index statistics
+     * @return
+     *      the checkpoint, with new indexes
+     * @throws IOException
+     *      if the file can't be read, it isn't a checkpoint or an index can't be resolved
+     */
+    static WFITCheckpoint read(File file, Catalog catalog, int windowSize) throws IOException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+
+        try {
+            return read(in, catalog, windowSize);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a checkpoint from the given stream.
+     *
+     * @param stream
+     *      stream where the checkpoint was written to
+     * @param catalog
+     *      catalog against which the columns of the indexes are resolved
+     * @param windowSize
+     *      size of the windows of the index statistics
+     * @return
+     *      the checkpoint, with new indexes
+     * @throws IOException
+     *      if the stream can't be read, it isn't a checkpoint or an index can't be resolved, e.g.
+     *      because its columns aren't in the catalog or because the catalog already contains an
+     *      equivalent index. The indexes created up to that point are removed from the catalog
+     */
+    static WFITCheckpoint read(InputStream stream, Catalog catalog, int windowSize)
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream(new InflaterInputStream(stream));
+
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            throw new IOException("Not a WFIT checkpoint or unsupported version");
+
+        int maxHotSetSize = in.readInt();
+        IndexDefinition[] definitions = new IndexDefinition[in.readInt()];
+
+        for (int i = 0; i < definitions.length; i++)
+            definitions[i] = readIndex(in, catalog);
+
+        int idOffset = Index.reserveIds(definitions.length);
+        Index[] pool = new Index[definitions.length];
+        boolean isRead = false;
+
+        try {
+            for (int i = 0; i < definitions.length; i++)
+                pool[i] = definitions[i].newIndex(idOffset + i);
+
+            int[] hotSet = readRanks(in);
+            int[] materialized = readRanks(in);
+            int[] userHotSet = readRanks(in);
+            int[][] subsets = new int[in.readInt()][];
+            int[] states = new int[subsets.length];
+            TotalWorkValues wf = new TotalWorkValues(subsets.length);
+
+            for (int s = 0; s < subsets.length; s++) {
+                subsets[s] = readRanks(in);
+                states[s] = in.readInt();
+
+                wf.allocate(s, 1 << subsets[s].length);
+
+                for (int i = 0; i < wf.values[s].length; i++)
+                    wf.values[s][i] = in.readDouble();
+                for (int i = 0; i < wf.predecessor[s].length; i++)
+                    wf.predecessor[s][i] = in.readInt();
+            }
+
+            IndexStatistics statistics = IndexStatistics.read(in, windowSize, idOffset);
+            WFITCheckpoint checkpoint =
+                new WFITCheckpoint(
+                    pool, idOffset, maxHotSetSize, hotSet, materialized, userHotSet, subsets, wf,
+                    states, statistics);
+
+            isRead = true;
+
+            return checkpoint;
+        } finally {
+            if (!isRead)
+                discard(pool, idOffset);
+        }
+    }
+
+    /**
+     * Undoes the creation of the pool of a checkpoint that couldn't be read, i.e. removes the 
+     * indexes that were created from their schemas and releases the reserved identifiers.
+     *
+     * @param pool
+     *      the pool; elements that weren't created are {@code null}
+     * @param idOffset
+     *      the first of the identifiers reserved for the pool
+     */
+    private static void discard(Index[] pool, int idOffset)
+    {
+        for (Index index : pool)
+            if (index != null)
+                index.getSchema().remove(index);
+
+        Index.releaseIds(idOffset, pool.length);
+    }
+
+    /**
+     * @param parts
+     *      partitioning returned by {@link #getPartitions}
+     * @return
+     *      for each subset of {@code parts}, the number of the corresponding subset in the
+     *      checkpoint
+     */
+    private int[] subsetOrder(IndexPartitions parts)
+    {
+        Map<Integer, Integer> subsetOfMinId = new HashMap<Integer, Integer>();
+        int[] order = new int[parts.subsetCount()];
+
+        for (int s = 0; s < subsets.length; s++)
+            subsetOfMinId.put(subsets[s][0], s);
+
+        for (int s = 0; s < order.length; s++)
+            order[s] = subsetOfMinId.get(parts.get(s).indexIds()[0]);
+
+        return order;
+    }
+
+    /**
+     * @param relativeIds
+     *      ids relative to the offset
+     * @return
+     *      the indexes of the pool with the given ids
+     */
+    private Index[] indexes(int[] relativeIds)
+    {
+        Index[] result = new Index[relativeIds.length];
+
+        for (int i = 0; i < relativeIds.length; i++)
+            result[i] = pool[rank(relativeIds[i])];
+
+        return result;
+    }
+
+    /**
+     * @param relativeId
+     *      id relative to the offset
+     * @return
+     *      position of the index with the given id in the pool
+     * @throws IllegalStateException
+     *      if the pool doesn't contain the index
+     */
+    private int rank(int relativeId)
+    {
+        int rank = Arrays.binarySearch(ids, relativeId);
+
+        if (rank < 0)
+            throw new IllegalStateException(
+                    "Index with id " + (relativeId + idOffset) + " is not in the candidate pool");
+
+        return rank;
+    }
+
+    /**
+     * Writes ids as their rank in the pool.
+     *
+     * @param out
+     *      output
+     * @param relativeIds
+     *      ids relative to the offset
+     * @throws IOException
+     *      if an error occurs while writing
+     */
+    private void writeRanks(DataOutputStream out, int[] relativeIds) throws IOException
+    {
+        out.writeInt(relativeIds.length);
+
+        for (int id : relativeIds)
+            out.writeInt(rank(id));
+    }
+
+    /**
+     * @param in
+     *      input
+     * @return
+     *      ranks written by {@link #writeRanks}, which are the ids relative to the offset of a read
+     *      checkpoint
+     * @throws IOException
+     *      if an error occurs while reading
+     */
+    private static int[] readRanks(DataInputStream in) throws IOException
+    {
+        int[] ranks = new int[in.readInt()];
+
+        for (int i = 0; i < ranks.length; i++)
+            ranks[i] = in.readInt();
+
+        return ranks;
+    }
+
+    /**
+     * @param out
+     *      output
+     * @param index
+     *      index to write
+     * @throws IOException
+     *      if an error occurs while writing
+     */
+    private static void writeIndex(DataOutputStream out, Index index) throws IOException
+    {
+        out.writeInt(index.size());
+
+        for (Column column : index.columns()) {
+            out.writeUTF(column.getFullyQualifiedName());
+            out.writeBoolean(index.isAscending(column));
+        }
+
+        out.writeBoolean(index.isPrimary());
+        out.writeBoolean(index.isUnique());
+        out.writeBoolean(index.isClustered());
+        out.writeDouble(index.getCreationCost());
+        out.writeLong(index.getBytes());
+    }
+
+    /**
+     * @param in
+     *      input
+     * @param catalog
+     *      catalog against which columns are resolved
+     * @return
+     *      the definition of the index
+     * @throws IOException
+     *      if an error occurs while reading or if a column isn't in the catalog
+     */
+    private static IndexDefinition readIndex(DataInputStream in, Catalog catalog)
+        throws IOException
+    {
+        IndexDefinition definition = new IndexDefinition();
+
+        for (int count = in.readInt(); count > 0; count--) {
+            String name = in.readUTF();
+            Column column;
+
+            try {
+                column = catalog.<Column>findByName(name);
+            } catch (SQLException e) {
+                throw new IOException("Can't resolve column " + name, e);
+            }
+
+            if (column == null)
+                throw new IOException("Column " + name + " is not in the catalog");
+
+            definition.columns.add(column);
+            definition.ascending.add(in.readBoolean());
+        }
+
+        definition.primary = in.readBoolean();
+        definition.unique = in.readBoolean();
+        definition.clustered = in.readBoolean();
+        definition.creationCost = in.readDouble();
+        definition.bytes = in.readLong();
+
+        return definition;
+    }
+
+    /**
+     * @return
+     *      the executor that writes checkpoints in the background, creating it if necessary
+     */
+    private static synchronized ExecutorService getWriter()
+    {
+        if (writer == null)
+            writer =
+                Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("wfit-checkpoint-%d")
+                        .build());
+
+        return writer;
+    }
+
+    /**
+     * An index as it's read from a checkpoint, before it is instantiated.
+     */
+    private static class IndexDefinition
+    {
+        private final List<Column> columns = new ArrayList<Column>();
+        private final List<Boolean> ascending = new ArrayList<Boolean>();
+        private boolean primary;
+        private boolean unique;
+        private boolean clustered;
+        private double creationCost;
+        private long bytes;
+
+        /**
+         * @param id
+         *      id of the new index, which has to be reserved
+         * @return
+         *      a new index with the given id
+         * @throws IOException
+         *      if the index can't be instantiated
+         */
+        Index newIndex(int id) throws IOException
+        {
+            Index index;
+
+            try {
+                index =
+                    new Index(
+                        "dbtune_" + id + "_index", columns, ascending, primary, unique, clustered,
+                        id);
+            } catch (SQLException e) {
+                throw new IOException("Can't instantiate index on " + columns, e);
+            }
+
+            index.setCreationCost(creationCost);
+            index.setBytes(bytes);
+
+            return index;
+        }
+    }
+}
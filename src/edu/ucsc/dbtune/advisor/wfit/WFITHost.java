@@ -0,0 +1,767 @@
+package edu.ucsc.dbtune.advisor.wfit;
+
+import java.io.File;
+
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.ucsc.dbtune.DatabaseSystem;
+
+import edu.ucsc.dbtune.advisor.WorkloadObserverAdvisor;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Index;
+
+import edu.ucsc.dbtune.optimizer.DB2Optimizer;
+
+import edu.ucsc.dbtune.util.Environment;
+import edu.ucsc.dbtune.util.EventBusFactory;
+import edu.ucsc.dbtune.util.MetadataUtils;
+
+import edu.ucsc.dbtune.workload.SQLStatement;
+import edu.ucsc.dbtune.workload.Workload;
+
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_CHECKPOINT_FILE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_HISTORY_SPILL_FILE;
+import static edu.ucsc.dbtune.util.OptimizerUtils.getBaseOptimizer;
+
+/**
+ * Runs many independent WFIT instances (tenants) in the same JVM. Each tenant observes one {@link
+ * Workload} and has its own {@link DatabaseSystem}, i.e. its own optimizer connection. The metadata
+ * of a database is extracted only once: tenants that connect to the same database get their own
+ * copy of it, since the candidates that a tenant generates are added to its catalog.
+ * <p>
+ * The host is the only subscriber of the API's event bus that receives statements: it routes each
+ * statement to the tenant that observes the statement's workload, so that the cost of dispatching
+ * a statement doesn't grow with the number of tenants. Hosted advisors register and post to a
+ * bus owned by the host (see {@link #getEventBus}).
+ * <p>
+ * Tenants are executed by a fixed pool of threads. Each tenant behaves as a serial executor
+ * shard: its statements are processed one at a time and in the order they arrive. Scheduling is
+ * fair: after processing a statement, a tenant with pending statements goes to the back of the
+ * pool's queue, thus tenants with backlogs are served in round-robin fashion and a busy tenant
+ * can't starve the rest. Tenants that connect to the same DB2 database are the exception: since 
+ * the what-if calls of every DB2 session go through the same advise and explain tables, only one 
+ * of them processes a statement at a time.
+ *
+ * @author Ivo Jimenez
+ */
+public class WFITHost
+{
+    private final ConcurrentMap<Workload, Tenant> tenants;
+    private final Map<String, Catalog> catalogs;
+    private final Map<String, Object> db2Locks;
+    private final Map<File, Workload> files;
+    private final EventBus eventBus;
+    private final ExecutorService executor;
+    private final AtomicInteger pendingCount;
+    private volatile boolean isShutdown;
+
+    /**
+     * Creates a host with the number of threads given by {@link Environment#getWFITHostWorkers}.
+     *
+     * @param env
+     *      environment from where the number of threads is read
+     */
+    public WFITHost(Environment env)
+    {
+        this(env.getWFITHostWorkers());
+    }
+
+    /**
+     * Creates a host and registers it with the API's event bus.
+     *
+     * @param workerCount
+     *      number of threads that run the tenants; zero to use as many as available processors
+     * @throws IllegalArgumentException
+     *      if the number of threads is negative
+     */
+    public WFITHost(int workerCount)
+    {
+        if (workerCount < 0)
+            throw new IllegalArgumentException("Number of workers can't be negative");
+
+        if (workerCount == 0)
+            workerCount = Runtime.getRuntime().availableProcessors();
+
+        this.tenants = new ConcurrentHashMap<Workload, Tenant>();
+        this.catalogs = new HashMap<String, Catalog>();
+        this.db2Locks = new HashMap<String, Object>();
+        this.files = new HashMap<File, Workload>();
+        this.eventBus = new EventBus("wfit-host");
+        this.executor =
+            Executors.newFixedThreadPool(
+                workerCount,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("wfit-host-%d").build());
+        this.pendingCount = new AtomicInteger();
+
+        EventBusFactory.getEventBusInstance().register(this);
+    }
+
+    /**
+     * Creates a WFIT instance for the given workload and hosts it. The instance gets a new {@link
+     * DatabaseSystem} created out of the given environment; the catalog is extracted only the
+     * first time that a tenant connects to the database that {@link Environment#getJdbcURL} points
+     * to. Every tenant gets a {@link MetadataUtils#copyOf copy} of the extracted catalog, so that
+     * tenants don't see (nor modify concurrently) the indexes created by others.
+     * <p>
+     * The history spill file and the checkpoint file of the tenant are the ones given by the 
+     * environment, suffixed with the name of the workload (see {@link #getTenantFile}), so that 
+     * tenants don't overwrite each other's files.
+     *
+     * @param workload
+     *      workload that the new tenant observes
+     * @param env
+     *      environment used to connect to the DBMS and to read the {@code WFIT_*} properties
+     * @return
+     *      the new WFIT instance
+     * @throws SQLException
+     *      if the system of the tenant can't be created
+     * @throws IllegalArgumentException
+     *      if the workload is already observed by another tenant; if the spill or checkpoint file 
+     *      of the tenant is used by another tenant
+     */
+    public WFIT addTenant(Workload workload, Environment env) throws SQLException
+    {
+        if (tenants.containsKey(workload))
+            throw new IllegalArgumentException(
+                    "Workload already hosted: " + workload.getWorkloadName());
+
+        Environment tenantEnv = new Environment(env);
+        File spillFile = getTenantFile(env.getWFITHistorySpillFile(), workload);
+        File checkpointFile = getTenantFile(env.getWFITCheckpointFile(), workload);
+
+        if (spillFile != null)
+            tenantEnv.setProperty(WFIT_HISTORY_SPILL_FILE, spillFile.getPath());
+
+        if (checkpointFile != null)
+            tenantEnv.setProperty(WFIT_CHECKPOINT_FILE, checkpointFile.getPath());
+
+        claimFiles(workload, spillFile, checkpointFile);
+
+        boolean isAdded = false;
+
+        try {
+            WFIT wfit = newTenant(workload, tenantEnv);
+
+            isAdded = true;
+
+            return wfit;
+        } finally {
+            if (!isAdded)
+                releaseFiles(workload);
+        }
+    }
+
+    /**
+     * Creates a WFIT instance for the given workload and hosts it.
+     *
+     * @param workload
+     *      workload that the new tenant observes
+     * @param env
+     *      environment of the tenant
+     * @return
+     *      the new WFIT instance
+     * @throws SQLException
+     *      if the system of the tenant can't be created
+     */
+    private WFIT newTenant(Workload workload, Environment env) throws SQLException
+    {
+        DatabaseSystem db = null;
+        Catalog extracted;
+
+        synchronized (catalogs) {
+            extracted = catalogs.get(env.getJdbcURL());
+
+            if (extracted == null) {
+                // the catalog of a new system hasn't been modified yet
+                db = DatabaseSystem.newDatabaseSystem(env);
+                extracted = MetadataUtils.copyOf(db.getCatalog());
+                catalogs.put(env.getJdbcURL(), extracted);
+            }
+        }
+
+        // the extracted catalog is never modified, thus it can be copied without holding the lock
+        if (db == null)
+            db = DatabaseSystem.newDatabaseSystem(env, MetadataUtils.copyOf(extracted));
+
+        Object lock = null;
+
+        if (getBaseOptimizer(db.getOptimizer()) instanceof DB2Optimizer) {
+            synchronized (db2Locks) {
+                lock = db2Locks.get(env.getJdbcURL());
+
+                if (lock == null) {
+                    lock = new Object();
+                    db2Locks.put(env.getJdbcURL(), lock);
+                }
+            }
+        }
+
+        WFIT wfit;
+
+        // the constructor issues what-if calls when it restores a checkpoint
+        if (lock == null)
+            wfit = newWFIT(db, workload, env);
+        else
+            synchronized (lock) {
+                wfit = newWFIT(db, workload, env);
+            }
+
+        addTenant(wfit, lock);
+
+        return wfit;
+    }
+
+    /**
+     * Creates the WFIT instance of a tenant.
+     *
+     * @param db
+     *      system of the tenant
+     * @param workload
+     *      workload that the tenant observes
+     * @param env
+     *      environment of the tenant
+     * @return
+     *      the new WFIT instance
+     * @throws SQLException
+     *      if the instance can't be created
+     */
+    private WFIT newWFIT(DatabaseSystem db, Workload workload, Environment env)
+        throws SQLException
+    {
+        return new WFIT(
+            db, workload, new TreeSet<Index>(), false, env, Collections.singletonList(db),
+            eventBus);
+    }
+
+    /**
+     * Returns the file that a tenant uses instead of the given one, i.e. the given one suffixed 
+     * with a dot and the name of the workload, where characters other than letters, digits, 
+     * dashes and underscores are replaced by underscores.
+     *
+     * @param file
+     *      file given by the environment
+     * @param workload
+     *      workload observed by the tenant
+     * @return
+     *      the file of the tenant; {@code null} if {@code file} is {@code null}
+     */
+    public static File getTenantFile(File file, Workload workload)
+    {
+        if (file == null)
+            return null;
+
+        String name = workload.getWorkloadName() == null ? "" : workload.getWorkloadName();
+
+        return new File(file.getPath() + "." + name.replaceAll("[^A-Za-z0-9_-]", "_"));
+    }
+
+    /**
+     * Records that the given files are used by the tenant that observes the given workload.
+     *
+     * @param workload
+     *      workload observed by the tenant
+     * @param tenantFiles
+     *      files used by the tenant; {@code null} elements are ignored
+     * @throws IllegalArgumentException
+     *      if one of the files is already used by another tenant, e.g. because the workloads have 
+     *      the same name
+     */
+    private void claimFiles(Workload workload, File... tenantFiles)
+    {
+        synchronized (files) {
+            for (File file : tenantFiles) {
+                if (file == null)
+                    continue;
+
+                Workload owner = files.get(file.getAbsoluteFile());
+
+                if (owner != null)
+                    throw new IllegalArgumentException(
+                            "File " + file + " already used by workload " +
+                            owner.getWorkloadName());
+            }
+
+            for (File file : tenantFiles)
+                if (file != null)
+                    files.put(file.getAbsoluteFile(), workload);
+        }
+    }
+
+    /**
+     * Forgets the files used by the tenant that observes the given workload.
+     *
+     * @param workload
+     *      workload observed by the tenant
+     */
+    private void releaseFiles(Workload workload)
+    {
+        synchronized (files) {
+            Iterator<Workload> owners = files.values().iterator();
+
+            while (owners.hasNext())
+                if (owners.next() == workload)
+                    owners.remove();
+        }
+    }
+
+    /**
+     * Hosts an advisor. The advisor has to be registered with the {@link #getEventBus host's bus},
+     * otherwise it would also receive the statements posted to the API's bus.
+     *
+     * @param advisor
+     *      advisor to host
+     * @return
+     *      the tenant that runs the advisor
+     * @throws IllegalArgumentException
+     *      if the advisor isn't registered with the host's bus or if its workload is already
+     *      observed by another tenant
+     */
+    public Tenant addTenant(WorkloadObserverAdvisor advisor)
+    {
+        return addTenant(advisor, null);
+    }
+
+    /**
+     * Hosts an advisor that processes statements only while holding the given lock.
+     *
+     * @param advisor
+     *      advisor to host
+     * @param lock
+     *      lock shared with other tenants; {@code null} if the advisor doesn't need one
+     * @return
+     *      the tenant that runs the advisor
+     * @throws IllegalArgumentException
+     *      if the advisor isn't registered with the host's bus or if its workload is already
+     *      observed by another tenant
+     */
+    private Tenant addTenant(WorkloadObserverAdvisor advisor, Object lock)
+    {
+        if (advisor.getEventBus() != eventBus)
+            throw new IllegalArgumentException("Advisor should be registered with the host's bus");
+
+        Tenant tenant = new Tenant(advisor, this, lock);
+
+        if (tenants.putIfAbsent(advisor.getWorkload(), tenant) != null)
+            throw new IllegalArgumentException(
+                    "Workload already hosted: " + advisor.getWorkload().getWorkloadName());
+
+        return tenant;
+    }
+
+    /**
+     * Stops routing statements to the tenant that observes the given workload. Statements that
+     * were already routed to it are still processed.
+     *
+     * @param workload
+     *      workload observed by the tenant
+     * @return
+     *      the removed tenant; {@code null} if there is no tenant for the workload
+     */
+    public Tenant removeTenant(Workload workload)
+    {
+        Tenant tenant = tenants.remove(workload);
+
+        if (tenant != null)
+            eventBus.unregister(tenant.getAdvisor());
+
+        releaseFiles(workload);
+
+        return tenant;
+    }
+
+    /**
+     * @param workload
+     *      workload observed by the tenant
+     * @return
+     *      the tenant that observes the given workload; {@code null} if there is none
+     */
+    public Tenant getTenant(Workload workload)
+    {
+        return tenants.get(workload);
+    }
+
+    /**
+     * @return
+     *      the tenants that are currently hosted
+     */
+    public Collection<Tenant> getTenants()
+    {
+        return new ArrayList<Tenant>(tenants.values());
+    }
+
+    /**
+     * Returns the bus that hosted advisors register with and post to. Observers of the hosted
+     * advisors subscribe to it.
+     *
+     * @return
+     *      the event bus of the host
+     */
+    public EventBus getEventBus()
+    {
+        return eventBus;
+    }
+
+    /**
+     * Handles statements posted to the API's event bus.
+     *
+     * @param statement
+     *      new statement
+     */
+    @Subscribe
+    public void newStatementAdded(SQLStatement statement)
+    {
+        submit(statement);
+    }
+
+    /**
+     * Routes a statement to the tenant that observes its workload.
+     *
+     * @param statement
+     *      statement to process
+     * @return
+     *      {@code true} if there is a tenant for the statement; {@code false} if it was ignored,
+     *      either because there's no tenant for it or because the host is shut down
+     */
+    public boolean submit(SQLStatement statement)
+    {
+        // counted before checking the flag, so that shutdown() can't miss it
+        pendingCount.incrementAndGet();
+
+        Tenant tenant = tenants.get(statement.getWorkload());
+
+        if (isShutdown || tenant == null) {
+            statementDone();
+            return false;
+        }
+
+        tenant.enqueue(statement);
+
+        return true;
+    }
+
+    /**
+     * Unregisters the host from the API's event bus and stops the threads once the statements
+     * that were already routed are processed. Until then, tenants keep taking turns as usual.
+     */
+    public void shutdown()
+    {
+        if (isShutdown)
+            return;
+
+        isShutdown = true;
+
+        EventBusFactory.getEventBusInstance().unregister(this);
+
+        if (pendingCount.get() == 0)
+            executor.shutdown();
+    }
+
+    /**
+     * Waits for the statements that were routed before {@link #shutdown} to be processed.
+     *
+     * @param timeout
+     *      maximum time to wait
+     * @param unit
+     *      unit of the timeout
+     * @return
+     *      {@code true} if all the statements were processed; {@code false} if the timeout elapsed
+     * @throws InterruptedException
+     *      if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Accounts for a statement that was processed or ignored. The executor is shut down only after
+     * the last statement is done, since tenants reschedule themselves after each statement.
+     */
+    private void statementDone()
+    {
+        if (pendingCount.decrementAndGet() == 0 && isShutdown)
+            executor.shutdown();
+    }
+
+    /**
+     * An advisor hosted by a {@link WFITHost}, along with its throughput and latency metrics. The
+     * latency of a statement is the time elapsed since it's routed to the tenant until the tenant
+     * finishes processing it, so it includes the time it spends waiting behind other statements.
+     */
+    public static class Tenant
+    {
+        private final WorkloadObserverAdvisor advisor;
+        private final WFITHost host;
+        private final Object lock;
+        private final Queue<QueuedStatement> queue;
+        private final AtomicInteger pending;
+        private final AtomicBoolean isScheduled;
+        private final long creationTime;
+        private final Runnable task;
+
+        // written only by the task of the tenant, which never runs concurrently with itself
+        private volatile long processedCount;
+        private volatile long failureCount;
+        private volatile long totalLatency;
+        private volatile long maxLatency;
+        private volatile long totalProcessingTime;
+        private volatile Exception lastError;
+
+        /**
+         * @param advisor
+         *      hosted advisor
+         * @param host
+         *      host whose executor runs the tenant
+         * @param lock
+         *      lock held while processing a statement; {@code null} if there's none
+         */
+        Tenant(WorkloadObserverAdvisor advisor, WFITHost host, Object lock)
+        {
+            this.advisor = advisor;
+            this.host = host;
+            this.lock = lock;
+            this.queue = new ConcurrentLinkedQueue<QueuedStatement>();
+            this.pending = new AtomicInteger();
+            this.isScheduled = new AtomicBoolean();
+            this.creationTime = System.nanoTime();
+            this.task = new Runnable() {
+                @Override
+                public void run()
+                {
+                    processNext();
+                }
+            };
+        }
+
+        /**
+         * Queues a statement and schedules the tenant if it isn't already.
+         *
+         * @param statement
+         *      statement to process
+         */
+        void enqueue(SQLStatement statement)
+        {
+            queue.add(new QueuedStatement(statement, System.nanoTime()));
+            pending.incrementAndGet();
+
+            schedule();
+        }
+
+        /**
+         * Submits the task of the tenant to the executor, unless it's already submitted or there is
+         * nothing to process.
+         */
+        private void schedule()
+        {
+            if (!queue.isEmpty() && isScheduled.compareAndSet(false, true))
+                host.executor.execute(task);
+        }
+
+        /**
+         * Processes the statement at the head of the queue and reschedules the tenant, which puts
+         * it behind every other tenant that is waiting to be executed.
+         */
+        private void processNext()
+        {
+            QueuedStatement next = queue.poll();
+
+            try {
+                if (next != null) {
+                    process(next);
+                    host.statementDone();
+                }
+            } finally {
+                isScheduled.set(false);
+                schedule();
+            }
+        }
+
+        /**
+         * Processes a statement and updates the metrics.
+         *
+         * @param next
+         *      statement to process
+         */
+        private void process(QueuedStatement next)
+        {
+            long start = System.nanoTime();
+
+            try {
+                if (lock == null)
+                    advisor.newStatementAdded(next.statement);
+                else
+                    synchronized (lock) {
+                        advisor.newStatementAdded(next.statement);
+                    }
+            } catch (SQLException e) {
+                failureCount++;
+                lastError = e;
+            } catch (RuntimeException e) {
+                failureCount++;
+                lastError = e;
+            }
+
+            long end = System.nanoTime();
+
+            totalProcessingTime += end - start;
+            totalLatency += end - next.arrivalTime;
+            maxLatency = Math.max(maxLatency, end - next.arrivalTime);
+            processedCount++;
+            pending.decrementAndGet();
+        }
+
+        /**
+         * @return
+         *      the hosted advisor
+         */
+        public WorkloadObserverAdvisor getAdvisor()
+        {
+            return advisor;
+        }
+
+        /**
+         * @return
+         *      the workload observed by the advisor
+         */
+        public Workload getWorkload()
+        {
+            return advisor.getWorkload();
+        }
+
+        /**
+         * @return
+         *      number of statements that have been routed to the tenant but not processed yet
+         */
+        public int getPendingCount()
+        {
+            return pending.get();
+        }
+
+        /**
+         * @return
+         *      number of statements processed, including the ones that failed
+         */
+        public long getProcessedCount()
+        {
+            return processedCount;
+        }
+
+        /**
+         * @return
+         *      number of statements for which the advisor threw an exception
+         */
+        public long getFailureCount()
+        {
+            return failureCount;
+        }
+
+        /**
+         * @return
+         *      the last exception thrown by the advisor; {@code null} if none
+         */
+        public Exception getLastError()
+        {
+            return lastError;
+        }
+
+        /**
+         * @return
+         *      statements processed per second since the tenant was added to the host
+         */
+        public double getThroughput()
+        {
+            double seconds = (System.nanoTime() - creationTime) / 1e9;
+
+            return seconds > 0 ? processedCount / seconds : 0;
+        }
+
+        /**
+         * @return
+         *      average latency of the processed statements, in milliseconds
+         */
+        public double getMeanLatency()
+        {
+            long count = processedCount;
+
+            return count == 0 ? 0 : totalLatency / 1e6 / count;
+        }
+
+        /**
+         * @return
+         *      maximum latency of the processed statements, in milliseconds
+         */
+        public double getMaxLatency()
+        {
+            return maxLatency / 1e6;
+        }
+
+        /**
+         * @return
+         *      average time spent by the advisor processing a statement, in milliseconds
+         */
+        public double getMeanProcessingTime()
+        {
+            long count = processedCount;
+
+            return count == 0 ? 0 : totalProcessingTime / 1e6 / count;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return getWorkload().getWorkloadName() +
+                ": processed=" + processedCount +
+                ", pending=" + getPendingCount() +
+                ", failed=" + failureCount +
+                ", throughput=" + getThroughput() + "/s" +
+                ", meanLatency=" + getMeanLatency() + "ms" +
+                ", maxLatency=" + getMaxLatency() + "ms";
+        }
+    }
+
+    /**
+     * A statement waiting to be processed by a tenant.
+     */
+    private static class QueuedStatement
+    {
+        private final SQLStatement statement;
+        private final long arrivalTime;
+
+        /**
+         * @param statement
+         *      the statement
+         * @param arrivalTime
+         *      time at which the statement was routed, as given by {@link System#nanoTime}
+         */
+        QueuedStatement(SQLStatement statement, long arrivalTime)
+        {
+            this.statement = statement;
+            this.arrivalTime = arrivalTime;
+        }
+    }
+}
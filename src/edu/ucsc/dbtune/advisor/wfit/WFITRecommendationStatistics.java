@@ -1,5 +1,7 @@
 package edu.ucsc.dbtune.advisor.wfit;
 
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 
@@ -14,11 +16,20 @@ import edu.ucsc.dbtune.workload.SQLStatement;
 /**
  * Holds information about the WFIT advising process. Essentially, extends the set of recommendation 
  * statistics by including information about the stable candidate partitioning.
+ * <p>
+ * Besides regular entries, {@link PendingEntry pending} ones can be added. These retain the data 
+ * needed to compute an entry and are turned into regular entries (in the order in which they were 
+ * added) the first time that the statistics are read. Optionally, only a number of the most recent 
+ * entries is retained, in which case entries are dropped from the front. Pending entries are 
+ * materialized before being dropped, so that their cost is accounted in the total work.
  *
  * @author Ivo Jimenez
  */
 public class WFITRecommendationStatistics extends RecommendationStatistics
 {
+    private LinkedList<PendingEntry> pending = new LinkedList<PendingEntry>();
+    private int retention;
+
     /**
      * @param algorithmName
      *      name of the algorithm that produced the recommendation
@@ -28,6 +39,33 @@ public class WFITRecommendationStatistics extends RecommendationStatistics
         super(algorithmName);
     }
 
+    /**
+     * Sets the number of entries that are retained. Entries are dropped in chunks, so up to twice 
+     * this number may be held at a time.
+     *
+     * @param retention
+     *      number of most recent entries to retain; a non-positive value retains all of them
+     */
+    public void setRetention(int retention)
+    {
+        this.retention = retention;
+
+        trim();
+    }
+
+    /**
+     * Adds an entry whose content is computed when the statistics are read.
+     *
+     * @param entry
+     *      pending entry
+     */
+    public void addPendingEntry(PendingEntry entry)
+    {
+        pending.add(entry);
+
+        trim();
+    }
+
     /**
      * Adds a wfit-specific entry.
      *
@@ -61,10 +99,14 @@ public class WFITRecommendationStatistics extends RecommendationStatistics
             Map<Index, Double> benefits,
             Map<Set<Index>, Double> workFunctionScores)
     {
-        Entry e = addNewEntry(sql, totalCost, candidateSet, partitioning, recommendation, benefits);
+        materialize();
+
+        Entry e =
+            append(
+                sql, totalCost, candidateSet, partitioning, usefulness, recommendation, benefits,
+                workFunctionScores);
 
-        e.workFunctionScores = workFunctionScores;
-        e.usefulness = usefulness;
+        trim();
 
         return e;
     }
@@ -80,6 +122,151 @@ public class WFITRecommendationStatistics extends RecommendationStatistics
             Set<Set<Index>> partitioning,
             Set<Index> recommendation,
             Map<Index, Double> benefits)
+    {
+        materialize();
+
+        Entry e =
+            append(sql, totalCost, candidateSet, partitioning, null, recommendation, benefits, null);
+
+        trim();
+
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        pending.clear();
+
+        super.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        materialize();
+
+        return super.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RecommendationStatistics.Entry get(int i)
+    {
+        materialize();
+
+        return super.get(i);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<RecommendationStatistics.Entry> iterator()
+    {
+        materialize();
+
+        return super.iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getTotalWorkSum()
+    {
+        materialize();
+
+        return super.getTotalWorkSum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RecommendationStatistics.Entry getLastEntry()
+    {
+        materialize();
+
+        return super.getLastEntry();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        materialize();
+
+        return super.toString();
+    }
+
+    /**
+     * Turns the pending entries into regular ones.
+     */
+    private void materialize()
+    {
+        materialize(pending.size());
+    }
+
+    /**
+     * Turns the given number of oldest pending entries into regular ones.
+     *
+     * @param count
+     *      number of pending entries to materialize
+     */
+    private void materialize(int count)
+    {
+        for (int i = 0; i < count; i++) {
+            PendingEntry p = pending.removeFirst();
+
+            append(
+                p.getSql(), p.getTotalCost(), p.getCandidateSet(), p.getPartitioning(),
+                p.getUsefulness(), p.getRecommendation(), p.getBenefits(),
+                p.getWorkFunctionScores());
+        }
+    }
+
+    /**
+     * Adds an entry at the end of the list.
+     *
+     * @param sql
+     *      statement for which this entry corresponds to
+     * @param totalCost
+     *      the cost of exeucting the statement
+     * @param candidateSet
+     *      indexes that were in the context of the recommender
+     * @param partitioning
+     *      partitioning of the candidate set
+     * @param usefulness
+     *      the usefulness of each index in the candidate set
+     * @param recommendation
+     *      indexes that were recommended
+     * @param benefits
+     *      the benefits for each index in the recommendation
+     * @param workFunctionScores
+     *      scores the correspond to the work function values
+     * @return
+     *      the entry that has been just created
+     */
+    private Entry append(
+            SQLStatement sql,
+            double totalCost,
+            Set<Index> candidateSet,
+            Set<Set<Index>> partitioning,
+            Map<Index, Boolean> usefulness,
+            Set<Index> recommendation,
+            Map<Index, Double> benefits,
+            Map<Set<Index>, Double> workFunctionScores)
     {
         super.addNewEntry(sql, totalCost, candidateSet, partitioning, recommendation, benefits);
 
@@ -87,11 +274,125 @@ public class WFITRecommendationStatistics extends RecommendationStatistics
 
         Entry wfitEntry = new Entry(e);
 
+        wfitEntry.workFunctionScores = workFunctionScores;
+        wfitEntry.usefulness = usefulness;
+
         super.entries.add(wfitEntry);
 
         return wfitEntry;
     }
 
+    /**
+     * Drops the oldest entries if more than twice the retention are held, so that the cost of 
+     * shifting the list of entries is amortized. Pending entries that are dropped are materialized 
+     * first, so that the total work sum and the previous recommendation account for them.
+     */
+    private void trim()
+    {
+        if (retention <= 0 || entries.size() + pending.size() < 2 * retention)
+            return;
+
+        int excess = entries.size() + pending.size() - retention;
+
+        materialize(Math.max(0, excess - entries.size()));
+
+        entries.subList(0, excess).clear();
+    }
+
+    /**
+     * The data needed to compute an entry. The parts that are expensive to obtain are computed 
+     * only when the entry is materialized.
+     */
+    public abstract static class PendingEntry
+    {
+        private SQLStatement sql;
+        private Set<Index> candidateSet;
+        private Set<Index> recommendation;
+        private Map<Index, Boolean> usefulness;
+
+        /**
+         * @param sql
+         *      statement for which this entry corresponds to
+         * @param candidateSet
+         *      indexes that were in the context of the recommender
+         * @param recommendation
+         *      indexes that were recommended
+         * @param usefulness
+         *      the usefulness of each index in the candidate set
+         */
+        protected PendingEntry(
+                SQLStatement sql,
+                Set<Index> candidateSet,
+                Set<Index> recommendation,
+                Map<Index, Boolean> usefulness)
+        {
+            this.sql = sql;
+            this.candidateSet = candidateSet;
+            this.recommendation = recommendation;
+            this.usefulness = usefulness;
+        }
+
+        /**
+         * @return
+         *      the cost of executing the statement under the recommendation
+         */
+        protected abstract double getTotalCost();
+
+        /**
+         * @return
+         *      partitioning of the candidate set
+         */
+        protected abstract Set<Set<Index>> getPartitioning();
+
+        /**
+         * @return
+         *      the benefits for each index in the recommendation
+         */
+        protected abstract Map<Index, Double> getBenefits();
+
+        /**
+         * @return
+         *      scores the correspond to the work function values
+         */
+        protected abstract Map<Set<Index>, Double> getWorkFunctionScores();
+
+        /**
+         * @return
+         *      the statement
+         */
+        public SQLStatement getSql()
+        {
+            return sql;
+        }
+
+        /**
+         * @return
+         *      the candidate set
+         */
+        public Set<Index> getCandidateSet()
+        {
+            return candidateSet;
+        }
+
+        /**
+         * @return
+         *      the recommendation
+         */
+        public Set<Index> getRecommendation()
+        {
+            return recommendation;
+        }
+
+        /**
+         * @return
+         *      the usefulness of each index in the candidate set
+         */
+        public Map<Index, Boolean> getUsefulness()
+        {
+            return usefulness;
+        }
+    }
+
     /**
      * Extends an entry by adding information about the stable candidate partitioning.
      */
@@ -1,119 +1,385 @@
 package edu.ucsc.dbtune.advisor.wfit;
 
-import edu.ucsc.dbtune.advisor.wfit.IndexPartitions.Subset;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
 import edu.ucsc.dbtune.advisor.wfit.WorkFunctionAlgorithm.TotalWorkValues;
 
+//CHECKSTYLE:OFF
+/**
+ * History of work function values. Entry {@code q} holds the work function after {@code q}
+ * statements have been processed (entry 0 is the initial one).
+ * <p>
+ * Entries are grouped in segments of {@link #SEGMENT_SIZE} entries. Once a segment is full it is
+ * encoded (each entry's values XOR'ed against the previous one's, then deflated) and either kept
+ * in memory or appended to a spill file. If a horizon is given, whole segments are dropped from
+ * the front as long as at least {@code horizon + 1} entries remain, which is what {@link
+ * #optimalSchedule} needs to produce the schedule of the last {@code horizon} statements.
+ */
 public class WfaTrace {
-//  private BitSet[] parts;
-    private java.util.ArrayList<TotalWorkValues> wfValues = new java.util.ArrayList<TotalWorkValues>();
-    private java.util.ArrayList<Double> sumNullCost = new java.util.ArrayList<Double>();
+    static final int SEGMENT_SIZE = 64;
+
+    private final int horizon;
+    private final int segmentSize;
+
+    // closed segments, oldest first
+    private final List<Segment> segments = new ArrayList<Segment>();
+    // entries of the segment that is being filled
+    private final List<TotalWorkValues> open = new ArrayList<TotalWorkValues>();
+    // index of the first entry in the open segment
+    private int openStart;
+
+    private double sumNullCost;
+
+    // spill file, null if segments are kept in memory
+    private RandomAccessFile spill;
+    private long liveBytes;
+    private long deadBytes;
+
+    // last decoded segment, so that backward traversals decode each segment once
+    private Segment cachedSegment;
+    private TotalWorkValues[] cachedValues;
 
     public WfaTrace(IndexPartitions parts0, TotalWorkValues wf) {
-//      parts = parts0.bitSetArray();
-        wfValues.add(new TotalWorkValues(wf));
-        sumNullCost.add(0.0);
+        this(parts0, wf, 0, null);
     }
-    
+
+    /**
+     * @param horizon0
+     *      number of statements for which history is retained; a non-positive value retains
+     *      everything
+     * @param spillFile
+     *      file where closed segments are written to; {@code null} to keep them in memory. The
+     *      file is truncated.
+     */
+    public WfaTrace(IndexPartitions parts0, TotalWorkValues wf, int horizon0, File spillFile) {
+        horizon = horizon0;
+        segmentSize = horizon > 0 ? Math.min(SEGMENT_SIZE, horizon) : SEGMENT_SIZE;
+
+        if (spillFile != null) {
+            try {
+                spill = new RandomAccessFile(spillFile, "rw");
+                spill.setLength(0);
+            } catch (IOException ex) {
+                throw new RuntimeException("Can't open trace spill file " + spillFile, ex);
+            }
+        }
+
+        open.add(new TotalWorkValues(wf));
+    }
+
     public void addValues(TotalWorkValues wf, double nullCost) {
-        double prevSum = sumNullCost.get(sumNullCost.size()-1);
-        
-        wfValues.add(new TotalWorkValues(wf));
-        sumNullCost.add(prevSum + nullCost);
-    }
-
-//  public double minWfValue(int q) {
-//      if (q < 0)
-//          throw new IllegalArgumentException("query number must not be negative");
-//      if (q >= wfValues.size())
-//          throw new IllegalArgumentException("query number too large");
-//      
-//      TotalWorkValues wf = wfValues.get(q);
-//      int subsetCount = parts.length;
-//      double minSum = 0;
-//      for (int subsetNum = 0; subsetNum < subsetCount; subsetNum++) {
-//          BitSet subset = parts[subsetNum];
-//          int stateCount = 1 << subset.cardinality();
-//          double minSubValue = Double.POSITIVE_INFINITY;
-//          for (int s = 0; s < stateCount; s++) {
-//              minSubValue = Math.min(minSubValue, wf.get(subsetNum, s));
-//          }
-//          minSum += minSubValue;
-//      }
-//      double minValue = minSum - (subsetCount - 1) * sumNullCost.get(q);
-//      return minValue;
-//  }
+        open.add(new TotalWorkValues(wf));
+        sumNullCost += nullCost;
+
+        if (open.size() == segmentSize)
+            closeSegment();
+
+        if (horizon > 0)
+            while (!segments.isEmpty() && size() - firstEntry() - segments.get(0).count > horizon)
+                dropSegment();
+    }
+
+    /**
+     * @return index of the first entry that is retained by the trace
+     */
+    public int firstEntry() {
+        return segments.isEmpty() ? openStart : segments.get(0).start;
+    }
+
+    /**
+     * @return total number of entries that have been added to the trace, including the ones that
+     *      aren't retained anymore
+     */
+    public int size() {
+        return openStart + open.size();
+    }
+
+    public double getSumNullCost() {
+        return sumNullCost;
+    }
 
     public TotalWorkValues[] getTotalWorkValues() {
-        TotalWorkValues[] arr = new TotalWorkValues[wfValues.size()];
-        return wfValues.toArray(arr);
-    }
-    
-//  public double[] getMinWfValues() {
-//      int valcount = wfValues.size();
-//      double[] arr = new double[valcount];
-//      for (int i = 0; i < valcount; i++) {
-//          arr[i] = minWfValue(i);
-//      }
-//      return arr;
-//  }
-    
+        TotalWorkValues[] arr = new TotalWorkValues[size() - firstEntry()];
+        for (int i = 0; i < arr.length; i++)
+            arr[i] = get(firstEntry() + i);
+        return arr;
+    }
+
+    TotalWorkValues get(int entry) {
+        if (entry < firstEntry() || entry >= size())
+            throw new IllegalArgumentException(
+                    "Entry " + entry + " not in retained window [" + firstEntry() + "," + size() + ")");
+
+        if (entry >= openStart)
+            return open.get(entry - openStart);
 
+        Segment segment = segments.get((entry - firstEntry()) / segmentSize);
+
+        if (segment != cachedSegment) {
+            cachedValues = decode(read(segment));
+            cachedSegment = segment;
+        }
+
+        return cachedValues[entry - segment.start];
+    }
+
+    /**
+     * Computes the optimal schedule for the statements {@code queryCount - qinfos.length} to
+     * {@code queryCount - 1}. The corresponding entries must be retained by the trace.
+     *
+     * @return
+     *      an array with {@code qinfos.length} elements, where element {@code i} corresponds to
+     *      statement {@code queryCount - qinfos.length + i}
+     */
     public BitSet[] optimalSchedule(IndexPartitions parts, int queryCount, ProfiledQuery[] qinfos) {
-        
+        int first = queryCount - qinfos.length;
+        int subsetCount = parts.subsetCount();
+
+        if (first < firstEntry())
+            throw new IllegalArgumentException(
+                    "Statement " + first + " is beyond the retained window of the trace");
+
         // We will fill each BitSet with the optimal indexes for the corresponding query
-        BitSet[] bss = new BitSet[queryCount];
-        for (int i = 0; i < queryCount; i++) bss[i] = new BitSet();
-        
-        // this array holds the optimal schedule for a single partition
-        // it has the state that each query should be processed in, plus the 
-        // last state that should the system should be in after the last
-        // query (which we expect to be the same as the state for the last
-        // query, but that's not required). Each schedule, excluding the last
-        // state, will be pushed into bss after it's computed
-        BitSet[] partSchedule = new BitSet[queryCount+1];
-        for (int q = 0; q <= queryCount; q++) partSchedule[q] = new BitSet();
-        
-        for (int subsetNum = 0; subsetNum < parts.subsetCount(); subsetNum++) {
-            Subset subset = parts.get(subsetNum);
-            int[] indexIds = subset.indexIds();
-            int stateCount = (int) subset.stateCount(); // XXX: this should return int
-            
+        BitSet[] bss = new BitSet[qinfos.length];
+        for (int i = 0; i < qinfos.length; i++) bss[i] = new BitSet();
+
+        int[][] indexIds = new int[subsetCount][];
+        int[] bestSuccessor = new int[subsetCount];
+
+        TotalWorkValues last = get(queryCount);
+
+        for (int subsetNum = 0; subsetNum < subsetCount; subsetNum++) {
+            indexIds[subsetNum] = parts.get(subsetNum).indexIds();
+            int stateCount = (int) parts.get(subsetNum).stateCount(); // XXX: this should return int
+
             // get the best final state
-            int bestSuccessor = -1;
+            bestSuccessor[subsetNum] = -1;
 
             double bestValue = Double.POSITIVE_INFINITY;
             for (int stateNum = 0; stateNum < stateCount; stateNum++) {
-                double value = wfValues.get(queryCount).get(subsetNum, stateNum);
+                double value = last.get(subsetNum, stateNum);
 
                 // use non-strict inequality to favor states with more indices
                 // this is a mild hack to get more intuitive schedules
                 if (value <= bestValue) {
-                    bestSuccessor = stateNum;
+                    bestSuccessor[subsetNum] = stateNum;
                     bestValue = value;
                 }
             }
+        }
 
-            //Debug.assertion(bestSuccessor >= 0, "could not determine best final state");
-            //if (bestSuccessor >= 0)
-                //throw new RuntimeException("could not determine best final state");
-            partSchedule[queryCount].clear();
-            WorkFunctionAlgorithm.setStateBits(indexIds, bestSuccessor, partSchedule[queryCount]);
-            
-            // traverse the workload to get the path
-            for (int q = queryCount - 1; q >= 0; q--) {
-                int stateNum = wfValues.get(q+1).predecessor(subsetNum, bestSuccessor);
-                partSchedule[q].clear();
-                WorkFunctionAlgorithm.setStateBits(indexIds, stateNum, partSchedule[q]);
-                bestSuccessor = stateNum;
-            }
-            
-            // now bestStates has the optimal schedule within current subset
-            // merge with the global schedule
-            for (int q = 0; q < queryCount; q++) {
-                bss[q].or(partSchedule[q]);
+        // traverse the workload backwards to get the path of every subset. Going over all the
+        // subsets for each entry (instead of the other way around) means that every encoded
+        // segment is decoded only once
+        for (int q = queryCount - 1; q >= first; q--) {
+            TotalWorkValues wf = get(q+1);
+
+            for (int subsetNum = 0; subsetNum < subsetCount; subsetNum++) {
+                int stateNum = wf.predecessor(subsetNum, bestSuccessor[subsetNum]);
+
+                // merge with the global schedule
+                WorkFunctionAlgorithm.setStateBits(indexIds[subsetNum], stateNum, bss[q - first]);
+                bestSuccessor[subsetNum] = stateNum;
             }
         }
-        
+
         return bss;
     }
+
+    /**
+     * Releases the spill file, if any.
+     */
+    public void close() {
+        if (spill == null)
+            return;
+
+        try {
+            spill.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        spill = null;
+    }
+
+    private void closeSegment() {
+        Segment segment = new Segment(openStart, open.size());
+        byte[] data = encode(open);
+
+        if (spill == null) {
+            segment.data = data;
+        } else {
+            try {
+                segment.offset = spill.length();
+                segment.length = data.length;
+                spill.seek(segment.offset);
+                spill.write(data);
+                liveBytes += data.length;
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        segments.add(segment);
+        openStart += open.size();
+        open.clear();
+    }
+
+    private void dropSegment() {
+        Segment segment = segments.remove(0);
+
+        if (segment == cachedSegment) {
+            cachedSegment = null;
+            cachedValues = null;
+        }
+
+        if (spill == null)
+            return;
+
+        liveBytes -= segment.length;
+        deadBytes += segment.length;
+
+        // the file only grows by appending, so rewrite it once most of it is garbage
+        if (deadBytes > liveBytes)
+            compactSpill();
+    }
+
+    private void compactSpill() {
+        try {
+            long offset = 0;
+            for (Segment segment : segments) {
+                byte[] data = read(segment);
+                spill.seek(offset);
+                spill.write(data);
+                segment.offset = offset;
+                offset += data.length;
+            }
+            spill.setLength(offset);
+            deadBytes = 0;
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private byte[] read(Segment segment) {
+        if (segment.data != null)
+            return segment.data;
+
+        try {
+            byte[] data = new byte[segment.length];
+            spill.seek(segment.offset);
+            spill.readFully(data);
+            return data;
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    // values are XOR'ed against the ones of the same subset in the previous entry, which leaves
+    // mostly zero bytes for the states that didn't change (or changed little); predecessors are
+    // written as they are
+    static byte[] encode(List<TotalWorkValues> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try {
+            DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+            TotalWorkValues previous = new TotalWorkValues();
+
+            out.writeInt(entries.size());
+
+            for (TotalWorkValues wf : entries) {
+                out.writeInt(wf.subsetCount());
+
+                for (int subsetNum = 0; subsetNum < wf.subsetCount(); subsetNum++) {
+                    double[] values = wf.values[subsetNum];
+                    double[] prev = previousValues(previous, subsetNum, values.length);
+
+                    out.writeInt(values.length);
+                    for (int i = 0; i < values.length; i++)
+                        out.writeLong(
+                                Double.doubleToRawLongBits(values[i]) ^
+                                Double.doubleToRawLongBits(prev[i]));
+                    for (int p : wf.predecessor[subsetNum])
+                        out.writeInt(p);
+                }
+
+                previous = wf;
+            }
+
+            out.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    static TotalWorkValues[] decode(byte[] data) {
+        try {
+            DataInputStream in =
+                new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)));
+            TotalWorkValues[] entries = new TotalWorkValues[in.readInt()];
+            TotalWorkValues previous = new TotalWorkValues();
+
+            for (int e = 0; e < entries.length; e++) {
+                TotalWorkValues wf = new TotalWorkValues(in.readInt());
+
+                for (int subsetNum = 0; subsetNum < wf.subsetCount(); subsetNum++) {
+                    int numStates = in.readInt();
+                    double[] prev = previousValues(previous, subsetNum, numStates);
+
+                    wf.allocate(subsetNum, numStates);
+                    for (int i = 0; i < numStates; i++)
+                        wf.values[subsetNum][i] =
+                            Double.longBitsToDouble(
+                                in.readLong() ^ Double.doubleToRawLongBits(prev[i]));
+                    for (int i = 0; i < numStates; i++)
+                        wf.predecessor[subsetNum][i] = in.readInt();
+                }
+
+                entries[e] = wf;
+                previous = wf;
+            }
+
+            in.close();
+
+            return entries;
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    // values of the given subset in the previous entry, or zeros if the shape doesn't match
+    private static double[] previousValues(TotalWorkValues previous, int subsetNum, int numStates) {
+        if (subsetNum < previous.subsetCount() && previous.values[subsetNum].length == numStates)
+            return previous.values[subsetNum];
+        return new double[numStates];
+    }
+
+    private static class Segment {
+        final int start;
+        final int count;
+
+        // encoded entries if the segment is kept in memory
+        byte[] data;
+
+        // location in the spill file otherwise
+        long offset;
+        int length;
+
+        Segment(int start0, int count0) {
+            start = start0;
+            count = count0;
+        }
+    }
 }
+//CHECKSTYLE:ON
@@ -1,5 +1,7 @@
 package edu.ucsc.dbtune.advisor.wfit;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -21,6 +23,11 @@ public class WorkFunctionAlgorithm {
     private boolean keepHistory;
     private WfaTrace trace;
     private int minId;
+
+    // for each hot index (by id - minId), the number of the subset that contains it and its
+    // position within the subset; -1 for indexes that aren't hot
+    private int[] subsetOf = new int[0];
+    private int[] positionOf = new int[0];
     
     //
     // temporary workspace
@@ -35,17 +42,74 @@ public class WorkFunctionAlgorithm {
             int maxNumStates,
             int maxNumIndexes,
             int minId)
+    {
+        this(parts, keepHistory0, 0, null, maxNumStates, maxNumIndexes, minId);
+    }
+
+    /**
+     * @param historyHorizon
+     *      number of statements for which the history is retained (non-positive for all of them)
+     * @param historySpillFile
+     *      file where the history is spilled to ({@code null} to keep it in memory)
+     * @see WfaTrace
+     */
+    public WorkFunctionAlgorithm(
+            IndexPartitions parts,
+            boolean keepHistory0,
+            int historyHorizon,
+            File historySpillFile,
+            int maxNumStates,
+            int maxNumIndexes,
+            int minId)
+    {
+        this(parts, null, null, keepHistory0, historyHorizon, historySpillFile, maxNumStates,
+                maxNumIndexes, minId);
+    }
+
+    /**
+     * Creates a WFA whose work function and current state are the given ones (e.g. restored from 
+     * a checkpoint). The history starts at the given work function.
+     *
+     * @param wf0
+     *      work function values of each subset of parts, in the same order; {@code null} to start 
+     *      with zeros
+     * @param states0
+     *      current state of each subset of parts; {@code null} to start with the empty state
+     */
+    WorkFunctionAlgorithm(
+            IndexPartitions parts,
+            TotalWorkValues wf0,
+            int[] states0,
+            boolean keepHistory0,
+            int historyHorizon,
+            File historySpillFile,
+            int maxNumStates,
+            int maxNumIndexes,
+            int minId)
     {
         this.minId = minId;
-        this.wf = new TotalWorkValues(maxNumStates, maxNumIndexes);
+        this.wf = new TotalWorkValues();
         this.tempCostVector = new CostVector(maxNumStates);
-        this.wf2 = new TotalWorkValues(maxNumStates, maxNumIndexes);
+        this.wf2 = new TotalWorkValues();
 
         dump("BEFORE INITIAL");
         repartition(parts);
 
+        if (wf0 != null) {
+            if (wf0.subsetCount() != submachines.length || states0.length != submachines.length)
+                throw new IllegalArgumentException("Work function doesn't match the partitions");
+            for (SubMachine subm : submachines) {
+                if (wf0.values[subm.subsetNum].length != subm.numStates)
+                    throw new IllegalArgumentException("Work function doesn't match the partitions");
+                subm.currentState = states0[subm.subsetNum];
+                setStateBits(subm.indexIds, subm.currentState, subm.currentBitSet);
+            }
+            wf = new TotalWorkValues(wf0);
+            wf2 = new TotalWorkValues(wf0);
+        }
+
         if (keepHistory0) {
-            trace = new WfaTrace(parts, wf);
+            trace = new WfaTrace(parts, wf, historyHorizon, historySpillFile);
             keepHistory = keepHistory0;
         }
         
@@ -114,17 +178,13 @@ public class WorkFunctionAlgorithm {
 
     public void vote(Index index, boolean isPositive) throws NoSuchElementException {
         dump("BEFORE VOTE");
-        boolean voted = false;
+        int subsetNum = subsetOf(index.getId()-minId);
 
-        for (SubMachine subm : submachines)
-            if (subm.subset.contains(index)) {
-                subm.vote(wf, index, isPositive);
-                voted = true;
-            }
-
-        if (!voted)
+        if (subsetNum < 0 || !submachines[subsetNum].subset.contains(index))
             throw new NoSuchElementException("Index " + index + " not on any WFA partition");
 
+        submachines[subsetNum].vote(wf, index, positionOf[index.getId()-minId], isPositive);
+
         dump("AFTER VOTE " + (isPositive ? "POSITIVE " : "NEGATIVE ") + "for " + 
                 (index.getId()-minId));
     }
@@ -139,109 +199,197 @@ public class WorkFunctionAlgorithm {
         return rec;
     }
 
+    // Subsets that are also in the old partitioning keep their submachine and their work function
+    // arrays (in both wf and wf2), so only the subsets that were merged or split are recomputed.
+    // The old subsets that overlap a new one are found through subsetOf
     public void repartition(IndexPartitions newPartitions) {
         dump("BEFORE REPARTITION");
         int newSubsetCount = newPartitions.subsetCount();
-        int oldSubsetCount = submachines.length;
         SubMachine[] submachines2 = new SubMachine[newSubsetCount];
-        BitSet overlappingSubsets = new BitSet();
-        
-        // get the set of previously hot indexes
-        BitSet oldHotSet = new BitSet();
-        for (SubMachine oldSubmachine : submachines) {
-            for (int oldIndexId : oldSubmachine.indexIds) {
-                oldHotSet.set(oldIndexId);
-            }
-        }
-        
-        // prepare wf2 with new partitioning
-        wf2.reallocate(newPartitions);
+        TotalWorkValues newWf = new TotalWorkValues(newSubsetCount);
+        TotalWorkValues newWf2 = new TotalWorkValues(newSubsetCount);
         
         for (int newSubsetNum = 0; newSubsetNum < newSubsetCount; newSubsetNum++) {
             IndexPartitions.Subset newSubset = newPartitions.get(newSubsetNum);
+            int[] newIndexIds = newSubset.indexIds();
+            
+            int oldSubsetNum = unchangedSubset(newIndexIds);
+            
+            if (oldSubsetNum >= 0) {
+                // same subset as before: reuse its state and its work function values
+                SubMachine subm = submachines[oldSubsetNum];
+                subm.subset = newSubset;
+                subm.subsetNum = newSubsetNum;
+                subm.currentState = 0;
+                for (int i = 0; i < subm.numIndexes; i++)
+                    if (subm.currentBitSet.get(subm.indexIds[i]))
+                        subm.currentState |= (1 << i);
+                submachines2[newSubsetNum] = subm;
+                newWf.move(newSubsetNum, wf, oldSubsetNum);
+                newWf2.move(newSubsetNum, wf2, oldSubsetNum);
+                continue;
+            }
             
             // translate old recommendation into new
+            // also, get the creation cost of the indexes that weren't hot before
             BitSet recBitSet = new BitSet();
             int recStateNum = 0;
+            double[] creationCost = new double[newIndexIds.length];
             int i = 0;
             for (Index index : newSubset) {
-                if (isRecommended(index)) {
-                    recBitSet.set(index.getId()-minId);
+                int id = newIndexIds[i];
+                int old = subsetOf(id);
+                if (old >= 0 && submachines[old].currentBitSet.get(id)) {
+                    recBitSet.set(id);
                     recStateNum |= (1 << i);
                 }
+                if (old < 0)
+                    creationCost[i] = index.getCreationCost();
                 ++i;
             }
             SubMachine newSubmachine = new SubMachine(newSubset, newSubsetNum, recStateNum, 
                     recBitSet, minId);
             submachines2[newSubsetNum] = newSubmachine;
 
-            // find overlapping subsets (required to recompute work function)
-            overlappingSubsets.clear();
-            for (int oldSubsetNum = 0; oldSubsetNum < submachines.length; oldSubsetNum++) {
-                if (newSubset.overlaps(submachines[oldSubsetNum].subset)) {
-                    overlappingSubsets.set(oldSubsetNum);
-                }
+            // find overlapping subsets (required to recompute work function), in increasing order
+            // so that values are added up in the same order as when scanning all old subsets
+            int[] overlapping = new int[newIndexIds.length];
+            int overlappingCount = 0;
+            for (int id : newIndexIds) {
+                int old = subsetOf(id);
+                if (old >= 0) overlapping[overlappingCount++] = old;
+            }
+            Arrays.sort(overlapping, 0, overlappingCount);
+            
+            // for each overlapping subset, the position (in the new subset) of each old index
+            int[][] newPositions = new int[overlappingCount][];
+            for (int k = 0; k < overlappingCount; k++) {
+                if (k > 0 && overlapping[k] == overlapping[k-1])
+                    continue;
+                int[] oldIndexIds = submachines[overlapping[k]].indexIds;
+                newPositions[k] = new int[oldIndexIds.length];
+                for (int i_old = 0; i_old < oldIndexIds.length; i_old++)
+                    newPositions[k][i_old] = newSubmachine.indexPos(oldIndexIds[i_old]);
             }
             
             // recompute work function values
+            newWf.allocate(newSubsetNum, newSubmachine.numStates);
+            newWf2.allocate(newSubsetNum, newSubmachine.numStates);
             for (int stateNum = 0; stateNum < newSubmachine.numStates; stateNum++) {
                 double value = 0;
                 
                 // add creation cost of new indexes
-                i = 0;
-                for (Index index : newSubmachine.subset) {
-                    int mask = (1 << (i++));
-                    if (0 != (stateNum & mask) && !oldHotSet.get(index.getId()-minId)) {
-                        value += index.getCreationCost();
+                for (i = 0; i < newIndexIds.length; i++) {
+                    if (0 != (stateNum & (1 << i))) {
+                        value += creationCost[i];
                     }
                 }
                 
-                for (int oldSubsetNum = 0; oldSubsetNum < oldSubsetCount; oldSubsetNum++) {
-                    if (!overlappingSubsets.get(oldSubsetNum))
+                for (int k = 0; k < overlappingCount; k++) {
+                    if (newPositions[k] == null)
                         continue;
                     
-                    int[] oldIndexIds = submachines[oldSubsetNum].indexIds;
                     int oldStateNum = 0;
-                    for (int i_old = 0; i_old < oldIndexIds.length; i_old++) {
-                        int i_new = newSubmachine.indexPos(oldIndexIds[i_old]);
-                        if (i_new < 0)
-                            continue;
-                        if ((stateNum & (1 << i_new)) != 0)
+                    for (int i_old = 0; i_old < newPositions[k].length; i_old++) {
+                        int i_new = newPositions[k][i_old];
+                        if (i_new >= 0 && (stateNum & (1 << i_new)) != 0)
                             oldStateNum |= (1 << i_old);
                     }
-                    value += wf.get(oldSubsetNum, oldStateNum);
+                    value += wf.get(overlapping[k], oldStateNum);
                 }
                 
-                wf2.set(newSubsetNum, stateNum, value, 0); // XXX: we don't recompute the predecessor during repartitioning, but it is feasible
+                newWf.set(newSubsetNum, stateNum, value, 0); // XXX: we don't recompute the predecessor during repartitioning, but it is feasible
             }
         }
         
         // submachines2 now reflects the new partitioning 
-        // wf2 now has the new workfunction values for submachines2
+        // newWf now has the new workfunction values for submachines2
         
         submachines = submachines2; // start using new subsets
-        wf.reallocate(wf2); // copy wf2 into wf (also changes the implicit partitioning within wf)
+        wf = newWf;
+        wf2 = newWf2;
+        indexPositions();
         dump("AFTER REPARTITION");
     }
 
+    // returns the number of the old subset that has exactly the given indexes, or -1 if there's
+    // none
+    private int unchangedSubset(int[] indexIds) {
+        int oldSubsetNum = subsetOf(indexIds[0]);
+        
+        if (oldSubsetNum < 0 || submachines[oldSubsetNum].numIndexes != indexIds.length)
+            return -1;
+        
+        for (int id : indexIds)
+            if (subsetOf(id) != oldSubsetNum)
+                return -1;
+        
+        return oldSubsetNum;
+    }
+    
+    private int subsetOf(int id) {
+        return id >= 0 && id < subsetOf.length ? subsetOf[id] : -1;
+    }
+    
+    // rebuilds the id-to-subset and id-to-position maps
+    private void indexPositions() {
+        int length = 0;
+        for (SubMachine subm : submachines)
+            for (int id : subm.indexIds)
+                length = Math.max(length, id + 1);
+        
+        subsetOf = new int[length];
+        positionOf = new int[length];
+        Arrays.fill(subsetOf, -1);
+        Arrays.fill(positionOf, -1);
+        
+        for (SubMachine subm : submachines)
+            for (int i = 0; i < subm.numIndexes; i++) {
+                subsetOf[subm.indexIds[i]] = subm.subsetNum;
+                positionOf[subm.indexIds[i]] = i;
+            }
+    }
+
     public Map<Set<Index>, Double> getWorkFunctionScores(Set<Index> pool)
     {
         Map<Set<Index>, Double> wfValues = new HashMap<Set<Index>, Double>();
 
-        for (SubMachine subm : submachines) {
+        for (SubMachine subm : submachines)
+            addWorkFunctionScores(wfValues, subm.indexIds, subm.subsetNum, wf, pool);
 
-            for (int s = 0; s < subm.numStates; s++) {
-                Set<Index> subset = new TreeSet<Index>();
+        return wfValues;
+    }
 
-                for (int i = 0; i < subm.indexIds.length; i++)
-                    if (((s >> i) & 1) == 1)
-                        subset.add(find(pool, subm.indexIds[i]));
+    private static void addWorkFunctionScores(
+            Map<Set<Index>, Double> wfValues, int[] indexIds, int subsetNum, TotalWorkValues wf,
+            Set<Index> pool)
+    {
+        for (int s = 0; s < (1 << indexIds.length); s++) {
+            Set<Index> subset = new TreeSet<Index>();
 
-                wfValues.put(subset, wf.get(subm.subsetNum, s));
-            }
+            for (int i = 0; i < indexIds.length; i++)
+                if (((s >> i) & 1) == 1)
+                    subset.add(find(pool, indexIds[i]));
+
+            wfValues.put(subset, wf.get(subsetNum, s));
         }
+    }
 
-        return wfValues;
+    /**
+     * @return the current state of each submachine, in the order of the partitions
+     */
+    int[] getCurrentStates() {
+        int[] states = new int[submachines.length];
+        for (SubMachine subm : submachines)
+            states[subm.subsetNum] = subm.currentState;
+        return states;
+    }
+
+    /**
+     * @return a copy of the current work function values
+     */
+    TotalWorkValues getTotalWorkValues() {
+        return new TotalWorkValues(wf);
     }
     
     static void setStateBits(int[] ids, int stateNum, BitSet bitSet) {
@@ -254,15 +402,6 @@ public class WorkFunctionAlgorithm {
             bitSet.clear(ids[i]);
     }
     
-    private boolean isRecommended(Index idx) {
-        // not sure which submachine has the index, so check them all
-        for (SubMachine subm : submachines) {
-            if (subm.currentBitSet.get(idx.getId()-minId))
-                return true;
-        }
-        return false;
-    }
-    
     public static double transitionCost(Set<Index> candidateSet, BitSet x, BitSet y, int minId) {
         double transition = 0;
         for (Index index : candidateSet) {
@@ -321,11 +460,10 @@ public class WorkFunctionAlgorithm {
         }
         
         // return position of id in indexIds if exists, else -1
+        // indexIds are sorted, since subsets iterate their indexes in id order
         public int indexPos(int id) {
-            for (int i = 0; i < numIndexes; i++)
-                if (indexIds[i] == id)
-                    return i;
-            return -1;
+            int i = Arrays.binarySearch(indexIds, id);
+            return i >= 0 ? i : -1;
         }
         
         //public void dump(TotalWorkValues wf) {
@@ -354,14 +492,9 @@ public class WorkFunctionAlgorithm {
 
         // process a positive or negative vote for the index
         // do the necessary bookkeeping in the input workfunction, and update the current state
-        public void vote(TotalWorkValues wf, Index index, boolean isPositive) {
-            // find the position in indexIds
-            int indexIdsPos;
+        public void vote(TotalWorkValues wf, Index index, int indexIdsPos, boolean isPositive) {
             int stateMask;
-            for (indexIdsPos = 0; indexIdsPos < numIndexes; indexIdsPos++) if (indexIds[indexIdsPos] 
-                    == index.getId()-minId)
-                    break;
-            if (indexIdsPos >= numIndexes) {
+            if (indexIdsPos < 0 || indexIdsPos >= numIndexes || indexIds[indexIdsPos] != index.getId()-minId) {
                 throw new RuntimeException("could not process vote: index not found in subset");
             }
             
@@ -466,76 +599,59 @@ public class WorkFunctionAlgorithm {
     }
     
     public static class TotalWorkValues {
-        double[] values;
-        int[] predecessor;
-        int[] subsetStart; 
-
-        TotalWorkValues(int maxNumStates, int maxNumIndexes) {
-            values = new double[maxNumStates];
-            subsetStart = new int[maxNumIndexes];
-            predecessor = new int[maxNumStates];
+        // values and predecessors of each subset, indexed by state number. These are separate 
+        // arrays so that repartitioning can keep the ones of the subsets it doesn't affect
+        double[][] values;
+        int[][] predecessor;
+
+        TotalWorkValues() {
+            this(0);
+        }
+
+        TotalWorkValues(int subsetCount) {
+            values = new double[subsetCount][];
+            predecessor = new int[subsetCount][];
+        }
+
+        TotalWorkValues(double[][] values0, int[][] predecessor0) {
+            values = values0;
+            predecessor = predecessor0;
         }
 
         TotalWorkValues(TotalWorkValues wf2) {
-            values = wf2.values.clone();
-            subsetStart = wf2.subsetStart.clone();
-            predecessor = wf2.predecessor.clone();
+            this(wf2.subsetCount());
+            for (int subsetNum = 0; subsetNum < values.length; subsetNum++) {
+                values[subsetNum] = wf2.values[subsetNum].clone();
+                predecessor[subsetNum] = wf2.predecessor[subsetNum].clone();
+            }
+        }
+        
+        int subsetCount() {
+            return values.length;
         }
         
         double get(int subsetNum, int stateNum) {
-            int i = subsetStart[subsetNum] + stateNum;
-            return values[i];
+            return values[subsetNum][stateNum];
         }
         
         int predecessor(int subsetNum, int stateNum) {
-            int i = subsetStart[subsetNum] + stateNum;
-            return predecessor[i];
+            return predecessor[subsetNum][stateNum];
         }
-            
 
         void set(int subsetNum, int stateNum, double wfBest, int p) {
-            int i = subsetStart[subsetNum] + stateNum;
-            values[i] = wfBest;
-            predecessor[i] = p;
+            values[subsetNum][stateNum] = wfBest;
+            predecessor[subsetNum][stateNum] = p;
         }
 
-        void reallocate(IndexPartitions newPartitions) {
-            int newValueCount = newPartitions.wfaStateCount();
-            if (newValueCount > values.length) {
-                values = new double[newValueCount];
-                predecessor = new int[newValueCount];
-            }
-            
-            int newSubsetCount = newPartitions.subsetCount();
-            if (newSubsetCount > subsetStart.length)
-                subsetStart = new int[newSubsetCount];
-            
-            int start = 0;
-            for (int subsetNum = 0; subsetNum < newSubsetCount; subsetNum++) {
-                subsetStart[subsetNum] = start;
-                start += (1 << newPartitions.get(subsetNum).size());
-            }
+        void allocate(int subsetNum, int numStates) {
+            values[subsetNum] = new double[numStates];
+            predecessor[subsetNum] = new int[numStates];
         }
 
-        void reallocate(TotalWorkValues wf2) {
-            int newValueCount = wf2.values.length;
-            if (newValueCount > values.length) {
-                values = new double[newValueCount];
-                predecessor = new int[newValueCount];
-            }
-            
-            int newSubsetCount = wf2.subsetStart.length;
-            if (newSubsetCount > subsetStart.length)
-                subsetStart = new int[newSubsetCount];
-            
-            for (int subsetNum = 0; subsetNum < newSubsetCount; subsetNum++) {
-                subsetStart[subsetNum] = wf2.subsetStart[subsetNum];
-            }
-            
-            for (int i = 0; i < newValueCount; i++) {
-                values[i] = wf2.values[i];
-                predecessor[i] = wf2.predecessor[i];
-            }
+        // takes (by reference) the arrays of subset otherSubsetNum of the given work function
+        void move(int subsetNum, TotalWorkValues other, int otherSubsetNum) {
+            values[subsetNum] = other.values[otherSubsetNum];
+            predecessor[subsetNum] = other.predecessor[otherSubsetNum];
         }
     }
     
@@ -0,0 +1,326 @@
+package edu.ucsc.dbtune.ibg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.ucsc.dbtune.metadata.Index;
+
+/**
+ * A read-only, array-based copy of an {@link IndexBenefitGraph}. Configurations are represented as
+ * bit arrays where the position of an index is given by {@code index.getId() - offset}, so that
+ * callers that already keep configurations as bit sets (e.g. the WFA) can look up costs without
+ * materializing {@link Set} objects.
+ * <p>
+ * The search for a covering node visits nodes in the same order as {@link IBGCoveringNodeFinder},
+ * thus the cost returned for a configuration is the same as the one obtained through the finder.
+ * Nodes that weren't expanded at the time the copy was made are treated as unexpanded ones by the
+ * search.
+ *
+ * @author Ivo Jimenez
+ */
+public class CompactIndexBenefitGraph
+{
+    /** number of bits in a word. */
+    private static final int WORD_SIZE = 64;
+
+    /** value returned when a configuration can't be resolved by the graph. */
+    public static final double NOT_FOUND = -1.0;
+
+    /** id of the index that is mapped to bit position zero. */
+    private final int offset;
+
+    /** union of the configurations of all the nodes (i.e. the configuration of the root). */
+    private final long[] universe;
+
+    /** configuration of each node. */
+    private final long[][] configurations;
+
+    /** used indexes of each node. */
+    private final long[][] usedIndexes;
+
+    /** cost of each node; {@link #NOT_FOUND} for unexpanded nodes. */
+    private final double[] costs;
+
+    /** children of each node. */
+    private final int[][] children;
+
+    /** cost of the empty configuration. */
+    private final double emptyCost;
+
+    /** scratch space where a requested configuration is copied to. */
+    private final long[] requested;
+
+    /** queue of pending nodes; children can be enqueued more than once, as in the finder. */
+    private final int[] pending;
+
+    /** the value of {@link #stamp} at the time a node was last visited. */
+    private final int[] visited;
+
+    /** stamp of the current search. */
+    private int stamp;
+
+    /**
+     * Creates a compact copy of the given graph.
+     *
+     * @param ibg
+     *      graph being copied
+     * @param offset
+     *      id of the index that is mapped to bit position zero
+     * @throws IllegalArgumentException
+     *      if an index in the graph has an id that is less than {@code offset}
+     */
+    public CompactIndexBenefitGraph(IndexBenefitGraph ibg, int offset)
+    {
+        List<IndexBenefitGraph.Node> nodes = new ArrayList<IndexBenefitGraph.Node>();
+        Map<IndexBenefitGraph.Node, Integer> numbers =
+            new HashMap<IndexBenefitGraph.Node, Integer>();
+
+        nodes.add(ibg.rootNode());
+        numbers.put(ibg.rootNode(), 0);
+
+        int edgeCount = 0;
+
+        for (int i = 0; i < nodes.size(); i++) {
+            if (!nodes.get(i).isExpanded())
+                continue;
+
+            for (IndexBenefitGraph.Node child : nodes.get(i).getChildren()) {
+                edgeCount++;
+
+                if (!numbers.containsKey(child)) {
+                    numbers.put(child, nodes.size());
+                    nodes.add(child);
+                }
+            }
+        }
+
+        this.offset = offset;
+        this.emptyCost = ibg.emptyCost();
+        this.universe = toWords(ibg.rootNode().getConfiguration(), offset, 0);
+
+        int words = universe.length;
+
+        configurations = new long[nodes.size()][];
+        usedIndexes = new long[nodes.size()][];
+        costs = new double[nodes.size()];
+        children = new int[nodes.size()][];
+
+        for (int i = 0; i < nodes.size(); i++) {
+            IndexBenefitGraph.Node node = nodes.get(i);
+
+            configurations[i] = toWords(node.getConfiguration(), offset, words);
+
+            if (!node.isExpanded()) {
+                usedIndexes[i] = new long[words];
+                costs[i] = NOT_FOUND;
+                children[i] = new int[0];
+                continue;
+            }
+
+            List<IndexBenefitGraph.Node> nodeChildren = node.getChildren();
+
+            usedIndexes[i] = toWords(node.getUsedIndexes(), offset, words);
+            costs[i] = node.cost();
+            children[i] = new int[nodeChildren.size()];
+
+            for (int j = 0; j < nodeChildren.size(); j++)
+                children[i][j] = numbers.get(nodeChildren.get(j));
+        }
+
+        requested = new long[words];
+        pending = new int[edgeCount + 1];
+        visited = new int[nodes.size()];
+    }
+
+    /**
+     * Returns the cost associated to the empty configuration.
+     *
+     * @return
+     *     the empty cost
+     */
+    public double emptyCost()
+    {
+        return emptyCost;
+    }
+
+    /**
+     * Returns the number of nodes in the graph.
+     *
+     * @return
+     *     number of nodes
+     */
+    public int size()
+    {
+        return costs.length;
+    }
+
+    /**
+     * Returns the id of the index that is mapped to bit position zero.
+     *
+     * @return
+     *     the offset used to map index ids to bit positions
+     */
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * Finds the cost of the given configuration.
+     *
+     * @param config
+     *      configuration, where bit {@code i} corresponds to the index with id {@code i + offset}
+     * @return
+     *      the cost of the configuration; {@link #NOT_FOUND} if the configuration isn't contained
+     *      in the universe of the graph or if no expanded covering node exists for it
+     */
+    public synchronized double cost(BitSet config)
+    {
+        if (config.isEmpty())
+            return emptyCost;
+
+        int node = findCoveringNode(config);
+
+        if (node < 0)
+            return NOT_FOUND;
+
+        return costs[node];
+    }
+
+    /**
+     * Finds the covering node for the given configuration. Callers must hold the lock of this
+     * object, since the search uses instance-level scratch space.
+     *
+     * @param config
+     *      configuration, where bit {@code i} corresponds to the index with id {@code i + offset}
+     * @return
+     *      the number of the covering node; {@code -1} if the configuration isn't contained in the
+     *      universe of the graph or if no expanded covering node exists for it
+     */
+    private int findCoveringNode(BitSet config)
+    {
+        if (!load(config))
+            return -1;
+
+        if (++stamp == 0) {
+            Arrays.fill(visited, 0);
+            stamp = 1;
+        }
+
+        int head = 0;
+        int tail = 0;
+
+        pending[tail++] = 0;
+
+        while (head < tail) {
+            int node = pending[head++];
+
+            if (visited[node] == stamp)
+                continue;
+
+            visited[node] = stamp;
+
+            // skip unexpanded nodes
+            if (costs[node] < 0)
+                continue;
+
+            // we can prune the search if the node does not contain all of config
+            if (!isSubset(requested, configurations[node]))
+                continue;
+
+            // return if we have found a covering node
+            if (isSubset(usedIndexes[node], requested))
+                return node;
+
+            for (int child : children[node])
+                pending[tail++] = child;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Copies the given configuration into the {@link #requested} scratch array.
+     *
+     * @param config
+     *      configuration being loaded
+     * @return
+     *      {@code false} if the configuration isn't contained in the universe; {@code true}
+     *      otherwise
+     */
+    private boolean load(BitSet config)
+    {
+        Arrays.fill(requested, 0L);
+
+        for (int i = config.nextSetBit(0); i >= 0; i = config.nextSetBit(i + 1)) {
+            int word = i / WORD_SIZE;
+
+            if (word >= requested.length)
+                return false;
+
+            requested[word] |= 1L << (i % WORD_SIZE);
+        }
+
+        return isSubset(requested, universe);
+    }
+
+    /**
+     * Checks whether {@code a} is a subset of {@code b}.
+     *
+     * @param a
+     *      bit array
+     * @param b
+     *      bit array of the same length as {@code a}
+     * @return
+     *      {@code true} if every bit set in {@code a} is also set in {@code b}
+     */
+    private static boolean isSubset(long[] a, long[] b)
+    {
+        for (int i = 0; i < a.length; i++)
+            if ((a[i] & ~b[i]) != 0)
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Converts a set of indexes into a bit array.
+     *
+     * @param indexes
+     *      indexes being converted
+     * @param offset
+     *      id of the index that is mapped to bit position zero
+     * @param words
+     *      minimum number of words of the array
+     * @return
+     *      the bit array
+     * @throws IllegalArgumentException
+     *      if an index has an id that is less than {@code offset}
+     */
+    private static long[] toWords(Set<Index> indexes, int offset, int words)
+    {
+        int length = words;
+
+        for (Index index : indexes) {
+            if (index.getId() < offset)
+                throw new IllegalArgumentException(
+                    "Index " + index + " has an id less than " + offset);
+
+            length = Math.max(length, (index.getId() - offset) / WORD_SIZE + 1);
+        }
+
+        long[] bits = new long[length];
+
+        for (Index index : indexes) {
+            int position = index.getId() - offset;
+            bits[position / WORD_SIZE] |= 1L << (position % WORD_SIZE);
+        }
+
+        return bits;
+    }
+}
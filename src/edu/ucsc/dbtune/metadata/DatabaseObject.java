@@ -356,12 +356,13 @@ public abstract class DatabaseObject
     }
 
     /**
-     * Removes an object.
+     * Removes an object. Synchronized along with {@link #add}, so that objects can be added to 
+     * (or removed from) a container while another thread takes a snapshot of it.
      *
      * @param dbo
      *     dbo being removed
      */
-    public void remove(DatabaseObject dbo)
+    public synchronized void remove(DatabaseObject dbo)
     {
         containees.remove(dbo);
     }
@@ -405,7 +406,7 @@ public abstract class DatabaseObject
      * @throws SQLException
      *     if object is already contained
      */
-    final void add(DatabaseObject dbo) throws SQLException
+    final synchronized void add(DatabaseObject dbo) throws SQLException
     {
         if (containees.contains(dbo))
             throw new SQLException("Object " + dbo.getName() + " already in " + getName());
@@ -374,6 +374,42 @@ public class Index extends DatabaseObject implements Iterable<Column>, Increment
             boolean unique,
             boolean clustered)
         throws SQLException
+    {
+        this(name, columns, ascending, primary, unique, clustered, IN_MEMORY_ID.getAndIncrement());
+    }
+
+    /**
+     * Creates an index with an identifier that was obtained through {@link #reserveIds}. Contrary 
+     * to the other constructors, no new identifier is taken.
+     *
+     * @param name
+     *     name of the index
+     * @param columns
+     *     columns that will define the index
+     * @param ascending
+     *     indicates whether or not the corresponding column is sorted in ascending or ascending 
+     *     order.
+     * @param unique
+     *     whether or not the index is unique
+     * @param primary
+     *     whether or not the index is primary
+     * @param clustered
+     *     whether the corresponding table is clustered on this index
+     * @param id
+     *     a reserved identifier
+     * @throws SQLException
+     *     if column list empty; if schema already contains an index with the given name; if not all 
+     *     of the columns in the list correspond to the same table.
+     */
+    public Index(
+            String name,
+            List<Column> columns,
+            List<Boolean> ascending,
+            boolean primary,
+            boolean unique,
+            boolean clustered,
+            int id)
+        throws SQLException
     {
         super(name);
 
@@ -417,7 +453,7 @@ public class Index extends DatabaseObject implements Iterable<Column>, Increment
         this.clustered  = clustered;
         this.scanOption = NON_REVERSIBLE;
         this.container  = sch;
-        this.inMemoryID = Index.IN_MEMORY_ID.getAndIncrement();
+        this.inMemoryID = id;
 
         container.add(this);
     }
@@ -767,6 +803,39 @@ public class Index extends DatabaseObject implements Iterable<Column>, Increment
         return true;
     }
 
+    /**
+     * Reserves a range of identifiers, so that they're not assigned to any index that is 
+     * instantiated afterwards. This is used to recreate indexes (e.g. out of a checkpoint) whose 
+     * identifiers have to keep the same relative order.
+     *
+     * @param count
+     *      number of identifiers to reserve
+     * @return
+     *      the first identifier of the reserved range, i.e. the range is {@code [first, first + 
+     *      count)}
+     */
+    public static int reserveIds(int count)
+    {
+        return IN_MEMORY_ID.getAndAdd(count);
+    }
+
+    /**
+     * Releases a range of identifiers obtained through {@link #reserveIds}, so that they're 
+     * assigned to indexes that are instantiated afterwards. The range is released only if no 
+     * identifier has been assigned (nor reserved) after it.
+     *
+     * @param first
+     *      the first identifier of the range
+     * @param count
+     *      number of identifiers of the range
+     * @return
+     *      whether the range was released
+     */
+    public static boolean releaseIds(int first, int count)
+    {
+        return IN_MEMORY_ID.compareAndSet(first + count, first);
+    }
+
     /**
      * Set the identifier of the object.
      * 
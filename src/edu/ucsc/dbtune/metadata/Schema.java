@@ -138,12 +138,13 @@ public class Schema extends DatabaseObject
     }
 
     /**
-     * Returns an iterator of indexes.
+     * Returns the indexes of the schema. The list is a snapshot, so it can be iterated while 
+     * indexes are being created on the schema.
      *
      * @return
-     *     an iterator over the indexes defined for the schema
+     *     a list of the indexes defined for the schema
      */
-    public List<Index> indexes()
+    public synchronized List<Index> indexes()
     {
         List<Index> list = new ArrayList<Index>();
 
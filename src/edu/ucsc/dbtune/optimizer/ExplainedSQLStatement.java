@@ -133,7 +133,7 @@ public class ExplainedSQLStatement
     public ExplainedSQLStatement(ExplainedSQLStatement other)
     {
         this.statement = other.statement;
-        this.plan = other.plan;
+        this.plan = other.getPlan();
         this.optimizer = other.optimizer;
         this.selectCost = other.selectCost;
         this.updatedTable = other.updatedTable;
@@ -263,7 +263,8 @@ public class ExplainedSQLStatement
 
     /**
      * Returns the plan corresponding to the statement that was used to generate this prepared 
-     * statement.
+     * statement. Subclasses may build the plan the first time it's requested, thus the copy 
+     * constructor, {@link #equals} and {@link #hashCode} obtain it through this method.
      *
      * @return
      *     the execution plan. {@code null} if the plan wasn't passed to the constructor
@@ -372,8 +373,8 @@ public class ExplainedSQLStatement
         if (updatedTable != null)
             code = 37 * code + updatedTable.hashCode();
 
-        if (plan != null)
-            code = 37 * code + plan.hashCode();
+        if (getPlan() != null)
+            code = 37 * code + getPlan().hashCode();
 
         return code;
     }
@@ -430,7 +431,7 @@ public class ExplainedSQLStatement
     
         ExplainedSQLStatement o = (ExplainedSQLStatement) obj;
     
-        if (plan != null && !plan.equals(o.plan))
+        if (getPlan() != null && !getPlan().equals(o.getPlan()))
             return false;
 
         return equalsIgnorePlan(obj);
@@ -14,6 +14,9 @@ import edu.ucsc.dbtune.workload.SQLStatement;
  */
 public class IBGOptimizer extends AbstractOptimizerWithDelegate
 {
+    /** IBGs shared by statements with the same template; {@code null} if not shared. */
+    private final IBGTemplateCache templateCache;
+
     /**
      * Constructs an {@code IBGOptimizer}. Relies on the given {@code optimizer} to execute actual 
      * optimization calls.
@@ -22,8 +25,35 @@ public class IBGOptimizer extends AbstractOptimizerWithDelegate
      *      a DBMS-specific implementation of an {@link Optimizer} type.
      */
     public IBGOptimizer(Optimizer optimizer)
+    {
+        this(optimizer, null);
+    }
+
+    /**
+     * Constructs an {@code IBGOptimizer} whose prepared statements share the IBG with previously 
+     * prepared statements of the same template.
+     *
+     * @param optimizer
+     *      a DBMS-specific implementation of an {@link Optimizer} type.
+     * @param templateCache
+     *      cache of IBGs; {@code null} to build an IBG for every statement
+     */
+    public IBGOptimizer(Optimizer optimizer, IBGTemplateCache templateCache)
     {
         super(optimizer);
+
+        this.templateCache = templateCache;
+    }
+
+    /**
+     * Returns the cache where the IBGs of prepared statements are shared.
+     *
+     * @return
+     *      the cache of IBGs; {@code null} if IBGs aren't shared
+     */
+    public IBGTemplateCache getTemplateCache()
+    {
+        return templateCache;
     }
     
     /**
@@ -33,6 +33,9 @@ public class IBGPreparedSQLStatement extends DefaultPreparedSQLStatement
     /** The universe of indexes from which actual explains will occur. */
     private Set<Index> universe;
 
+    /** where the IBG is looked for before building it; {@code null} if not shared. */
+    private IBGTemplateCache templateCache;
+
     /**
      * Constructcs a prepared statement.
      *  
@@ -69,6 +72,7 @@ public class IBGPreparedSQLStatement extends DefaultPreparedSQLStatement
 
         this.ibg = ibg;
         this.universe = universe;
+        this.templateCache = optimizer.getTemplateCache();
     }
 
     /**
@@ -83,6 +87,7 @@ public class IBGPreparedSQLStatement extends DefaultPreparedSQLStatement
 
         ibg = other.ibg;
         universe = other.universe;
+        templateCache = other.templateCache;
     }
 
     /**
@@ -120,7 +125,19 @@ public class IBGPreparedSQLStatement extends DefaultPreparedSQLStatement
     {
         int optimizationCount = 0;
 
-        if (ibg == null) {
+        IBGTemplateCache.Entry cached = null;
+
+        if (ibg == null && templateCache != null)
+            cached = templateCache.get(sql, configuration);
+
+        if (cached != null) {
+            // a statement of the same template was already explained against the same candidates
+            this.ibg = cached.getIndexBenefitGraph();
+            this.updatedTable = cached.getUpdatedTable();
+            this.baseTableUpdateCost = cached.getBaseTableUpdateCost();
+            this.universe = cached.getUniverse();
+        }
+        else if (ibg == null) {
             // time to build the IBG
             int oldOptimizationCount = optimizer.getWhatIfCount();
 
@@ -132,6 +149,9 @@ public class IBGPreparedSQLStatement extends DefaultPreparedSQLStatement
             this.updatedTable = eStmt.getUpdatedTable();
             this.baseTableUpdateCost = eStmt.getBaseTableUpdateCost();
             this.universe = new HashSet<Index>(configuration);
+
+            if (templateCache != null)
+                templateCache.put(sql, configuration, ibg, updatedTable, baseTableUpdateCost);
         }
 
         if (!getUniverse().containsAll(configuration))
@@ -0,0 +1,306 @@
+package edu.ucsc.dbtune.optimizer;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import edu.ucsc.dbtune.ibg.IndexBenefitGraph;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.metadata.Table;
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+/**
+ * Caches the {@link IndexBenefitGraph} of statements by {@link SQLStatement#getTemplate template}
+ * and candidate set, so that statements that differ only in their literals share the IBG built
+ * for the first of them. Since the costs of a statement may depend on its literals, a cached IBG
+ * can optionally be revalidated: every {@code revalidationInterval} reuses of an entry, the IBG is
+ * built again and it replaces the cached one.
+ * <p>
+ * The cache holds at most {@code capacity} entries, evicting the least recently used one. It's
+ * safe to use from multiple threads.
+ *
+ * @author Ivo Jimenez
+ */
+public class IBGTemplateCache
+{
+    private final int capacity;
+    private final int revalidationInterval;
+    private final Map<Key, Entry> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long revalidationCount;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity
+     *      maximum number of cached IBGs
+     * @param revalidationInterval
+     *      number of reuses of an entry after which its IBG is built again; zero to never rebuild
+     * @throws IllegalArgumentException
+     *      if the capacity is less than one or the interval is negative
+     */
+    public IBGTemplateCache(final int capacity, int revalidationInterval)
+    {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity should be at least 1");
+
+        if (revalidationInterval < 0)
+            throw new IllegalArgumentException("Revalidation interval can't be negative");
+
+        this.capacity = capacity;
+        this.revalidationInterval = revalidationInterval;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the entry for the template of the given statement and the given candidate set.
+     *
+     * @param sql
+     *      statement about to be explained
+     * @param configuration
+     *      candidate set the statement is explained against
+     * @return
+     *      the cached entry; {@code null} if there's none or if it's due to be revalidated, in
+     *      which case the caller is expected to build the IBG and {@link #put} it
+     */
+    public synchronized Entry get(SQLStatement sql, Set<Index> configuration)
+    {
+        Entry entry = entries.get(new Key(sql.getTemplate(), configuration));
+
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+
+        entry.useCount++;
+
+        if (revalidationInterval > 0 && entry.useCount % revalidationInterval == 0) {
+            revalidationCount++;
+            return null;
+        }
+
+        hitCount++;
+
+        return entry;
+    }
+
+    /**
+     * Caches the IBG of a statement, replacing the entry for the same template and candidate set,
+     * if any.
+     *
+     * @param sql
+     *      statement whose IBG was built
+     * @param configuration
+     *      candidate set the IBG was built for
+     * @param ibg
+     *      the IBG
+     * @param updatedTable
+     *      table updated by the statement; {@code null} if the statement is a query
+     * @param baseTableUpdateCost
+     *      cost of updating the base table
+     * @return
+     *      the new entry
+     */
+    public synchronized Entry put(
+            SQLStatement sql,
+            Set<Index> configuration,
+            IndexBenefitGraph ibg,
+            Table updatedTable,
+            double baseTableUpdateCost)
+    {
+        Key key = new Key(sql.getTemplate(), configuration);
+        Entry entry = new Entry(ibg, key.configuration, updatedTable, baseTableUpdateCost);
+        Entry previous = entries.put(key, entry);
+
+        if (previous != null)
+            entry.useCount = previous.useCount;
+
+        return entry;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * @return
+     *      number of cached entries
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * @return
+     *      maximum number of cached entries
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return
+     *      number of times that a cached IBG was reused
+     */
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * @return
+     *      number of times that there was no IBG for a statement
+     */
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * @return
+     *      number of times that a cached IBG was built again
+     */
+    public synchronized long getRevalidationCount()
+    {
+        return revalidationCount;
+    }
+
+    /**
+     * An IBG built for a template, along with the update information of the statement it was
+     * built from.
+     */
+    public static class Entry
+    {
+        private final IndexBenefitGraph ibg;
+        private final Set<Index> universe;
+        private final Table updatedTable;
+        private final double baseTableUpdateCost;
+
+        /** guarded by the cache's monitor. */
+        private long useCount;
+
+        /**
+         * @param ibg
+         *      the IBG
+         * @param universe
+         *      candidate set the IBG was built for
+         * @param updatedTable
+         *      table updated by the statement
+         * @param baseTableUpdateCost
+         *      cost of updating the base table
+         */
+        Entry(
+                IndexBenefitGraph ibg,
+                Set<Index> universe,
+                Table updatedTable,
+                double baseTableUpdateCost)
+        {
+            this.ibg = ibg;
+            this.universe = universe;
+            this.updatedTable = updatedTable;
+            this.baseTableUpdateCost = baseTableUpdateCost;
+        }
+
+        /**
+         * @return
+         *      the IBG
+         */
+        public IndexBenefitGraph getIndexBenefitGraph()
+        {
+            return ibg;
+        }
+
+        /**
+         * @return
+         *      the candidate set the IBG was built for; unmodifiable
+         */
+        public Set<Index> getUniverse()
+        {
+            return universe;
+        }
+
+        /**
+         * @return
+         *      table updated by the statement; {@code null} if the statement is a query
+         */
+        public Table getUpdatedTable()
+        {
+            return updatedTable;
+        }
+
+        /**
+         * @return
+         *      cost of updating the base table
+         */
+        public double getBaseTableUpdateCost()
+        {
+            return baseTableUpdateCost;
+        }
+    }
+
+    /**
+     * A template and a candidate set.
+     */
+    private static class Key
+    {
+        private final String template;
+        private final Set<Index> configuration;
+        private final int hashCode;
+
+        /**
+         * @param template
+         *      template of a statement
+         * @param configuration
+         *      candidate set; it's copied
+         */
+        Key(String template, Set<Index> configuration)
+        {
+            this.template = template;
+            this.configuration = Collections.unmodifiableSet(new HashSet<Index>(configuration));
+            this.hashCode = 31 * template.hashCode() + this.configuration.hashCode();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key) obj;
+
+            return hashCode == other.hashCode &&
+                template.equals(other.template) &&
+                configuration.equals(other.configuration);
+        }
+    }
+}
@@ -15,12 +15,21 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.CANDIDATE_GENERATOR;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.DB2;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.FILE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.IBG_TEMPLATE_CACHE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.IBG_TEMPLATE_REVALIDATION;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_HELPER_CONNECTIONS;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_MATCHING_STRATEGY;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_METRICS_JMX;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_METRICS_REPORT_INTERVAL;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_SLOT_CACHE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_SLOT_CACHE_SCOPE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_SLOT_CACHE_SIZE;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_SPACE_COMPUTATION;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_SPACE_STORE;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.JDBC_DRIVER;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.JDBC_URL;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.MYSQL;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.NONE;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.OPTIMIZER;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.PASSWORD;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.PG;
@@ -28,10 +37,20 @@ import static edu.ucsc.dbtune.util.EnvironmentProperties.SPACE_BUDGET;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.SUPPORTED_OPTIMIZERS;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.TEMP_DIR;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.USERNAME;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_CHECKPOINT_FILE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_CHECKPOINT_INTERVAL;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_DOI_BUDGET;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_HISTORY_HORIZON;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_HISTORY_SPILL_FILE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_HOST_WORKERS;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_INDEX_STATISTICS_WINDOW;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_MAX_NUM_INDEXES;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_MAX_NUM_STATES;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_NUM_PARTITION_ITERATIONS;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_PIPELINE_LOOKAHEAD;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_STATISTICS;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_STATISTICS_RETENTION;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_STATISTICS_SAMPLE_INTERVAL;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.WORKLOADS_FOLDERNAME;
 import static edu.ucsc.dbtune.util.Strings.toBoolean;
 
@@ -320,6 +339,133 @@ public class Environment
                 getOrThrowIfNullOrEmpty(configuration, WFIT_INDEX_STATISTICS_WINDOW));
     }
 
+    /**
+     * @return {@link EnvironmentProperties#WFIT_HISTORY_HORIZON}
+     * @throws NumberFormatException
+     *      unable to return the horizon due to the stated reason.
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public int getWFITHistoryHorizon() throws NumberFormatException
+    {
+        return Integer.valueOf(getOrThrowIfNullOrEmpty(configuration, WFIT_HISTORY_HORIZON));
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#WFIT_HISTORY_SPILL_FILE}; {@code null} if the value of 
+     *      the property is {@link EnvironmentProperties#NONE}
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public File getWFITHistorySpillFile()
+    {
+        String path = getOrThrowIfNullOrEmpty(configuration, WFIT_HISTORY_SPILL_FILE);
+
+        if (path.equals(NONE))
+            return null;
+
+        return new File(path);
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#WFIT_PIPELINE_LOOKAHEAD}
+     * @throws NumberFormatException
+     *      unable to return the lookahead due to the stated reason.
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public int getWFITPipelineLookahead() throws NumberFormatException
+    {
+        return Integer.valueOf(getOrThrowIfNullOrEmpty(configuration, WFIT_PIPELINE_LOOKAHEAD));
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#WFIT_CHECKPOINT_FILE}; {@code null} if the value of the 
+     *      property is {@link EnvironmentProperties#NONE}
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public File getWFITCheckpointFile()
+    {
+        String path = getOrThrowIfNullOrEmpty(configuration, WFIT_CHECKPOINT_FILE);
+
+        if (path.equals(NONE))
+            return null;
+
+        return new File(path);
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#WFIT_CHECKPOINT_INTERVAL}
+     * @throws NumberFormatException
+     *      unable to return the interval due to the stated reason.
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public int getWFITCheckpointInterval() throws NumberFormatException
+    {
+        return Integer.valueOf(getOrThrowIfNullOrEmpty(configuration, WFIT_CHECKPOINT_INTERVAL));
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#WFIT_HOST_WORKERS}
+     * @throws NumberFormatException
+     *      unable to return the number of workers due to the stated reason.
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public int getWFITHostWorkers() throws NumberFormatException
+    {
+        return Integer.valueOf(getOrThrowIfNullOrEmpty(configuration, WFIT_HOST_WORKERS));
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#WFIT_STATISTICS}
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public String getWFITStatistics()
+    {
+        return getOrThrowIfNullOrEmpty(configuration, WFIT_STATISTICS);
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#WFIT_STATISTICS_SAMPLE_INTERVAL}
+     * @throws NumberFormatException
+     *      unable to return the interval due to the stated reason.
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public int getWFITStatisticsSampleInterval() throws NumberFormatException
+    {
+        return Integer.valueOf(
+                getOrThrowIfNullOrEmpty(configuration, WFIT_STATISTICS_SAMPLE_INTERVAL));
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#WFIT_STATISTICS_RETENTION}
+     * @throws NumberFormatException
+     *      unable to return the retention due to the stated reason.
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public int getWFITStatisticsRetention() throws NumberFormatException
+    {
+        return Integer.valueOf(getOrThrowIfNullOrEmpty(configuration, WFIT_STATISTICS_RETENTION));
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#WFIT_DOI_BUDGET}
+     * @throws NumberFormatException
+     *      unable to return the budget due to the stated reason.
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public int getWFITDoiBudget() throws NumberFormatException
+    {
+        return Integer.valueOf(getOrThrowIfNullOrEmpty(configuration, WFIT_DOI_BUDGET));
+    }
+
     /**
      * Returns the path to a given workload file. The path is qualified against the value of {@link 
      * EnvironmentProperties#WORKLOADS_FOLDERNAME}.
@@ -430,6 +576,30 @@ public class Environment
         return getOrThrowIfNullOrEmpty(configuration, INUM_MATCHING_STRATEGY);
     }
 
+    /**
+     * @return {@link EnvironmentProperties#IBG_TEMPLATE_CACHE}
+     * @throws NumberFormatException
+     *      unable to return the size due to the stated reason.
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public int getIBGTemplateCache() throws NumberFormatException
+    {
+        return Integer.valueOf(getOrThrowIfNullOrEmpty(configuration, IBG_TEMPLATE_CACHE));
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#IBG_TEMPLATE_REVALIDATION}
+     * @throws NumberFormatException
+     *      unable to return the interval due to the stated reason.
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public int getIBGTemplateRevalidation() throws NumberFormatException
+    {
+        return Integer.valueOf(getOrThrowIfNullOrEmpty(configuration, IBG_TEMPLATE_REVALIDATION));
+    }
+
     /**
      * @return {@link EnvironmentProperties#INUM_SLOT_CACHE}
      * @throws NoSuchElementException
@@ -439,4 +609,76 @@ public class Environment
     {
         return toBoolean(getOrThrowIfNullOrEmpty(configuration, INUM_SLOT_CACHE));
     }
+
+    /**
+     * @return {@link EnvironmentProperties#INUM_SLOT_CACHE_SIZE}
+     * @throws NumberFormatException
+     *      unable to return the size due to the stated reason.
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public long getInumSlotCacheSize() throws NumberFormatException
+    {
+        return Long.valueOf(getOrThrowIfNullOrEmpty(configuration, INUM_SLOT_CACHE_SIZE));
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#INUM_SLOT_CACHE_SCOPE}
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public String getInumSlotCacheScope()
+    {
+        return getOrThrowIfNullOrEmpty(configuration, INUM_SLOT_CACHE_SCOPE);
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#INUM_SPACE_STORE}; {@code null} if the value of the 
+     *      property is {@link EnvironmentProperties#NONE}
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public File getInumSpaceStore()
+    {
+        String path = getOrThrowIfNullOrEmpty(configuration, INUM_SPACE_STORE);
+
+        if (path.equals(NONE))
+            return null;
+
+        return new File(path);
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#INUM_METRICS_JMX}
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public boolean getInumMetricsJmx()
+    {
+        return toBoolean(getOrThrowIfNullOrEmpty(configuration, INUM_METRICS_JMX));
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#INUM_METRICS_REPORT_INTERVAL}
+     * @throws NumberFormatException
+     *      unable to return the interval due to the stated reason.
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public long getInumMetricsReportInterval() throws NumberFormatException
+    {
+        return Long.valueOf(getOrThrowIfNullOrEmpty(configuration, INUM_METRICS_REPORT_INTERVAL));
+    }
+
+    /**
+     * @return {@link EnvironmentProperties#INUM_HELPER_CONNECTIONS}
+     * @throws NumberFormatException
+     *      unable to return the number of connections due to the stated reason.
+     * @throws NoSuchElementException
+     *      if the property is empty or null
+     */
+    public int getInumHelperConnections() throws NumberFormatException
+    {
+        return Integer.valueOf(getOrThrowIfNullOrEmpty(configuration, INUM_HELPER_CONNECTIONS));
+    }
 }
@@ -175,6 +175,11 @@ public final class EnvironmentProperties
     public static final String LAZY = "lazy";
     /** eager evaluation of a computation. */
     public static final String EAGER = "eager";
+    /** evaluation of a computation only for a sample of its inputs. */
+    public static final String SAMPLED = "sampled";
+
+    /** value used to turn off an optional feature. */
+    public static final String NONE = "none";
 
 
     
@@ -185,9 +190,50 @@ public final class EnvironmentProperties
     public static final String INUM_MATCHING_STRATEGY = "inum.matching.strategy";
     /** cache for slots? */
     public static final String INUM_SLOT_CACHE = "inum.slot.cache";
+    /** Maximum number of slot instantiations kept by the slot cache. */
+    public static final String INUM_SLOT_CACHE_SIZE = "inum.slot.cache.size";
+    /**
+     * Scope of the slot cache: {@link #SHARED} among all the statements explained by an optimizer, 
+     * or {@link #STATEMENT} for a cache per statement.
+     */
+    public static final String INUM_SLOT_CACHE_SCOPE = "inum.slot.cache.scope";
+    /** slot cache shared among statements. */
+    public static final String SHARED = "shared";
+    /** slot cache per statement. */
+    public static final String STATEMENT = "statement";
+    /**
+     * Directory where the INUM spaces of statements are stored, so that they're computed only 
+     * once across runs, or {@link #NONE} to disable the store.
+     */
+    public static final String INUM_SPACE_STORE = "inum.space.store";
+    /** whether the INUM metrics are registered with the platform MBean server. */
+    public static final String INUM_METRICS_JMX = "inum.metrics.jmx";
+    /**
+     * Number of seconds between two consecutive logs of the INUM metrics. A value of zero disables 
+     * the log.
+     */
+    public static final String INUM_METRICS_REPORT_INTERVAL = "inum.metrics.report.interval";
+    /**
+     * Number of connections, in addition to the one of its delegate, through which the INUM 
+     * optimizer issues what-if calls in parallel when computing INUM spaces and probing indexes. 
+     * Must be zero on DB2.
+     */
+    public static final String INUM_HELPER_CONNECTIONS = "inum.helper.connections";
     /** inum-specific algorithm type. */
     public static final String NONE_MIN_MAX = "none.min.max";
 
+    // IBG
+    /**
+     * Maximum number of IBGs that the IBG optimizer shares among statements with the same template 
+     * and candidate set. A value of zero builds an IBG for every statement.
+     */
+    public static final String IBG_TEMPLATE_CACHE = "ibg.template.cache";
+    /**
+     * Number of reuses of a shared IBG after which it is built again, so that it reflects the 
+     * literals of recent statements. A value of zero never rebuilds a shared IBG.
+     */
+    public static final String IBG_TEMPLATE_REVALIDATION = "ibg.template.revalidation";
+
 
 
     // WFIT
@@ -217,6 +263,60 @@ public final class EnvironmentProperties
      * XXX document.
      */
     public static final String WFIT_INDEX_STATISTICS_WINDOW = "index.statistics.window";
+    /**
+     * Number of most recent statements for which WFIT keeps its history (profiled statements and 
+     * work function values), which is what the {@code OPT} schedule is computed over. A value of 
+     * zero keeps the whole history.
+     */
+    public static final String WFIT_HISTORY_HORIZON = "wfit.history.horizon";
+    /**
+     * File where the work function history is spilled to, or {@link #NONE} to keep it in memory.
+     */
+    public static final String WFIT_HISTORY_SPILL_FILE = "wfit.history.spill.file";
+    /**
+     * Maximum number of statements that WFIT profiles ahead of the one being analyzed when it 
+     * processes a batch of queued statements. A value of zero processes one statement at a time. 
+     * Statements are profiled ahead only if WFIT is given two or more profiling systems, each 
+     * with its own connection.
+     */
+    public static final String WFIT_PIPELINE_LOOKAHEAD = "wfit.pipeline.lookahead";
+    /**
+     * File where WFIT checkpoints its state, or {@link #NONE} to disable checkpoints. If the file 
+     * exists when WFIT is instantiated, the state is restored from it.
+     */
+    public static final String WFIT_CHECKPOINT_FILE = "wfit.checkpoint.file";
+    /**
+     * Number of statements between two consecutive checkpoints of the WFIT state.
+     */
+    public static final String WFIT_CHECKPOINT_INTERVAL = "wfit.checkpoint.interval";
+    /**
+     * Number of threads that a {@code WFITHost} uses to run the WFIT instances it hosts. A value of 
+     * zero uses as many threads as available processors.
+     */
+    public static final String WFIT_HOST_WORKERS = "wfit.host.workers";
+    /**
+     * How WFIT computes the statistics of its recommendations: {@link #EAGER} after every 
+     * statement, {@link #LAZY} when the statistics are read, {@link #SAMPLED} for one out of every 
+     * {@link #WFIT_STATISTICS_SAMPLE_INTERVAL} statements, or {@link #NONE}.
+     */
+    public static final String WFIT_STATISTICS = "wfit.statistics";
+    /**
+     * Number of statements between two consecutive entries of the WFIT statistics, when these are 
+     * {@link #SAMPLED}.
+     */
+    public static final String WFIT_STATISTICS_SAMPLE_INTERVAL = "wfit.statistics.sample.interval";
+    /**
+     * Number of most recent entries retained by the WFIT statistics, 1000 by default. A value of 
+     * zero retains all of them, which holds an entry (and, when {@link #LAZY}, the prepared 
+     * statement) for every statement ever analyzed.
+     */
+    public static final String WFIT_STATISTICS_RETENTION = "wfit.statistics.retention";
+    /**
+     * Maximum number of what-if calls that WFIT issues per statement to estimate index 
+     * interactions through a {@code BudgetedDoiFinder}. A value of zero computes them exactly 
+     * through an {@code IBGDoiFinder}.
+     */
+    public static final String WFIT_DOI_BUDGET = "wfit.doi.budget";
 
     /**
      * Never invoked.
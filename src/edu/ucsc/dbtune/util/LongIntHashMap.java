@@ -0,0 +1,252 @@
+package edu.ucsc.dbtune.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from {@code long} keys to {@code int} values, implemented as an open-addressing hash table
+ * with linear probing. Keys and values are stored in primitive arrays, so lookups and insertions
+ * don't allocate nor box. Removal of individual entries isn't supported.
+ * <p>
+ * {@link Long#MIN_VALUE} is used to mark empty slots, thus it can't be used as a key.
+ *
+ * @author Ivo Jimenez
+ */
+public class LongIntHashMap
+{
+    /** value returned by {@link #get} when a key isn't contained in the map. */
+    public static final int NO_VALUE = -1;
+
+    /** marks empty slots. */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /** default number of slots. */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** keys; {@link #EMPTY} for empty slots. */
+    private long[] keys;
+
+    /** values. */
+    private int[] values;
+
+    /** number of entries. */
+    private int size;
+
+    /** {@code keys.length - 1}, used to map hashes to slots. */
+    private int mask;
+
+    /**
+     * Creates an empty map.
+     */
+    public LongIntHashMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty map that can hold the given number of entries without being resized.
+     *
+     * @param expectedSize
+     *      number of entries that the map is expected to hold
+     */
+    public LongIntHashMap(int expectedSize)
+    {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Creates a map with the same entries as the given one.
+     *
+     * @param other
+     *      map whose entries are copied
+     */
+    public LongIntHashMap(LongIntHashMap other)
+    {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        size = other.size;
+        mask = other.mask;
+    }
+
+    /**
+     * Packs two ints into a long, where {@code a} is placed in the upper 32 bits. Useful to key
+     * pairs of ids.
+     *
+     * @param a
+     *      first int
+     * @param b
+     *      second int
+     * @return
+     *      the packed long
+     */
+    public static long pack(int a, int b)
+    {
+        return ((long) a << 32) | (b & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the value associated to the given key.
+     *
+     * @param key
+     *      key being looked for
+     * @return
+     *      the value associated to the key; {@link #NO_VALUE} if the map doesn't contain the key
+     */
+    public int get(long key)
+    {
+        for (int slot = slot(key); keys[slot] != EMPTY; slot = (slot + 1) & mask)
+            if (keys[slot] == key)
+                return values[slot];
+
+        return NO_VALUE;
+    }
+
+    /**
+     * Associates a value to the given key, replacing the previous one, if any.
+     *
+     * @param key
+     *      key of the entry
+     * @param value
+     *      value of the entry
+     * @throws IllegalArgumentException
+     *      if the key is {@link Long#MIN_VALUE}
+     */
+    public void put(long key, int value)
+    {
+        if (key == EMPTY)
+            throw new IllegalArgumentException("Key can't be " + EMPTY);
+
+        int slot = slot(key);
+
+        for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+
+        if (++size * 2 > keys.length)
+            rehash(keys.length * 2);
+    }
+
+    /**
+     * Returns the number of entries in the map.
+     *
+     * @return
+     *      number of entries
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the keys of the map, in no particular order.
+     *
+     * @return
+     *      a new array containing the keys of the entries
+     */
+    public long[] keys()
+    {
+        long[] result = new long[size];
+        int i = 0;
+
+        for (long key : keys)
+            if (key != EMPTY)
+                result[i++] = key;
+
+        return result;
+    }
+
+    /**
+     * Removes all the entries of the map.
+     */
+    public void clear()
+    {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Returns the slot where the search for the given key starts.
+     *
+     * @param key
+     *      a key
+     * @return
+     *      the home slot of the key
+     */
+    private int slot(long key)
+    {
+        // finalizer of MurmurHash3, so that packed pairs spread over the table
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return (int) h & mask;
+    }
+
+    /**
+     * Moves all the entries to a new table with the given number of slots.
+     *
+     * @param capacity
+     *      number of slots of the new table
+     */
+    private void rehash(int capacity)
+    {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY)
+                continue;
+
+            int slot = slot(oldKeys[i]);
+
+            while (keys[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    /**
+     * Allocates an empty table with the given number of slots.
+     *
+     * @param capacity
+     *      number of slots; a power of two
+     */
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Returns the number of slots needed to hold the given number of entries.
+     *
+     * @param expectedSize
+     *      number of entries
+     * @return
+     *      a power of two that is at least twice the expected size
+     */
+    private static int capacityFor(int expectedSize)
+    {
+        int capacity = DEFAULT_CAPACITY;
+
+        while (capacity < 2 * expectedSize)
+            capacity *= 2;
+
+        return capacity;
+    }
+}
@@ -6,6 +6,7 @@ import java.io.IOException;
 
 import java.sql.SQLException;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -22,6 +23,7 @@ import edu.ucsc.dbtune.DatabaseSystem;
 import edu.ucsc.dbtune.metadata.Catalog;
 import edu.ucsc.dbtune.metadata.Column;
 import edu.ucsc.dbtune.metadata.ColumnOrdering;
+import edu.ucsc.dbtune.metadata.DatabaseObject;
 import edu.ucsc.dbtune.metadata.Index;
 import edu.ucsc.dbtune.metadata.Schema;
 import edu.ucsc.dbtune.metadata.Table;
@@ -426,7 +428,82 @@ public final class MetadataUtils
     }
 
     /**
-     * Generates the SQL statement that simulates the creation of an index. That is, this is the way 
+     * Creates a deep copy of the given catalog. Schemas, tables, columns and indexes are new
+     * objects, thus indexes that are later created on the copy aren't seen by the original and vice
+     * versa. The copied indexes get new {@link Index#getId ids}. The given catalog is only read, so
+     * many threads can copy it at the same time, provided that no thread modifies it.
+     *
+     * @param catalog
+     *      catalog being copied
+     * @return
+     *      a new catalog with the same content
+     * @throws SQLException
+     *      if an object can't be added to the copy
+     */
+    public static Catalog copyOf(Catalog catalog) throws SQLException
+    {
+        Catalog copy = new Catalog(catalog.getName());
+
+        copyStatistics(catalog, copy);
+
+        for (Schema sch : catalog) {
+            Schema schCopy = new Schema(copy, sch.getName());
+
+            copyStatistics(sch, schCopy);
+
+            for (Table tbl : sch.tables()) {
+                Table tblCopy = new Table(schCopy, tbl.getName());
+
+                copyStatistics(tbl, tblCopy);
+
+                for (Column col : tbl)
+                    copyStatistics(col, new Column(tblCopy, col.getName(), col.getDataType()));
+            }
+
+            for (Index idx : sch.indexes()) {
+                List<Column> columns = new ArrayList<Column>();
+
+                for (Column col : idx) {
+                    Table tblCopy = schCopy.findTable(col.getTable().getName());
+
+                    columns.add(tblCopy.findColumn(col.getName()));
+                }
+
+                Index idxCopy =
+                    new Index(
+                        idx.getName(), columns, idx.getAscending(), idx.isPrimary(), idx.isUnique(),
+                        idx.isClustered());
+
+                idxCopy.setType(idx.getType());
+                idxCopy.setScanOption(idx.getScanOption());
+                idxCopy.setMaterialized(idx.isMaterialized());
+
+                copyStatistics(idx, idxCopy);
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * Copies the internal id and the statistics of a database object into another.
+     *
+     * @param from
+     *      object being copied
+     * @param to
+     *      object being assigned
+     */
+    private static void copyStatistics(DatabaseObject from, DatabaseObject to)
+    {
+        to.setInternalID(from.getInternalID());
+        to.setCardinality(from.getCardinality());
+        to.setPages(from.getPages());
+        to.setBytes(from.getBytes());
+        to.setCreationCost(from.getCreationCost());
+    }
+
+    /**
+     * Generates the SQL statement that simulates the creation of an index. That is, this is the way
      * the DBMS would scan the data, expressed as a SQL query.
      *
      * @param ordering
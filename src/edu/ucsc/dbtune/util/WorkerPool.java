@@ -0,0 +1,128 @@
+package edu.ucsc.dbtune.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Pool of daemon threads shared by the components of the API that split their work in independent
+ * tasks. The pool has as many threads as available processors.
+ * <p>
+ * Tasks submitted through {@link #invokeAll} from a thread of the pool are executed by the calling
+ * thread, so that nested parallel sections can't starve the pool.
+ *
+ * @author Ivo Jimenez
+ */
+public final class WorkerPool
+{
+    private static ExecutorService executor;
+
+    private static final ThreadLocal<Boolean> IS_WORKER = new ThreadLocal<Boolean>();
+
+    /**
+     * Utility class.
+     */
+    private WorkerPool()
+    {
+    }
+
+    /**
+     * Returns the number of threads of the pool.
+     *
+     * @return
+     *      the number of available processors
+     */
+    public static int size()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Executes the given tasks and waits for all of them to complete.
+     *
+     * @param tasks
+     *      tasks to execute
+     * @param <T>
+     *      type of the result of the tasks
+     * @return
+     *      the results of the tasks, in the same order as the tasks
+     * @throws RuntimeException
+     *      if a task throws an exception (which is the cause of the one thrown) or if the calling
+     *      thread is interrupted
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks)
+    {
+        List<T> results = new ArrayList<T>(tasks.size());
+
+        try {
+            if (tasks.size() <= 1 || size() == 1 || Boolean.TRUE.equals(IS_WORKER.get())) {
+                for (Callable<T> task : tasks)
+                    results.add(task.call());
+
+                return results;
+            }
+
+            for (Future<T> future : getExecutor().invokeAll(tasks))
+                results.add(future.get());
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        return results;
+    }
+
+    /**
+     * Returns the executor singleton, creating it if necessary.
+     *
+     * @return
+     *      the executor that runs the tasks
+     */
+    private static synchronized ExecutorService getExecutor()
+    {
+        if (executor == null) {
+            executor =
+                Executors.newFixedThreadPool(
+                    size(),
+                    new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("dbtune-worker-%d")
+                        .setThreadFactory(new WorkerThreadFactory())
+                        .build());
+        }
+
+        return executor;
+    }
+
+    /**
+     * Creates threads that are marked as workers of the pool.
+     */
+    private static class WorkerThreadFactory implements java.util.concurrent.ThreadFactory
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Thread newThread(final Runnable r)
+        {
+            return new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    IS_WORKER.set(true);
+                    r.run();
+                }
+            });
+        }
+    }
+}
@@ -27,6 +27,9 @@ public class SQLStatement
     /** The position of the statement in the workload. */
     private int position;
 
+    /** contents of the statement with its literals replaced; computed lazily. */
+    private volatile String template;
+
     /**
      * Constructs a {@code SQLStatement}. The constructor tries to infer the category of the
      * statement using the {@link SQLCategory#from} method.
@@ -202,4 +205,120 @@ public class SQLStatement
     {
         return this.position;
     }
+
+    /**
+     * Returns the template of the statement, i.e. its contents with every string and numeric
+     * literal replaced by {@code ?} and every run of whitespace replaced by a single space.
+     * Statements that differ only in the values of their literals have the same template.
+     *
+     * @return
+     *      the template of the statement
+     */
+    public String getTemplate()
+    {
+        if (template == null)
+            template = toTemplate(sql);
+
+        return template;
+    }
+
+    /**
+     * Replaces the literals of a statement by {@code ?} and collapses its whitespace. Quoted
+     * identifiers are left untouched, as well as digits that are part of an identifier.
+     *
+     * @param sql
+     *      a sql statement
+     * @return
+     *      the template of the statement
+     */
+    static String toTemplate(String sql)
+    {
+        StringBuilder template = new StringBuilder(sql.length());
+        int i = 0;
+
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                while (i < sql.length() && Character.isWhitespace(sql.charAt(i)))
+                    i++;
+
+                if (template.length() > 0 && i < sql.length())
+                    template.append(' ');
+            } else if (c == '\'') {
+                // a quote inside a string literal is escaped by doubling it
+                for (i++; i < sql.length(); i++)
+                    if (sql.charAt(i) == '\'' &&
+                            (++i == sql.length() || sql.charAt(i) != '\''))
+                        break;
+
+                template.append('?');
+            } else if (c == '"') {
+                int end = sql.indexOf('"', i + 1);
+
+                end = end < 0 ? sql.length() : end + 1;
+                template.append(sql, i, end);
+                i = end;
+            } else if (isNumberStart(sql, i) && !isIdentifierPart(template)) {
+                while (i < sql.length() &&
+                        (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.'))
+                    i++;
+
+                if (i < sql.length() && Character.toLowerCase(sql.charAt(i)) == 'e') {
+                    int exponent = i + 1;
+
+                    if (exponent < sql.length() &&
+                            (sql.charAt(exponent) == '+' || sql.charAt(exponent) == '-'))
+                        exponent++;
+
+                    if (exponent < sql.length() && Character.isDigit(sql.charAt(exponent))) {
+                        i = exponent;
+
+                        while (i < sql.length() && Character.isDigit(sql.charAt(i)))
+                            i++;
+                    }
+                }
+
+                template.append('?');
+            } else {
+                template.append(c);
+                i++;
+            }
+        }
+
+        return template.toString();
+    }
+
+    /**
+     * @param sql
+     *      a sql statement
+     * @param i
+     *      a position in the statement
+     * @return
+     *      whether a numeric literal could start at the given position
+     */
+    private static boolean isNumberStart(String sql, int i)
+    {
+        char c = sql.charAt(i);
+
+        return Character.isDigit(c) ||
+            (c == '.' && i + 1 < sql.length() && Character.isDigit(sql.charAt(i + 1)));
+    }
+
+    /**
+     * @param template
+     *      template being built
+     * @return
+     *      whether the last character appended to the template is part of an identifier, in which
+     *      case a following digit is also part of it
+     */
+    private static boolean isIdentifierPart(StringBuilder template)
+    {
+        if (template.length() == 0)
+            return false;
+
+        char last = template.charAt(template.length() - 1);
+
+        return Character.isLetterOrDigit(last) || last == '_' || last == '$';
+    }
 }
@@ -40,13 +40,24 @@ import static edu.ucsc.dbtune.util.EnvironmentProperties.DBMS;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.EXHAUSTIVE;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.GREEDY;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.IBG;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.IBG_TEMPLATE_CACHE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.IBG_TEMPLATE_REVALIDATION;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_HELPER_CONNECTIONS;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_MATCHING_STRATEGY;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_METRICS_JMX;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_METRICS_REPORT_INTERVAL;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_SLOT_CACHE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_SLOT_CACHE_SCOPE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_SLOT_CACHE_SIZE;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_SPACE_COMPUTATION;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.INUM_SPACE_STORE;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.JDBC_URL;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.NONE;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.OPTIMIZER;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.PASSWORD;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.SHARED;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.STATEMENT;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.SUPPORTED_OPTIMIZERS;
 import static edu.ucsc.dbtune.util.EnvironmentProperties.USERNAME;
 
@@ -224,6 +235,9 @@ public final class DBTuneInstances
         else
             cfg.setProperty(OPTIMIZER, cfg.getProperty(OPTIMIZER) + "," + IBG);
 
+        cfg.setProperty(IBG_TEMPLATE_CACHE, "0");
+        cfg.setProperty(IBG_TEMPLATE_REVALIDATION, "0");
+
         return cfg;
     }
 
@@ -243,8 +257,14 @@ public final class DBTuneInstances
             cfg.setProperty(OPTIMIZER, cfg.getProperty(OPTIMIZER) + "," + INUM);
 
         cfg.setProperty(INUM_SLOT_CACHE, R.nextInt(2) == 0 ? "OFF" : "ON");
+        cfg.setProperty(INUM_SLOT_CACHE_SIZE, "1000");
+        cfg.setProperty(INUM_SLOT_CACHE_SCOPE, R.nextInt(2) == 0 ? SHARED : STATEMENT);
         cfg.setProperty(INUM_SPACE_COMPUTATION, R.nextInt(2) == 0 ? EXHAUSTIVE : IBG);
         cfg.setProperty(INUM_MATCHING_STRATEGY, R.nextInt(2) == 0 ? GREEDY : EXHAUSTIVE);
+        cfg.setProperty(INUM_SPACE_STORE, NONE);
+        cfg.setProperty(INUM_METRICS_JMX, "OFF");
+        cfg.setProperty(INUM_METRICS_REPORT_INTERVAL, "0");
+        cfg.setProperty(INUM_HELPER_CONNECTIONS, "0");
         return cfg;
     }
 
@@ -0,0 +1,172 @@
+package edu.ucsc.dbtune.advisor.interactions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import edu.ucsc.dbtune.DatabaseSystem;
+import edu.ucsc.dbtune.advisor.candidategeneration.CandidateGenerator;
+import edu.ucsc.dbtune.advisor.interactions.BudgetedDoiFinder.EstimatedBank;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.optimizer.IBGOptimizer;
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.optimizer.PreparedSQLStatement;
+import edu.ucsc.dbtune.util.Environment;
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DatabaseSystem.newDatabaseSystem;
+import static edu.ucsc.dbtune.util.OptimizerUtils.getBaseOptimizer;
+import static edu.ucsc.dbtune.util.TestUtils.loadWorkloads;
+import static edu.ucsc.dbtune.util.TestUtils.workload;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import static org.junit.Assert.assertThat;
+
+/**
+ * Functional test for the {@link BudgetedDoiFinder}. It compares the interactions estimated under
+ * distinct budgets against the exact ones found by the {@link IBGDoiFinder}, for the TPC-H and
+ * TPC-DS workloads, and reports the accuracy that each budget attains along with the number of
+ * what-if calls it takes.
+ *
+ * @author Ivo Jimenez
+ */
+public class BudgetedDoiFinderFunctionalTest
+{
+    private static final int[] BUDGETS = {16, 64, 256};
+    private static final double THRESHOLD = 0.01;
+
+    private static DatabaseSystem db;
+    private static Environment env;
+    private static CandidateGenerator candGen;
+
+    /**
+     * @throws Exception
+     *      if the workload can't be loaded
+     */
+    @BeforeClass
+    public static void beforeClass() throws Exception
+    {
+        env = Environment.getInstance();
+        db = newDatabaseSystem(env);
+        candGen =
+            CandidateGenerator.Factory.newCandidateGenerator(
+                    env, getBaseOptimizer(db.getOptimizer()));
+        loadWorkloads(db.getConnection());
+    }
+
+    /**
+     * @throws Exception
+     *      if the connection can't be closed
+     */
+    @AfterClass
+    public static void afterClass() throws Exception
+    {
+        db.getConnection().close();
+    }
+
+    /**
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testTPCH() throws Exception
+    {
+        benchmark("tpch");
+    }
+
+    /**
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testTPCDS() throws Exception
+    {
+        benchmark("tpcds");
+    }
+
+    /**
+     * Runs the benchmark on a workload. For each budget, the following is reported: the number of
+     * what-if calls; the mean absolute error of the interactions, over all the pairs; and the
+     * fraction of the pairs interacting above {@link #THRESHOLD} that are also found to do so.
+     *
+     * @param workloadName
+     *      name of the folder of the workload
+     * @throws Exception
+     *      if fails
+     */
+    private static void benchmark(String workloadName) throws Exception
+    {
+        if (!(db.getOptimizer() instanceof IBGOptimizer))
+            return;
+
+        Optimizer base = getBaseOptimizer(db.getOptimizer());
+        List<SQLStatement> sqls =
+            workload(env.getWorkloadsFoldername() + "/../../workloads/db2/" + workloadName);
+
+        int ibgCalls = 0;
+        int[] calls = new int[BUDGETS.length];
+        double[] error = new double[BUDGETS.length];
+        int[] found = new int[BUDGETS.length];
+        int pairCount = 0;
+        int interactingCount = 0;
+
+        for (SQLStatement sql : sqls) {
+            Set<Index> candidates = candGen.generate(sql);
+            List<Index> indexes = new ArrayList<Index>(candidates);
+
+            int before = base.getWhatIfCount();
+            PreparedSQLStatement ibgStmt = db.getOptimizer().prepareExplain(sql);
+            ibgStmt.explain(candidates);
+            InteractionBank exact = new IBGDoiFinder().degreeOfInteraction(ibgStmt, candidates);
+            ibgCalls += base.getWhatIfCount() - before;
+
+            PreparedSQLStatement baseStmt = base.prepareExplain(sql);
+
+            for (int k = 0; k < BUDGETS.length; k++) {
+                EstimatedBank bank =
+                    new BudgetedDoiFinder(BUDGETS[k]).degreeOfInteraction(baseStmt, candidates);
+
+                assertThat(bank.getWhatIfCallCount(), is(lessThanOrEqualTo(BUDGETS[k])));
+
+                calls[k] += bank.getWhatIfCallCount();
+
+                for (int i = 0; i < indexes.size(); i++) {
+                    for (int j = i + 1; j < indexes.size(); j++) {
+                        double doi = exact.interactionLevel(indexes.get(i), indexes.get(j));
+                        double est = bank.interactionLevel(indexes.get(i), indexes.get(j));
+
+                        error[k] += Math.abs(doi - est);
+
+                        if (doi >= THRESHOLD && est >= THRESHOLD)
+                            found[k]++;
+                    }
+                }
+            }
+
+            for (int i = 0; i < indexes.size(); i++) {
+                for (int j = i + 1; j < indexes.size(); j++) {
+                    pairCount++;
+
+                    if (exact.interactionLevel(indexes.get(i), indexes.get(j)) >= THRESHOLD)
+                        interactingCount++;
+                }
+            }
+        }
+
+        System.out.println(workloadName + ": " + sqls.size() + " statements, " + pairCount +
+                " pairs, " + interactingCount + " interacting, " + ibgCalls + " IBG calls");
+
+        for (int k = 0; k < BUDGETS.length; k++)
+            System.out.println(
+                "  budget " + BUDGETS[k] +
+                ": calls " + calls[k] +
+                ", mean error " + (pairCount == 0 ? 0 : error[k] / pairCount) +
+                ", recall " + (interactingCount == 0 ? 1 : (double) found[k] / interactingCount));
+    }
+}
@@ -0,0 +1,232 @@
+package edu.ucsc.dbtune.advisor.interactions;
+
+import java.sql.SQLException;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.ucsc.dbtune.advisor.interactions.BudgetedDoiFinder.EstimatedBank;
+
+import edu.ucsc.dbtune.metadata.Index;
+
+import edu.ucsc.dbtune.optimizer.ExplainedSQLStatement;
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.optimizer.PreparedSQLStatement;
+
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test for BudgetedDoiFinder.
+ *
+ * @author Ivo Jimenez
+ */
+public class BudgetedDoiFinderTest
+{
+    private static Index a;
+    private static Index b;
+    private static Index c;
+    private static Index d;
+    private static Set<Index> s;
+
+    /**
+     * Creates a candidate set where {@code a} and {@code b} have the same leading column, {@code
+     * c} is on the same table but has a distinct leading column and {@code d} is on another table.
+     */
+    @BeforeClass
+    public static void beforeClass()
+    {
+        List<Index> indexes = configureCatalog().schemas().get(0).indexes();
+
+        a = indexes.get(0);
+
+        for (Index index : indexes) {
+            if (index == a)
+                continue;
+            if (b == null && BudgetedDoiFinder.priority(a, index) == 2)
+                b = index;
+            else if (c == null && BudgetedDoiFinder.priority(a, index) == 1)
+                c = index;
+            else if (d == null && BudgetedDoiFinder.priority(a, index) == 0)
+                d = index;
+        }
+
+        s = new HashSet<Index>();
+
+        s.add(a);
+        s.add(b);
+        s.add(c);
+        s.add(d);
+    }
+
+    /**
+     * Checks that the interactions are exact when the budget allows to explain every
+     * configuration.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testLargeBudget() throws Exception
+    {
+        CostFunction sql = new CostFunction();
+        EstimatedBank bank = new BudgetedDoiFinder(1000).degreeOfInteraction(sql, s);
+
+        // the interaction is in cost units, as the one of the IBGAnalyzer: |100 - 80 - 80 + 50|
+        assertThat(bank.interactionLevel(a, b), closeTo(10.0, 1e-9));
+        assertThat(bank.interactionLevel(a, c), is(0.0));
+        assertThat(bank.interactionLevel(c, d), is(0.0));
+        assertThat(bank.bestBenefit(a), is(30.0));
+        assertThat(bank.bestBenefit(c), is(10.0));
+        assertThat(bank.bestBenefit(d), is(5.0));
+        assertThat(bank.isExact(a, b), is(true));
+        assertThat(bank.isExact(c, d), is(true));
+        assertThat(bank.getSampleCount(b, a), is(4));
+        assertThat(bank.getConfidence(a, b, 0.99), is(1.0));
+        assertThat(bank.getWhatIfCallCount(), is(sql.explainCount.get()));
+        assertThat(sql.explainCount.get() <= 16, is(true));
+    }
+
+    /**
+     * Checks that the budget is respected, that the singletons are explained first and that the
+     * rest of the budget is spent on the pairs of highest priority.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testSmallBudget() throws Exception
+    {
+        CostFunction sql = new CostFunction();
+        EstimatedBank bank = new BudgetedDoiFinder(6).degreeOfInteraction(sql, s);
+
+        // the empty set and the 4 singletons, plus {a, b}: the pair of a and c would take a 7th
+        assertThat(sql.explainCount.get(), is(6));
+        assertThat(bank.getWhatIfCallCount(), is(6));
+        assertThat(bank.interactionLevel(a, b), closeTo(10.0, 1e-9));
+        assertThat(bank.getSampleCount(a, b), is(1));
+        assertThat(bank.getConfidence(a, b, 0.5), is(0.0));
+        assertThat(bank.isExact(a, b), is(false));
+        assertThat(bank.getSampleCount(a, c), is(0));
+        assertThat(bank.getConfidence(a, c, 0.5), is(0.0));
+        assertThat(bank.getSampleCount(c, d), is(0));
+        assertThat(bank.bestBenefit(a), is(20.0));
+        assertThat(bank.bestBenefit(c), is(10.0));
+        assertThat(bank.bestBenefit(d), is(5.0));
+    }
+
+    /**
+     * Checks that the empty set, which every sampled pair gets first, doesn't add to the 
+     * confidence, since it isn't drawn at random.
+     */
+    @Test
+    public void testConfidenceOfDeterministicSample()
+    {
+        EstimatedBank bank = new EstimatedBank(s, 4);
+
+        bank.assignSampleCount(a, b, 1);
+        bank.assignSampleCount(a, c, 3);
+        bank.assignSampleCount(a, d, 4);
+
+        assertThat(bank.getConfidence(a, b, 0.5), is(0.0));
+        assertThat(bank.getConfidence(a, c, 0.5), closeTo(0.75, 1e-9));
+        assertThat(bank.getConfidence(a, d, 0.5), is(1.0));
+        assertThat(bank.getConfidence(b, c, 0.5), is(0.0));
+    }
+
+    /**
+     * Checks that indexes get a benefit when there are no pairs to sample or when the budget
+     * doesn't reach them.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testBenefitWithoutPairs() throws Exception
+    {
+        CostFunction sql = new CostFunction();
+        Set<Index> single = new HashSet<Index>();
+
+        single.add(c);
+
+        EstimatedBank bank = new BudgetedDoiFinder(16).degreeOfInteraction(sql, single);
+
+        assertThat(sql.explainCount.get(), is(2));
+        assertThat(bank.bestBenefit(c), is(10.0));
+
+        sql = new CostFunction();
+        bank = new BudgetedDoiFinder(5).degreeOfInteraction(sql, s);
+
+        assertThat(sql.explainCount.get(), is(5));
+        assertThat(bank.getSampleCount(a, b), is(0));
+        assertThat(bank.bestBenefit(a), is(20.0));
+        assertThat(bank.bestBenefit(d), is(5.0));
+    }
+
+    /**
+     * A statement whose cost is 100, minus 20 for each of a and b, minus 10 for c, minus 5 for d
+     * and minus 10 more when a and b are both present.
+     */
+    private static class CostFunction implements PreparedSQLStatement
+    {
+        private final AtomicInteger explainCount = new AtomicInteger();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ExplainedSQLStatement explain(Set<Index> conf) throws SQLException
+        {
+            double cost = 100;
+
+            if (conf.contains(a))
+                cost -= 20;
+            if (conf.contains(b))
+                cost -= 20;
+            if (conf.contains(c))
+                cost -= 10;
+            if (conf.contains(d))
+                cost -= 5;
+            if (conf.contains(a) && conf.contains(b))
+                cost -= 10;
+
+            ExplainedSQLStatement explained = mock(ExplainedSQLStatement.class);
+
+            when(explained.getSelectCost()).thenReturn(cost);
+
+            explainCount.incrementAndGet();
+
+            return explained;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Optimizer getOptimizer()
+        {
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public SQLStatement getSQLStatement()
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package edu.ucsc.dbtune.advisor.interactions;
+
+import java.sql.SQLException;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.ucsc.dbtune.metadata.Index;
+
+import edu.ucsc.dbtune.optimizer.ExplainedSQLStatement;
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.optimizer.PreparedSQLStatement;
+
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test for DefaultDoiFinder.
+ *
+ * @author Ivo Jimenez
+ */
+public class DefaultDoiFinderTest
+{
+    private static Index a;
+    private static Index b;
+    private static Index c;
+    private static Set<Index> s;
+
+    /**
+     * Creates the candidate set.
+     */
+    @BeforeClass
+    public static void beforeClass()
+    {
+        List<Index> indexes = configureCatalog().schemas().get(0).indexes();
+
+        a = indexes.get(0);
+        b = indexes.get(1);
+        c = indexes.get(2);
+        s = new HashSet<Index>();
+
+        s.add(a);
+        s.add(b);
+        s.add(c);
+    }
+
+    /**
+     * Checks that the exact interactions and benefits are found and that each configuration is
+     * explained only once.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testExact() throws Exception
+    {
+        CostFunction sql = new CostFunction();
+        InteractionBank bank = new DefaultDoiFinder().degreeOfInteraction(sql, s);
+
+        assertInteractions(bank);
+        assertThat(sql.explainCount.get(), is(8));
+
+        sql = new CostFunction();
+        bank = new DefaultDoiFinder(3, 1, true).degreeOfInteraction(sql, s);
+
+        assertInteractions(bank);
+        assertThat(sql.explainCount.get(), is(8));
+    }
+
+    /**
+     * Checks that sampling finds the interactions when there are enough samples to cover every
+     * subset.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testSampled() throws Exception
+    {
+        CostFunction sql = new CostFunction();
+        InteractionBank bank = new DefaultDoiFinder(2, 64, false).degreeOfInteraction(sql, s);
+
+        assertInteractions(bank);
+        assertThat(sql.explainCount.get(), is(8));
+
+        // the empty set is always sampled
+        bank = new DefaultDoiFinder(0, 1, false).degreeOfInteraction(new CostFunction(), s);
+
+        assertThat(bank.interactionLevel(a, b), closeTo(10.0 / 50.0, 1e-9));
+        assertThat(bank.interactionLevel(a, c), is(0.0));
+    }
+
+    /**
+     * @param bank
+     *      bank obtained for the {@link CostFunction}
+     */
+    private static void assertInteractions(InteractionBank bank)
+    {
+        // the pair interacts the most when c is present: |90 - 70 - 70 + 40| / 40
+        assertThat(bank.interactionLevel(a, b), closeTo(10.0 / 40.0, 1e-9));
+        assertThat(bank.interactionLevel(a, c), is(0.0));
+        assertThat(bank.interactionLevel(b, c), is(0.0));
+        assertThat(bank.bestBenefit(a), is(30.0));
+        assertThat(bank.bestBenefit(b), is(30.0));
+        assertThat(bank.bestBenefit(c), is(10.0));
+    }
+
+    /**
+     * A statement whose cost is 100, minus 20 for each of a and b, minus 10 for c and minus 10
+     * more when a and b are both present.
+     */
+    private static class CostFunction implements PreparedSQLStatement
+    {
+        private final AtomicInteger explainCount = new AtomicInteger();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ExplainedSQLStatement explain(Set<Index> conf) throws SQLException
+        {
+            double cost = 100;
+
+            if (conf.contains(a))
+                cost -= 20;
+            if (conf.contains(b))
+                cost -= 20;
+            if (conf.contains(c))
+                cost -= 10;
+            if (conf.contains(a) && conf.contains(b))
+                cost -= 10;
+
+            ExplainedSQLStatement explained = mock(ExplainedSQLStatement.class);
+
+            when(explained.getSelectCost()).thenReturn(cost);
+
+            explainCount.incrementAndGet();
+
+            return explained;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Optimizer getOptimizer()
+        {
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public SQLStatement getSQLStatement()
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package edu.ucsc.dbtune.advisor.interactions;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import edu.ucsc.dbtune.ibg.IndexBenefitGraph;
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Index;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+import static edu.ucsc.dbtune.DBTuneInstances.configureIndexBenefitGraph;
+import static edu.ucsc.dbtune.DBTuneInstances.configurePowerSet;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for IBGAnalyzer.
+ *
+ * @author Ivo Jimenez
+ */
+public class IBGAnalyzerTest
+{
+    /**
+     * Checks that the parallel analysis finds the same interactions and benefits as the serial one.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testParallelMatchesSerial() throws Exception
+    {
+        Catalog cat = configureCatalog();
+
+        IndexBenefitGraph sample = configureIndexBenefitGraph(configurePowerSet(cat));
+
+        assertThat(
+            IBGAnalyzer.analyze(sample).toString(),
+            is(IBGAnalyzer.analyzeSerially(sample).toString()));
+
+        IndexBenefitGraph lattice = lattice(cat.schemas().get(0).indexes().subList(0, 7));
+        InteractionBank parallel = IBGAnalyzer.analyze(lattice);
+
+        assertThat(parallel.interactingPairCount(), is(greaterThan(0)));
+        assertThat(parallel.toString(), is(IBGAnalyzer.analyzeSerially(lattice).toString()));
+    }
+
+    /**
+     * Creates an IBG where every index of a node's configuration is used, i.e. a graph with a node
+     * for every subset of the given indexes, with random costs.
+     *
+     * @param indexes
+     *      indexes in the configuration of the root
+     * @return
+     *      the graph
+     */
+    private static IndexBenefitGraph lattice(List<Index> indexes)
+    {
+        int n = indexes.size();
+        IndexBenefitGraph.Node[] nodes = new IndexBenefitGraph.Node[1 << n];
+        Random random = new Random(37);
+
+        for (int mask = 0; mask < nodes.length; mask++) {
+            Set<Index> conf = new HashSet<Index>();
+
+            for (int i = 0; i < n; i++)
+                if ((mask & 1 << i) != 0)
+                    conf.add(indexes.get(i));
+
+            nodes[mask] = new IndexBenefitGraph.Node(conf, nodes.length - 1 - mask);
+        }
+
+        for (int mask = 0; mask < nodes.length; mask++) {
+            for (int i = 0; i < n; i++)
+                if ((mask & 1 << i) != 0)
+                    nodes[mask].addChild(nodes[mask & ~(1 << i)], indexes.get(i));
+
+            nodes[mask].setCost(100 + random.nextInt(100) - 10 * Integer.bitCount(mask));
+        }
+
+        return new IndexBenefitGraph(nodes[nodes.length - 1], nodes[0].cost());
+    }
+}
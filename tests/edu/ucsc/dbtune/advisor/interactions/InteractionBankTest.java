@@ -0,0 +1,124 @@
+package edu.ucsc.dbtune.advisor.interactions;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.ucsc.dbtune.metadata.Index;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for InteractionBank.
+ *
+ * @author Ivo Jimenez
+ */
+public class InteractionBankTest
+{
+    /**
+     * Checks that a bank over a candidate set with sparse ids stores only the interacting pairs
+     * and partitions the set accordingly.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testSparseIds() throws Exception
+    {
+        List<Index> all = configureCatalog().schemas().get(0).indexes();
+        Index a = all.get(0);
+        Index b = all.get(7);
+        Index c = all.get(21);
+        Index d = all.get(all.size() - 1);
+        Set<Index> candidates = new HashSet<Index>();
+
+        candidates.add(a);
+        candidates.add(b);
+        candidates.add(c);
+        candidates.add(d);
+
+        InteractionBank bank = new InteractionBank(candidates);
+
+        bank.assignInteraction(d, a, 0.5);
+        bank.assignInteraction(a, d, 0.2);
+        bank.assignInteraction(b, c, 0.0);
+        bank.assignInteraction(c, b, 0.05);
+        bank.assignBenefit(c, 10);
+        bank.assignBenefit(c, 5);
+
+        assertThat(bank.interactingPairCount(), is(2));
+        assertThat(bank.interactionLevel(a, d), is(0.5));
+        assertThat(bank.interactionLevel(d, a), is(0.5));
+        assertThat(bank.interactionLevel(b, c), is(0.05));
+        assertThat(bank.interactionLevel(a, b), is(0.0));
+        assertThat(bank.bestBenefit(c), is(10.0));
+        assertThat(bank.bestBenefit(d), is(0.0));
+
+        Set<Set<Index>> partitioning = bank.stablePartitioning(0.1);
+
+        assertThat(partitioning.size(), is(3));
+
+        for (Set<Index> subset : partitioning)
+            if (subset.contains(a))
+                assertThat(subset.contains(d) && subset.size() == 2, is(true));
+            else
+                assertThat(subset.size(), is(1));
+
+        assertThat(bank.stablePartitioning(0.01).size(), is(2));
+    }
+
+    /**
+     * Checks that the partitioning is obtained again only when the set of pairs above the
+     * threshold changes.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testPartitioningCache() throws Exception
+    {
+        List<Index> all = configureCatalog().schemas().get(0).indexes();
+        Set<Index> candidates = new HashSet<Index>(all.subList(0, 4));
+        InteractionBank bank = new InteractionBank(candidates);
+
+        bank.assignInteraction(all.get(0), all.get(1), 0.5);
+
+        StablePartitioning first = bank.stablePartitioning(0.1);
+
+        bank.assignInteraction(all.get(0), all.get(1), 0.7);
+        bank.assignInteraction(all.get(2), all.get(3), 0.05);
+
+        assertThat(bank.stablePartitioning(0.2), is(sameInstance(first)));
+        assertThat(first.size(), is(3));
+
+        bank.assignInteraction(all.get(2), all.get(3), 0.3);
+
+        assertThat(bank.stablePartitioning(0.2).size(), is(2));
+    }
+
+    /**
+     * Checks that indexes outside of the candidate set have no benefit nor interactions and that
+     * they can't be assigned any.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownIndex()
+    {
+        List<Index> all = configureCatalog().schemas().get(0).indexes();
+        Set<Index> candidates = new HashSet<Index>();
+
+        candidates.add(all.get(0));
+
+        InteractionBank bank = new InteractionBank(candidates);
+
+        assertThat(bank.bestBenefit(all.get(1)), is(0.0));
+        assertThat(bank.interactionLevel(all.get(0), all.get(1)), is(0.0));
+
+        bank.assignBenefit(all.get(1), 1.0);
+    }
+}
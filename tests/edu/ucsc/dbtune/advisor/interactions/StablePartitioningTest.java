@@ -0,0 +1,61 @@
+package edu.ucsc.dbtune.advisor.interactions;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.ucsc.dbtune.metadata.Index;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for StablePartitioning.
+ *
+ * @author Ivo Jimenez
+ */
+public class StablePartitioningTest
+{
+    /**
+     * Checks that partitionings with the same blocks are the same object, regardless of the order
+     * of the blocks and of their elements, and that they behave as sets of sets.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testInterning() throws Exception
+    {
+        List<Index> all = configureCatalog().schemas().get(0).indexes();
+        Index a = all.get(0);
+        Index b = all.get(1);
+        Index c = all.get(2);
+
+        StablePartitioning p1 = StablePartitioning.of(new Index[][] {{a, b}, {c}});
+        StablePartitioning p2 = StablePartitioning.of(new Index[][] {{c}, {}, {b, a}});
+        StablePartitioning p3 = StablePartitioning.of(new Index[][] {{a}, {b, c}});
+
+        assertThat(p2, is(sameInstance(p1)));
+        assertThat(p3, is(not(p1)));
+        assertThat(p1.size(), is(2));
+
+        Set<Set<Index>> expected = new HashSet<Set<Index>>();
+
+        expected.add(new HashSet<Index>(Arrays.asList(a, b)));
+        expected.add(new HashSet<Index>(Arrays.asList(c)));
+
+        assertThat(p1.equals(expected), is(true));
+        assertThat(expected.equals(p1), is(true));
+        assertThat(p1.hashCode(), is(expected.hashCode()));
+        assertThat(StablePartitioning.of(expected), is(sameInstance(p1)));
+        assertThat(
+            StablePartitioning.of(new Index[0][]), is(sameInstance(StablePartitioning.EMPTY)));
+    }
+}
@@ -0,0 +1,90 @@
+package edu.ucsc.dbtune.advisor.wfit;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for IndexStatistics.
+ *
+ * @author Ivo Jimenez
+ */
+public class IndexStatisticsTest
+{
+    private static final int SIZE = 5;
+
+    /**
+     * Checks that the max rate of a window is the maximum over the suffixes of the last {@code
+     * SIZE} measurements, before and after the window wraps around, and that measurements of other
+     * windows don't interfere.
+     */
+    @Test
+    public void testMaxRate()
+    {
+        IndexStatistics.Windows windows = new IndexStatistics.Windows(SIZE);
+        Random random = new Random(5);
+        double[] meas = new double[40];
+        double[] times = new double[40];
+        double time = 0;
+
+        int w = windows.create();
+
+        for (int n = 0; n < meas.length; n++) {
+            // interleave another window so that the store has to grow
+            windows.put(windows.create(), 1000, time);
+
+            meas[n] = random.nextInt(50) - 10;
+            times[n] = time;
+            windows.put(w, meas[n], time);
+
+            time += 1 + random.nextInt(20);
+
+            double expected = expectedMaxRate(meas, times, n, time);
+
+            assertThat(windows.maxRate(w, time), closeTo(expected, 1e-9));
+
+            // cached value
+            assertThat(windows.maxRate(w, time), closeTo(expected, 1e-9));
+        }
+    }
+
+    /**
+     * Checks that a window without measurements has no rate.
+     */
+    @Test
+    public void testEmpty()
+    {
+        IndexStatistics.Windows windows = new IndexStatistics.Windows(SIZE);
+
+        assertThat(windows.maxRate(windows.create(), 10), is(0.0));
+    }
+
+    /**
+     * @param meas
+     *      measurements
+     * @param times
+     *      timestamps of the measurements
+     * @param last
+     *      position of the last measurement
+     * @param time
+     *      current time
+     * @return
+     *      maximum rate over the suffixes of the window that ends at {@code last}
+     */
+    private static double expectedMaxRate(double[] meas, double[] times, int last, double time)
+    {
+        double sum = 0;
+        double max = Double.NEGATIVE_INFINITY;
+
+        for (int n = last; n >= 0 && n > last - SIZE; n--) {
+            sum += meas[n];
+            max = Math.max(max, sum / (time - times[n]));
+        }
+
+        return max;
+    }
+}
@@ -0,0 +1,122 @@
+package edu.ucsc.dbtune.advisor.wfit;
+
+import java.util.List;
+import java.util.Random;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Index;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for InteractionSelector.
+ *
+ * @author Ivo Jimenez
+ */
+public class InteractionSelectorTest
+{
+    private static Index[] indexes;
+    private static int minId;
+
+    /**
+     * Setup for the test.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @BeforeClass
+    public static void beforeClass() throws Exception
+    {
+        Catalog cat = configureCatalog();
+        List<Index> all = cat.schemas().get(0).indexes();
+
+        indexes = all.subList(0, 4).toArray(new Index[0]);
+        minId = Integer.MAX_VALUE;
+
+        for (Index i : indexes)
+            minId = Math.min(minId, i.getId());
+    }
+
+    /**
+     * Checks that indexes that interact end up in the same subset, and those that don't in
+     * separate ones.
+     */
+    @Test
+    public void testInteractingPairsAreMerged()
+    {
+        StaticIndexSet hotSet = new StaticIndexSet(indexes);
+        IndexPartitions singletons = new IndexPartitions(hotSet, minId);
+        IndexPartitions expected = new IndexPartitions(hotSet, minId);
+
+        expected.merge(indexes[0], indexes[1]);
+        expected.merge(indexes[2], indexes[3]);
+
+        IndexPartitions chosen =
+            InteractionSelector.choosePartitions(
+                    hotSet, singletons, new PairsDoi(), 100, 10, minId, new Random(3));
+
+        assertThat(chosen.equals(expected), is(true));
+
+        // the initial guess is kept when the attempts aren't better
+        IndexPartitions again =
+            InteractionSelector.choosePartitions(
+                    hotSet, chosen, new PairsDoi(), 100, 10, minId, new Random(4));
+
+        assertThat(again.equals(expected), is(true));
+    }
+
+    /**
+     * Checks that nothing is merged when merging is disabled.
+     */
+    @Test
+    public void testNoStates()
+    {
+        StaticIndexSet hotSet = new StaticIndexSet(indexes);
+        IndexPartitions singletons = new IndexPartitions(hotSet, minId);
+
+        IndexPartitions chosen =
+            InteractionSelector.choosePartitions(
+                    hotSet, singletons, new PairsDoi(), 0, 10, minId, new Random(3));
+
+        assertThat(chosen.equals(singletons), is(true));
+    }
+
+    /**
+     * {a,b} and {c,d} interact.
+     */
+    private static class PairsDoi implements DoiFunction
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public double doi(Index a, Index b)
+        {
+            int pa = position(a);
+            int pb = position(b);
+
+            return pa / 2 == pb / 2 ? 1.0 : 0.0;
+        }
+
+        /**
+         * @param index
+         *      an index
+         * @return
+         *      position of the index in the array of indexes
+         */
+        private static int position(Index index)
+        {
+            for (int i = 0; i < indexes.length; i++)
+                if (indexes[i] == index)
+                    return i;
+
+            throw new RuntimeException("Index " + index + " not found");
+        }
+    }
+}
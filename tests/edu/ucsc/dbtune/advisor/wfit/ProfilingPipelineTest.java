@@ -0,0 +1,114 @@
+package edu.ucsc.dbtune.advisor.wfit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import edu.ucsc.dbtune.DatabaseSystem;
+
+import edu.ucsc.dbtune.advisor.interactions.DegreeOfInteractionFinder;
+
+import edu.ucsc.dbtune.advisor.wfit.ProfilingPipeline.Profile;
+
+import edu.ucsc.dbtune.metadata.Index;
+
+import edu.ucsc.dbtune.optimizer.Optimizer;
+import edu.ucsc.dbtune.optimizer.PreparedSQLStatement;
+
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.junit.Test;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test for ProfilingPipeline.
+ *
+ * @author Ivo Jimenez
+ */
+public class ProfilingPipelineTest
+{
+    /**
+     * Checks that profiles are obtained for the statement they were submitted for and that a
+     * system is never used by two workers at the same time.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testSubmit() throws Exception
+    {
+        AtomicBoolean overlapped = new AtomicBoolean(false);
+        List<DatabaseSystem> systems =
+            Arrays.asList(newSystem(overlapped), newSystem(overlapped));
+        ProfilingPipeline pipeline =
+            new ProfilingPipeline(systems, mock(DegreeOfInteractionFinder.class));
+        List<SQLStatement> statements = new ArrayList<SQLStatement>();
+        List<Future<Profile>> futures = new ArrayList<Future<Profile>>();
+        Set<Index> candidates = new HashSet<Index>();
+
+        for (int i = 0; i < 20; i++) {
+            statements.add(new SQLStatement("SELECT " + i));
+            futures.add(pipeline.submit(statements.get(i), candidates));
+        }
+
+        for (int i = 0; i < 20; i++) {
+            Profile profile = ProfilingPipeline.get(futures.get(i));
+
+            assertThat(profile.getStatement(), is(sameInstance(statements.get(i))));
+            assertThat(profile.getCandidates(), is(sameInstance(candidates)));
+            assertThat(systems.contains(profile.getSystem()), is(true));
+        }
+
+        pipeline.shutdown();
+
+        assertThat(overlapped.get(), is(false));
+    }
+
+    /**
+     * @param overlapped
+     *      set to {@code true} if the optimizer of the system is invoked concurrently
+     * @return
+     *      a system whose optimizer checks that it isn't being used concurrently
+     * @throws Exception
+     *      if the mock can't be created
+     */
+    private static DatabaseSystem newSystem(final AtomicBoolean overlapped) throws Exception
+    {
+        final AtomicBoolean inUse = new AtomicBoolean(false);
+        final PreparedSQLStatement pStmt = mock(PreparedSQLStatement.class);
+        DatabaseSystem db = mock(DatabaseSystem.class);
+        Optimizer opt = mock(Optimizer.class);
+
+        when(db.getOptimizer()).thenReturn(opt);
+        when(opt.prepareExplain(any(SQLStatement.class))).thenAnswer(
+            new Answer<PreparedSQLStatement>() {
+                @Override
+                public PreparedSQLStatement answer(InvocationOnMock invocation) throws Exception
+                {
+                    if (!inUse.compareAndSet(false, true))
+                        overlapped.set(true);
+
+                    Thread.sleep(2);
+                    inUse.set(false);
+
+                    return pStmt;
+                }
+            });
+
+        return db;
+    }
+}
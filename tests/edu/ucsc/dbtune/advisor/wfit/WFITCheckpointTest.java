@@ -0,0 +1,233 @@
+package edu.ucsc.dbtune.advisor.wfit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.OutputStream;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.google.common.io.ByteStreams;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Column;
+import edu.ucsc.dbtune.metadata.Index;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalogWithoutIndexes;
+import static edu.ucsc.dbtune.util.LongIntHashMap.pack;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for WFITCheckpoint.
+ *
+ * @author Ivo Jimenez
+ */
+public class WFITCheckpointTest
+{
+    private static final int WINDOW_SIZE = 3;
+
+    /**
+     * Checks that the indexes, statistics and work function read from a checkpoint are the same as
+     * the ones that were written and that a WFA restored from it behaves as the original one.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testWriteRead() throws Exception
+    {
+        Catalog cat = configureCatalog();
+        List<Index> all = cat.schemas().get(0).indexes();
+        Index[] indexes = all.subList(0, 4).toArray(new Index[0]);
+        int minId = indexes[0].getId();
+
+        for (int i = 0; i < indexes.length; i++)
+            indexes[i].setCreationCost(10 * (i + 1));
+
+        IndexPartitions parts = new IndexPartitions(new StaticIndexSet(indexes), minId);
+        parts.merge(indexes[0], indexes[1]);
+        parts.merge(indexes[2], indexes[3]);
+
+        WorkFunctionAlgorithm wfa = new WorkFunctionAlgorithm(parts, 16, 4, minId);
+        Random random = new Random(34);
+
+        for (int q = 0; q < 20; q++)
+            wfa.newTask(newQuery(random.nextLong()));
+
+        IndexStatistics stats = new IndexStatistics(WINDOW_SIZE, minId);
+        int bw = stats.windows.create();
+        int dw = stats.windows.create();
+
+        stats.benefitWindows.put(0, bw);
+        stats.doiWindows.put(pack(1, 3), dw);
+
+        for (int t = 0; t < 5; t++) {
+            stats.windows.put(bw, 10 + t, t * 10);
+            stats.windows.put(dw, 5 - t, t * 10);
+        }
+
+        stats.currentTimeStamp = 60;
+
+        int[][] subsets = new int[parts.subsetCount()][];
+
+        for (int s = 0; s < subsets.length; s++)
+            subsets[s] = parts.get(s).indexIds().clone();
+
+        WFITCheckpoint checkpoint =
+            new WFITCheckpoint(
+                indexes, minId, 4, new int[] {0, 1, 2, 3}, new int[] {2}, new int[0], subsets,
+                wfa.getTotalWorkValues(), wfa.getCurrentStates(), new IndexStatistics(stats));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        checkpoint.write(bytes);
+
+        WFITCheckpoint read =
+            WFITCheckpoint.read(
+                new ByteArrayInputStream(bytes.toByteArray()), configureCatalogWithoutIndexes(),
+                WINDOW_SIZE);
+
+        Index[] pool = read.getPool();
+
+        assertThat(pool.length, is(indexes.length));
+        assertThat(read.getMaterialized()[0], is(pool[2]));
+
+        // restoring the pool takes no identifiers other than the reserved ones
+        assertThat(Index.reserveIds(0), is(read.getIdOffset() + pool.length));
+
+        for (int i = 0; i < pool.length; i++) {
+            assertThat(pool[i].getId(), is(read.getIdOffset() + i));
+            assertThat(definition(pool[i]), is(definition(indexes[i])));
+            assertThat(pool[i].getCreationCost(), is(indexes[i].getCreationCost()));
+        }
+
+        IndexStatistics readStats = read.getStatistics();
+
+        assertThat(readStats.benefit(pool[0]), is(stats.benefit(indexes[0])));
+        assertThat(readStats.doi(pool[3], pool[1]), is(stats.doi(indexes[1], indexes[3])));
+        assertThat(readStats.benefit(pool[1]), is(0.0));
+
+        IndexPartitions readParts = read.getPartitions();
+        WorkFunctionAlgorithm restored =
+            new WorkFunctionAlgorithm(
+                readParts, read.getWorkFunction(readParts), read.getStates(readParts), false, 0,
+                null, 16, 4, read.getIdOffset());
+
+        for (int q = 0; q < 10; q++) {
+            long seed = random.nextLong();
+            wfa.newTask(newQuery(seed));
+            restored.newTask(newQuery(seed));
+
+            assertThat(restored.getRecommendation().size(), is(wfa.getRecommendation().size()));
+
+            for (Index index : wfa.getRecommendation())
+                assertThat(
+                    restored.getRecommendation().contains(pool[index.getId() - minId]), is(true));
+        }
+
+        assertThat(restored.getTotalWorkValues().values, is(wfa.getTotalWorkValues().values));
+    }
+
+    /**
+     * Checks that reading a truncated checkpoint leaves the catalog and the identifiers as they 
+     * were, so that the complete checkpoint can be read afterwards.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testReadTruncated() throws Exception
+    {
+        Index[] indexes = configureCatalog().schemas().get(0).indexes().subList(0, 2)
+            .toArray(new Index[0]);
+        int minId = indexes[0].getId();
+        IndexPartitions parts = new IndexPartitions(new StaticIndexSet(indexes), minId);
+        WorkFunctionAlgorithm wfa = new WorkFunctionAlgorithm(parts, 16, 4, minId);
+        int[][] subsets = new int[parts.subsetCount()][];
+
+        for (int s = 0; s < subsets.length; s++)
+            subsets[s] = parts.get(s).indexIds().clone();
+
+        WFITCheckpoint checkpoint =
+            new WFITCheckpoint(
+                indexes, minId, 4, new int[] {0, 1}, new int[0], new int[0], subsets,
+                wfa.getTotalWorkValues(), wfa.getCurrentStates(),
+                new IndexStatistics(WINDOW_SIZE, minId));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        checkpoint.write(bytes);
+
+        // the content is compressed, so it's truncated before compressing it again
+        byte[] content =
+            ByteStreams.toByteArray(
+                new InflaterInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        ByteArrayOutputStream truncated = new ByteArrayOutputStream();
+        OutputStream out = new DeflaterOutputStream(truncated);
+
+        out.write(Arrays.copyOf(content, content.length - 4));
+        out.close();
+
+        Catalog catalog = configureCatalogWithoutIndexes();
+        int nextId = Index.reserveIds(0);
+
+        try {
+            WFITCheckpoint.read(
+                new ByteArrayInputStream(truncated.toByteArray()), catalog, WINDOW_SIZE);
+            fail("truncated checkpoint read");
+        } catch (EOFException e) {
+            assertThat(catalog.schemas().get(0).indexes().isEmpty(), is(true));
+            assertThat(Index.reserveIds(0), is(nextId));
+        }
+
+        WFITCheckpoint read =
+            WFITCheckpoint.read(
+                new ByteArrayInputStream(bytes.toByteArray()), catalog, WINDOW_SIZE);
+
+        assertThat(read.getIdOffset(), is(nextId));
+        assertThat(catalog.schemas().get(0).indexes().size(), is(indexes.length));
+    }
+
+    /**
+     * @param index
+     *      an index
+     * @return
+     *      the fully qualified names of the columns of the index along with their ordering
+     */
+    private static String definition(Index index)
+    {
+        StringBuilder str = new StringBuilder();
+
+        for (Column col : index)
+            str.append(col.getFullyQualifiedName()).append(index.isAscending(col) ? "(A) " : "(D) ");
+
+        return str.toString();
+    }
+
+    /**
+     * @param seed
+     *      seed of the cost function
+     * @return
+     *      a query whose cost is a pseudo-random function of the configuration
+     */
+    private static ProfiledQuery newQuery(final long seed)
+    {
+        return new ProfiledQuery() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public double cost(BitSet config)
+            {
+                return 10 + new Random(seed ^ config.hashCode()).nextInt(100);
+            }
+        };
+    }
+}
@@ -0,0 +1,126 @@
+package edu.ucsc.dbtune.advisor.wfit;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Iterables;
+
+import edu.ucsc.dbtune.DatabaseSystem;
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.optimizer.DB2Optimizer;
+import edu.ucsc.dbtune.optimizer.IBGOptimizer;
+import edu.ucsc.dbtune.optimizer.MySQLOptimizer;
+import edu.ucsc.dbtune.optimizer.PGOptimizer;
+import edu.ucsc.dbtune.util.Environment;
+import edu.ucsc.dbtune.workload.SQLStatement;
+import edu.ucsc.dbtune.workload.Workload;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DatabaseSystem.newDatabaseSystem;
+import static edu.ucsc.dbtune.util.TestUtils.loadWorkloads;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import static org.junit.Assert.assertThat;
+
+/**
+ * Functional test for WFITHost.
+ *
+ * @author Ivo Jimenez
+ */
+public class WFITHostFunctionalTest
+{
+    private static DatabaseSystem db;
+    private static Environment env;
+    private static boolean isOptimizerOK;
+
+    /**
+     * @throws Exception
+     *      if the workload can't be loaded
+     */
+    @BeforeClass
+    public static void beforeClass() throws Exception
+    {
+        env = Environment.getInstance();
+        db = newDatabaseSystem(env);
+        loadWorkloads(db.getConnection());
+
+        if (db.getOptimizer() instanceof IBGOptimizer &&
+                (db.getOptimizer().getDelegate() instanceof DB2Optimizer ||
+                 db.getOptimizer().getDelegate() instanceof MySQLOptimizer ||
+                 db.getOptimizer().getDelegate() instanceof PGOptimizer))
+            isOptimizerOK = true;
+        else
+            isOptimizerOK = false;
+    }
+
+    /**
+     * @throws Exception
+     *      if the connection can't be closed
+     */
+    @AfterClass
+    public static void afterClass() throws Exception
+    {
+        db.getConnection().close();
+    }
+
+    /**
+     * Runs two WFIT tenants that connect to the same database on two threads of the host, so that
+     * they generate candidates at the same time (on DB2 the host processes their statements one 
+     * at a time). Each tenant should recommend the index for its own workload, and the candidates 
+     * of a tenant shouldn't be created on the catalog of the other.
+     *
+     * @throws Exception
+     *      if fails
+     */
+    @Test
+    public void testConcurrentTenantsOnSameDatabase() throws Exception
+    {
+        if (!isOptimizerOK)
+            return;
+
+        db.getCatalog().dropIndexes();
+
+        WFITHost host = new WFITHost(2);
+        Workload wa = new Workload("a");
+        Workload wb = new Workload("b");
+        WFIT wfitA = host.addTenant(wa, env);
+        WFIT wfitB = host.addTenant(wb, env);
+
+        for (int i = 0; i < 10; i++) {
+            host.submit(new SQLStatement("SELECT col1 FROM one_table.tbl WHERE col1 = 2", wa, i));
+            host.submit(new SQLStatement("SELECT col2 FROM one_table.tbl WHERE col2 = 2", wb, i));
+        }
+
+        host.shutdown();
+
+        assertThat(host.awaitTermination(5, TimeUnit.MINUTES), is(true));
+
+        for (WFITHost.Tenant tenant : host.getTenants()) {
+            assertThat(tenant.getLastError(), is(nullValue()));
+            assertThat(tenant.getFailureCount(), is(0L));
+            assertThat(tenant.getProcessedCount(), is(10L));
+        }
+
+        assertThat(wfitA.getRecommendation().size(), is(1));
+        assertThat(wfitB.getRecommendation().size(), is(1));
+
+        Index a = Iterables.get(wfitA.getRecommendation(), 0);
+        Index b = Iterables.get(wfitB.getRecommendation(), 0);
+        Catalog catalogA = a.getSchema().getCatalog();
+        Catalog catalogB = b.getSchema().getCatalog();
+
+        assertThat(a.at(0).getName(), is("col1"));
+        assertThat(b.at(0).getName(), is("col2"));
+        assertThat(catalogA, is(not(sameInstance(catalogB))));
+        assertThat(catalogA, is(not(sameInstance(db.getCatalog()))));
+        assertThat(catalogB.findIndex(a.getName()), is(nullValue()));
+        assertThat(catalogA.findIndex(b.getName()), is(nullValue()));
+    }
+}
@@ -0,0 +1,242 @@
+package edu.ucsc.dbtune.advisor.wfit;
+
+import java.io.File;
+
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.eventbus.EventBus;
+
+import edu.ucsc.dbtune.advisor.RecommendationStatistics;
+import edu.ucsc.dbtune.advisor.WorkloadObserverAdvisor;
+
+import edu.ucsc.dbtune.metadata.Index;
+
+import edu.ucsc.dbtune.util.Environment;
+import edu.ucsc.dbtune.util.EventBusFactory;
+
+import edu.ucsc.dbtune.workload.SQLStatement;
+import edu.ucsc.dbtune.workload.Workload;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureMySQL;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.JDBC_URL;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.NONE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_CHECKPOINT_FILE;
+import static edu.ucsc.dbtune.util.EnvironmentProperties.WFIT_HISTORY_SPILL_FILE;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for WFITHost.
+ *
+ * @author Ivo Jimenez
+ */
+public class WFITHostTest
+{
+    /**
+     * Checks that the files of a tenant are the ones of the environment suffixed with the name of 
+     * its workload.
+     */
+    @Test
+    public void testTenantFile()
+    {
+        File file = new File("/tmp/wfit.ckp");
+
+        assertThat(
+            WFITHost.getTenantFile(file, new Workload("tpch")), is(new File("/tmp/wfit.ckp.tpch")));
+        assertThat(
+            WFITHost.getTenantFile(file, new Workload("a/b c")),
+            is(new File("/tmp/wfit.ckp.a_b_c")));
+        assertThat(WFITHost.getTenantFile(null, new Workload("tpch")), is(nullValue()));
+    }
+
+    /**
+     * Checks that a tenant that can't be created doesn't keep its files, so that the workload can 
+     * be hosted later.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testFailedTenantReleasesFiles() throws Exception
+    {
+        WFITHost host = new WFITHost(1);
+        Environment env = configureMySQL();
+
+        env.setProperty(JDBC_URL, "jdbc:inexistent://localhost/none");
+        env.setProperty(WFIT_CHECKPOINT_FILE, "/tmp/wfit.ckp");
+        env.setProperty(WFIT_HISTORY_SPILL_FILE, NONE);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                host.addTenant(new Workload("a"), env);
+                fail("tenant created without a database");
+            } catch (SQLException e) {
+                assertThat(host.getTenants().isEmpty(), is(true));
+            }
+        }
+
+        host.shutdown();
+    }
+
+    /**
+     * Checks that statements are routed to the tenant of their workload, that each tenant
+     * processes its statements in order and that tenants with backlogs take turns.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testRoutingAndFairness() throws Exception
+    {
+        WFITHost host = new WFITHost(1);
+        List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch blocker = new CountDownLatch(1);
+        Workload wa = new Workload("a");
+        Workload wb = new Workload("b");
+
+        host.addTenant(new RecordingAdvisor(wa, host.getEventBus(), processed, blocker));
+        host.addTenant(new RecordingAdvisor(wb, host.getEventBus(), processed, null));
+
+        // a1 blocks the only worker until the rest of the statements are queued
+        host.submit(new SQLStatement("a1", wa, 0));
+        host.submit(new SQLStatement("a2", wa, 1));
+        host.submit(new SQLStatement("a3", wa, 2));
+        EventBusFactory.getEventBusInstance().post(new SQLStatement("b1", wb, 0));
+        EventBusFactory.getEventBusInstance().post(new SQLStatement("b2", wb, 1));
+
+        assertThat(host.submit(new SQLStatement("c1", new Workload("c"), 0)), is(false));
+
+        blocker.countDown();
+        host.shutdown();
+        host.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertThat(processed.toString(), is("[a1, b1, a2, b2, a3]"));
+        assertThat(host.getTenant(wa).getProcessedCount(), is(3L));
+        assertThat(host.getTenant(wa).getPendingCount(), is(0));
+        assertThat(host.getTenant(wb).getProcessedCount(), is(2L));
+        assertThat(host.getTenant(wb).getFailureCount(), is(0L));
+    }
+
+    /**
+     * Checks that an advisor registered with the API's bus can't be hosted.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdvisorOnSharedBus()
+    {
+        WFITHost host = new WFITHost(1);
+
+        try {
+            host.addTenant(
+                new RecordingAdvisor(
+                    new Workload("a"), EventBusFactory.getEventBusInstance(),
+                    new ArrayList<String>(), null));
+        } finally {
+            host.shutdown();
+        }
+    }
+
+    /**
+     * Records the statements it processes.
+     */
+    private static class RecordingAdvisor extends WorkloadObserverAdvisor
+    {
+        private final List<String> processed;
+        private CountDownLatch blocker;
+
+        /**
+         * @param workload
+         *      observed workload
+         * @param eventBus
+         *      bus of the advisor
+         * @param processed
+         *      list where the processed statements are recorded
+         * @param blocker
+         *      latch that the advisor waits for before processing its first statement
+         */
+        RecordingAdvisor(
+                Workload workload,
+                EventBus eventBus,
+                List<String> processed,
+                CountDownLatch blocker)
+        {
+            super(workload, false, eventBus);
+
+            this.processed = processed;
+            this.blocker = blocker;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void processNewStatement(SQLStatement sql) throws SQLException
+        {
+            if (blocker != null) {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                blocker = null;
+            }
+
+            processed.add(sql.getSQL());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Set<Index> getRecommendation()
+        {
+            return Collections.emptySet();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public RecommendationStatistics getRecommendationStatistics()
+        {
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public RecommendationStatistics getOptimalRecommendationStatistics()
+        {
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isCandidateSetFixed()
+        {
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void vote(Index index, boolean up)
+        {
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package edu.ucsc.dbtune.advisor.wfit;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import edu.ucsc.dbtune.metadata.Index;
+
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test for WFITRecommendationStatistics.
+ *
+ * @author Ivo Jimenez
+ */
+public class WFITRecommendationStatisticsTest
+{
+    /**
+     * Checks that pending entries are computed only when the statistics are read and that they
+     * end up in the same order and with the same totals as entries added eagerly.
+     */
+    @Test
+    public void testPendingEntries()
+    {
+        WFITRecommendationStatistics eager = new WFITRecommendationStatistics("eager");
+        WFITRecommendationStatistics lazy = new WFITRecommendationStatistics("lazy");
+        int[] computed = new int[1];
+
+        for (int i = 0; i < 10; i++) {
+            SQLStatement sql = new SQLStatement("SELECT " + i);
+
+            eager.addNewEntry(
+                sql, i, new HashSet<Index>(), new HashSet<Set<Index>>(),
+                new HashMap<Index, Boolean>(), new HashSet<Index>(), new HashMap<Index, Double>(),
+                new HashMap<Set<Index>, Double>());
+            lazy.addPendingEntry(new CountingEntry(sql, i, computed));
+        }
+
+        assertThat(computed[0], is(0));
+        assertThat(lazy.size(), is(10));
+        assertThat(computed[0], is(10));
+        assertThat(lazy.getTotalWorkSum(), is(eager.getTotalWorkSum()));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(lazy.get(i).getSql(), is(eager.get(i).getSql()));
+            assertThat(lazy.get(i).getTotalWork(), is(eager.get(i).getTotalWork()));
+        }
+    }
+
+    /**
+     * Checks that only the most recent entries are retained and that the pending entries that are 
+     * dropped are computed before, so that they're accounted in the total work.
+     */
+    @Test
+    public void testRetention()
+    {
+        WFITRecommendationStatistics stats = new WFITRecommendationStatistics("lazy");
+        int[] computed = new int[1];
+
+        stats.setRetention(5);
+
+        for (int i = 0; i < 100; i++)
+            stats.addPendingEntry(new CountingEntry(new SQLStatement("SELECT " + i), 1, computed));
+
+        assertThat(stats.size(), lessThan(10));
+        assertThat(computed[0], is(100));
+        assertThat(stats.getTotalWorkSum(), is(100.0));
+        assertThat(stats.getLastEntry().getSql().getSQL(), is("SELECT 99"));
+    }
+
+    /**
+     * Checks that pending entries give the same totals and transitions as entries added eagerly 
+     * when both statistics drop entries beyond the retention.
+     */
+    @Test
+    public void testRetentionOfPendingEntries()
+    {
+        WFITRecommendationStatistics eager = new WFITRecommendationStatistics("eager");
+        WFITRecommendationStatistics lazy = new WFITRecommendationStatistics("lazy");
+        Index index = mock(Index.class);
+        int[] computed = new int[1];
+
+        when(index.getCreationCost()).thenReturn(3.0);
+
+        eager.setRetention(5);
+        lazy.setRetention(5);
+
+        for (int i = 0; i < 23; i++) {
+            SQLStatement sql = new SQLStatement("SELECT " + i);
+            Set<Index> recommendation = new HashSet<Index>();
+
+            if (i % 3 == 0)
+                recommendation.add(index);
+
+            eager.addNewEntry(
+                sql, i, new HashSet<Index>(), new HashSet<Set<Index>>(),
+                new HashMap<Index, Boolean>(), recommendation, new HashMap<Index, Double>(),
+                new HashMap<Set<Index>, Double>());
+            lazy.addPendingEntry(new CountingEntry(sql, i, recommendation, computed));
+        }
+
+        assertThat(lazy.size(), is(eager.size()));
+        assertThat(lazy.getTotalWorkSum(), is(eager.getTotalWorkSum()));
+
+        for (int i = 0; i < lazy.size(); i++) {
+            assertThat(lazy.get(i).getSql(), is(eager.get(i).getSql()));
+            assertThat(lazy.get(i).getTransitionCost(), is(eager.get(i).getTransitionCost()));
+            assertThat(lazy.get(i).getTotalWork(), is(eager.get(i).getTotalWork()));
+        }
+    }
+
+    /**
+     * An entry that counts how many times its cost is computed.
+     */
+    private static class CountingEntry extends WFITRecommendationStatistics.PendingEntry
+    {
+        private final double cost;
+        private final int[] computed;
+
+        /**
+         * @param sql
+         *      statement
+         * @param cost
+         *      cost of the statement
+         * @param computed
+         *      counter of computed entries
+         */
+        CountingEntry(SQLStatement sql, double cost, int[] computed)
+        {
+            this(sql, cost, new HashSet<Index>(), computed);
+        }
+
+        /**
+         * @param sql
+         *      statement
+         * @param cost
+         *      cost of the statement
+         * @param recommendation
+         *      indexes that were recommended
+         * @param computed
+         *      counter of computed entries
+         */
+        CountingEntry(SQLStatement sql, double cost, Set<Index> recommendation, int[] computed)
+        {
+            super(sql, new HashSet<Index>(), recommendation, new HashMap<Index, Boolean>());
+
+            this.cost = cost;
+            this.computed = computed;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected double getTotalCost()
+        {
+            computed[0]++;
+            return cost;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Set<Set<Index>> getPartitioning()
+        {
+            return new HashSet<Set<Index>>();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Map<Index, Double> getBenefits()
+        {
+            return new HashMap<Index, Double>();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Map<Set<Index>, Double> getWorkFunctionScores()
+        {
+            return new HashMap<Set<Index>, Double>();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package edu.ucsc.dbtune.advisor.wfit;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Index;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for WfaTrace.
+ *
+ * @author Ivo Jimenez
+ */
+public class WfaTraceTest
+{
+    private static final int QUERY_COUNT = 300;
+    private static final int HORIZON = 50;
+
+    private static Index[] indexes;
+    private static int minId;
+
+    /**
+     * Setup for the test.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @BeforeClass
+    public static void beforeClass() throws Exception
+    {
+        Catalog cat = configureCatalog();
+        List<Index> all = cat.schemas().get(0).indexes();
+
+        indexes = all.subList(0, 4).toArray(new Index[0]);
+        minId = Integer.MAX_VALUE;
+
+        for (Index i : indexes)
+            minId = Math.min(minId, i.getId());
+    }
+
+    /**
+     * Checks that a bounded trace (compressed and spilled to disk) produces the same schedule for
+     * the retained statements as an unbounded one.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testBoundedScheduleIsSameAsUnbounded() throws Exception
+    {
+        File spillFile = File.createTempFile("wfatrace", ".seg");
+        spillFile.deleteOnExit();
+
+        WorkFunctionAlgorithm unbounded = newWfa(0, null);
+        WorkFunctionAlgorithm bounded = newWfa(HORIZON, spillFile);
+        Random random = new Random(2012);
+
+        for (int q = 0; q < QUERY_COUNT; q++) {
+            ProfiledQuery qinfo = new RandomCostQuery(random.nextLong());
+            unbounded.newTask(qinfo);
+            bounded.newTask(qinfo);
+        }
+
+        WfaTrace full = unbounded.getTrace();
+        WfaTrace window = bounded.getTrace();
+
+        assertThat(full.firstEntry(), is(0));
+        assertThat(window.size(), is(QUERY_COUNT + 1));
+        assertThat(window.size() - window.firstEntry(), lessThanOrEqualTo(2 * HORIZON + 1));
+
+        IndexPartitions parts = newPartitions();
+        BitSet[] fullSchedule =
+            full.optimalSchedule(parts, QUERY_COUNT, new ProfiledQuery[QUERY_COUNT]);
+        BitSet[] windowSchedule =
+            window.optimalSchedule(parts, QUERY_COUNT, new ProfiledQuery[HORIZON]);
+
+        for (int i = 0; i < HORIZON; i++)
+            assertThat(windowSchedule[i], is(fullSchedule[QUERY_COUNT - HORIZON + i]));
+
+        window.close();
+    }
+
+    /**
+     * Checks that encoding and decoding a segment gives back the same values.
+     */
+    @Test
+    public void testEncodeDecode()
+    {
+        WorkFunctionAlgorithm wfa = newWfa(0, null);
+        Random random = new Random(7);
+
+        for (int q = 0; q < WfaTrace.SEGMENT_SIZE - 1; q++)
+            wfa.newTask(new RandomCostQuery(random.nextLong()));
+
+        WorkFunctionAlgorithm.TotalWorkValues[] values = wfa.getTrace().getTotalWorkValues();
+        WorkFunctionAlgorithm.TotalWorkValues[] decoded =
+            WfaTrace.decode(WfaTrace.encode(Arrays.asList(values)));
+
+        for (int e = 0; e < values.length; e++) {
+            assertThat(decoded[e].values, is(values[e].values));
+            assertThat(decoded[e].predecessor, is(values[e].predecessor));
+        }
+    }
+
+    /**
+     * @param horizon
+     *      history horizon
+     * @param spillFile
+     *      spill file
+     * @return
+     *      a WFA instance with two partitions of two indexes each
+     */
+    private static WorkFunctionAlgorithm newWfa(int horizon, File spillFile)
+    {
+        return new WorkFunctionAlgorithm(newPartitions(), true, horizon, spillFile, 16, 4, minId);
+    }
+
+    /**
+     * @return
+     *      {ab}{cd}
+     */
+    private static IndexPartitions newPartitions()
+    {
+        IndexPartitions parts = new IndexPartitions(new StaticIndexSet(indexes), minId);
+
+        parts.merge(indexes[0], indexes[1]);
+        parts.merge(indexes[2], indexes[3]);
+
+        return parts;
+    }
+
+    /**
+     * A query whose cost is a pseudo-random function of the configuration.
+     */
+    private static class RandomCostQuery extends ProfiledQuery
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final long seed;
+
+        /**
+         * @param seed
+         *      seed of the cost function
+         */
+        RandomCostQuery(long seed)
+        {
+            this.seed = seed;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public double cost(BitSet config)
+        {
+            return 10 + new Random(seed ^ config.hashCode()).nextInt(100);
+        }
+    }
+}
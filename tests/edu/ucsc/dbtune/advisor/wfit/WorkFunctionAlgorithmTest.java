@@ -0,0 +1,113 @@
+package edu.ucsc.dbtune.advisor.wfit;
+
+import java.util.List;
+import java.util.Random;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Index;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for WorkFunctionAlgorithm.
+ *
+ * @author Ivo Jimenez
+ */
+public class WorkFunctionAlgorithmTest
+{
+    private static Index[] indexes;
+    private static int minId;
+
+    /**
+     * Setup for the test.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @BeforeClass
+    public static void beforeClass() throws Exception
+    {
+        Catalog cat = configureCatalog();
+        List<Index> all = cat.schemas().get(0).indexes();
+
+        indexes = all.subList(0, 4).toArray(new Index[0]);
+        minId = Integer.MAX_VALUE;
+
+        for (Index i : indexes)
+            minId = Math.min(minId, i.getId());
+    }
+
+    /**
+     * Checks that subsets that aren't affected by a repartitioning keep their work function values
+     * and that the values of a merged subset are the sum of the values of the subsets that were
+     * merged (creation costs aside, since all the indexes were already hot).
+     */
+    @Test
+    public void testRepartition()
+    {
+        IndexPartitions singletons = new IndexPartitions(new StaticIndexSet(indexes), minId);
+        WorkFunctionAlgorithm wfa = new WorkFunctionAlgorithm(singletons, 16, 4, minId);
+        Random random = new Random(11);
+
+        for (int q = 0; q < 20; q++) {
+            final long seed = random.nextLong();
+            wfa.newTask(new ProfiledQuery() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public double cost(BitSet config)
+                {
+                    return 10 + new Random(seed ^ config.hashCode()).nextInt(100);
+                }
+            });
+        }
+
+        WorkFunctionAlgorithm.TotalWorkValues before =
+            new WorkFunctionAlgorithm.TotalWorkValues(wfa.wf);
+
+        IndexPartitions merged = new IndexPartitions(new StaticIndexSet(indexes), minId);
+        merged.merge(indexes[0], indexes[1]);
+        wfa.repartition(merged);
+
+        WorkFunctionAlgorithm.TotalWorkValues after = wfa.wf;
+
+        // {c} and {d} are untouched
+        for (int i = 2; i < 4; i++)
+            assertThat(
+                after.values[subsetNum(merged, indexes[i])],
+                is(before.values[subsetNum(singletons, indexes[i])]));
+
+        // {ab} is computed out of {a} and {b}
+        int ab = subsetNum(merged, indexes[0]);
+        int a = subsetNum(singletons, indexes[0]);
+        int b = subsetNum(singletons, indexes[1]);
+
+        for (int sa = 0; sa < 2; sa++)
+            for (int sb = 0; sb < 2; sb++)
+                assertThat(
+                    after.get(ab, sa | (sb << 1)), is(before.get(a, sa) + before.get(b, sb)));
+    }
+
+    /**
+     * @param parts
+     *      partitions
+     * @param index
+     *      index being looked for
+     * @return
+     *      number of the subset that contains the given index
+     */
+    private static int subsetNum(IndexPartitions parts, Index index)
+    {
+        for (int i = 0; i < parts.subsetCount(); i++)
+            if (parts.get(i).contains(index))
+                return i;
+
+        throw new RuntimeException("Index " + index + " not in partitions");
+    }
+}
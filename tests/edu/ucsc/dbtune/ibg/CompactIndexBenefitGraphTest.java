@@ -0,0 +1,102 @@
+package edu.ucsc.dbtune.ibg;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Index;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+import static edu.ucsc.dbtune.DBTuneInstances.configureIndexBenefitGraph;
+import static edu.ucsc.dbtune.DBTuneInstances.configurePowerSet;
+import static edu.ucsc.dbtune.ibg.CompactIndexBenefitGraph.NOT_FOUND;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for CompactIndexBenefitGraph.
+ *
+ * @author Ivo Jimenez
+ */
+public class CompactIndexBenefitGraphTest
+{
+    private static Catalog cat;
+    private static Map<String, Set<Index>> confs;
+    private static IndexBenefitGraph ibg;
+    private static int offset;
+
+    /**
+     * Setup for the test.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @BeforeClass
+    public static void beforeClass() throws Exception
+    {
+        cat = configureCatalog();
+        confs = configurePowerSet(cat);
+        ibg = configureIndexBenefitGraph(confs);
+        offset = Integer.MAX_VALUE;
+
+        for (Index i : cat.schemas().get(0).indexes())
+            offset = Math.min(offset, i.getId());
+    }
+
+    /**
+     * Checks that the cost of every configuration is the same as the one obtained through {@link
+     * IBGCoveringNodeFinder}.
+     */
+    @Test
+    public void testCostIsSameAsFinder()
+    {
+        IBGCoveringNodeFinder finder = new IBGCoveringNodeFinder();
+        CompactIndexBenefitGraph compact = new CompactIndexBenefitGraph(ibg, offset);
+
+        for (Set<Index> conf : confs.values())
+            assertThat(compact.cost(toBitSet(conf)), is(finder.find(ibg, conf).getCost()));
+
+        assertThat(compact.emptyCost(), is(ibg.emptyCost()));
+        assertThat(compact.size(), is(8));
+    }
+
+    /**
+     * Checks that configurations outside of the universe can't be resolved.
+     */
+    @Test
+    public void testNotContained()
+    {
+        CompactIndexBenefitGraph compact = new CompactIndexBenefitGraph(ibg, offset);
+        List<Index> indexes = cat.schemas().get(0).indexes();
+        Set<Index> superSet = new HashSet<Index>(confs.get("abcd"));
+
+        superSet.add(indexes.get(4));
+
+        assertThat(compact.cost(toBitSet(superSet)), is(NOT_FOUND));
+    }
+
+    /**
+     * Converts the given configuration.
+     *
+     * @param conf
+     *      configuration
+     * @return
+     *      bit set, where the position of an index is given by its id minus the offset
+     */
+    private static BitSet toBitSet(Set<Index> conf)
+    {
+        BitSet bs = new BitSet();
+
+        for (Index i : conf)
+            bs.set(i.getId() - offset);
+
+        return bs;
+    }
+}
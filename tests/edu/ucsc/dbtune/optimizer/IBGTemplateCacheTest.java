@@ -0,0 +1,65 @@
+package edu.ucsc.dbtune.optimizer;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.ucsc.dbtune.ibg.IndexBenefitGraph;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.workload.SQLStatement;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for IBGTemplateCache.
+ *
+ * @author Ivo Jimenez
+ */
+public class IBGTemplateCacheTest
+{
+    /**
+     * Checks that statements of the same template and candidate set share the entry, that entries
+     * are revalidated periodically and that the least recently used one is evicted.
+     */
+    @Test
+    public void testSharing()
+    {
+        List<Index> indexes = configureCatalog().schemas().get(0).indexes();
+        Set<Index> conf1 = new HashSet<Index>(indexes.subList(0, 2));
+        Set<Index> conf2 = new HashSet<Index>(indexes.subList(0, 3));
+        IndexBenefitGraph ibg = new IndexBenefitGraph(new IndexBenefitGraph.Node(conf1, 0), 10);
+        IBGTemplateCache cache = new IBGTemplateCache(2, 3);
+        SQLStatement sql1 = new SQLStatement("select a from t where b = 1");
+        SQLStatement sql2 = new SQLStatement("select a from t where b = 2");
+        SQLStatement sql3 = new SQLStatement("select a from u where b = 3");
+
+        assertThat(cache.get(sql1, conf1), is(nullValue()));
+
+        cache.put(sql1, conf1, ibg, null, 0);
+
+        assertThat(cache.get(sql2, conf1).getIndexBenefitGraph(), is(sameInstance(ibg)));
+        assertThat(cache.get(sql2, conf2), is(nullValue()));
+        assertThat(cache.get(sql2, conf1).getUniverse(), is(conf1));
+
+        // third use of the entry
+        assertThat(cache.get(sql2, conf1), is(nullValue()));
+        assertThat(cache.getRevalidationCount(), is(1L));
+        assertThat(cache.getHitCount(), is(2L));
+        assertThat(cache.getMissCount(), is(2L));
+
+        cache.put(sql2, conf1, ibg, null, 0);
+        cache.put(sql3, conf1, ibg, null, 0);
+        cache.get(sql1, conf1);
+        cache.put(sql3, conf2, ibg, null, 0);
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(sql3, conf1), is(nullValue()));
+    }
+}
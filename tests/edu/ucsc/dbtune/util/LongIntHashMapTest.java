@@ -0,0 +1,76 @@
+package edu.ucsc.dbtune.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.util.LongIntHashMap.NO_VALUE;
+import static edu.ucsc.dbtune.util.LongIntHashMap.pack;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for LongIntHashMap.
+ *
+ * @author Ivo Jimenez
+ */
+public class LongIntHashMapTest
+{
+    /**
+     * Checks that the map behaves like a {@link HashMap} for random insertions, including the ones
+     * that cause the table to be resized.
+     */
+    @Test
+    public void testAgainstJDKMap()
+    {
+        LongIntHashMap map = new LongIntHashMap();
+        Map<Long, Integer> jdkMap = new HashMap<Long, Integer>();
+        Random random = new Random(31);
+
+        for (int i = 0; i < 5000; i++) {
+            long key = pack(random.nextInt(100), random.nextInt(100));
+            int value = random.nextInt(Integer.MAX_VALUE);
+
+            map.put(key, value);
+            jdkMap.put(key, value);
+        }
+
+        assertThat(map.size(), is(jdkMap.size()));
+
+        for (Map.Entry<Long, Integer> e : jdkMap.entrySet())
+            assertThat(map.get(e.getKey()), is(e.getValue()));
+
+        assertThat(map.get(pack(100, 100)), is(NO_VALUE));
+
+        map.clear();
+
+        assertThat(map.size(), is(0));
+
+        for (long key : jdkMap.keySet())
+            assertThat(map.get(key), is(NO_VALUE));
+    }
+
+    /**
+     * Checks that packing distinguishes the order of the ints and handles negative ones.
+     */
+    @Test
+    public void testPack()
+    {
+        assertThat(pack(1, 2), is(not(pack(2, 1))));
+        assertThat(pack(0, -1), is(0xFFFFFFFFL));
+        assertThat(pack(-1, 0), is(0xFFFFFFFF00000000L));
+    }
+
+    /**
+     * Checks that the empty-slot marker is rejected as a key.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMinValueKey()
+    {
+        new LongIntHashMap().put(Long.MIN_VALUE, 0);
+    }
+}
@@ -0,0 +1,79 @@
+package edu.ucsc.dbtune.util;
+
+import edu.ucsc.dbtune.metadata.Catalog;
+import edu.ucsc.dbtune.metadata.Column;
+import edu.ucsc.dbtune.metadata.Index;
+import edu.ucsc.dbtune.metadata.Schema;
+import edu.ucsc.dbtune.metadata.Table;
+
+import org.junit.Test;
+
+import static edu.ucsc.dbtune.DBTuneInstances.configureCatalog;
+import static edu.ucsc.dbtune.util.MetadataUtils.copyOf;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for MetadataUtils.
+ *
+ * @author Ivo Jimenez
+ */
+public class MetadataUtilsTest
+{
+    /**
+     * Checks that a copy of a catalog has the same content but different objects, and that
+     * indexes created on the copy aren't added to the original.
+     *
+     * @throws Exception
+     *      if something goes wrong
+     */
+    @Test
+    public void testCopyOf() throws Exception
+    {
+        Catalog cat = configureCatalog();
+        Catalog copy = copyOf(cat);
+
+        assertThat(copy.getName(), is(cat.getName()));
+        assertThat(copy.schemas().size(), is(cat.schemas().size()));
+        assertThat(copy.indexes().size(), is(cat.indexes().size()));
+
+        for (Schema sch : cat) {
+            Schema schCopy = copy.findSchema(sch.getName());
+
+            assertThat(schCopy, is(notNullValue()));
+            assertThat(schCopy, is(not(sameInstance(sch))));
+
+            for (Table tbl : sch.tables()) {
+                Table tblCopy = schCopy.findTable(tbl.getName());
+
+                assertThat(tblCopy.getCardinality(), is(tbl.getCardinality()));
+                assertThat(tblCopy.columns().size(), is(tbl.columns().size()));
+
+                for (Column col : tbl)
+                    assertThat(tblCopy.findColumn(col.getName()).getTable(), is(tblCopy));
+            }
+
+            for (Index idx : sch.indexes()) {
+                Index idxCopy = schCopy.findIndex(idx.getName());
+                Table tblCopy = schCopy.findTable(idx.getTable().getName());
+
+                assertThat(idxCopy.getId(), is(not(idx.getId())));
+                assertThat(idxCopy.getTable(), is(sameInstance(tblCopy)));
+                assertThat(idxCopy.getAscending(), is(idx.getAscending()));
+                assertThat(idxCopy.isMaterialized(), is(idx.isMaterialized()));
+            }
+        }
+
+        Column col = copy.schemas().get(0).tables().iterator().next().columns().get(0);
+        Index idx = new Index("only_in_copy", col, false);
+
+        assertThat(copy.findIndex(idx.getName()), is(sameInstance(idx)));
+        assertThat(cat.findIndex(idx.getName()), is(nullValue()));
+    }
+}
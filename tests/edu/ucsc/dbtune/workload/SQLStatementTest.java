@@ -38,4 +38,21 @@ public class SQLStatementTest
         assertThat(sql.getSQL(), is("io fjasfuuuuuuuuuoduaojk ldfsa l"));
         assertThat(sql.getSQLCategory(), is(SQLCategory.UNKNOWN));
     }
+
+    /** checks that literals are replaced out of the template. */
+    @Test
+    public void testTemplate()
+    {
+        SQLStatement sql1 =
+            new SQLStatement("select a1 from t_2  where b = 'it''s'\n and c > 10.5e-3");
+        SQLStatement sql2 = new SQLStatement("select a1 from t_2 where b = 'x' and c > 7");
+
+        assertThat(sql1.getTemplate(), is("select a1 from t_2 where b = ? and c > ?"));
+        assertThat(sql2.getTemplate(), is(sql1.getTemplate()));
+
+        sql1 = new SQLStatement("select \"col 1\" from s.t where d in (1, .5) and x3 = -2");
+
+        assertThat(
+            sql1.getTemplate(), is("select \"col 1\" from s.t where d in (?, ?) and x3 = -?"));
+    }
 }